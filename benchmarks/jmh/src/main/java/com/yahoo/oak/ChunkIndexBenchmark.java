@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the lookups of the chunk index (ChunkIndex) with the lookups of the skiplist that was previously
+ * used as the chunk index, i.e., a ConcurrentSkipListMap with a comparator of both serialized and
+ * unserialized keys.
+ */
+public class ChunkIndexBenchmark {
+
+    private static final int KEY_GAP = 16;
+
+    @State(Scope.Benchmark)
+    public static class BenchmarkState {
+
+        @Param({"10000", "1000000"})
+        private int numChunks;
+
+        private NativeMemoryAllocator allocator;
+        private ChunkIndex<Integer, Integer> chunkIndex;
+        private ConcurrentSkipListMap<Object, Chunk<Integer, Integer>> skiplist;
+
+        @Setup()
+        public void setup() {
+            OakComparator<Integer> comparator = OakCommonBuildersFactory.DEFAULT_INT_COMPARATOR;
+            allocator = new NativeMemoryAllocator(Integer.MAX_VALUE);
+            MemoryManager keysMemoryManager = new SeqExpandMemoryManager(allocator);
+            MemoryManager valuesMemoryManager = new SyncRecycleMemoryManager(allocator);
+
+            Comparator<Object> mixedKeyComparator = (o1, o2) -> {
+                if (o1 instanceof OakScopedReadBuffer) {
+                    if (o2 instanceof OakScopedReadBuffer) {
+                        return comparator.compareSerializedKeys((OakScopedReadBuffer) o1, (OakScopedReadBuffer) o2);
+                    } else {
+                        return (-1) * comparator.compareKeyAndSerializedKey((Integer) o2, (OakScopedReadBuffer) o1);
+                    }
+                } else {
+                    if (o2 instanceof OakScopedReadBuffer) {
+                        return comparator.compareKeyAndSerializedKey((Integer) o1, (OakScopedReadBuffer) o2);
+                    } else {
+                        return comparator.compareKeys((Integer) o1, (Integer) o2);
+                    }
+                }
+            };
+            chunkIndex = new ChunkIndex<>(comparator);
+            skiplist = new ConcurrentSkipListMap<>(mixedKeyComparator);
+            for (int i = 0; i < numChunks; i++) {
+                Chunk<Integer, Integer> c = new Chunk<>(i * KEY_GAP, 1, new AtomicInteger(),
+                    valuesMemoryManager, keysMemoryManager, comparator,
+                    OakCommonBuildersFactory.DEFAULT_INT_SERIALIZER, OakCommonBuildersFactory.DEFAULT_INT_SERIALIZER);
+                chunkIndex.put(c);
+                skiplist.put(c.minKey, c);
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            allocator.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private Integer[] keys;
+        private int i = 0;
+
+        @Setup()
+        public void setup(BenchmarkState state) {
+            keys = new Integer[1 << 16];
+            for (int j = 0; j < keys.length; j++) {
+                keys[j] = ThreadLocalRandom.current().nextInt(state.numChunks * KEY_GAP);
+            }
+        }
+
+        Integer nextKey() {
+            return keys[i++ & (keys.length - 1)];
+        }
+    }
+
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Fork(value = 1)
+    @Threads(8)
+    @Benchmark
+    public void chunkIndexFloor(Blackhole blackhole, BenchmarkState state, ThreadState threadState) {
+        blackhole.consume(state.chunkIndex.floor(threadState.nextKey()));
+    }
+
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Fork(value = 1)
+    @Threads(8)
+    @Benchmark
+    public void skiplistFloor(Blackhole blackhole, BenchmarkState state, ThreadState threadState) {
+        // the way the skiplist was looked up, without allocating an entry snapshot
+        blackhole.consume(state.skiplist.get(state.skiplist.floorKey(threadState.nextKey())));
+    }
+
+    //java -jar -Xmx8g -XX:MaxDirectMemorySize=8g ./benchmarks/target/benchmarks.jar ChunkIndexBenchmark
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(ChunkIndexBenchmark.class.getSimpleName())
+                .forks(0)
+                .threads(8)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the lookups and the counter increments of OakLongMap (whose keys and values are inlined in the
+ * entries) with those of an OakMap of integers (whose keys and values are off-heap).
+ */
+public class OakLongMapBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class BenchmarkState {
+
+        @Param({"1000000"})
+        private int numKeys;
+
+        private OakLongMap oakLongMap;
+        private OakMap<Integer, Integer> oakMap;
+
+        @Setup()
+        public void setup() {
+            oakLongMap = new OakLongMap(Long.MIN_VALUE);
+            oakMap = OakCommonBuildersFactory.getDefaultIntBuilder().buildOrderedMap();
+            for (int i = 0; i < numKeys; i++) {
+                oakLongMap.put(i, i);
+                oakMap.zc().put(i, i);
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            oakMap.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private int[] keys;
+        private int i = 0;
+
+        @Setup()
+        public void setup(BenchmarkState state) {
+            keys = new int[1 << 16];
+            for (int j = 0; j < keys.length; j++) {
+                keys[j] = ThreadLocalRandom.current().nextInt(state.numKeys);
+            }
+        }
+
+        int nextKey() {
+            return keys[i++ & (keys.length - 1)];
+        }
+    }
+
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Fork(value = 1)
+    @Threads(8)
+    @Benchmark
+    public void oakLongMapGet(Blackhole blackhole, BenchmarkState state, ThreadState threadState) {
+        blackhole.consume(state.oakLongMap.get(threadState.nextKey()));
+    }
+
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Fork(value = 1)
+    @Threads(8)
+    @Benchmark
+    public void oakMapGet(Blackhole blackhole, BenchmarkState state, ThreadState threadState) {
+        blackhole.consume(state.oakMap.get(threadState.nextKey()));
+    }
+
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Fork(value = 1)
+    @Threads(8)
+    @Benchmark
+    public void oakLongMapIncrement(Blackhole blackhole, BenchmarkState state, ThreadState threadState) {
+        blackhole.consume(state.oakLongMap.addAndGet(threadState.nextKey(), 1));
+    }
+
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Fork(value = 1)
+    @Threads(8)
+    @Benchmark
+    public void oakMapIncrement(Blackhole blackhole, BenchmarkState state, ThreadState threadState) {
+        blackhole.consume(state.oakMap.zc().computeIfPresent(threadState.nextKey(),
+            buffer -> buffer.putInt(0, buffer.getInt(0) + 1)));
+    }
+
+    //java -jar -Xmx8g -XX:MaxDirectMemorySize=8g ./benchmarks/target/benchmarks.jar OakLongMapBenchmark
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(OakLongMapBenchmark.class.getSimpleName())
+                .forks(0)
+                .threads(8)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* BasicChunk keeps the functionality that is common to the chunks whose values reside off-heap:
+ * the ordered Chunk (used by OakMap) and the HashChunk (used by OakHashMap).
+ * The chunk's state and the publishing mechanism are kept by FreezableChunk.
+ */
+abstract class BasicChunk<K, V> extends FreezableChunk {
+
+    /*-------------- Constructors --------------*/
+
+    BasicChunk(int maxItems, AtomicInteger externalSize) {
+        super(maxItems, externalSize);
+    }
+
+    /********************************************************************************************/
+    /*---------- Methods for managing the put/remove path of the keys and values  --------------*/
+
+    /**
+     * @param ctx the context that follows the operation since the key was found/created
+     * @return true if the value reference was CASed successfully.
+     * See the concrete chunk implementations for more details.
+     */
+    abstract ValueUtils.ValueResult linkValue(ThreadContext ctx);
+
+    /**
+     * See {@code EntryArray.allocateValue(ThreadContext)} for more information
+     */
+    abstract void allocateValue(ThreadContext ctx, V value, boolean writeForMove);
+
+    /**
+     * See {@code EntryArray.releaseNewValue(ThreadContext)} for more information
+     */
+    abstract void releaseNewValue(ThreadContext ctx);
+}
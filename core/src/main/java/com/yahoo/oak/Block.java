@@ -14,8 +14,21 @@ class Block {
 
     private final int capacity;
     private final AtomicLong allocated = new AtomicLong(0);
+    // number of allocated bytes that are not in use anymore (released, or not used at all)
+    private final AtomicLong released = new AtomicLong(0);
+    // number of the allocations within the block that are in use, maintained by the allocator
+    private final AtomicLong liveAllocations = new AtomicLong(0);
+    // the evacuation state of the block, see NativeMemoryAllocator
+    private volatile EvacuationState evacuationState = EvacuationState.NONE;
     private int id; // placeholder might need to be set in the future
 
+    enum EvacuationState {
+        NONE,       // the block is in use
+        STARTED,    // the block is evacuated, its released off-heap cuts are being removed from the free list
+        PURGED,     // the block is evacuated, none of its released off-heap cuts are in the free list
+        RETURNED    // the block was returned to the blocks provider
+    }
+
     Block(long capacity) {
         assert capacity > 0;
         assert capacity <= Integer.MAX_VALUE; // This is exactly 2GiB
@@ -27,10 +40,22 @@ class Block {
 
     }
 
+    // A block of the given memory, which is allocated (and is released) by the caller, see MappedBlocksProvider
+    Block(long memAddress, int capacity) {
+        assert capacity > 0;
+        this.capacity = capacity;
+        this.id = NativeMemoryAllocator.INVALID_BLOCK_ID;
+        this.blockMemAddress = memAddress;
+    }
+
     void setID(int id) {
         this.id = id;
     }
 
+    int getID() {
+        return id;
+    }
+
     // Block manages its linear allocation. Thread safe.
     // The returned buffer doesn't have all zero bytes.
     boolean allocate(BlockAllocationSlice s, final int size) {
@@ -38,6 +63,9 @@ class Block {
         long offset = allocated.get();
         if (offset + size <= this.capacity) { // check is only an optimization
             offset = allocated.getAndAdd(size);
+            if (offset + size > this.capacity) {
+                addReleased(size); // the bytes beyond the capacity are never used
+            }
         }
         if (offset + size > this.capacity) {
             throw new OakOutOfMemoryException(String.format("Block %d is out of memory", id));
@@ -46,10 +74,59 @@ class Block {
         return true;
     }
 
+    // Returns the unused tail [tailOffset, endOffset) of an allocation to the block,
+    // only if it is the latest allocation of the block. Thread safe.
+    boolean returnTail(int tailOffset, int endOffset) {
+        assert tailOffset <= endOffset;
+        return allocated.compareAndSet(endOffset, tailOffset);
+    }
+
+    // Writes a byte to every page of the block, so the pages are mapped before the block is used, not thread safe
+    void preTouch() {
+        int pageSize = UnsafeUtils.UNSAFE.pageSize();
+        for (long offset = 0; offset < capacity; offset += pageSize) {
+            UnsafeUtils.UNSAFE.putByte(blockMemAddress + offset, (byte) 0);
+        }
+    }
+
     // use when this Block is no longer in any use, not thread safe
     // It sets the limit to the capacity and the position to zero, but didn't zeroes the memory
     void reset() {
         allocated.set(0);
+        released.set(0);
+        liveAllocations.set(0);
+        evacuationState = EvacuationState.NONE;
+    }
+
+    // Counts the given number of allocated bytes as released (or as in use again, if negative). Thread safe.
+    // Used only to estimate the ratio of the released bytes.
+    void addReleased(long delta) {
+        released.addAndGet(delta);
+    }
+
+    // Returns the (estimated) ratio of the allocated bytes of the block, that are not in use anymore
+    double getReleasedRatio() {
+        long allocatedBytes = Math.min(allocated.get(), capacity);
+        return allocatedBytes == 0 ? 0 : (double) released.get() / allocatedBytes;
+    }
+
+    // Counts the given number of allocations within the block as live (or as released, if negative).
+    // Thread safe.
+    void addLiveAllocations(long delta) {
+        liveAllocations.addAndGet(delta);
+    }
+
+    // Returns whether none of the allocations within the block is in use. Thread safe.
+    boolean isEmpty() {
+        return liveAllocations.get() == 0;
+    }
+
+    EvacuationState getEvacuationState() {
+        return evacuationState;
+    }
+
+    void setEvacuationState(EvacuationState state) {
+        evacuationState = state;
     }
 
     // return upperbound of bytes actually allocated for this block only, thread safe
@@ -11,7 +11,8 @@ package com.yahoo.oak;
  * Its purpose is to allocate new buffers (DirectByteBuffer) which will be delivered as a Slice object.
  * The allocator can also recycle the memory returned as a Slice object, given this allocation is no longer in use by
  * any thread.
- * Note that two allocations cannot be merged into a single allocation, and an allocation currently is not split.
+ * Note that two allocations cannot be merged into a single allocation, while released allocations might be merged
+ * and split by the allocator (see NativeMemoryAllocator).
  */
 interface BlockMemoryAllocator {
 
@@ -28,9 +29,24 @@ interface BlockMemoryAllocator {
     // Returns the memory allocation of this OakMap (this Allocator)
     long allocated();
 
+    // Returns the number of bytes taken from the blocks of this Allocator, either allocated, released or unused.
+    // The difference from allocated() is the fragmentation of the memory.
+    long reserved();
+
+    // Returns the size of the blocks of this Allocator, which bounds the offsets and the lengths of its allocations
+    int getBlockSize();
+
     // Attaches the slice with its base address
     void readMemoryAddress(Slice s);
 
     // Check if this Allocator was already closed
     boolean isClosed();
+
+    // Starts the evacuation of the blocks whose ratio of released bytes is at least the given ratio, so they can be
+    // returned once all their allocations are released. Returns the number of the blocks that are still evacuated,
+    // whose allocations should be relocated.
+    int evacuateSparseBlocks(double minReleasedRatio);
+
+    // Returns whether the allocation of the given slice resides in an evacuated block
+    boolean isEvacuated(Slice s);
 }
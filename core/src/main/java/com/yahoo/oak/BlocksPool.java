@@ -7,26 +7,35 @@
 package com.yahoo.oak;
 
 import java.io.Closeable;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
- * The singleton Pool to pre-allocate and reuse blocks of off-heap memory. The singleton has lazy
+ * The Pool to pre-allocate and reuse blocks of off-heap memory.
+ *
+ * By default, all the Oak instances share a singleton Pool. The singleton has lazy
  * initialization so the big memory is allocated only on demand when first Oak is used.
  * However it makes creation of the first Oak slower. This initialization is thread safe, thus
  * multiple concurrent Oak creations will result only in the one Pool.
+ *
+ * An Oak instance that is built with a different configuration (see {@code Config}), e.g., with a different block
+ * size, uses a Pool of its own configuration, which is shared by all the Oak instances of that configuration.
+ * Such a Pool may pre-allocate (and pre-touch) its memory upon creation, so the first allocations of the Oak
+ * instances do not have to wait for it.
  */
 final class BlocksPool implements BlocksProvider, Closeable {
 
     private static BlocksPool instance = null;
+    // the pools of the configurations other than the singleton's configuration
+    private static final ConcurrentHashMap<Config, BlocksPool> POOLS = new ConcurrentHashMap<>();
     private final ConcurrentLinkedQueue<Block> blocks = new ConcurrentLinkedQueue<>();
 
-    // TODO change the following constants to be configurable
-
     static final long MB = 1L << 20;
     static final long GB = 1L << 30;
 
-    // The memory size to pre-allocate on initialization.
-    private static final long PRE_ALLOC_SIZE_BYTES = 0;
+    // The default memory size to pre-allocate on initialization.
+    static final long DEFAULT_PRE_ALLOC_SIZE_BYTES = 0;
 
     // The minimal memory size to be allocated at once when not enough memory is available.
     // If the used block size is larger than this number, exactly one block will be allocated.
@@ -34,10 +43,10 @@ final class BlocksPool implements BlocksProvider, Closeable {
     private static final long NEW_ALLOC_MIN_SIZE_BYTES = 8L * MB;
 
     // Upper/lower thresholds to the quantity of the unused memory to reserve in the pool for future use.
-    // When the unused memory quantity reaches HIGH_RESERVED_SIZE_BYTES, some memory is freed
-    // such that the remaining unused memory will be LOW_RESERVED_SIZE_BYTES.
-    private static final long LOW_RESERVED_SIZE_BYTES = 2L * GB;
-    private static final long HIGH_RESERVED_SIZE_BYTES = 4L * GB;
+    // When the unused memory quantity reaches the high threshold, some memory is freed
+    // such that the remaining unused memory will be the low threshold. These are the default thresholds.
+    static final long DEFAULT_LOW_RESERVED_SIZE_BYTES = 2L * GB;
+    static final long DEFAULT_HIGH_RESERVED_SIZE_BYTES = 4L * GB;
 
     // The default size of a single memory block to be allocated at once.
     // This block size (currently) imposes off-heap memory limit of 128GB
@@ -50,6 +59,7 @@ final class BlocksPool implements BlocksProvider, Closeable {
      */
     private final int blockSizeBytes;
 
+    private final Config config;
     private final int newAllocBlocks;
     private final int lowReservedBlocks;
     private final int highReservedBlocks;
@@ -61,11 +71,18 @@ final class BlocksPool implements BlocksProvider, Closeable {
 
     // Used internally and for tests.
     private BlocksPool(int blockSizeBytes) {
-        this.blockSizeBytes = blockSizeBytes;
+        this(new Config(blockSizeBytes, DEFAULT_PRE_ALLOC_SIZE_BYTES,
+            DEFAULT_LOW_RESERVED_SIZE_BYTES, DEFAULT_HIGH_RESERVED_SIZE_BYTES, false));
+    }
+
+    // Creates a pool of the given configuration, which pre-allocates its memory (if configured) before it returns
+    BlocksPool(Config config) {
+        this.config = config;
+        this.blockSizeBytes = config.blockSizeBytes;
         this.newAllocBlocks = convertSizeToBlocks(NEW_ALLOC_MIN_SIZE_BYTES, 1);
-        this.lowReservedBlocks = convertSizeToBlocks(LOW_RESERVED_SIZE_BYTES, 0);
-        this.highReservedBlocks = convertSizeToBlocks(HIGH_RESERVED_SIZE_BYTES, this.lowReservedBlocks + 1);
-        alloc(convertSizeToBlocks(PRE_ALLOC_SIZE_BYTES, 0));
+        this.lowReservedBlocks = convertSizeToBlocks(config.lowReservedSizeBytes, 0);
+        this.highReservedBlocks = convertSizeToBlocks(config.highReservedSizeBytes, this.lowReservedBlocks + 1);
+        alloc(convertSizeToBlocks(config.preAllocSizeBytes, 0));
     }
 
     private int convertSizeToBlocks(long sizeBytes, int minBlocks) {
@@ -87,6 +104,18 @@ final class BlocksPool implements BlocksProvider, Closeable {
         return instance;
     }
 
+    /**
+     * Returns the pool of the given configuration: the singleton, if it matches the configuration (it is
+     * initialized with the configured block size if not yet initialized), or otherwise the pool of this
+     * configuration, which is created (and pre-allocated) if it does not exist yet. Thread safe.
+     */
+    static BlocksPool getInstance(Config config) {
+        if (preferBlockSize(config.blockSizeBytes) && instance.config.equals(config)) {
+            return instance;
+        }
+        return POOLS.computeIfAbsent(config, BlocksPool::new);
+    }
+
     // used only in OakNativeMemoryAllocatorTest.java
     static void setBlockSize(int blockSize) {
         synchronized (BlocksPool.class) { // can be easily changed to lock-free
@@ -133,7 +162,7 @@ final class BlocksPool implements BlocksProvider, Closeable {
             }
 
             if (noMoreBlocks || b == null) {
-                synchronized (BlocksPool.class) { // can be easily changed to lock-free
+                synchronized (this) { // can be easily changed to lock-free
                     if (blocks.isEmpty()) {
                         alloc(newAllocBlocks);
                     }
@@ -152,7 +181,7 @@ final class BlocksPool implements BlocksProvider, Closeable {
         b.reset();
         blocks.add(b);
         if (blocks.size() > highReservedBlocks) { // too many unused blocks
-            synchronized (BlocksPool.class) { // can be easily changed to lock-free
+            synchronized (this) { // can be easily changed to lock-free
                 while (blocks.size() > lowReservedBlocks) {
                     this.blocks.poll().clean();
                 }
@@ -178,7 +207,11 @@ final class BlocksPool implements BlocksProvider, Closeable {
         for (int i = 0; i < numOfBlocks; i++) {
             // The blocks are allocated without ids.
             // They are given an id when they are given to an OakNativeMemoryAllocator.
-            this.blocks.add(new Block(blockSizeBytes));
+            Block b = new Block(blockSizeBytes);
+            if (config.preTouch) {
+                b.preTouch();
+            }
+            this.blocks.add(b);
         }
     }
 
@@ -186,4 +219,48 @@ final class BlocksPool implements BlocksProvider, Closeable {
     int numOfRemainingBlocks() {
         return blocks.size();
     }
+
+    /**
+     * The configuration of a pool: its block size, the memory size to pre-allocate on initialization,
+     * the thresholds of the unused memory to reserve (see DEFAULT_LOW_RESERVED_SIZE_BYTES), and whether the pages of
+     * the new blocks are touched upon their allocation, so they are mapped before the blocks are used.
+     */
+    static final class Config {
+        private final int blockSizeBytes;
+        private final long preAllocSizeBytes;
+        private final long lowReservedSizeBytes;
+        private final long highReservedSizeBytes;
+        private final boolean preTouch;
+
+        Config(int blockSizeBytes, long preAllocSizeBytes, long lowReservedSizeBytes, long highReservedSizeBytes,
+               boolean preTouch) {
+            assert blockSizeBytes > 0 && preAllocSizeBytes >= 0;
+            assert 0 <= lowReservedSizeBytes && lowReservedSizeBytes <= highReservedSizeBytes;
+            this.blockSizeBytes = blockSizeBytes;
+            this.preAllocSizeBytes = preAllocSizeBytes;
+            this.lowReservedSizeBytes = lowReservedSizeBytes;
+            this.highReservedSizeBytes = highReservedSizeBytes;
+            this.preTouch = preTouch;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Config)) {
+                return false;
+            }
+            Config other = (Config) o;
+            return blockSizeBytes == other.blockSizeBytes && preAllocSizeBytes == other.preAllocSizeBytes
+                && lowReservedSizeBytes == other.lowReservedSizeBytes
+                && highReservedSizeBytes == other.highReservedSizeBytes && preTouch == other.preTouch;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(blockSizeBytes, preAllocSizeBytes, lowReservedSizeBytes, highReservedSizeBytes,
+                preTouch);
+        }
+    }
 }
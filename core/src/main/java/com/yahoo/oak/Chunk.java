@@ -12,19 +12,12 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicMarkableReference;
 import java.util.concurrent.atomic.AtomicReference;
 
-class Chunk<K, V> {
+class Chunk<K, V> extends BasicChunk<K, V> {
     // an entry with NONE_NEXT as its next pointer, points to a null entry
     static final int NONE_NEXT = EntryArray.INVALID_ENTRY_INDEX;
 
     /*-------------- Constants --------------*/
 
-    enum State {
-        INFANT,
-        NORMAL,
-        FROZEN,
-        RELEASED
-    }
-
     // used for checking if rebalance is needed
     private static final double REBALANCE_PROB_PERC = 30;
     private static final double SORTED_REBALANCE_RATIO = 2;
@@ -42,18 +35,21 @@ class Chunk<K, V> {
 
     // in split/compact process, represents parent of split (can be null!)
     private final AtomicReference<Chunk<K, V>> creator;
-    // chunk can be in the following states: normal, frozen or infant(has a creator)
-    private final AtomicReference<State> state;
     private final AtomicReference<Rebalancer<K, V>> rebalancer;
     private final EntryOrderedSet<K, V> entryOrderedSet;
-
-    private final AtomicInteger pendingOps;
+    // whether the entries keep the prefixes of their keys, so the keys are compared off-heap only on prefix ties
+    private final boolean isKeyPrefixed;
 
     private final Statistics statistics;
     // # of sorted items at entry-array's beginning (resulting from split)
     private final AtomicInteger sortedCount;
-    private final int maxItems;
-    AtomicInteger externalSize; // for updating oak's size (reference to one global per Oak size)
+    // set if the minKey resides in an evacuated block, so the rebalance of this chunk relocates it
+    private volatile boolean isMinKeyRelocated = false;
+    // the CLOCK reference bits of the entries, set when an existing entry is accessed and cleared by the eviction,
+    // or null if the map does not evict. A new entry starts with a clear bit, so the entries that are inserted
+    // once (e.g., by a scan) are evicted before the accessed ones. The bits are approximate, so they are read
+    // and written plainly
+    private byte[] accessBits;
 
     /*-------------- Constructors --------------*/
 
@@ -63,22 +59,21 @@ class Chunk<K, V> {
      */
     private Chunk(int maxItems, AtomicInteger externalSize, MemoryManager vMM, MemoryManager kMM,
         OakComparator<K> comparator, OakSerializer<K> keySerializer,
-        OakSerializer<V> valueSerializer) {
-        this.maxItems = maxItems;
-        this.externalSize = externalSize;
+        OakSerializer<V> valueSerializer, boolean isAccessTracked) {
+        super(maxItems, externalSize);
         this.comparator = comparator;
+        this.isKeyPrefixed = comparator.hasKeyPrefix();
         this.entryOrderedSet =
-            new EntryOrderedSet<>(vMM, kMM, maxItems, keySerializer, valueSerializer);
+            new EntryOrderedSet<>(vMM, kMM, maxItems, keySerializer, valueSerializer, isKeyPrefixed);
         // sortedCount keeps the number of  subsequent and ordered entries in the entries array,
         // which are subject to binary search
         this.sortedCount = new AtomicInteger(0);
         this.minKey = new KeyBuffer(kMM.getEmptySlice());
         this.creator = new AtomicReference<>(null);
-        this.state = new AtomicReference<>(State.NORMAL);
         this.next = new AtomicMarkableReference<>(null, false);
-        this.pendingOps = new AtomicInteger();
         this.rebalancer = new AtomicReference<>(null); // to be updated on rebalance
         this.statistics = new Statistics();
+        this.accessBits = isAccessTracked ? new byte[maxItems] : null;
     }
 
     /**
@@ -88,25 +83,53 @@ class Chunk<K, V> {
         OakComparator<K> comparator, OakSerializer<K> keySerializer,
         OakSerializer<V> valueSerializer) {
 
-        this(maxItems, externalSize, vMM, kMM, comparator, keySerializer, valueSerializer);
+        this(maxItems, externalSize, vMM, kMM, comparator, keySerializer, valueSerializer, false);
         entryOrderedSet.writeKey(minKey, this.minKey);
     }
 
+    /**
+     * Makes this chunk (and the chunks that are created from it) track the accesses of its entries, for the
+     * CLOCK eviction. Must be invoked before the chunk is reachable.
+     */
+    void trackAccesses() {
+        accessBits = new byte[maxItems];
+    }
+
     /**
      * Create a child Chunk where this Chunk object as its creator.
-     * The child Chunk will have the same minKey as this Chunk (without duplicating the KeyBuffer data).
+     * The child Chunk will have the same minKey as this Chunk (without duplicating the KeyBuffer data),
+     * unless the minKey is relocated (see {@code relocateMinKeyOnRebalance()}).
      */
     Chunk<K, V> createFirstChild() {
         Chunk<K, V> child =
             new Chunk<>(maxItems, externalSize,
                 entryOrderedSet.valuesMemoryManager, entryOrderedSet.keysMemoryManager,
-                comparator, entryOrderedSet.keySerializer, entryOrderedSet.valueSerializer);
+                comparator, entryOrderedSet.keySerializer, entryOrderedSet.valueSerializer, accessBits != null);
         child.creator.set(this);
-        child.state.set(State.INFANT);
-        child.minKey.copyFrom(this.minKey);
+        child.setState(State.INFANT);
+        if (isMinKeyRelocated) {
+            duplicateKeyBuffer(this.minKey, child.minKey);
+        } else {
+            child.minKey.copyFrom(this.minKey);
+        }
         return child;
     }
 
+    /**
+     * @return true if the minKey resides in a block that is evacuated by the allocator
+     */
+    boolean isMinKeyEvacuated() {
+        return entryOrderedSet.keysMemoryManager.getAllocator().isEvacuated(minKey.getSlice());
+    }
+
+    /**
+     * Makes the next rebalance of this chunk duplicate its minKey for the first child, instead of sharing it,
+     * so the minKey of this chunk is dropped by the rebalance.
+     */
+    void relocateMinKeyOnRebalance() {
+        isMinKeyRelocated = true;
+    }
+
     /**
      * Create a child Chunk where this Chunk object as its creator.
      * The child Chunk will use a duplicate minKey of the input (allocates a new buffer).
@@ -114,13 +137,27 @@ class Chunk<K, V> {
     Chunk<K, V> createNextChild(KeyBuffer minKey) {
         Chunk<K, V> child = new Chunk<>(maxItems, externalSize,
             entryOrderedSet.valuesMemoryManager, entryOrderedSet.keysMemoryManager,
-            comparator, entryOrderedSet.keySerializer, entryOrderedSet.valueSerializer);
+            comparator, entryOrderedSet.keySerializer, entryOrderedSet.valueSerializer, accessBits != null);
         child.creator.set(this);
-        child.state.set(State.INFANT);
+        child.setState(State.INFANT);
         duplicateKeyBuffer(minKey, child.minKey);
         return child;
     }
 
+    /**
+     * Create a Chunk (without a creator) that follows this Chunk, and link it as the next of this Chunk.
+     * The new Chunk will use a duplicate minKey of the input (allocates a new buffer).
+     * Used to build the chunks of a restored map, before the map is reachable.
+     */
+    Chunk<K, V> createNextRestoredChunk(KeyBuffer minKey) {
+        Chunk<K, V> chunk = new Chunk<>(maxItems, externalSize,
+            entryOrderedSet.valuesMemoryManager, entryOrderedSet.keysMemoryManager,
+            comparator, entryOrderedSet.keySerializer, entryOrderedSet.valueSerializer, accessBits != null);
+        duplicateKeyBuffer(minKey, chunk.minKey);
+        next.set(chunk, false);
+        return chunk;
+    }
+
     /**
      * Allocate a new KeyBuffer and duplicate an existing key to the new one.
      *
@@ -178,12 +215,42 @@ class Chunk<K, V> {
      * See {@code EntryOrderedSet.allocateEntryAndWriteKey(ThreadContext)} for more information
      */
     boolean allocateEntryAndWriteKey(ThreadContext ctx, K key) {
-        return entryOrderedSet.allocateEntryAndWriteKey(ctx, key);
+        if (!entryOrderedSet.allocateEntryAndWriteKey(ctx, key)) {
+            return false;
+        }
+        if (isKeyPrefixed) {
+            entryOrderedSet.setKeyPrefix(ctx.entryIndex, comparator.getKeyPrefix(key));
+        }
+        return true;
+    }
+
+    /**
+     * Sets the CLOCK reference bit of the entry, if the accesses are tracked.
+     * The bit is written only if it is clear, so the frequently read entries do not invalidate cache lines.
+     */
+    private void markAccessed(int ei) {
+        if (accessBits != null && accessBits[ei] == 0) {
+            accessBits[ei] = 1;
+        }
+    }
+
+    /**
+     * Clears the CLOCK reference bit of the entry (the accesses must be tracked).
+     *
+     * @return true if the entry was accessed since its bit was last cleared
+     */
+    boolean clearAccessed(int ei) {
+        if (accessBits[ei] == 0) {
+            return false;
+        }
+        accessBits[ei] = 0;
+        return true;
     }
 
     /**
      * See {@code EntryOrderedSet.allocateValue(ThreadContext)} for more information
      */
+    @Override
     void allocateValue(ThreadContext ctx, V value, boolean writeForMove) {
         entryOrderedSet.allocateValue(ctx, value, writeForMove);
     }
@@ -195,9 +262,56 @@ class Chunk<K, V> {
         entryOrderedSet.releaseKey(ctx);
     }
 
+    /**
+     * See {@code EntryOrderedSet.readLinkedKeyReferences(long[], int)} for more information
+     */
+    int readLinkedKeyReferences(long[] keyReferences, int offset) {
+        return entryOrderedSet.readLinkedKeyReferences(keyReferences, offset);
+    }
+
+    /**
+     * See {@code EntryArray.readKeyReferences(long[], int)} for more information
+     */
+    int readKeyReferences(long[] keyReferences, int offset) {
+        return entryOrderedSet.readKeyReferences(keyReferences, offset);
+    }
+
+    /**
+     * See {@code EntryOrderedSet.readLinkedValueReferences(long[], int)} for more information
+     */
+    int readLinkedValueReferences(long[] valueReferences, int offset) {
+        return entryOrderedSet.readLinkedValueReferences(valueReferences, offset);
+    }
+
+    /**
+     * See {@code EntryArray.readValueReferences(long[], int)} for more information
+     */
+    int readValueReferences(long[] valueReferences, int offset) {
+        return entryOrderedSet.readValueReferences(valueReferences, offset);
+    }
+
+    /**
+     * Relocates the keys of the linked entries that reside in evacuated blocks, while the chunk is published.
+     * See {@code EntryOrderedSet.relocateLinkedKeys(KeyBuffer, KeyBuffer)} for more information
+     *
+     * @return false if the chunk is being rebalanced, and its keys were not relocated
+     */
+    boolean relocateKeys(ThreadContext ctx) {
+        if (!publish()) {
+            return false;
+        }
+        try {
+            entryOrderedSet.relocateLinkedKeys(ctx.key, ctx.tempKey);
+        } finally {
+            unpublish();
+        }
+        return true;
+    }
+
     /**
      * See {@code EntryOrderedSet.releaseNewValue(ThreadContext)} for more information
      */
+    @Override
     void releaseNewValue(ThreadContext ctx) {
         entryOrderedSet.releaseNewValue(ctx);
     }
@@ -226,6 +340,13 @@ class Chunk<K, V> {
         return entryOrderedSet.getHeadNextEntryIndex();
     }
 
+    /**
+     * @return the index of the item following the given one in the chunk, or NONE_NEXT if there is none
+     */
+    final int getNextItemEntryIndex(int ei) {
+        return entryOrderedSet.getNextEntryIndex(ei);
+    }
+
     /**
      * Finds the last sorted entry.
      *
@@ -266,6 +387,35 @@ class Chunk<K, V> {
         return comparator.compareKeyAndSerializedKey(key, tempKeyBuff);
     }
 
+    /**
+     * Compare a key with a serialized key that is pointed by a specific entry index, by their prefixes first
+     * (if the keys are prefixed). The serialized key is read only if the prefixes are equal.
+     *
+     * @param tempKeyBuff a reusable buffer object for internal temporary usage
+     *                    As a side effect, this buffer will contain the compared
+     *                    serialized key, if it was read (surely, if the keys are equal).
+     * @param key         the key to compare
+     * @param keyPrefix   the prefix of the key (see {@code getKeyPrefix(K)})
+     * @param ei          the entry index to compare with
+     * @return the comparison result
+     */
+    private int compareKeyAndEntryIndex(KeyBuffer tempKeyBuff, K key, long keyPrefix, int ei) {
+        if (isKeyPrefixed) {
+            long entryKeyPrefix = entryOrderedSet.getKeyPrefix(ei);
+            if (keyPrefix != entryKeyPrefix) {
+                return keyPrefix < entryKeyPrefix ? -1 : 1;
+            }
+        }
+        return compareKeyAndEntryIndex(tempKeyBuff, key, ei);
+    }
+
+    /**
+     * @return the prefix of the given key, or 0 if the keys are not prefixed
+     */
+    private long getKeyPrefix(K key) {
+        return isKeyPrefixed ? comparator.getKeyPrefix(key) : 0;
+    }
+
     /**
      * Look up a key in this chunk.
      *
@@ -290,13 +440,14 @@ class Chunk<K, V> {
     void lookUp(ThreadContext ctx, K key) {
         // binary search sorted part of key array to quickly find node to start search at
         // it finds previous-to-key
-        int curr = binaryFind(ctx.tempKey, key);
+        final long keyPrefix = getKeyPrefix(key);
+        int curr = binaryFind(ctx.tempKey, key, keyPrefix);
         curr = (curr == NONE_NEXT) ? entryOrderedSet.getHeadNextEntryIndex() : entryOrderedSet.getNextEntryIndex(curr);
 
         // iterate until end of list (or key is found)
         while (curr != NONE_NEXT) {
             // compare current item's key to searched key
-            int cmp = compareKeyAndEntryIndex(ctx.key, key, curr);
+            int cmp = compareKeyAndEntryIndex(ctx.key, key, keyPrefix, curr);
             // if item's key is larger - we've exceeded our key
             // it's not in chunk - no need to search further
             if (cmp < 0) {
@@ -308,6 +459,7 @@ class Chunk<K, V> {
                 // ctx.key was already updated as a side effect of compareKeyAndEntryIndex()
                 ctx.entryIndex = curr;
                 entryOrderedSet.readValue(ctx);
+                markAccessed(curr);
                 return;
             }
             // otherwise- proceed to next item
@@ -331,6 +483,13 @@ class Chunk<K, V> {
      * NONE_NEXT is going to be returned
      */
     private int binaryFind(KeyBuffer tempKey, K key) {
+        return binaryFind(tempKey, key, getKeyPrefix(key));
+    }
+
+    /**
+     * Same as {@code binaryFind(KeyBuffer, K)}, given the prefix of the key (see {@code getKeyPrefix(K)}).
+     */
+    private int binaryFind(KeyBuffer tempKey, K key, long keyPrefix) {
         int sortedCount = this.sortedCount.get();
         // if there are no sorted keys, return NONE_NEXT to indicate that a regular linear search is needed
         if (sortedCount == 0) {
@@ -339,12 +498,12 @@ class Chunk<K, V> {
 
         // if the first item is already larger than key,
         // return NONE_NEXT to indicate that a regular linear search is needed
-        if (compareKeyAndEntryIndex(tempKey, key, entryOrderedSet.getHeadNextEntryIndex()) <= 0) {
+        if (compareKeyAndEntryIndex(tempKey, key, keyPrefix, entryOrderedSet.getHeadNextEntryIndex()) <= 0) {
             return NONE_NEXT;
         }
 
         // optimization: compare with last key to avoid binary search (here sortedCount is not zero)
-        if (compareKeyAndEntryIndex(tempKey, key, getLastSortedEntryIndex(sortedCount)) > 0) {
+        if (compareKeyAndEntryIndex(tempKey, key, keyPrefix, getLastSortedEntryIndex(sortedCount)) > 0) {
             return getLastSortedEntryIndex(sortedCount);
         }
 
@@ -355,7 +514,7 @@ class Chunk<K, V> {
         int end = sortedCount;
         while (end - start > 1) {
             int curr = start + ((end - start) / 2);
-            if (compareKeyAndEntryIndex(tempKey, key, curr) <= 0) {
+            if (compareKeyAndEntryIndex(tempKey, key, keyPrefix, curr) <= 0) {
                 end = curr;
             } else {
                 start = curr;
@@ -366,34 +525,89 @@ class Chunk<K, V> {
         return start == -1 ? NONE_NEXT : start;
     }
 
-
-    /********************************************************************************************/
-    /*---------- Methods for managing the put/remove path of the keys and values  --------------*/
-
     /**
-     * publish operation into thread array
-     * if CAS didn't succeed then this means that a rebalancer got here first and entry is frozen
+     * Finds the entry with the greatest key which is less than (or equal to, if inclusive) the given key,
+     * and its value is neither deleted (or expired) nor not yet inserted.
+     * The linked list is scanned backward in segments, each segment starts from an entry of the sorted prefix
+     * (an anchor) and ends where the previous segment started.
      *
-     * @return result of CAS
-     **/
-    boolean publish() {
-        pendingOps.incrementAndGet();
-        State currentState = state.get();
-        if (currentState == State.FROZEN || currentState == State.RELEASED) {
-            pendingOps.decrementAndGet();
-            return false;
+     * @param tempKey   a reusable buffer object for internal temporary usage
+     * @param tempValue a reusable buffer object for internal temporary usage
+     * @param key       the key to look up, or null to find the greatest key in the chunk
+     * @param inclusive whether an entry with the given key may be returned
+     * @return the index of the found entry, or NONE_NEXT if there is no such entry in this chunk
+     */
+    int findLowerEntryIndex(KeyBuffer tempKey, ValueBuffer tempValue, K key, boolean inclusive) {
+        int anchor;
+        if (key != null) {
+            anchor = binaryFind(tempKey, key);
+        } else {
+            int sortedCount = this.sortedCount.get();
+            anchor = (sortedCount == 0) ? NONE_NEXT : getLastSortedEntryIndex(sortedCount);
+        }
+        int segmentEnd = NONE_NEXT;
+
+        while (true) {
+            int found = NONE_NEXT;
+            int curr = (anchor == NONE_NEXT) ? entryOrderedSet.getHeadNextEntryIndex() : anchor;
+            while (curr != NONE_NEXT && curr != segmentEnd) {
+                if (key != null) {
+                    int cmp = compareKeyAndEntryIndex(tempKey, key, curr);
+                    if (cmp < 0 || (cmp == 0 && !inclusive)) {
+                        break;
+                    }
+                }
+                if (entryOrderedSet.isValuePresent(tempValue, curr)) {
+                    found = curr;
+                }
+                curr = entryOrderedSet.getNextEntryIndex(curr);
+            }
+
+            if (found != NONE_NEXT || anchor == NONE_NEXT) {
+                return found;
+            }
+            // all the entries of this segment are deleted, continue with the previous segment
+            segmentEnd = anchor;
+            anchor = (anchor == 0) ? NONE_NEXT : anchor - 1;
         }
-        return true;
     }
 
     /**
-     * unpublish operation from thread array
-     * if CAS didn't succeed then this means that a rebalancer did this already
-     **/
-    void unpublish() {
-        pendingOps.decrementAndGet();
+     * Finds the entry with the least key which is greater than (or equal to, if inclusive) the given key,
+     * and its value is neither deleted (or expired) nor not yet inserted.
+     *
+     * @param tempKey   a reusable buffer object for internal temporary usage
+     * @param tempValue a reusable buffer object for internal temporary usage
+     * @param key       the key to look up, or null to find the least key in the chunk
+     * @param inclusive whether an entry with the given key may be returned
+     * @return the index of the found entry, or NONE_NEXT if there is no such entry in this chunk
+     */
+    int findHigherEntryIndex(KeyBuffer tempKey, ValueBuffer tempValue, K key, boolean inclusive) {
+        int curr = entryOrderedSet.getHeadNextEntryIndex();
+        if (key != null) {
+            int prev = binaryFind(tempKey, key);
+            if (prev != NONE_NEXT) {
+                curr = entryOrderedSet.getNextEntryIndex(prev);
+            }
+            // skip the entries with lower keys
+            while (curr != NONE_NEXT) {
+                int cmp = compareKeyAndEntryIndex(tempKey, key, curr);
+                if (cmp < 0 || (cmp == 0 && inclusive)) {
+                    break;
+                }
+                curr = entryOrderedSet.getNextEntryIndex(curr);
+            }
+        }
+        while (curr != NONE_NEXT && !entryOrderedSet.isValuePresent(tempValue, curr)) {
+            curr = entryOrderedSet.getNextEntryIndex(curr);
+        }
+        return curr;
     }
 
+
+    /********************************************************************************************/
+    /*---------- Methods for managing the put/remove path of the keys and values  --------------*/
+
     /**
      * As written in {@code writeValueFinish(ctx)}, when changing an entry, the value reference is CASed first and
      * later the value version, and the same applies when removing a value. However, there is another step before
@@ -439,9 +653,10 @@ class Chunk<K, V> {
         int cmp;
         final int ei = ctx.entryIndex;
         final KeyBuffer tempKeyBuff = ctx.tempKey;
+        final long keyPrefix = getKeyPrefix(key);
 
         // start iterating from quickly-found node (by binary search) in sorted part of order-array
-        final int anchor = binaryFind(tempKeyBuff, key);
+        final int anchor = binaryFind(tempKeyBuff, key, keyPrefix);
         while (true) {
             if (anchor == NONE_NEXT) {
                 prev = NONE_NEXT;
@@ -460,7 +675,7 @@ class Chunk<K, V> {
                     break;
                 }
                 // compare current item's key to ours
-                cmp = compareKeyAndEntryIndex(tempKeyBuff, key, curr);
+                cmp = compareKeyAndEntryIndex(tempKeyBuff, key, keyPrefix, curr);
 
                 // if current item's key is larger, done searching - add between prev and curr
                 if (cmp < 0) {
@@ -497,7 +712,8 @@ class Chunk<K, V> {
                 if (sortedCount > 0) {
                     if (ei == sortedCount) {
                         // the new entry's index is exactly after the sorted count
-                        if (compareKeyAndEntryIndex(tempKeyBuff, key, getLastSortedEntryIndex(sortedCount)) >= 0) {
+                        if (compareKeyAndEntryIndex(tempKeyBuff, key, keyPrefix,
+                            getLastSortedEntryIndex(sortedCount)) >= 0) {
                             // compare with sorted count key, if inserting the "if-statement",
                             // the sorted count key is less or equal to the key just inserted
                             this.sortedCount.compareAndSet(sortedCount, (sortedCount + 1));
@@ -520,6 +736,7 @@ class Chunk<K, V> {
      *            the old and new value versions.
      * @return true if the value reference was CASed successfully.
      */
+    @Override
     ValueUtils.ValueResult linkValue(ThreadContext ctx) {
         if (entryOrderedSet.writeValueCommit(ctx) == ValueUtils.ValueResult.FALSE) {
             return ValueUtils.ValueResult.FALSE;
@@ -537,10 +754,6 @@ class Chunk<K, V> {
     /********************************************************************************************/
     /*------------------------- Methods that are used for rebalance  ---------------------------*/
 
-    int getMaxItems() {
-        return maxItems;
-    }
-
     /**
      * Engage the chunk to a rebalancer r.
      *
@@ -592,6 +805,47 @@ class Chunk<K, V> {
                     && (numOfItems * MAX_IDLE_ENTRIES_FACTOR) < numOfEntries);
     }
 
+    /**
+     * Checks whether most of the entries allocated in this chunk were deleted, so that a rebalance would compact
+     * them (and drop their keys). Unlike {@code shouldRebalance()}, which is checked upon insertions, it is checked
+     * upon removals, as a chunk whose keys were removed might not be inserted to anymore.
+     */
+    boolean shouldCompactDeleted() {
+        // perform actual check only in pre defined percentage of removals
+        if (ThreadLocalRandom.current().nextInt(100) > REBALANCE_PROB_PERC) {
+            return false;
+        }
+
+        // if another thread already runs rebalance -- skip it
+        if (!isEngaged(null)) {
+            return false;
+        }
+        // the deleted entries are not counted by getNumOfEntries()
+        int allocatedEntries = entryOrderedSet.getLastEntryIndex();
+        int numOfEntries = entryOrderedSet.getNumOfEntries();
+        return (allocatedEntries * MAX_IDLE_ENTRIES_FACTOR) > maxItems
+                && (numOfEntries * MAX_IDLE_ENTRIES_FACTOR) < allocatedEntries;
+    }
+
+    /**
+     * Appends an entry, whose key is greater than all the keys of this chunk, after the last entry.
+     * The appended entries are sorted, so they are subject to binary search.
+     * See {@code EntryOrderedSet.appendEntry(long, long)} for more information.
+     *
+     * @return false when this chunk is full
+     * <p>
+     * Note: NOT THREAD SAFE, only used to populate a chunk that is not yet reachable
+     */
+    final boolean appendSortedEntry(KeyBuffer key, ValueBuffer value) {
+        long keyPrefix = isKeyPrefixed ? comparator.getSerializedKeyPrefix(key) : 0;
+        if (!entryOrderedSet.appendEntry(key.getSlice().getReference(), keyPrefix, value.getSlice().getReference())) {
+            return false;
+        }
+        sortedCount.incrementAndGet();
+        statistics.updateInitialSortedCount(sortedCount.get());
+        return true;
+    }
+
     /**
      * Copies entries from srcChunk (starting srcEntryIdx) to this chunk,
      * performing entries sorting on the fly (delete entries that are removed as well).
@@ -638,6 +892,7 @@ class Chunk<K, V> {
         while (entryOrderedSet.copyEntry(tempValue, srcChunk.entryOrderedSet, curEntryIdx)) {
             // the source entry was either copied or disregarded as deleted
             // anyway move to next source entry (according to the linked list)
+            int copiedEntryIdx = curEntryIdx;
             curEntryIdx = srcChunk.entryOrderedSet.getNextEntryIndex(curEntryIdx);
 
             // if entry was ignored as deleted (no change in this EntryOrderedSet num of entries), continue
@@ -645,7 +900,10 @@ class Chunk<K, V> {
                 continue;
             }
 
-            // we indeed copied the entry, update the number of entries and the next pointer
+            // we indeed copied the entry, keep its reference bit, update the number of entries and the next pointer
+            if (accessBits != null) {
+                accessBits[thisNumOfEntries] = srcChunk.accessBits[copiedEntryIdx];
+            }
             thisNumOfEntries++;
             entryOrderedSet.setNextEntryIndex(thisNumOfEntries - 1, thisNumOfEntries);
 
@@ -683,40 +941,14 @@ class Chunk<K, V> {
     /********************************************************************************************/
     /*----------------------- Methods for managing the chunk's state  --------------------------*/
 
-    State state() {
-        return state.get();
-    }
-
     Chunk<K, V> creator() {
         return creator.get();
     }
 
-    private void setState(State state) {
-        this.state.set(state);
-    }
-
+    @Override
     void normalize() {
-        state.compareAndSet(State.INFANT, State.NORMAL);
         creator.set(null);
-        // using fence so other puts can continue working immediately on this chunk
-        UnsafeUtils.UNSAFE.storeFence();
-    }
-
-    /**
-     * freezes chunk so no more changes can be done to it (marks pending items as frozen)
-     */
-    void freeze() {
-        setState(State.FROZEN); // prevent new puts to this chunk
-        while (pendingOps.get() != 0) {
-            assert Boolean.TRUE;
-        }
-    }
-
-    /**
-     * try to change the state from frozen to released
-     */
-    void release() {
-        state.compareAndSet(State.FROZEN, State.RELEASED);
+        super.normalize();
     }
 
     /**
@@ -804,6 +1036,11 @@ class Chunk<K, V> {
 
         protected IterEndBoundCheck isEndBoundCheckNeeded = IterEndBoundCheck.NEVER_END_BOUNDARY_CHECK;
         protected int midIdx = sortedCount.get() / 2; // approximately index of the middle key in the chunk
+        protected final ValueBuffer tempValue; // used to check whether the values are expired
+
+        ChunkIter(ThreadContext ctx) {
+            this.tempValue = ctx.tempValue;
+        }
 
         abstract boolean hasNext();
 
@@ -857,6 +1094,7 @@ class Chunk<K, V> {
 
         AscendingIter(ThreadContext ctx, K to, boolean toInclusive,
             OakScopedReadBuffer nextChunkMinKey) {
+            super(ctx);
             next = entryOrderedSet.getHeadNextEntryIndex();
             next = advanceNextIndexNoBound(next, ctx);
             setIsEndBoundCheckNeeded(ctx, to, toInclusive, nextChunkMinKey);
@@ -864,6 +1102,7 @@ class Chunk<K, V> {
 
         AscendingIter(ThreadContext ctx, K from, boolean fromInclusive, K to, boolean toInclusive,
             OakScopedReadBuffer nextChunkMinKey) {
+            super(ctx);
             KeyBuffer tempKeyBuff = ctx.tempKey;
             next = binaryFind(tempKeyBuff, from);
 
@@ -881,7 +1120,7 @@ class Chunk<K, V> {
             }
             while (next != NONE_NEXT &&
                     (compare > 0 || (compare >= 0 && !fromInclusive) ||
-                        !entryOrderedSet.isValueRefValidAndNotDeleted(next))) {
+                        !entryOrderedSet.isValuePresent(tempValue, next))) {
                 next = entryOrderedSet.getNextEntryIndex(next);
                 if (next != NONE_NEXT) {
                     compare = compareKeyAndEntryIndex(tempKeyBuff, from, next);
@@ -898,7 +1137,7 @@ class Chunk<K, V> {
             // or if the caller will check the end-boundary (IterEndBoundCheck.ALWAYS_END_BOUNDARY_CHECK),
             // then advance next without additional checks
             if (isEndBoundCheckNeeded != IterEndBoundCheck.MID_END_BOUNDARY_CHECK) {
-                advanceNextIndexNoBound(next, ctx);
+                next = advanceNextIndexNoBound(next, ctx);
             } else {
                 next = advanceNextIndex(next, ctx);
             }
@@ -918,7 +1157,7 @@ class Chunk<K, V> {
 
         private int advanceNextIndex(final int entryIndex, ThreadContext ctx) {
             int next = entryIndex;
-            while (next != NONE_NEXT && !entryOrderedSet.isValueRefValidAndNotDeleted(next)) {
+            while (next != NONE_NEXT && !entryOrderedSet.isValuePresent(tempValue, next)) {
                 next = entryOrderedSet.getNextEntryIndex(next);
                 if (isEndBoundCheckNeeded == IterEndBoundCheck.MID_END_BOUNDARY_CHECK && next == midIdx) {
                     // update isEndBoundCheckNeeded to ALWAYS_END_BOUNDARY_CHECK
@@ -931,7 +1170,7 @@ class Chunk<K, V> {
 
         private int advanceNextIndexNoBound(final int entryIndex, ThreadContext ctx) {
             int next = entryIndex;
-            while (next != NONE_NEXT && !entryOrderedSet.isValueRefValidAndNotDeleted(next)) {
+            while (next != NONE_NEXT && !entryOrderedSet.isValuePresent(tempValue, next)) {
                 next = entryOrderedSet.getNextEntryIndex(next);
             }
             return next;
@@ -961,6 +1200,7 @@ class Chunk<K, V> {
         private final int skipEntriesForBiggerStack = Math.max(1, maxItems / 10); // 1 is the lowest possible value
 
         DescendingIter(ThreadContext ctx, K to, boolean toInclusive) {
+            super(ctx);
             KeyBuffer tempKeyBuff = ctx.tempKey;
             setIsEndBoundCheckNeeded(ctx, to, toInclusive, minKey);
             from = null;
@@ -973,6 +1213,7 @@ class Chunk<K, V> {
         }
 
         DescendingIter(ThreadContext ctx, K from, boolean fromInclusive, K to, boolean toInclusive) {
+            super(ctx);
             KeyBuffer tempKeyBuff = ctx.tempKey;
 
             this.from = from;
@@ -1007,7 +1248,7 @@ class Chunk<K, V> {
                 return;
             }
             next = stack.pop();
-            while (next != NONE_NEXT && !entryOrderedSet.isValueRefValidAndNotDeleted(next)) {
+            while (next != NONE_NEXT && !entryOrderedSet.isValuePresent(tempValue, next)) {
                 if (!stack.empty()) {
                     next = stack.pop();
                 } else {
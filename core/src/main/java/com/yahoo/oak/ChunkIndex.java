@@ -0,0 +1,501 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The index of the chunks of a map, ordered by their minimal keys.
+ * <p>
+ * The chunks are kept in a two-level sorted array: an array of leaves, each of which is a sorted array of
+ * (at most LEAF_CAPACITY) chunks. A lookup is a binary search over the first chunks of the leaves, followed by
+ * a binary search in the found leaf. Hence, it walks two contiguous arrays rather than the nodes of a skiplist,
+ * and it compares the keys directly with the minimal keys of the chunks, without a mixed-key comparator.
+ * <p>
+ * The lookups are lock-free. The updates are serialized, and each update copies only the leaf it modifies
+ * (and publishes the copy), unless leaves are split, merged or removed, in which case the array of the leaves
+ * is copied as well. Either way, an update is published by a single write, so a lookup finds either all the
+ * replaced chunks or all their replacements. The index is updated only by a rebalance, which copies whole
+ * chunks anyway, so an update is cheap in comparison.
+ * <p>
+ * The lookups depend on the type of the keys, so they are implemented by the specializations of the index:
+ * OfKeys, the index of an InternalOakMap, and OfLongs, the index of an InternalOakLongMap.
+ *
+ * @param <C> the type of the chunks
+ */
+abstract class ChunkIndex<C> {
+
+    static final int LEAF_CAPACITY = 128;
+
+    // the leaves are never empty, and each leaf is replaced (rather than modified) upon an update
+    private volatile AtomicReferenceArray<C[]> leaves = new AtomicReferenceArray<>(0);
+
+    /**
+     * @return a negative integer, zero, or a positive integer as the minimal key of the first chunk is less than,
+     * equal to, or greater than the minimal key of the second chunk
+     */
+    abstract int compareMinKeys(C c1, C c2);
+
+    abstract C[] newLeaf(int length);
+
+    // the current leaves, for the lookups of the specializations
+    AtomicReferenceArray<C[]> getLeaves() {
+        return leaves;
+    }
+
+    /*-------------- Lookups --------------*/
+
+    /**
+     * @return the chunk with the least minimal key, or null if the index is empty
+     */
+    C first() {
+        AtomicReferenceArray<C[]> ls = leaves;
+        return ls.length() == 0 ? null : ls.get(0)[0];
+    }
+
+    /**
+     * @return the chunk with the greatest minimal key, or null if the index is empty
+     */
+    C last() {
+        AtomicReferenceArray<C[]> ls = leaves;
+        if (ls.length() == 0) {
+            return null;
+        }
+        C[] leaf = ls.get(ls.length() - 1);
+        return leaf[leaf.length - 1];
+    }
+
+    /**
+     * @return the chunk that follows the chunk with the minimal key of the given chunk, or null if there is none
+     */
+    C next(C chunk) {
+        AtomicReferenceArray<C[]> ls = leaves;
+        if (ls.length() == 0) {
+            return null;
+        }
+        int leafIdx = findLeafIndex(ls, chunk);
+        C[] leaf = ls.get(leafIdx);
+        int idx = findIndex(leaf, chunk);
+        // the chunk that follows the floor of the given chunk, if the given chunk is not in the index
+        int nextIdx = idx >= 0 ? idx + 1 : -(idx + 1);
+        if (nextIdx < leaf.length) {
+            return leaf[nextIdx];
+        }
+        return leafIdx + 1 < ls.length() ? ls.get(leafIdx + 1)[0] : null;
+    }
+
+    /**
+     * @return the number of chunks in the index (not thread safe, used by tests)
+     */
+    int size() {
+        AtomicReferenceArray<C[]> ls = leaves;
+        int size = 0;
+        for (int i = 0; i < ls.length(); i++) {
+            size += ls.get(i).length;
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of leaves in the index (not thread safe, used by tests)
+     */
+    int numOfLeaves() {
+        return leaves.length();
+    }
+
+    /*-------------- Updates --------------*/
+
+    /**
+     * Adds the given chunk, or replaces the chunk that has the same minimal key.
+     */
+    synchronized void put(C chunk) {
+        insert(chunk, true);
+    }
+
+    /**
+     * Adds the given chunk, unless there is already a chunk with the same minimal key.
+     *
+     * @return true if the chunk was added
+     */
+    synchronized boolean putIfAbsent(C chunk) {
+        return insert(chunk, false);
+    }
+
+    /**
+     * Replaces the given chunk with the given replacement, which has the same minimal key.
+     *
+     * @return true if the chunk was replaced, or false if the chunk is not in the index
+     */
+    synchronized boolean replace(C oldChunk, C newChunk) {
+        AtomicReferenceArray<C[]> ls = leaves;
+        if (ls.length() == 0) {
+            return false;
+        }
+        int leafIdx = findLeafIndex(ls, oldChunk);
+        C[] leaf = ls.get(leafIdx);
+        int idx = findIndex(leaf, oldChunk);
+        if (idx < 0 || leaf[idx] != oldChunk) {
+            return false;
+        }
+        C[] newLeaf = leaf.clone();
+        newLeaf[idx] = newChunk;
+        ls.set(leafIdx, newLeaf);
+        return true;
+    }
+
+    /**
+     * Replaces consecutive chunks of the index with the given chunks, where the first replacement has the minimal
+     * key of the first replaced chunk, and the replacements cover the keys of the replaced chunks.
+     *
+     * @param first        the first replaced chunk, which must be in the index
+     * @param numOfChunks  the number of the replaced chunks (1 or 2, at most one of them in the following leaf)
+     * @param replacements the sorted replacements, at least one
+     */
+    synchronized void replace(C first, int numOfChunks, C[] replacements) {
+        assert replacements.length > 0 && compareMinKeys(replacements[0], first) == 0;
+        AtomicReferenceArray<C[]> ls = leaves;
+        int leafIdx = findLeafIndex(ls, first);
+        C[] leaf = ls.get(leafIdx);
+        int idx = findIndex(leaf, first);
+        assert idx >= 0 && leaf[idx] == first;
+
+        // the replaced chunks are in this leaf, unless the last one is the first chunk of the following leaf
+        int numOfLeaves = 1;
+        C[] merged = leaf;
+        if (idx + numOfChunks > leaf.length) {
+            C[] following = ls.get(leafIdx + 1);
+            merged = newLeaf(leaf.length + following.length);
+            System.arraycopy(leaf, 0, merged, 0, leaf.length);
+            System.arraycopy(following, 0, merged, leaf.length, following.length);
+            numOfLeaves = 2;
+        }
+        C[] chunks = newLeaf(merged.length - numOfChunks + replacements.length);
+        System.arraycopy(merged, 0, chunks, 0, idx);
+        System.arraycopy(replacements, 0, chunks, idx, replacements.length);
+        System.arraycopy(merged, idx + numOfChunks, chunks, idx + replacements.length,
+            merged.length - idx - numOfChunks);
+
+        if (numOfLeaves == 1 && chunks.length <= LEAF_CAPACITY) {
+            ls.set(leafIdx, chunks);
+            return;
+        }
+        // the leaves are replaced by (maybe more) leaves of equal sizes
+        int numOfNewLeaves = (chunks.length + LEAF_CAPACITY - 1) / LEAF_CAPACITY;
+        AtomicReferenceArray<C[]> newLeaves = new AtomicReferenceArray<>(ls.length() - numOfLeaves + numOfNewLeaves);
+        for (int i = 0; i < leafIdx; i++) {
+            newLeaves.set(i, ls.get(i));
+        }
+        for (int i = 0; i < numOfNewLeaves; i++) {
+            int from = (int) ((long) chunks.length * i / numOfNewLeaves);
+            int to = (int) ((long) chunks.length * (i + 1) / numOfNewLeaves);
+            C[] newLeaf = newLeaf(to - from);
+            System.arraycopy(chunks, from, newLeaf, 0, newLeaf.length);
+            newLeaves.set(leafIdx + i, newLeaf);
+        }
+        for (int i = leafIdx + numOfLeaves; i < ls.length(); i++) {
+            newLeaves.set(i - numOfLeaves + numOfNewLeaves, ls.get(i));
+        }
+        leaves = newLeaves;
+    }
+
+    /**
+     * Removes the given chunk (if it is in the index).
+     *
+     * @return true if the chunk was removed
+     */
+    synchronized boolean remove(C chunk) {
+        AtomicReferenceArray<C[]> ls = leaves;
+        if (ls.length() == 0) {
+            return false;
+        }
+        int leafIdx = findLeafIndex(ls, chunk);
+        C[] leaf = ls.get(leafIdx);
+        int idx = findIndex(leaf, chunk);
+        if (idx < 0 || leaf[idx] != chunk) {
+            return false;
+        }
+        if (leaf.length == 1) {
+            // the leaf is removed
+            AtomicReferenceArray<C[]> newLeaves = new AtomicReferenceArray<>(ls.length() - 1);
+            for (int i = 0; i < newLeaves.length(); i++) {
+                newLeaves.set(i, ls.get(i < leafIdx ? i : i + 1));
+            }
+            leaves = newLeaves;
+            return true;
+        }
+        C[] newLeaf = newLeaf(leaf.length - 1);
+        System.arraycopy(leaf, 0, newLeaf, 0, idx);
+        System.arraycopy(leaf, idx + 1, newLeaf, idx, leaf.length - idx - 1);
+        ls.set(leafIdx, newLeaf);
+        return true;
+    }
+
+    private boolean insert(C chunk, boolean isReplacing) {
+        AtomicReferenceArray<C[]> ls = leaves;
+        if (ls.length() == 0) {
+            C[] leaf = newLeaf(1);
+            leaf[0] = chunk;
+            AtomicReferenceArray<C[]> newLeaves = new AtomicReferenceArray<>(1);
+            newLeaves.set(0, leaf);
+            leaves = newLeaves;
+            return true;
+        }
+        int leafIdx = findLeafIndex(ls, chunk);
+        C[] leaf = ls.get(leafIdx);
+        int idx = findIndex(leaf, chunk);
+        if (idx >= 0) {
+            if (!isReplacing) {
+                return false;
+            }
+            C[] newLeaf = leaf.clone();
+            newLeaf[idx] = chunk;
+            ls.set(leafIdx, newLeaf);
+            return true;
+        }
+        idx = -(idx + 1);
+        C[] newLeaf = newLeaf(leaf.length + 1);
+        System.arraycopy(leaf, 0, newLeaf, 0, idx);
+        newLeaf[idx] = chunk;
+        System.arraycopy(leaf, idx, newLeaf, idx + 1, leaf.length - idx);
+        if (newLeaf.length <= LEAF_CAPACITY) {
+            ls.set(leafIdx, newLeaf);
+            return true;
+        }
+        // the leaf is split in two halves
+        int half = newLeaf.length / 2;
+        C[] left = newLeaf(half);
+        C[] right = newLeaf(newLeaf.length - half);
+        System.arraycopy(newLeaf, 0, left, 0, left.length);
+        System.arraycopy(newLeaf, half, right, 0, right.length);
+        AtomicReferenceArray<C[]> newLeaves = new AtomicReferenceArray<>(ls.length() + 1);
+        for (int i = 0; i < leafIdx; i++) {
+            newLeaves.set(i, ls.get(i));
+        }
+        newLeaves.set(leafIdx, left);
+        newLeaves.set(leafIdx + 1, right);
+        for (int i = leafIdx + 1; i < ls.length(); i++) {
+            newLeaves.set(i + 1, ls.get(i));
+        }
+        leaves = newLeaves;
+        return true;
+    }
+
+    // the index of the last leaf whose first chunk is not greater than the given chunk (or 0, if there is none)
+    private int findLeafIndex(AtomicReferenceArray<C[]> ls, C chunk) {
+        int found = 0;
+        int lo = 1;
+        int hi = ls.length() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareMinKeys(chunk, ls.get(mid)[0]) >= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    // the index of the chunk with the minimal key of the given chunk in the leaf,
+    // or (-(insertion point) - 1) if there is none
+    private int findIndex(C[] leaf, C chunk) {
+        int lo = 0;
+        int hi = leaf.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareMinKeys(chunk, leaf[mid]);
+            if (cmp > 0) {
+                lo = mid + 1;
+            } else if (cmp < 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * The index of the chunks of an InternalOakMap, whose minimal keys are serialized keys.
+     */
+    static final class OfKeys<K, V> extends ChunkIndex<Chunk<K, V>> {
+
+        private final OakComparator<K> comparator;
+
+        OfKeys(OakComparator<K> comparator) {
+            this.comparator = comparator;
+        }
+
+        @Override
+        int compareMinKeys(Chunk<K, V> c1, Chunk<K, V> c2) {
+            return comparator.compareSerializedKeys(c1.minKey, c2.minKey);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Chunk<K, V>[] newLeaf(int length) {
+            return (Chunk<K, V>[]) new Chunk[length];
+        }
+
+        /**
+         * @param key the key to look up
+         * @return the chunk with the greatest minimal key that is less than or equal to the given key,
+         * or null if there is no such chunk
+         */
+        Chunk<K, V> floor(K key) {
+            AtomicReferenceArray<Chunk<K, V>[]> ls = getLeaves();
+            // the found leaf is kept (rather than read again), as the leaf might be replaced meanwhile
+            Chunk<K, V>[] found = null;
+            int lo = 0;
+            int hi = ls.length() - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                Chunk<K, V>[] leaf = ls.get(mid);
+                if (comparator.compareKeyAndSerializedKey(key, leaf[0].minKey) >= 0) {
+                    found = leaf;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (found == null) {
+                return null;
+            }
+            // the first chunk of the leaf was already compared
+            int idx = 0;
+            lo = 1;
+            hi = found.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (comparator.compareKeyAndSerializedKey(key, found[mid].minKey) >= 0) {
+                    idx = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found[idx];
+        }
+
+        /**
+         * @param key the serialized key to look up
+         * @return the chunk with the greatest minimal key that is less than or equal to the given key,
+         * or null if there is no such chunk
+         */
+        Chunk<K, V> floor(OakScopedReadBuffer key) {
+            return find(key, true);
+        }
+
+        /**
+         * @param key the serialized key to look up
+         * @return the chunk with the greatest minimal key that is strictly less than the given key,
+         * or null if there is no such chunk
+         */
+        Chunk<K, V> lower(OakScopedReadBuffer key) {
+            return find(key, false);
+        }
+
+        private Chunk<K, V> find(OakScopedReadBuffer key, boolean inclusive) {
+            AtomicReferenceArray<Chunk<K, V>[]> ls = getLeaves();
+            // the found leaf is kept (rather than read again), as the leaf might be replaced meanwhile
+            Chunk<K, V>[] found = null;
+            int lo = 0;
+            int hi = ls.length() - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                Chunk<K, V>[] leaf = ls.get(mid);
+                if (isAfter(key, leaf[0], inclusive)) {
+                    found = leaf;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (found == null) {
+                return null;
+            }
+            // the first chunk of the leaf was already compared
+            int idx = 0;
+            lo = 1;
+            hi = found.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (isAfter(key, found[mid], inclusive)) {
+                    idx = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found[idx];
+        }
+
+        // whether the given key is greater than the minimal key of the given chunk (or equal to it, if inclusive)
+        private boolean isAfter(OakScopedReadBuffer key, Chunk<K, V> c, boolean inclusive) {
+            int cmp = comparator.compareSerializedKeys(key, c.minKey);
+            return cmp > 0 || (inclusive && cmp == 0);
+        }
+    }
+
+    /**
+     * The index of the chunks of an InternalOakLongMap, whose first minimal key is Long.MIN_VALUE, so the index
+     * is never empty and each key has a floor chunk.
+     */
+    static final class OfLongs extends ChunkIndex<LongChunk> {
+
+        OfLongs(LongChunk first) {
+            assert first.minKey == Long.MIN_VALUE;
+            put(first);
+        }
+
+        @Override
+        int compareMinKeys(LongChunk c1, LongChunk c2) {
+            return Long.compare(c1.minKey, c2.minKey);
+        }
+
+        @Override
+        LongChunk[] newLeaf(int length) {
+            return new LongChunk[length];
+        }
+
+        /**
+         * @return the chunk with the greatest minimal key that is less than or equal to the given key
+         */
+        LongChunk floor(long key) {
+            AtomicReferenceArray<LongChunk[]> ls = getLeaves();
+            // the first minimal key of the first leaf is Long.MIN_VALUE, so the first leaf is the default
+            int leafIdx = 0;
+            int lo = 1;
+            int hi = ls.length() - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (key >= ls.get(mid)[0].minKey) {
+                    leafIdx = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            // a leaf that replaces the found leaf meanwhile has the same first minimal key
+            LongChunk[] found = ls.get(leafIdx);
+            int idx = 0;
+            lo = 1;
+            hi = found.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (key >= found[mid].minKey) {
+                    idx = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found[idx];
+        }
+    }
+}
@@ -121,6 +121,12 @@ public class EntryArray<K, V> {
         * */
         INSERT_NOT_FINALIZED,
 
+        /*
+         * There is an entry with the given key and its value is expired, but it is not yet marked as deleted.
+         * The value needs to be deleted (under its write lock) before the entry is reused.
+         */
+        EXPIRED,
+
         /*
          * There is any entry with the given key and its is valid.
          * valueSlice is pointing to the location that is referenced by valueReference.
@@ -200,6 +206,83 @@ public class EntryArray<K, V> {
         return getEntryFieldLong(ei, KEY_REF_OFFSET);
     }
 
+    /**
+     * Reads the valid key references of all the entries (including the deleted ones) into the given array.
+     *
+     * @param keyReferences the array to write the key references to
+     * @param offset        the index in keyReferences from which the key references are written
+     * @return the index in keyReferences following the last written key reference
+     */
+    int readKeyReferences(long[] keyReferences, int offset) {
+        int idx = offset;
+        for (int ei = 0; ei < entriesCapacity; ei++) {
+            long reference = getKeyReference(ei);
+            if (keysMemoryManager.isReferenceValid(reference)) {
+                keyReferences[idx++] = reference;
+            }
+        }
+        return idx;
+    }
+
+    /**
+     * Reads the value references of all the entries, which are valid and not deleted, into the given array.
+     *
+     * @param valueReferences the array to write the value references to
+     * @param offset          the index in valueReferences from which the value references are written
+     * @return the index in valueReferences following the last written value reference
+     */
+    int readValueReferences(long[] valueReferences, int offset) {
+        int idx = offset;
+        for (int ei = 0; ei < entriesCapacity; ei++) {
+            long reference = getValueReference(ei);
+            if (valuesMemoryManager.isReferenceValidAndNotDeleted(reference)) {
+                valueReferences[idx++] = reference;
+            }
+        }
+        return idx;
+    }
+
+    /**
+     * Relocates the keys of all the entries (including the deleted ones) that reside in evacuated blocks.
+     * See {@code relocateKey(int, KeyBuffer, KeyBuffer)}.
+     */
+    void relocateKeys(KeyBuffer oldKey, KeyBuffer newKey) {
+        for (int ei = 0; ei < entriesCapacity; ei++) {
+            relocateKey(ei, oldKey, newKey);
+        }
+    }
+
+    /**
+     * Relocates the key of the entry (given by entry index "ei") if it resides in a block that is evacuated by
+     * the allocator: the key is duplicated, the entry is CASed to reference the duplicate and the old key is
+     * released. Must be invoked only if the keys memory manager defers the release of the keys (the old key
+     * might be still read by concurrent operations), and only while the chunk is published, so the entry is
+     * not copied by a concurrent rebalance.
+     *
+     * @param ei     the entry index of the key to relocate
+     * @param oldKey a buffer to read the key of the entry into
+     * @param newKey a buffer to allocate the duplicate with
+     */
+    void relocateKey(int ei, KeyBuffer oldKey, KeyBuffer newKey) {
+        long reference = getKeyReference(ei);
+        if (!keysMemoryManager.isReferenceValidAndNotDeleted(reference)
+            || !oldKey.getSlice().decodeReference(reference)
+            || !keysMemoryManager.getAllocator().isEvacuated(oldKey.getSlice())) {
+            return;
+        }
+        final int keySize = oldKey.capacity();
+        newKey.getSlice().allocate(keySize, false);
+        UnsafeUtils.UNSAFE.copyMemory(oldKey.getAddress(), newKey.getAddress(), keySize);
+        if (casKeyReference(ei, reference, newKey.getSlice().getReference())) {
+            oldKey.getSlice().release();
+            oldKey.invalidate();
+        } else {
+            // the entry was updated meanwhile, the duplicate was never reachable
+            newKey.getSlice().release();
+            newKey.invalidate();
+        }
+    }
+
     /**
      * Atomically writes the key reference to the entry (given by entry index "ei")
      */
@@ -258,6 +341,21 @@ public class EntryArray<K, V> {
         return valuesMemoryManager.isReferenceValidAndNotDeleted(valRef);
     }
 
+    /*
+     * isValuePresent is the same as isValueRefValidAndNotDeleted, and it also checks that the value is not
+     * expired (if the values can expire), which requires reading the off-heap header via the given buffer.
+     * No off-heap value deletion mark check.
+     * */
+    boolean isValuePresent(ValueBuffer tempValue, int ei) {
+        if (!isValueRefValidAndNotDeleted(ei)) {
+            return false;
+        }
+        if (!valuesMemoryManager.isExpirationTracked()) {
+            return true;
+        }
+        return !readValue(tempValue, ei) || !isExpired(tempValue.getSlice());
+    }
+
     /**
      * Checks if a value of an entry is deleted (checks on-heap and off-heap).
      *
@@ -397,7 +495,19 @@ public class EntryArray<K, V> {
 
         // If result == TRUE, there is a deleted value associated with the given key
         // If result == RETRY, we ignore it, since it will be discovered later down the line as well
-        return (result == ValueUtils.ValueResult.TRUE) ? EntryState.DELETED_NOT_FINALIZED : EntryState.VALID;
+        if (result == ValueUtils.ValueResult.TRUE) {
+            return EntryState.DELETED_NOT_FINALIZED;
+        }
+        return isExpired(value.getSlice()) ? EntryState.EXPIRED : EntryState.VALID;
+    }
+
+    /**
+     * @param slice the slice of a value
+     * @return true if the value is expired (the expiration time is read without locking the value)
+     */
+    static boolean isExpired(Slice slice) {
+        long expiration = slice.getExpiration();
+        return expiration != Slice.NO_EXPIRATION && expiration <= System.currentTimeMillis();
     }
 
     /**
@@ -432,7 +542,7 @@ public class EntryArray<K, V> {
         ctx.newValue.getSlice().allocate(valueDataSize, writeForMove);
         ctx.isNewValueForMove = writeForMove;
 
-        ScopedWriteBuffer.serialize(ctx.newValue.getSlice(), value, valueSerializer);
+        ScopedWriteBuffer.serialize(ctx.valueWriteBuffer, ctx.newValue.getSlice(), value, valueSerializer);
     }
 
     /**
@@ -61,9 +61,10 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
     // Additional field to keep key hash + its update counter (additional to the key and value reference fields)
     // # of additional primitive fields in each item of entries array
     private static final int ADDITIONAL_FIELDS = 1;
+    private static final long INT_MASK = 0xFFFFFFFFL;
 
     // number of entries candidates to try in case of collision
-    private AtomicInteger collisionChainLength = new AtomicInteger(DEFAULT_COLLISION_CHAIN_LENGTH);
+    private final AtomicInteger collisionChainLength;
 
     private final OakComparator<K> comparator;
 
@@ -82,16 +83,27 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
      */
     EntryHashSet(MemoryManager vMM, MemoryManager kMM, int entriesCapacity, OakSerializer<K> keySerializer,
         OakSerializer<V> valueSerializer, OakComparator<K> comparator) {
+        this(vMM, kMM, entriesCapacity, keySerializer, valueSerializer, comparator, DEFAULT_COLLISION_CHAIN_LENGTH);
+    }
+
+    /**
+     * Create a new EntryHashSet, with the given initial number of entries candidates to try in case of collision.
+     * A longer chain allows a higher load of the entries array before an insertion fails (requiring a re-balance).
+     */
+    EntryHashSet(MemoryManager vMM, MemoryManager kMM, int entriesCapacity, OakSerializer<K> keySerializer,
+        OakSerializer<V> valueSerializer, OakComparator<K> comparator, int collisionChainLength) {
         super(vMM, kMM, ADDITIONAL_FIELDS, entriesCapacity, keySerializer, valueSerializer);
         this.comparator = comparator;
+        this.collisionChainLength = new AtomicInteger(collisionChainLength);
     }
 
+
     /*---------- Private methods for managing key hash entry field -------------*/
     /**
      * getKeyHash returns the key hash of the entry given by entry index "ei"
      * (without update counter!).
      */
-    private int getKeyHash(int ei) {
+    int getKeyHash(int ei) {
         assert isIndexInBound(ei);
         // extract the hash number (first) from the updates counter (second)
         return hashCodec.getFirst(getKeyHashAndUpdateCounter(ei));
@@ -113,15 +125,6 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
         return (getKeyHash(ei) != INVALID_KEY_HASH);
     }
 
-    /**
-     * setKeyHashAndUpdateCounter sets the key hash (of the entry given by entry index "ei")
-     * to be the "hash". Long parameter "hash" must include the update counter!
-     * To be used while rebalance, during normal path only CAS is used.
-     */
-    private void setKeyHashAndUpdateCounter(int ei, long hash) {
-        setEntryFieldLong(ei, HASH_FIELD_OFFSET, hash);
-    }
-
     /**
      * casKeyHashAndUpdateCounter CAS the key hash including the update counter
      * (of the entry given by entry index "ei") to be
@@ -130,8 +133,9 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
      */
     private boolean casKeyHashAndUpdateCounter(int ei, long oldKeyHash, int newKeyHash) {
         // extract the updates counter from the old hash and increase it and to add to the new hash
+        // both parts are masked, as the codec doesn't accept (sign extended) negative integers
         int updCnt = hashCodec.getSecond(oldKeyHash);
-        long newFullHashField = hashCodec.encode(newKeyHash, updCnt++);
+        long newFullHashField = hashCodec.encode(newKeyHash & INT_MASK, (updCnt + 1) & INT_MASK);
         return casEntryFieldLong(ei, HASH_FIELD_OFFSET, oldKeyHash, newFullHashField);
     }
 
@@ -161,55 +165,61 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
         return (0 == comparator.compareKeyAndSerializedKey(key, tempKeyBuff));
     }
 
+    /**
+     * Same as {@code isKeyAndEntryKeyEqual()}, but compares a serialized key with the entry's key,
+     * so no key needs to be deserialized.
+     *
+     * @param tempKeyBuff   a reusable buffer object for internal temporary usage
+     *                      As a side effect, this buffer will contain the compared
+     *                      serialized key.
+     * @param serializedKey the serialized key to compare, must be a different buffer than tempKeyBuff
+     * @param idx           the entry index to compare with
+     * @param keyHash       the hash of the serialized key without update counter
+     * @return true - the keys are equal, false - otherwise
+     */
+    private boolean isSerializedKeyAndEntryKeyEqual(KeyBuffer tempKeyBuff, KeyBuffer serializedKey,
+        int idx, int keyHash) {
+        // check the key's hash comparison first
+        int entryKeyHash = getKeyHash(idx);
+        if (entryKeyHash != INVALID_KEY_HASH && entryKeyHash != keyHash) {
+            return false;
+        }
+        return (0 == comparator.compareSerializedKeys(serializedKey, tempKeyBuff));
+    }
+
     /* Check the state of the entry in `idx`
     ** Assume upon invocation that ctx.value, ctx.key, and ctx.keyHash are invalidated
     ** At the end:
     ** If output is  EntryState.UNKNOWN --> ctx.key, ctx.value, ctx.keyHash remain untouched
     ** If output is  EntryState.DELETED_NOT_FINALIZED/DELETED/INSERT_NOT_FINALIZED/VALID
     ** --> ctx.key, ctx.value, ctx.keyHash keep the data of the entry's key, value, and key hash
+    **
+    ** Once a key is assigned to an entry, the entry's key is not changed (until rebalance).
+    ** Therefore, the state is defined by the value:
+    ** invalid value reference --> INSERT_NOT_FINALIZED (the value was never linked yet),
+    ** deleted value reference --> DELETED, the entry can be reused only by the same key,
+    ** value marked deleted off-heap --> DELETED_NOT_FINALIZED, otherwise --> VALID
      */
-    private EntryState getEntryState(ThreadContext ctx, int idx, K key, int keyHash) {
+    private EntryState getEntryState(ThreadContext ctx, int idx) {
 
         if (getKeyReference(idx) == keysMemoryManager.getInvalidReference()) {
             return EntryState.UNKNOWN;
         }
         ctx.keyHash = getKeyHashAndUpdateCounter(idx);
-        // entry was used already, is value deleted?
-        // the linearization point of deletion is marking the value off-heap
-        // isValueDeleted checks the reference first (for being invalid or deleted) than the off-heap header
-        if (isValueDeleted(ctx.value, idx)) { // value is read to the ctx.value as a side effect
-            // for later progressing with deleted entry read current key slice
-            // (value is read during deleted key check, unless deleted)
-            if (readKey(ctx.key, idx)) {
-                // key is not deleted: either this deletion is not yet finished,
-                // or this is a new assignment on top of deleted entry
-                // Check the key hash:
-                // if invalid --> this is INSERT_NOT_FINALIZED if valid --> DELETED_NOT_FINALIZED
-                if (isKeyHashValid(idx)) {
-                    return EntryState.DELETED_NOT_FINALIZED;
-                }
-            } else {
-                // key is deleted, check that full hash index is invalidated,
-                // because it is the last stage of deletion
-                return isKeyHashValid(idx) ? EntryState.DELETED_NOT_FINALIZED : EntryState.DELETED;
-            }
-            // not finalized insert is progressing out of this if
-        }
-
-        // read current key slice (value is read during delete check)
-        readKey(ctx.key, ctx.entryIndex);
-
-        // value is either invalid or valid (but not deleted), can be in progress of being inserted
-        if (isValueRefValidAndNotDeleted(idx)) {
-            return EntryState.VALID;
+        readKey(ctx.key, idx);
+
+        // the linearization point of deletion is marking the value off-heap,
+        // check the reference first (for being invalid or deleted) and only then the off-heap header
+        if (!readValue(ctx.value, idx)) {
+            // deleted value reference is still kept in ctx.value, invalid reference invalidates ctx.value
+            return valuesMemoryManager.isReferenceDeleted(ctx.value.getSlice().getReference())
+                ? EntryState.DELETED : EntryState.INSERT_NOT_FINALIZED;
         }
 
-        if (isKeyAndEntryKeyEqual(ctx.key, key, idx, keyHash)) {
-            if (!valuesMemoryManager.isReferenceValid(ctx.value.getSlice().getReference())) {
-                return EntryState.INSERT_NOT_FINALIZED;
-            }
-        }
-        return EntryState.VALID;
+        // value reference is valid, just need to check if off-heap is marked deleted
+        // If result == RETRY, we ignore it, since it will be discovered later down the line as well
+        return (ctx.value.getSlice().isDeleted() == ValueUtils.ValueResult.TRUE)
+            ? EntryState.DELETED_NOT_FINALIZED : EntryState.VALID;
     }
 
     @VisibleForTesting
@@ -221,6 +231,8 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
      * lookUp checks whether key exists in the given idx or after.
      * Given initial index for the key, it checks entries[idx] first and continues
      * to the next entries up to 'collisionChainLength', if key wasn't previously found.
+     * The search stops on the first entry that was never assigned, as keys are always
+     * inserted to the first vacant entry of the chain.
      * If true is returned, ctx.entryIndex keeps the index of the found entry
      * and ctx.entryState keeps the state.
      *
@@ -229,9 +241,29 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
      * @param idx idx=keyHash||bit_size_mask
      * @param keyHash keyHash=hashFunction(key)
      * @return true only if the key is found (ctx.entryState keeps more details).
-     *         Otherwise (false), key wasn't found, ctx with it's buffers is invalidated
+     *         Otherwise (false), key wasn't found, ctx with it's buffers is invalidated,
+     *         unless the key is found in DELETED_NOT_FINALIZED state, so the deletion can be finished
      */
     boolean lookUp(ThreadContext ctx, K key, int idx, int keyHash) {
+        return lookUp(ctx, key, null, idx, keyHash);
+    }
+
+    /**
+     * Same as {@code lookUp(ctx, key, idx, keyHash)}, but the key to look up is serialized,
+     * so no key needs to be deserialized.
+     *
+     * @param ctx           the context that will follow the operation following this key allocation
+     * @param serializedKey the serialized key to look up, must be a different buffer than ctx.key
+     * @param idx           idx=keyHash||bit_size_mask
+     * @param keyHash       keyHash=hashFunction(key)
+     * @return true only if the key is found (ctx.entryState keeps more details).
+     */
+    boolean lookUp(ThreadContext ctx, KeyBuffer serializedKey, int idx, int keyHash) {
+        return lookUp(ctx, null, serializedKey, idx, keyHash);
+    }
+
+    // exactly one of the key or the serializedKey is expected to be provided (not null)
+    private boolean lookUp(ThreadContext ctx, K key, KeyBuffer serializedKey, int idx, int keyHash) {
         // start from given hash index
         // and check the next `collisionChainLength` indexes if previous index is occupied
         int collisionChainLengthLocal = collisionChainLength.get();
@@ -239,20 +271,28 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
         // as far as we didn't check more than `collisionChainLength` indexes
         for (int i = 0; i < collisionChainLengthLocal; i++) {
             ctx.entryIndex = (idx + i) % entriesCapacity; // check the entry candidate, cyclic increase
-            // entry's key is read into ctx.tempKey as a side effect
-            ctx.entryState = getEntryState(ctx, ctx.entryIndex, key, keyHash);
+            // entry's key and value are read into ctx.key and ctx.value as a side effect
+            ctx.entryState = getEntryState(ctx, ctx.entryIndex);
 
-            // value and key slices are read during getEntryState() unless the entry is
-            // fully deleted (EntryState.DELETED) in this case we cannot compare the key (!)
-            // also deletion linearization point is checked during getEntryState()
-            if (ctx.entryState != EntryState.DELETED &&
-                isKeyAndEntryKeyEqual(ctx.key, key, ctx.entryIndex, keyHash)) {
+            if (ctx.entryState == EntryState.UNKNOWN) {
+                // vacant entry ends the chain, the key cannot be found further
+                break;
+            }
+            boolean isKeyEqual = (key != null)
+                ? isKeyAndEntryKeyEqual(ctx.key, key, ctx.entryIndex, keyHash)
+                : isSerializedKeyAndEntryKeyEqual(ctx.key, serializedKey, ctx.entryIndex, keyHash);
+            if (isKeyEqual) {
                 // EntryState.VALID --> the key is found
-                // DELETED_NOT_FINALIZED/UNKNOWN --> key doesn't exists
-                //                      and there is no need to continue to check next entries
-                // INSERT_NOT_FINALIZED --> before linearization point, key doesn't exist
-                // when more than unique keys can be concurrently inserted, need to check further!
-                return ctx.entryState == EntryState.VALID;
+                // DELETED_NOT_FINALIZED --> key doesn't exist, the context is kept to finish the deletion
+                // INSERT_NOT_FINALIZED/DELETED --> before (or after) linearization point, key doesn't exist
+                // the key can be assigned to one entry only, there is no need to continue to check next entries
+                if (ctx.entryState == EntryState.VALID) {
+                    return true;
+                }
+                if (ctx.entryState == EntryState.DELETED_NOT_FINALIZED) {
+                    return false;
+                }
+                break;
             }
             // not in this entry, move to next
         }
@@ -263,7 +303,9 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
     /**
      * findSuitableEntryForInsert finds the entry where given hey is going to be inserted.
      * Given initial index for the key, it checks entries[idx] first and continues
-     * to the next entries up to 'collisionChainLength', if the previous entries are all occupied.
+     * to the next entries up to 'collisionChainLength', if the previous entries are all occupied
+     * by other keys. If our key is already assigned to one of the entries, this entry is chosen,
+     * otherwise the first vacant (never assigned) entry is chosen.
      * If true is returned, ctx.entryIndex keeps the index of the chosen entry
      * and ctx.entryState keeps the state.
      *
@@ -273,82 +315,51 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
      * @param keyHash keyHash=hashFunction(key)
      * @return true only if the index is found (ctx.entryState keeps more details).
      *         Otherwise (false), re-balance is required
-     *         ctx.entryIndex keeps the index of the chosen entry & ctx.entryState keeps the state
      */
     private boolean findSuitableEntryForInsert(ThreadContext ctx, K key, int idx, int keyHash) {
         // start from given hash index
         // and check the next `collisionChainLength` indexes if previous index is occupied
         int collisionChainLengthLocal = collisionChainLength.get();
-        boolean entryFound = false;
 
         // as far as we didn't check more than `collisionChainLength` indexes
         for (int i = 0; i < collisionChainLengthLocal; i++) {
             ctx.invalidate();
             ctx.entryIndex = (idx + i) % entriesCapacity; // check the entry candidate, cyclic increase
-            // entry's key is read into ctx.tempKey as a side effect
-            ctx.entryState = getEntryState(ctx, ctx.entryIndex, key, keyHash);
-
-            // EntryState.VALID --> entry is occupied, continue to next possible location
-            // EntryState.DELETED_NOT_FINALIZED --> finish the deletion, then try to insert here
-            // EntryState.UNKNOWN, EntryState.DELETED --> entry is vacant, try to insert the key here
-            // EntryState.INSERT_NOT_FINALIZED --> you can compete to associate value with the same key
-            switch (ctx.entryState) {
-                case VALID:
-                    if (isKeyAndEntryKeyEqual(ctx.key, key, idx, keyHash)) {
-                        // found valid entry has our key, the inserted key must be unique
-                        // the entry state will indicate that insert didn't happen
-                        return true;
-                    }
-                    continue;
-                case DELETED_NOT_FINALIZED:
-                    deleteValueFinish(ctx); //TODO: invocation must be within chunk publishing scope!
-                    // deleteValueFinish() also changes the entry state to DELETED
-                    // deliberate break through
-                case DELETED: // deliberate break through
-                case UNKNOWN:
-                    // deliberate break through
-                case INSERT_NOT_FINALIZED: // continue allocating value without allocating a key
-                    entryFound = true;
-                    break;
-                default:
-                    // For debugging the case new state is added and this code is not updated
-                    assert false;
+            // entry's key and value are read into ctx.key and ctx.value as a side effect
+            ctx.entryState = getEntryState(ctx, ctx.entryIndex);
+
+            // EntryState.UNKNOWN --> entry is vacant, try to insert the key here
+            // Otherwise, if the entry has our key:
+            // EntryState.VALID --> the inserted key must be unique, the entry state will indicate
+            //                      that insert didn't happen
+            // EntryState.DELETED_NOT_FINALIZED --> the deletion needs to be finished before the insert
+            // EntryState.DELETED, EntryState.INSERT_NOT_FINALIZED --> compete to associate value with our key
+            if (ctx.entryState == EntryState.UNKNOWN ||
+                isKeyAndEntryKeyEqual(ctx.key, key, ctx.entryIndex, keyHash)) {
+                return true;
             }
-            break;
+            // entry is occupied by another key, continue to next possible location
         }
+        ctx.invalidate();
 
-        if (!entryFound) {
-            boolean differentKeyHashes = false;
-            // we checked allowed number of locations and all were occupied
-            // if all occupied entries have same key hash (rebalance won't help)
-            //           --> increase collisionChainLength
-            // otherwise --> rebalance
-            int currentLocation = idx;
-            while (collisionChainLengthLocal > 1) {
-                if (getKeyHash(currentLocation) !=
-                    getKeyHash(currentLocation + 1)) {
-                    differentKeyHashes = true;
-                    break;
-                }
-                currentLocation++;
-                collisionChainLengthLocal--;
-            }
-            if (differentKeyHashes) {
+        // we checked allowed number of locations and all were occupied
+        // if all occupied entries have same key hash (rebalance won't help)
+        //           --> increase collisionChainLength
+        // otherwise --> rebalance
+        if (collisionChainLengthLocal >= entriesCapacity) {
+            return false;
+        }
+        for (int i = 0; i < collisionChainLengthLocal - 1; i++) {
+            if (getKeyHash((idx + i) % entriesCapacity) != getKeyHash((idx + i + 1) % entriesCapacity)) {
                 return false; // do rebalance
-            } else {
-                if (collisionChainLength.get() > (DEFAULT_COLLISION_CHAIN_LENGTH * 10)) {
-                    System.out.println("WARNING!: Too much collisions for the hash function");
-                }
-                collisionChainLength.incrementAndGet();
-                // restart recursively (hopefully won't happen too much)
-                return findSuitableEntryForInsert(ctx, key, idx, keyHash);
             }
         }
-
-        // entry state can only be DELETED or UNKNOWN or INSERT_NOT_FINALIZED
-        assert (ctx.entryState == EntryState.DELETED || ctx.entryState == EntryState.UNKNOWN ||
-            ctx.entryState == EntryState.INSERT_NOT_FINALIZED);
-        return true;
+        if (collisionChainLengthLocal > (DEFAULT_COLLISION_CHAIN_LENGTH * 10)) {
+            System.out.println("WARNING!: Too much collisions for the hash function");
+        }
+        collisionChainLength.compareAndSet(collisionChainLengthLocal, collisionChainLengthLocal + 1);
+        // restart recursively (hopefully won't happen too much)
+        return findSuitableEntryForInsert(ctx, key, idx, keyHash);
     }
 
     /********************************************************************************************/
@@ -359,15 +370,15 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
      * and idx=keyHash||bit_size_mask. An entry is always associated with a key,
      * therefore the key is written to off-heap and associated with the entry simultaneously.
      * The value of the new entry is set to NULL (INVALID_VALUE_REFERENCE)
-     * or can be some deleted value
      *
-     * Upon successful finishing of allocateEntryAndWriteKey():
+     * Upon successful finishing of allocateKey():
      * ctx.entryIndex keeps the index of the chosen entry
-     * Reference of ctx.key is the reference pointing to the new key
-     * Reference of ctx.value is either invalid or deleted reference to the previous entry's value
+     * Reference of ctx.key is the reference pointing to the key
+     * Reference of ctx.value is either invalid or deleted reference to the previous value of the same key
      *
      * The allocation won't happen for an existing key, although TRUE will be returned
-     * (because no re-balance required). In this case the entry state should be EntryState.VALID.
+     * (because no re-balance required). In this case the entry state should be EntryState.VALID,
+     * or EntryState.DELETED_NOT_FINALIZED if the deletion of the existing key needs to be finished.
      * The ctx.key will be populated to point to the found key
      *
      * @param ctx the context that will follow the operation following this key allocation
@@ -390,44 +401,35 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
             return false;
         }
 
-        if (ctx.entryState == EntryState.VALID || ctx.entryState == EntryState.INSERT_NOT_FINALIZED) {
+        if (ctx.entryState != EntryState.UNKNOWN) {
             // our key exists, either in valid entry, or the key is already set in the relevant entry,
-            // but value is not yet set. According to the entry
+            // but value is not yet set (or deleted). According to the entry
             // state either fail insertion or continue and compete on assigning the value
             return true;
         }
 
-        // Here the chosen entry is either uninitialized or fully deleted.
-        // Before writing a new key and to the ctx.key copy the ctx.key to ctx.tempKey
-        ctx.tempKey.copyFrom(ctx.key);
-        ctx.key.invalidate();
-
+        // Here the chosen entry was never assigned.
         // Write given key object "key" (to off-heap) as a serialized key, referenced by entry
         // that was set in this context ({@code ctx}).
         writeKey(key, ctx.key);
 
         // Try to assign our key
-        if (casKeyReference(ctx.entryIndex, ctx.tempKey.getSlice().getReference(), /* old reference */
+        if (casKeyReference(ctx.entryIndex, keysMemoryManager.getInvalidReference(), /* old reference */
             ctx.key.getSlice().getReference() /* new reference */ )) {
-
+            numOfEntries.getAndIncrement();
             // key reference CASed (only one should succeed) write the entry's key hash,
             // because it is used for keys comparison (invalid key hash is not used for comparison)
-            if ( casKeyHashAndUpdateCounter(ctx.entryIndex, ctx.keyHash, keyHash) ) {
-                return true;
-            } else {
-                // someone else proceeded with the same key if key hash is deleted we are totally late
-                // check everything again
-                return allocateKey(ctx, key, idx, keyHash);
-            }
-        }
-        // CAS failed, does it failed because the same key as our was assigned?
-        if (isKeyAndEntryKeyEqual(ctx.tempKey, key, idx, keyHash)) {
-            return true; // continue to compete on assigning the value
+            long oldKeyHash = getKeyHashAndUpdateCounter(ctx.entryIndex);
+            boolean isKeyHashSet = casKeyHashAndUpdateCounter(ctx.entryIndex, oldKeyHash, keyHash);
+            assert isKeyHashSet; // only the thread that assigned the key updates the key hash
+            ctx.keyHash = getKeyHashAndUpdateCounter(ctx.entryIndex);
+            return true;
         }
-        // CAS failed as other key was assigned restart and look for the entry again
-        return allocateKey(ctx, key, idx, keyHash);
 
-        // FOR NOW WE ASSUME NO SAME KEY IS INSERTED SIMULTANEOUSLY, SO CHECK IS OMITTED HERE
+        // CAS failed as other key (or the same key) was assigned, our key can not be reached by any other thread.
+        // Release it, restart and look for the entry again
+        releaseKey(ctx);
+        return allocateKey(ctx, key, idx, keyHash);
     }
 
     /**
@@ -435,12 +437,11 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
      * The linearization point is (1) marking the delete bit in the value's off-heap header,
      * this must be done before invoking deleteValueFinish.
      *
-     * The rest is: (2) marking the delete bit in the key's off-heap header;
-     * (3) marking the value reference as deleted
-     * (4) marking the key reference as deleted;
-     * (5) invalidate the key hash as well
+     * The rest is (2) marking the value reference as deleted.
+     * The key remains assigned to the entry, so the entry can be reused only for the same key
+     * and the key stays unique in the EntryHashSet. Such deleted entries are disregarded upon rebalance.
      *
-     * All the actions are made via CAS and thus idempotent. All the expected CAS values are taken
+     * The action is made via CAS and thus idempotent. The expected CAS value is taken
      * from ctx that must be previously updated (when the entry was first found). The return value
      * is true if the delete help was actually needed, or false otherwise.
      *
@@ -454,24 +455,14 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
      *  references as deleted is unique and so the slice releases
      */
     boolean deleteValueFinish(ThreadContext ctx) {
-        if (valuesMemoryManager.isReferenceDeleted(ctx.value.getSlice().getReference())
-            && getKeyHash(ctx.entryIndex) == INVALID_KEY_HASH) {
-            // entry is already deleted
-            // value reference is marked deleted and key hash is invalid, the last stages are done
-            ctx.entryState = EntryState.DELETED;
+        // Value's reference codec prepares the reference to be used after value is deleted
+        long expectedReference = ctx.value.getSlice().getReference();
+        if (ctx.entryState != EntryState.DELETED_NOT_FINALIZED
+            || !valuesMemoryManager.isReferenceValidAndNotDeleted(expectedReference)) {
+            // entry is already deleted, or there is nothing to finish
             return false;
         }
 
-        assert ctx.entryState == EntryState.DELETED_NOT_FINALIZED;
-
-        // marking the delete bit in the key's off-heap header (only one true setter gets result TRUE)
-        // The marking happens only when no lock is taken, otherwise busy waits
-        // if the version is already different result is RETRY, if already deleted - FALSE
-        // we continue anyway, therefore disregard the logicalDelete() output
-        ctx.key.s.logicalDelete();
-
-        // Value's reference codec prepares the reference to be used after value is deleted
-        long expectedReference = ctx.value.getSlice().getReference();
         long newReference = valuesMemoryManager.alterReferenceForDelete(expectedReference);
         // Scenario:
         // 1. The value's slice is marked as deleted off-heap and the thread that started
@@ -482,28 +473,16 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
         // This is ABA problem and resolved via always changing deleted variation of the reference
         // Also value's off-heap slice is released to memory manager only after deleteValueFinish
         // is done.
-        if (casEntryFieldLong(ctx.entryIndex, VALUE_REF_OFFSET, expectedReference, newReference)) {
+        boolean isDeletedByUs =
+            casEntryFieldLong(ctx.entryIndex, VALUE_REF_OFFSET, expectedReference, newReference);
+        if (isDeletedByUs) {
             assert valuesMemoryManager.isReferenceConsistent(getValueReference(ctx.entryIndex));
             ctx.value.getSlice().release();
-            ctx.value.invalidate();
-        }
-
-        // mark key reference as deleted
-        long expectedKeyReference = ctx.key.getSlice().getReference();
-        long newKeyReference = keysMemoryManager.alterReferenceForDelete(expectedReference);
-        if (casEntryFieldLong(ctx.entryIndex, KEY_REF_OFFSET, expectedKeyReference, newKeyReference)) {
-            assert keysMemoryManager.isReferenceConsistent(getKeyReference(ctx.entryIndex));
-            ctx.key.getSlice().release();
-            ctx.key.invalidate();
-        }
-
-        if (casKeyHashAndUpdateCounter(ctx.entryIndex, ctx.keyHash, INVALID_KEY_HASH)) {
-            numOfEntries.getAndDecrement();
-            ctx.entryState = EntryState.DELETED;
         }
-
-        return true;
-
+        ctx.value.invalidate();
+        ctx.key.invalidate();
+        ctx.entryState = EntryState.DELETED;
+        return isDeletedByUs;
     }
 
     /**
@@ -528,27 +507,57 @@ class EntryHashSet<K, V> extends EntryArray<K, V> {
     /**/
 
     /**
-     * copyEntry copies one entry from source EntryOrderedSet (at source entry index "srcEntryIdx")
-     * to this EntryOrderedSet.
-     * The destination entry index is chosen according to this nextFreeIndex which is increased with
-     * each copy. Deleted entry (marked on-heap or off-heap) is not copied (disregarded).
-     * <p>
-     * The next pointers of the entries are requested to be set by the user if needed.
+     * copyEntry copies one entry from source EntryHashSet (at source entry index "srcEntryIdx")
+     * to this EntryHashSet.
+     * The destination entry index is the first vacant entry starting from the given index "idx",
+     * which should be calculated from the key hash of the source entry, the same way as for an insert.
+     * The source entry is copied as is: the caller decides which entries are copied (i.e., the entries that have
+     * a value that is not deleted), reading each value once, so the decision is not changed by a concurrent
+     * deletion (see {@code HashChunk.rebalance(ValueBuffer)}).
+     * The collision chain length is increased if needed, so the copied entry can be found.
      *
-     * @param tempValue   a reusable buffer object for internal temporary usage
-     * @param srcEntryOrderedSet another EntryOrderedSet to copy from
-     * @param srcEntryIdx the entry index to copy from {@code srcEntryOrderedSet}
-     * @return false when this EntryOrderedSet is full
+     * @param srcEntryHashSet another EntryHashSet to copy from
+     * @param srcEntryIdx the entry index to copy from {@code srcEntryHashSet}
+     * @param idx         idx=keyHash||bit_size_mask, where keyHash is the one of the source entry
+     * @return false when this EntryHashSet is full
      * <p>
      * Note: NOT THREAD SAFE
      */
-    boolean copyEntry(ValueBuffer tempValue, EntryHashSet<K, V> srcEntryOrderedSet, int srcEntryIdx) {
-
-        return true;
+    boolean copyEntry(EntryHashSet<K, V> srcEntryHashSet, int srcEntryIdx, int idx) {
+        assert srcEntryHashSet.isIndexInBound(srcEntryIdx) && isIndexInBound(idx);
+        assert srcEntryHashSet.getKeyReference(srcEntryIdx) != keysMemoryManager.getInvalidReference();
+        assert valuesMemoryManager.isReferenceConsistent(srcEntryHashSet.getValueReference(srcEntryIdx));
+
+        for (int i = 0; i < entriesCapacity; i++) {
+            int destEntryIndex = (idx + i) % entriesCapacity;
+            if (getKeyReference(destEntryIndex) != keysMemoryManager.getInvalidReference()) {
+                continue;
+            }
+            // ARRAY COPY: copy the key and the value references together with the key hash
+            copyEntriesFrom(srcEntryHashSet, srcEntryIdx, destEntryIndex, HASH_FIELD_OFFSET + 1);
+            numOfEntries.getAndIncrement();
+            if (i >= collisionChainLength.get()) {
+                collisionChainLength.set(i + 1);
+            }
+            return true;
+        }
+        return false;
     }
 
     boolean isEntrySetValidAfterRebalance() {
-
-        return true;
+        int assignedEntries = 0;
+        for (int ei = 0; ei < entriesCapacity; ei++) {
+            if (getKeyReference(ei) == keysMemoryManager.getInvalidReference()) {
+                continue;
+            }
+            assignedEntries++;
+            if (!isKeyHashValid(ei) || !isValueRefValidAndNotDeleted(ei)) {
+                return false;
+            }
+            if (!valuesMemoryManager.isReferenceConsistent(getValueReference(ei))) {
+                return false;
+            }
+        }
+        return assignedEntries == numOfEntries.get();
     }
 }
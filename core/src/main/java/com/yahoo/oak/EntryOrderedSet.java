@@ -45,6 +45,9 @@ import java.util.concurrent.atomic.AtomicInteger;
  * ---------------------------------------------------------------------------------------
  * ...
  *
+ * If the keys are prefixed (see OakComparator.hasKeyPrefix()), each entry has an additional field (following
+ * NEXT) that holds the order-preserving prefix of its key, so searches compare the keys off-heap only on
+ * prefix ties.
  *
  * Internal class, package visibility
  */
@@ -58,6 +61,11 @@ class EntryOrderedSet<K, V> extends EntryArray<K, V> {
      */
     private static final int NEXT_FIELD_OFFSET = 2;
 
+    /***
+     * KEY_PREFIX - the order-preserving prefix of the key of this entry (one long), only if the keys are prefixed.
+     */
+    private static final int KEY_PREFIX_FIELD_OFFSET = 3;
+
     // the size of the head in longs
     // how much it takes to keep the index of the first item in the list, after the head
     // (not necessarily first in the array!)
@@ -66,6 +74,9 @@ class EntryOrderedSet<K, V> extends EntryArray<K, V> {
     // location of the first (head) node
     private AtomicInteger headEntryIndex = new AtomicInteger(INVALID_ENTRY_INDEX);
 
+    // whether each entry keeps the prefix of its key
+    private final boolean isKeyPrefixed;
+
     // points to next free index of entry array, counted in "entries" and not in integers
     private final AtomicInteger nextFreeIndex;
 
@@ -77,11 +88,14 @@ class EntryOrderedSet<K, V> extends EntryArray<K, V> {
      * @param kMM off-heap allocations and releases for keys
      * @param entriesCapacity how many entries should this EntryOrderedSet keep at maximum
      * @param keySerializer   used to serialize the key when written to off-heap
+     * @param isKeyPrefixed   whether each entry keeps the prefix of its key
      */
     EntryOrderedSet(MemoryManager vMM, MemoryManager kMM, int entriesCapacity, OakSerializer<K> keySerializer,
-        OakSerializer<V> valueSerializer) {
-        super(vMM, kMM, ADDITIONAL_FIELDS, entriesCapacity, keySerializer, valueSerializer);
+        OakSerializer<V> valueSerializer, boolean isKeyPrefixed) {
+        super(vMM, kMM, isKeyPrefixed ? ADDITIONAL_FIELDS + 1 : ADDITIONAL_FIELDS, entriesCapacity, keySerializer,
+            valueSerializer);
         this.nextFreeIndex = new AtomicInteger( 0);
+        this.isKeyPrefixed = isKeyPrefixed;
     }
 
     int getLastEntryIndex() {
@@ -151,6 +165,75 @@ class EntryOrderedSet<K, V> extends EntryArray<K, V> {
         return headEntryIndex.get();
     }
 
+    /**
+     * getKeyPrefix returns the prefix of the key of the entry given by entry index "ei".
+     * Valid only if the keys are prefixed, and only once the key of the entry is written.
+     */
+    long getKeyPrefix(int ei) {
+        return getEntryFieldLong(ei, KEY_PREFIX_FIELD_OFFSET);
+    }
+
+    /**
+     * setKeyPrefix sets the prefix of the key of the entry given by entry index "ei", before the entry is linked.
+     * Valid only if the keys are prefixed.
+     */
+    void setKeyPrefix(int ei, long keyPrefix) {
+        assert isKeyPrefixed;
+        setEntryFieldLong(ei, KEY_PREFIX_FIELD_OFFSET, keyPrefix);
+    }
+
+
+    /**
+     * Reads the key references of the linked entries (including the deleted ones) into the given array.
+     * Unlike {@code readKeyReferences()}, it skips the entries that were never linked, whose key might
+     * have been already released.
+     *
+     * @param keyReferences the array to write the key references to
+     * @param offset        the index in keyReferences from which the key references are written
+     * @return the index in keyReferences following the last written key reference
+     */
+    int readLinkedKeyReferences(long[] keyReferences, int offset) {
+        int idx = offset;
+        int ei = getHeadNextEntryIndex();
+        while (ei != INVALID_ENTRY_INDEX) {
+            keyReferences[idx++] = getKeyReference(ei);
+            ei = getNextEntryIndex(ei);
+        }
+        return idx;
+    }
+
+    /**
+     * Reads the value references of the linked entries, which are valid and not deleted, into the given array.
+     *
+     * @param valueReferences the array to write the value references to
+     * @param offset          the index in valueReferences from which the value references are written
+     * @return the index in valueReferences following the last written value reference
+     */
+    int readLinkedValueReferences(long[] valueReferences, int offset) {
+        int idx = offset;
+        int ei = getHeadNextEntryIndex();
+        while (ei != INVALID_ENTRY_INDEX) {
+            long reference = getValueReference(ei);
+            if (valuesMemoryManager.isReferenceValidAndNotDeleted(reference)) {
+                valueReferences[idx++] = reference;
+            }
+            ei = getNextEntryIndex(ei);
+        }
+        return idx;
+    }
+
+    /**
+     * Relocates the keys of the linked entries (including the deleted ones) that reside in evacuated blocks.
+     * Unlike {@code relocateKeys()}, it skips the entries that were never linked, whose key might be released
+     * by the thread that allocated the entry. See {@code relocateKey(int, KeyBuffer, KeyBuffer)}.
+     */
+    void relocateLinkedKeys(KeyBuffer oldKey, KeyBuffer newKey) {
+        int ei = getHeadNextEntryIndex();
+        while (ei != INVALID_ENTRY_INDEX) {
+            relocateKey(ei, oldKey, newKey);
+            ei = getNextEntryIndex(ei);
+        }
+    }
 
     /********************************************************************************************/
     /*--------- Methods for managing the write/remove path of the keys and values  -------------*/
@@ -274,6 +357,13 @@ class EntryOrderedSet<K, V> extends EntryArray<K, V> {
             return true;
         }
 
+        // an expired value is dropped as well, once it is marked as deleted. It is not marked if it is locked,
+        // as its holder might wait for this rebalance. The dropped values are released once the rebalance is done
+        if (isExpired(tempValue.getSlice())
+            && tempValue.getSlice().tryLogicalDelete() != ValueUtils.ValueResult.RETRY) {
+            return true;
+        }
+
         assert valuesMemoryManager.isReferenceConsistent(tempValue.getSlice().getReference());
 
         // ARRAY COPY: using next as the base of the entry
@@ -282,6 +372,9 @@ class EntryOrderedSet<K, V> extends EntryArray<K, V> {
         // therefore, to copy the rest of the entry we use the offset of next (which we assume is 0) and
         // add 1 to start the copying from the subsequent field of the entry.
         copyEntriesFrom(srcEntryOrderedSet, srcEntryIdx, destEntryIndex, 2);
+        if (isKeyPrefixed) {
+            setKeyPrefix(destEntryIndex, srcEntryOrderedSet.getKeyPrefix(srcEntryIdx));
+        }
 
         assert valuesMemoryManager.isReferenceConsistent(getValueReference(destEntryIndex));
 
@@ -291,6 +384,39 @@ class EntryOrderedSet<K, V> extends EntryArray<K, V> {
         return true;
     }
 
+    /**
+     * appendEntry writes an entry with the given key and value references after the last entry of this
+     * EntryOrderedSet, and links it as the last entry of the linked list.
+     * The keys of the appended entries must be in ascending order, so the entries are kept sorted.
+     *
+     * @param keyReference   the reference of an already written key
+     * @param keyPrefix      the prefix of the key (ignored if the keys are not prefixed)
+     * @param valueReference the reference of an already written value
+     * @return false when this EntryOrderedSet is full
+     * <p>
+     * Note: NOT THREAD SAFE, only used to populate a chunk that is not yet reachable (e.g., on restore)
+     */
+    boolean appendEntry(long keyReference, long keyPrefix, long valueReference) {
+        int ei = nextFreeIndex.get();
+        if (!isIndexInBound(ei)) {
+            return false;
+        }
+        setEntryFieldLong(ei, KEY_REF_OFFSET, keyReference);
+        setEntryFieldLong(ei, VALUE_REF_OFFSET, valueReference);
+        if (isKeyPrefixed) {
+            setKeyPrefix(ei, keyPrefix);
+        }
+        setEntryFieldLong(ei, NEXT_FIELD_OFFSET, INVALID_ENTRY_INDEX);
+        if (ei == 0) {
+            setHeadEntryIndex(ei);
+        } else {
+            setEntryFieldLong(ei - 1, NEXT_FIELD_OFFSET, ei);
+        }
+        nextFreeIndex.getAndIncrement();
+        numOfEntries.getAndIncrement();
+        return true;
+    }
+
     boolean isEntrySetValidAfterRebalance() {
         int currIndex = getHeadNextEntryIndex();
         int prevIndex = INVALID_ENTRY_INDEX;
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Epoch based reclamation of off-heap cuts that can be accessed by concurrent readers without any synchronization.
+ *
+ * A reader (an operation of a thread, or an iterator) announces the global epoch when it starts, and retracts
+ * the announcement when it is done. A released off-heap cut is first kept in a per-thread release list, like in
+ * SyncRecycleMemoryManager. Once the list is full, it is tagged with the global epoch (which is then advanced),
+ * and its off-heap cuts are returned to the allocator only when no reader that announced the tagged epoch
+ * (or an earlier one) is still active. A reader that started after the release cannot reach the released
+ * off-heap cut, as it must be disconnected from the data structure before it is released.
+ *
+ * The reader of a thread is kept until the thread terminates. Then, its release list (which might not be full)
+ * is tagged by the thread that finds it terminated, so short-lived threads do not leak their released cuts.
+ */
+final class EpochReclamation {
+    static final int RELEASE_LIST_LIMIT = 1024;
+    // the number of thread readers that are expected to be created before the terminated ones are removed
+    static final int READERS_SCAN_THRESHOLD = 64;
+    private static final long IDLE = 0;
+    private static final long EPOCH_INIT_VALUE = 1;
+
+    private final BlockMemoryAllocator allocator;
+    private final AtomicLong globalEpoch = new AtomicLong(EPOCH_INIT_VALUE);
+    // all the readers that might be active, traversed to find the oldest active epoch
+    private final Set<Reader> readers = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<ThreadReader> threadReaders = ThreadLocal.withInitial(this::newThreadReader);
+    // full release lists that wait for their readers to finish, ordered by their epochs
+    private final ConcurrentLinkedQueue<ReleaseBatch> batches = new ConcurrentLinkedQueue<>();
+    private final AtomicLong reclaimedCount = new AtomicLong(0);
+    // the number of thread readers created since the readers were last checked for terminated threads
+    private final AtomicInteger newReadersSinceScan = new AtomicInteger(0);
+
+    EpochReclamation(BlockMemoryAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    private ThreadReader newThreadReader() {
+        ThreadReader reader = new ThreadReader(Thread.currentThread());
+        readers.add(reader);
+        // the readers are checked only after creating (at least) half as many readers as there are, so a thread
+        // creates its reader in amortized constant time, even if the threads never reclaim (e.g., they only read)
+        if (newReadersSinceScan.incrementAndGet() >= Math.max(READERS_SCAN_THRESHOLD, readers.size() / 2)) {
+            newReadersSinceScan.set(0);
+            getOldestActiveEpoch();
+        }
+        return reader;
+    }
+
+    /**
+     * Announces that the current thread starts an operation that might access released off-heap cuts.
+     * Operations can be nested, only the outermost operation announces the epoch.
+     */
+    void startOperation() {
+        ThreadReader reader = threadReaders.get();
+        if (reader.depth++ == 0) {
+            reader.epoch = globalEpoch.get();
+        }
+    }
+
+    /**
+     * Retracts the announcement of {@code startOperation()}, once the outermost operation is done.
+     */
+    void finishOperation() {
+        ThreadReader reader = threadReaders.get();
+        assert reader.depth > 0;
+        if (--reader.depth == 0) {
+            reader.epoch = IDLE;
+        }
+    }
+
+    /**
+     * Announces the start of an iteration, which might access released off-heap cuts between its steps
+     * (possibly invoked by different threads). The iteration is done once the returned guard is released,
+     * or once the iterator is not reachable anymore (an iterator that is not exhausted might be abandoned).
+     */
+    MemoryManager.IterationGuard startIteration(Object iterator) {
+        IterationReader reader = new IterationReader(iterator);
+        reader.epoch = globalEpoch.get();
+        readers.add(reader);
+        return reader;
+    }
+
+    /**
+     * Defers the reclamation of an off-heap cut that was disconnected from the data structure,
+     * until all the readers that might still access it are done.
+     *
+     * @param slice the released off-heap cut, must not be used by the caller afterwards
+     */
+    void release(Slice slice) {
+        ThreadReader reader = threadReaders.get();
+        reader.releaseList.add(slice);
+        if (reader.releaseList.size() >= RELEASE_LIST_LIMIT) {
+            tagReleaseList(reader);
+            reclaim();
+        }
+    }
+
+    /**
+     * Tags the release list of the current thread (even if it is not full), and returns to the allocator
+     * the off-heap cuts of the batches that cannot be accessed anymore.
+     */
+    void flush() {
+        ThreadReader reader = threadReaders.get();
+        if (!reader.releaseList.isEmpty()) {
+            tagReleaseList(reader);
+        }
+        reclaim();
+    }
+
+    private void tagReleaseList(ThreadReader reader) {
+        tagReleaseList(reader.releaseList);
+        reader.releaseList = new ArrayList<>(RELEASE_LIST_LIMIT);
+    }
+
+    private void tagReleaseList(List<Slice> releaseList) {
+        // the released off-heap cuts are disconnected before the epoch is advanced,
+        // so only the readers that announced this epoch (or an earlier one) might access them
+        batches.add(new ReleaseBatch(globalEpoch.getAndIncrement(), releaseList));
+    }
+
+    // Returns to the allocator the off-heap cuts of the batches that cannot be accessed anymore
+    private void reclaim() {
+        long oldestActiveEpoch = getOldestActiveEpoch();
+        ReleaseBatch batch = batches.peek();
+        while (batch != null && batch.epoch < oldestActiveEpoch) {
+            // the batch might be reclaimed concurrently by other thread, only the one that polls it frees it
+            if (batches.remove(batch)) {
+                for (Slice slice : batch.slices) {
+                    allocator.free(slice);
+                }
+                reclaimedCount.addAndGet(batch.slices.size());
+            }
+            batch = batches.peek();
+        }
+    }
+
+    // Also removes the abandoned readers, and tags the release lists of the terminated threads
+    private long getOldestActiveEpoch() {
+        long oldest = Long.MAX_VALUE;
+        for (Reader reader : readers) {
+            if (reader.isAbandoned()) {
+                removeAbandoned(reader);
+                continue;
+            }
+            long epoch = reader.epoch;
+            if (epoch != IDLE) {
+                oldest = Math.min(oldest, epoch);
+            }
+        }
+        return oldest;
+    }
+
+    private void removeAbandoned(Reader reader) {
+        // the reader might be found abandoned by several threads, only the one that removes it tags its list
+        if (readers.remove(reader) && reader instanceof ThreadReader) {
+            // observing that the thread is not alive happens-after all its actions, so its list is safely taken
+            List<Slice> releaseList = ((ThreadReader) reader).releaseList;
+            if (!releaseList.isEmpty()) {
+                tagReleaseList(releaseList);
+            }
+        }
+    }
+
+    /**
+     * @return the current global epoch, which is advanced whenever a release list is tagged
+     */
+    long getGlobalEpoch() {
+        return globalEpoch.get();
+    }
+
+    // used only for testing
+    @VisibleForTesting
+    long getReclaimedCount() {
+        return reclaimedCount.get();
+    }
+
+    // used only for testing
+    @VisibleForTesting
+    int getReaderCount() {
+        return readers.size();
+    }
+
+    /*=====================================================================*/
+    /*           Readers and release batches                               */
+    /*=====================================================================*/
+
+    private abstract static class Reader {
+        // the epoch announced by this reader, or IDLE if it is not active
+        volatile long epoch = IDLE;
+
+        abstract boolean isAbandoned();
+    }
+
+    /*
+     * A thread is a reader while it is in an operation. It is accessed only by its thread (except for its epoch),
+     * until the thread terminates. The thread is weakly referenced, so a terminated thread is not kept alive.
+     */
+    private static final class ThreadReader extends Reader {
+        private final WeakReference<Thread> owner;
+        private int depth = 0;
+        private List<Slice> releaseList = new ArrayList<>(RELEASE_LIST_LIMIT);
+
+        ThreadReader(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+
+        @Override
+        boolean isAbandoned() {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+
+    private final class IterationReader extends Reader implements MemoryManager.IterationGuard {
+        private final WeakReference<Object> iterator;
+
+        IterationReader(Object iterator) {
+            this.iterator = new WeakReference<>(iterator);
+        }
+
+        @Override
+        boolean isAbandoned() {
+            return iterator.get() == null;
+        }
+
+        @Override
+        public void release() {
+            epoch = IDLE;
+            readers.remove(this);
+        }
+    }
+
+    private static final class ReleaseBatch {
+        private final long epoch;
+        private final List<Slice> slices;
+
+        ReleaseBatch(long epoch, List<Slice> slices) {
+            this.epoch = epoch;
+            this.slices = slices;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+/**
+ * An Epoch-Recycle Memory Manager is a Sequential-Expanding Memory Manager (same reference encoding, no off-heap
+ * header and no synchronization upon access), whose released off-heap cuts are reused. The released off-heap cuts
+ * are returned to the allocator only once no reader can access them anymore, using EpochReclamation.
+ *
+ * It is intended for the keys: they are read without any synchronization (e.g., upon a binary search of a chunk),
+ * so they can be released only when it is guaranteed that no concurrent operation or iterator still reads them.
+ * For this purpose the operations are expected to be enclosed by {@code startOperation()}/{@code finishOperation()},
+ * and the iterators to hold a guard returned by {@code startIteration()}.
+ */
+class EpochRecycleMemoryManager extends SeqExpandMemoryManager {
+    private final EpochReclamation reclamation;
+
+    EpochRecycleMemoryManager(BlockMemoryAllocator memoryAllocator) {
+        super(memoryAllocator);
+        this.reclamation = new EpochReclamation(memoryAllocator);
+    }
+
+    @Override
+    public SliceEpochRecycle getEmptySlice() {
+        return new SliceEpochRecycle();
+    }
+
+    @Override
+    public boolean isReleaseDeferred() {
+        return true;
+    }
+
+    @Override
+    public void startOperation() {
+        reclamation.startOperation();
+    }
+
+    @Override
+    public void finishOperation() {
+        reclamation.finishOperation();
+    }
+
+    @Override
+    public IterationGuard startIteration(Object iterator) {
+        return reclamation.startIteration(iterator);
+    }
+
+    @Override
+    public void flushReleases() {
+        reclamation.flush();
+    }
+
+    // used only for testing
+    @VisibleForTesting
+    long getReclaimedCount() {
+        return reclamation.getReclaimedCount();
+    }
+
+    // used only for testing
+    @VisibleForTesting
+    int getReaderCount() {
+        return reclamation.getReaderCount();
+    }
+
+    /*=====================================================================*/
+    /*           SliceEpochRecycle                                         */
+    /* Inner Class for easier access to EpochRecycleMemoryManager abilities */
+    /*=====================================================================*/
+
+    class SliceEpochRecycle extends SliceSeqExpand {
+
+        // Should be used only by Memory Manager (within Memory Manager package)
+        SliceEpochRecycle() {
+            super();
+        }
+
+        /**
+         * Release the associated off-heap cut, which is disconnected from the data structure,
+         * but can be still accessed via threads (or iterators) previously having the access.
+         * The off-heap cut is reused only once these accesses are done.
+         * IMPORTANT: As many slices can be associated with the same off-heap cut, the release()
+         * must be invoked only ONCE after each allocation of the specific off-heap cut.
+         */
+        @Override
+        public void release() {
+            reclamation.release(duplicate());
+        }
+
+        @Override
+        public SliceEpochRecycle duplicate() {
+            SliceEpochRecycle newSlice = new SliceEpochRecycle();
+            newSlice.copyFrom(this);
+            return newSlice;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+/**
+ * An Epoch-Sync-Recycle Memory Manager is a Sync-Recycle Memory Manager (same off-heap header and reference
+ * encoding), whose readers do not lock the off-heap header. Instead, a reader only announces the global epoch in
+ * its thread's slot (see EpochReclamation), so reading a value does not write to a shared cache line.
+ *
+ * As the readers are not synchronized with the writers, a value is never updated in place: the writers (which
+ * still lock the header among themselves) write a new copy of the value and link it instead of the old one
+ * (copy-on-write). The old off-heap cut is marked as moved and released, and it is returned to the allocator
+ * only after a grace period, when no reader that might have accessed it is still active.
+ * The version of an allocation is derived from the global epoch, so a reader that announced its epoch after
+ * the off-heap cut was reused detects the new allocation by the version mismatch.
+ */
+class EpochSyncRecycleMemoryManager extends SyncRecycleMemoryManager {
+    private static final SyncRecycleMMHeader HEADER =
+        new SyncRecycleMMHeader(); // for off-heap header operations
+    private final EpochReclamation reclamation;
+
+    EpochSyncRecycleMemoryManager(BlockMemoryAllocator allocator) {
+        this(allocator, false);
+    }
+
+    EpochSyncRecycleMemoryManager(BlockMemoryAllocator allocator, boolean isExpirationTracked) {
+        super(allocator, isExpirationTracked);
+        this.reclamation = new EpochReclamation(allocator);
+    }
+
+    @Override
+    public SliceEpochSyncRecycle getEmptySlice() {
+        return new SliceEpochSyncRecycle();
+    }
+
+    @Override
+    public boolean isReleaseDeferred() {
+        return true;
+    }
+
+    @Override
+    public void startOperation() {
+        reclamation.startOperation();
+    }
+
+    @Override
+    public void finishOperation() {
+        reclamation.finishOperation();
+    }
+
+    @Override
+    public IterationGuard startIteration(Object iterator) {
+        return reclamation.startIteration(iterator);
+    }
+
+    @Override
+    public void flushReleases() {
+        reclamation.flush();
+    }
+
+    /**
+     * An off-heap cut is reused only once the global epoch was advanced after it was released,
+     * so the version of its new allocation differs from the version of the previous one.
+     */
+    @Override
+    int getAllocationVersion() {
+        long epoch = reclamation.getGlobalEpoch();
+        return (int) ((epoch - 1) % ReferenceCodecSyncRecycle.LAST_VALID_VERSION) + 1;
+    }
+
+    // used only for testing
+    @VisibleForTesting
+    long getReclaimedCount() {
+        return reclamation.getReclaimedCount();
+    }
+
+    /*=====================================================================*/
+    /*           SliceEpochSyncRecycle                                     */
+    /* Inner Class for easier access to EpochSyncRecycleMemoryManager abilities */
+    /*=====================================================================*/
+
+    class SliceEpochSyncRecycle extends SliceSyncRecycle {
+
+        // Should be used only by Memory Manager (within Memory Manager package)
+        SliceEpochSyncRecycle() {
+            super();
+        }
+
+        /**
+         * Release the associated off-heap cut, which is disconnected from the data structure,
+         * but can be still accessed via readers previously having the access.
+         * The off-heap cut is reused only once these readers are done.
+         * IMPORTANT: As many slices can be associated with the same off-heap cut, the release()
+         * must be invoked only ONCE after each allocation of the specific off-heap cut.
+         */
+        @Override
+        public void release() {
+            prefetchDataLength(); // the length is needed when the off-heap cut is returned to the allocator
+            reclamation.release(duplicate());
+        }
+
+        @Override
+        public SliceEpochSyncRecycle duplicate() {
+            SliceEpochSyncRecycle newSlice = new SliceEpochSyncRecycle();
+            newSlice.copyFrom(this);
+            return newSlice;
+        }
+
+        /**
+         * Announces the reader's epoch (without writing to the off-heap header), and checks that the
+         * value is still valid. The announcement is retracted at once if the value cannot be read.
+         *
+         * @return {@code TRUE} if the value can be read until {@code unlockRead()} is invoked
+         * {@code FALSE} if the header/off-heap-cut is marked as deleted
+         * {@code RETRY} if the header/off-heap-cut was moved, or the version of the off-heap header
+         * does not match {@code version}.
+         */
+        @Override
+        public ValueUtils.ValueResult lockRead() {
+            assert getVersion() != ReferenceCodecSyncRecycle.INVALID_VERSION;
+            reclamation.startOperation();
+            ValueUtils.ValueResult result = HEADER.validateRead(getVersion(), getMetadataAddress());
+            if (result != ValueUtils.ValueResult.TRUE) {
+                reclamation.finishOperation();
+            }
+            return result;
+        }
+
+        /**
+         * The readers do not write to the off-heap header anyway, so there is no need for an optimistic read,
+         * which (unlike {@code lockRead()}) does not protect the value from being reclaimed.
+         *
+         * @return {@code INVALID_STAMP}
+         */
+        @Override
+        public long beginOptimisticRead() {
+            return INVALID_STAMP;
+        }
+
+        /**
+         * Retracts the reader's epoch announcement
+         *
+         * @return {@code TRUE}
+         */
+        @Override
+        public ValueUtils.ValueResult unlockRead() {
+            assert getVersion() != ReferenceCodecSyncRecycle.INVALID_VERSION;
+            reclamation.finishOperation();
+            return ValueUtils.ValueResult.TRUE;
+        }
+    }
+}
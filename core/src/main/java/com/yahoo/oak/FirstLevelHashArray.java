@@ -0,0 +1,194 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/* FirstLevelHashArray is the first level of OakHash, a directory of references to HashChunks
+ * in the style of the extendible hashing.
+ * The directory has a global depth: the chunk of a key is chosen according to the (global depth)
+ * most significant bits of the key hash, so the least significant bits can be used to choose the entry
+ * inside the chunk. Each chunk has a local depth, which is not bigger than the global depth, and it is
+ * responsible for all the key hashes that start with its (local depth) bits prefix. Thus, a chunk can be
+ * referenced from multiple consecutive cells of the directory.
+ *
+ * When a chunk is split, its children (with bigger local depth) replace it in the directory.
+ * If the local depth of the children is bigger than the global depth, the directory is doubled first.
+ * The doubling is lazy and lock-free: a new directory is created, where each cell of the old directory is
+ * duplicated, and it is CASed to be the current one. A chunk replacement may be lost if it concurrently
+ * happened in the old directory, this is harmless since each replaced chunk keeps a reference to its
+ * replacement, and it is followed upon a look up, see {@code HashChunk.getReplacement(keyHash)}.
+ *
+ * The chunks are created lazily, upon the first access to the relevant directory cell.
+ */
+class FirstLevelHashArray<K, V> {
+
+    /*-------------- Constants --------------*/
+
+    // defaults
+    static final int MSB_FOR_FIRST_LEVEL_HASH_DEFAULT = 6;
+    // the directory is not doubled beyond this depth, the chunks are enlarged instead of being split
+    static final int MSB_FOR_FIRST_LEVEL_HASH_MAX = 20;
+
+    /**
+     * A snapshot of the directory: the cells array together with the global depth
+     */
+    private static class Directory<K, V> {
+        final int depth;
+        final AtomicReferenceArray<HashChunk<K, V>> chunks;
+
+        Directory(int depth) {
+            this.depth = depth;
+            this.chunks = new AtomicReferenceArray<>(1 << depth);
+        }
+
+        int calculateKeyIdx(int keyHash) {
+            if (depth == 0) {
+                return 0;
+            }
+            return keyHash >>> (Integer.SIZE - depth);
+        }
+    }
+
+    /*-------------- Members --------------*/
+
+    private final AtomicReference<Directory<K, V>> directory;
+
+    // parameters for the lazy creation of the chunks
+    private final int chunkMaxItems;
+    private final AtomicInteger externalSize;
+    private final MemoryManager valuesMemoryManager;
+    private final MemoryManager keysMemoryManager;
+    private final OakComparator<K> comparator;
+    private final OakSerializer<K> keySerializer;
+    private final OakSerializer<V> valueSerializer;
+
+    /*-------------- Constructors --------------*/
+
+    FirstLevelHashArray(int msbForFirstLevelHash, int chunkMaxItems, AtomicInteger externalSize,
+        MemoryManager vMM, MemoryManager kMM, OakComparator<K> comparator,
+        OakSerializer<K> keySerializer, OakSerializer<V> valueSerializer) {
+        if (msbForFirstLevelHash < 0 || msbForFirstLevelHash > MSB_FOR_FIRST_LEVEL_HASH_MAX) {
+            throw new IllegalArgumentException("Illegal number of bits for the first level hash");
+        }
+        this.directory = new AtomicReference<>(new Directory<>(msbForFirstLevelHash));
+        this.chunkMaxItems = chunkMaxItems;
+        this.externalSize = externalSize;
+        this.valuesMemoryManager = vMM;
+        this.keysMemoryManager = kMM;
+        this.comparator = comparator;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+    }
+
+    /*-------------- Methods --------------*/
+
+    /**
+     * @return the chunk that is (currently) responsible for the given key hash, the chunk is created if needed.
+     * The returned chunk may be frozen, but it is never a chunk that was already replaced.
+     */
+    HashChunk<K, V> findChunk(int keyHash) {
+        Directory<K, V> dir = directory.get();
+        int idx = dir.calculateKeyIdx(keyHash);
+        HashChunk<K, V> c = dir.chunks.get(idx);
+        if (c == null) {
+            c = new HashChunk<>(chunkMaxItems, externalSize, valuesMemoryManager, keysMemoryManager,
+                comparator, keySerializer, valueSerializer, dir.depth, idx);
+            // if fail here, another thread succeeded to create the chunk
+            dir.chunks.compareAndSet(idx, null, c);
+            c = dir.chunks.get(idx);
+        }
+        return followReplacements(c, keyHash);
+    }
+
+    /**
+     * @return the chunk that is (currently) responsible for the given key hash,
+     * or null if the chunk wasn't yet created
+     */
+    HashChunk<K, V> findChunkIfExists(int keyHash) {
+        Directory<K, V> dir = directory.get();
+        HashChunk<K, V> c = dir.chunks.get(dir.calculateKeyIdx(keyHash));
+        return (c == null) ? null : followReplacements(c, keyHash);
+    }
+
+    private HashChunk<K, V> followReplacements(HashChunk<K, V> chunk, int keyHash) {
+        HashChunk<K, V> c = chunk;
+        HashChunk<K, V> next = c.getReplacement(keyHash);
+        while (next != null) {
+            c = next;
+            next = c.getReplacement(keyHash);
+        }
+        return c;
+    }
+
+    /**
+     * The key hashes are treated as unsigned 32 bits numbers, so a range of key hashes is
+     * represented using long numbers.
+     *
+     * @return the (exclusive) end of the range of key hashes of the directory cell of the given key hash
+     */
+    long getCellRangeEnd(int keyHash) {
+        Directory<K, V> dir = directory.get();
+        return ((long) dir.calculateKeyIdx(keyHash) + 1) << (Integer.SIZE - dir.depth);
+    }
+
+    /**
+     * Replaces the chunk by its replacements (created upon rebalance), the directory is doubled
+     * if the replacements are deeper than the directory.
+     *
+     * @param oldChunk     the chunk that was rebalanced
+     * @param replacements the chunks that replace it, each responsible for its own range of key hashes
+     */
+    void replaceChunk(HashChunk<K, V> oldChunk, List<HashChunk<K, V>> replacements) {
+        for (HashChunk<K, V> newChunk : replacements) {
+            Directory<K, V> dir = ensureDepth(newChunk.getLocalDepth());
+            int shift = dir.depth - newChunk.getLocalDepth();
+            int firstIdx = newChunk.getHashPrefix() << shift;
+            int lastIdx = firstIdx + (1 << shift);
+            for (int idx = firstIdx; idx < lastIdx; idx++) {
+                // if fail here, another thread succeeded, or the directory was doubled
+                // and the cell already refers to the replacement
+                dir.chunks.compareAndSet(idx, oldChunk, newChunk);
+            }
+        }
+    }
+
+    /**
+     * Doubles the directory until its depth is at least the given depth.
+     *
+     * @return the current directory
+     */
+    private Directory<K, V> ensureDepth(int depth) {
+        Directory<K, V> dir = directory.get();
+        while (dir.depth < depth) {
+            // The chunks are created in the empty cells of the old directory, so no chunk is created
+            // in the old directory (and lost) after it is copied
+            for (int idx = 0; idx < dir.chunks.length(); idx++) {
+                if (dir.chunks.get(idx) == null) {
+                    dir.chunks.compareAndSet(idx, null,
+                        new HashChunk<>(chunkMaxItems, externalSize, valuesMemoryManager, keysMemoryManager,
+                            comparator, keySerializer, valueSerializer, dir.depth, idx));
+                }
+            }
+            Directory<K, V> newDir = new Directory<>(dir.depth + 1);
+            for (int idx = 0; idx < newDir.chunks.length(); idx++) {
+                newDir.chunks.set(idx, dir.chunks.get(idx >>> 1));
+            }
+            // if fail here, another thread succeeded to double the directory
+            directory.compareAndSet(dir, newDir);
+            dir = directory.get();
+        }
+        return dir;
+    }
+
+    int getDepth() {
+        return directory.get().depth;
+    }
+}
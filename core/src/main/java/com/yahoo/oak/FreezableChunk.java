@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/* FreezableChunk keeps the functionality that is common to the chunks of all Oak variants:
+ * the ordered Chunk (used by OakMap), the HashChunk (used by OakHashMap) and the LongChunk (used by OakLongMap).
+ * Mainly it is the chunk's state and the publishing mechanism that allows the rebalance
+ * (or the resize) to freeze the chunk and to wait for the ongoing updates to finish.
+ */
+abstract class FreezableChunk {
+
+    /*-------------- Constants --------------*/
+
+    enum State {
+        INFANT,
+        NORMAL,
+        FROZEN,
+        RELEASED
+    }
+
+    /*-------------- Members --------------*/
+
+    // chunk can be in the following states: normal, frozen or infant(has a creator)
+    private final AtomicReference<State> state;
+    private final AtomicInteger pendingOps;
+    protected final int maxItems;
+    AtomicInteger externalSize; // for updating oak's size (reference to one global per Oak size)
+
+    /*-------------- Constructors --------------*/
+
+    FreezableChunk(int maxItems, AtomicInteger externalSize) {
+        this.maxItems = maxItems;
+        this.externalSize = externalSize;
+        this.state = new AtomicReference<>(State.NORMAL);
+        this.pendingOps = new AtomicInteger();
+    }
+
+    /********************************************************************************************/
+    /*---------- Methods for managing the put/remove path of the keys and values  --------------*/
+
+    /**
+     * publish operation into thread array
+     * if CAS didn't succeed then this means that a rebalancer got here first and entry is frozen
+     *
+     * @return result of CAS
+     **/
+    boolean publish() {
+        pendingOps.incrementAndGet();
+        State currentState = state.get();
+        if (currentState == State.FROZEN || currentState == State.RELEASED) {
+            pendingOps.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * unpublish operation from thread array
+     * if CAS didn't succeed then this means that a rebalancer did this already
+     **/
+    void unpublish() {
+        pendingOps.decrementAndGet();
+    }
+
+    /********************************************************************************************/
+    /*----------------------- Methods for managing the chunk's state  --------------------------*/
+
+    int getMaxItems() {
+        return maxItems;
+    }
+
+    State state() {
+        return state.get();
+    }
+
+    protected void setState(State state) {
+        this.state.set(state);
+    }
+
+    void normalize() {
+        state.compareAndSet(State.INFANT, State.NORMAL);
+        // using fence so other puts can continue working immediately on this chunk
+        UnsafeUtils.UNSAFE.storeFence();
+    }
+
+    /**
+     * freezes chunk so no more changes can be done to it (marks pending items as frozen)
+     */
+    void freeze() {
+        // prevent new puts to this chunk. A late helper of the rebalance must not turn a released chunk back
+        // to frozen, as only one thread may release it
+        State current = state.get();
+        while (current != State.FROZEN && current != State.RELEASED) {
+            if (state.compareAndSet(current, State.FROZEN)) {
+                break;
+            }
+            current = state.get();
+        }
+        while (pendingOps.get() != 0) {
+            assert Boolean.TRUE;
+        }
+    }
+
+    /**
+     * try to change the state from frozen to released
+     *
+     * @return true if this invocation released the chunk, false if it was already released (by another thread)
+     */
+    boolean release() {
+        return state.compareAndSet(State.FROZEN, State.RELEASED);
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/* HashChunk is the second level of OakHash. It keeps the entries placed according to
+ * the key hash in EntryHashSet. The entry index inside the chunk is calculated
+ * from the least significant bits of the key hash, while the chunk itself is chosen by
+ * the first level (FirstLevelHashArray) according to the most significant bits of the key hash.
+ *
+ * When no entry can be allocated for a new key, the chunk is frozen and
+ * rebalanced (compacted or split) into new chunks, which are the chunk's replacements in the first level.
+ */
+class HashChunk<K, V> extends BasicChunk<K, V> {
+
+    /*-------------- Constants --------------*/
+
+    // defaults
+    public static final int HASH_CHUNK_MAX_ITEMS_DEFAULT = 2048;
+    // with linear probing, a short collision chain fails the insertions (and splits the chunk) at a low load,
+    // leaving most of the entries array unused. The lookups stop on the first vacant entry of the chain.
+    static final int COLLISION_CHAIN_LENGTH = 8;
+
+    /*-------------- Members --------------*/
+
+    private final EntryHashSet<K, V> entryHashSet;
+    private final OakComparator<K> comparator;
+    // the chunk is responsible for the key hashes, which (localDepth) most significant bits are hashPrefix
+    private final int localDepth;
+    private final int hashPrefix;
+    // the new chunks created upon rebalance of this chunk (null, until the rebalance is done)
+    private final AtomicReference<List<HashChunk<K, V>>> replacements;
+
+    /*-------------- Constructors --------------*/
+
+    /**
+     * Creates a new HashChunk with entries capacity, which is the closest power of two
+     * that is not smaller than the requested maxItems.
+     * The chunk is responsible for the key hashes, which (localDepth) most significant bits are hashPrefix.
+     */
+    HashChunk(int maxItems, AtomicInteger externalSize, MemoryManager vMM, MemoryManager kMM,
+        OakComparator<K> comparator, OakSerializer<K> keySerializer, OakSerializer<V> valueSerializer,
+        int localDepth, int hashPrefix) {
+        super(calculateCapacity(maxItems), externalSize);
+        this.comparator = comparator;
+        this.localDepth = localDepth;
+        this.hashPrefix = hashPrefix;
+        this.entryHashSet =
+            new EntryHashSet<>(vMM, kMM, getMaxItems(), keySerializer, valueSerializer, comparator,
+                COLLISION_CHAIN_LENGTH);
+        this.replacements = new AtomicReference<>(null);
+    }
+
+    private static int calculateCapacity(int maxItems) {
+        if (maxItems <= 1) {
+            return 1;
+        }
+        return Integer.highestOneBit(maxItems - 1) << 1;
+    }
+
+    /*-------------- Methods --------------*/
+
+    /**
+     * Calculates the initial entry index of a key, the least significant bits of the key hash are used
+     */
+    int calculateEntryIdx(int keyHash) {
+        return keyHash & (getMaxItems() - 1);
+    }
+
+    /********************************************************************************************/
+    /*-----------------------------  Wrappers for EntryHashSet methods -------------------------*/
+
+    /**
+     * See {@code EntryHashSet.readKey(ThreadContext)} for more information
+     */
+    void readKey(ThreadContext ctx) {
+        entryHashSet.readKey(ctx);
+    }
+
+    /**
+     * See {@code EntryHashSet.readValue(ThreadContext)} for more information
+     */
+    void readValue(ThreadContext ctx) {
+        entryHashSet.readValue(ctx);
+    }
+
+    /**
+     * See {@code EntryHashSet.readKey(KeyBuffer)} for more information
+     */
+    boolean readKeyFromEntryIndex(KeyBuffer key, int ei) {
+        return entryHashSet.readKey(key, ei);
+    }
+
+    /**
+     * See {@code EntryHashSet.readValue(ValueBuffer)} for more information
+     */
+    boolean readValueFromEntryIndex(ValueBuffer value, int ei) {
+        return entryHashSet.readValue(value, ei);
+    }
+
+    /**
+     * See {@code EntryHashSet.allocateValue(ThreadContext)} for more information
+     */
+    @Override
+    void allocateValue(ThreadContext ctx, V value, boolean writeForMove) {
+        entryHashSet.allocateValue(ctx, value, writeForMove);
+    }
+
+    /**
+     * See {@code EntryHashSet.releaseNewValue(ThreadContext)} for more information
+     */
+    @Override
+    void releaseNewValue(ThreadContext ctx) {
+        entryHashSet.releaseNewValue(ctx);
+    }
+
+    /**
+     * See {@code EntryArray.readKeyReferences(long[], int)} for more information
+     */
+    int readKeyReferences(long[] keyReferences, int offset) {
+        return entryHashSet.readKeyReferences(keyReferences, offset);
+    }
+
+    /**
+     * Relocates the keys of the entries that reside in evacuated blocks, while the chunk is published.
+     * See {@code EntryArray.relocateKeys(KeyBuffer, KeyBuffer)} for more information
+     *
+     * @return false if the chunk is being rebalanced, and its keys were not relocated
+     */
+    boolean relocateKeys(ThreadContext ctx) {
+        if (!publish()) {
+            return false;
+        }
+        try {
+            entryHashSet.relocateKeys(ctx.key, ctx.tempKey);
+        } finally {
+            unpublish();
+        }
+        return true;
+    }
+
+    /********************************************************************************************/
+    /*-------------------------- Methods for looking up the keys -------------------------------*/
+
+    /**
+     * Look up a key in this chunk.
+     *
+     * @param ctx     The context that follows the operation following this key look up.
+     *                It will describe the state of the entry (key and value) associated with the input {@code key}.
+     *                Following are the possible states of the entry:
+     *                 (1) {@code key} was not found.
+     *                       This means there is no entry with the this key in this chunk.
+     *                       In this case, {@code (ctx.isKeyValid() == False) and (ctx.isValueValid() == False)}.
+     *                 (2) {@code key} was found.
+     *                       In this case, {@code (ctx.isKeyValid() == True)}
+     *                       The state of the value associated with {@code key} is described in
+     *                       {@code ctx.entryState}. It can be valid or deleted but not finalized.
+     * @param key     the key to look up
+     * @param keyHash the hash of the key to look up
+     */
+    void lookUp(ThreadContext ctx, K key, int keyHash) {
+        entryHashSet.lookUp(ctx, key, calculateEntryIdx(keyHash), keyHash);
+    }
+
+    /**
+     * Look up a serialized key in this chunk, see {@code lookUp(ctx, key, keyHash)}.
+     *
+     * @param ctx           The context that follows the operation following this key look up.
+     * @param serializedKey the serialized key to look up, must be a different buffer than ctx.key
+     * @param keyHash       the hash of the key to look up
+     */
+    void lookUp(ThreadContext ctx, KeyBuffer serializedKey, int keyHash) {
+        entryHashSet.lookUp(ctx, serializedKey, calculateEntryIdx(keyHash), keyHash);
+    }
+
+    /********************************************************************************************/
+    /*---------- Methods for managing the put/remove path of the keys and values  --------------*/
+
+    /**
+     * Allocates an entry for the key (or finds the entry already assigned with this key)
+     * and writes the key off-heap. See {@code EntryHashSet.allocateKey()} for more information.
+     *
+     * @param ctx     the context that will follow the operation following this key allocation
+     * @param key     the key to write
+     * @param keyHash the hash of the key to write
+     * @return true only if the allocation was successful.
+     *         Otherwise (false), the chunk is frozen or rebalance is required
+     */
+    boolean allocateEntryAndWriteKey(ThreadContext ctx, K key, int keyHash) {
+        // key allocation is published, so the rebalance can rely on all the keys assignments being
+        // completed (including their key hash) once the chunk is frozen
+        if (!publish()) {
+            return false;
+        }
+        try {
+            return entryHashSet.allocateKey(ctx, key, calculateEntryIdx(keyHash), keyHash);
+        } finally {
+            unpublish();
+        }
+    }
+
+    /**
+     * This function does the physical CAS of the value reference, which is the LP of the insertion.
+     * This is also the only place in which the size of Oak is increased.
+     *
+     * @param ctx The context that follows the operation since the key was found/created.
+     *            Holds the entry to which the value reference is linked, the old and new value references.
+     * @return true if the value reference was CASed successfully.
+     */
+    @Override
+    ValueUtils.ValueResult linkValue(ThreadContext ctx) {
+        if (entryHashSet.writeValueCommit(ctx) == ValueUtils.ValueResult.FALSE) {
+            return ValueUtils.ValueResult.FALSE;
+        }
+
+        // If we move a value, the size shouldn't change
+        if (!ctx.isNewValueForMove) {
+            externalSize.incrementAndGet();
+        }
+        return ValueUtils.ValueResult.TRUE;
+    }
+
+    /**
+     * The value of the entry was marked deleted off-heap (the LP of the deletion), this function
+     * marks the entry's value reference as deleted. See {@code EntryHashSet.deleteValueFinish(ctx)}.
+     *
+     * @param ctx The context that follows the operation since the key was found/created.
+     *            Holds the entry to change, the old value reference to CAS out.
+     * @return true if a rebalance is needed
+     * IMPORTANT: whether deleteValueFinish succeeded to mark the entry's value reference as
+     * deleted, or not, if there were no request to rebalance FALSE is going to be returned
+     */
+    boolean finalizeDeletion(ThreadContext ctx) {
+        if (ctx.entryState != EntryArray.EntryState.DELETED_NOT_FINALIZED) {
+            return false;
+        }
+        if (!publish()) {
+            return true;
+        }
+        try {
+            if (entryHashSet.deleteValueFinish(ctx)) {
+                externalSize.decrementAndGet();
+            }
+            return false;
+        } finally {
+            unpublish();
+        }
+    }
+
+    /********************************************************************************************/
+    /*------------------------- Methods that are used for rebalance  ---------------------------*/
+
+    /**
+     * Freezes this chunk and creates its replacements, holding only the valid entries of this chunk.
+     * If most of the assigned entries in this chunk are valid, the chunk is split into two children
+     * (extendible hashing): each child has the same capacity, is one bit deeper and is responsible for half of
+     * the key hashes range of this chunk. If the chunk is already at the maximal depth, it is replaced
+     * by a single chunk with doubled capacity. Otherwise, if most of the assigned entries in this chunk are deleted,
+     * it is replaced by a single chunk with the same capacity (compaction).
+     * Multiple threads can rebalance the same chunk concurrently, all of them will get the same replacements.
+     *
+     * @param tempValue a reusable buffer object for internal temporary usage
+     * @return the replacements of this chunk
+     */
+    List<HashChunk<K, V>> rebalance(ValueBuffer tempValue) {
+        freeze();
+        List<HashChunk<K, V>> newChunks = replacements.get();
+        if (newChunks != null) {
+            return newChunks; // this was done by another thread already
+        }
+
+        // the shape of the replacements is decided by an estimate of the live entries, as the entries may still be
+        // deleted until they are copied
+        int liveEntries = 0;
+        for (int ei = 0; ei < getMaxItems(); ei++) {
+            if (!entryHashSet.isEntryDeleted(tempValue, ei)) {
+                liveEntries++;
+            }
+        }
+
+        newChunks = new ArrayList<>(2);
+        if (liveEntries * 2 <= entryHashSet.getNumOfEntries()) {
+            newChunks.add(createReplacement(getMaxItems(), localDepth, hashPrefix)); // compaction
+        } else if (localDepth < FirstLevelHashArray.MSB_FOR_FIRST_LEVEL_HASH_MAX) {
+            newChunks.add(createReplacement(getMaxItems(), localDepth + 1, hashPrefix << 1));
+            newChunks.add(createReplacement(getMaxItems(), localDepth + 1, (hashPrefix << 1) | 1));
+        } else {
+            newChunks.add(createReplacement(getMaxItems() * 2, localDepth, hashPrefix));
+        }
+
+        // values that were marked deleted off-heap, but their deletion wasn't finalized (and size wasn't
+        // decreased) before the freeze. They are not copied, so the size is updated by the rebalance.
+        // Each value is read once, to decide whether it is copied or counted: a value that is deleted after it is
+        // copied is found (and its deletion is finalized) in the replacement by its remover
+        int notFinalizedDeletions = 0;
+        for (int ei = 0; ei < getMaxItems(); ei++) {
+            if (!entryHashSet.readValue(tempValue, ei)) {
+                continue; // no value, or its deletion was finalized
+            }
+            ValueUtils.ValueResult isDeleted = tempValue.getSlice().isDeleted();
+            if (isDeleted == ValueUtils.ValueResult.TRUE) {
+                notFinalizedDeletions++;
+                continue;
+            }
+            if (isDeleted != ValueUtils.ValueResult.FALSE) {
+                continue;
+            }
+            int keyHash = entryHashSet.getKeyHash(ei);
+            HashChunk<K, V> newChunk = newChunks.get(calculateReplacementIdx(keyHash, newChunks.size()));
+            int idx = newChunk.calculateEntryIdx(keyHash);
+            boolean isCopied = newChunk.entryHashSet.copyEntry(entryHashSet, ei, idx);
+            assert isCopied;
+        }
+        for (HashChunk<K, V> newChunk : newChunks) {
+            assert newChunk.entryHashSet.isEntrySetValidAfterRebalance();
+        }
+
+        // if fail here, another thread succeeded
+        if (replacements.compareAndSet(null, Collections.unmodifiableList(newChunks))) {
+            externalSize.addAndGet(-notFinalizedDeletions);
+        }
+        return replacements.get();
+    }
+
+    private HashChunk<K, V> createReplacement(int capacity, int newLocalDepth, int newHashPrefix) {
+        return new HashChunk<>(capacity, externalSize,
+            entryHashSet.valuesMemoryManager, entryHashSet.keysMemoryManager,
+            comparator, entryHashSet.keySerializer, entryHashSet.valueSerializer, newLocalDepth, newHashPrefix);
+    }
+
+    /**
+     * @return the index (in the replacements list) of the replacement that is responsible for the key hash
+     */
+    private int calculateReplacementIdx(int keyHash, int numOfReplacements) {
+        if (numOfReplacements == 1) {
+            return 0;
+        }
+        // the bit that follows this chunk's prefix
+        return (keyHash >>> (Integer.SIZE - 1 - localDepth)) & 1;
+    }
+
+    /**
+     * @param keyHash a key hash this chunk is responsible for
+     * @return the new chunk that replaced this chunk upon rebalance and is responsible for the key hash,
+     * or null if the rebalance is not done
+     */
+    HashChunk<K, V> getReplacement(int keyHash) {
+        List<HashChunk<K, V>> newChunks = replacements.get();
+        if (newChunks == null) {
+            return null;
+        }
+        return newChunks.get(calculateReplacementIdx(keyHash, newChunks.size()));
+    }
+
+    int getLocalDepth() {
+        return localDepth;
+    }
+
+    int getHashPrefix() {
+        return hashPrefix;
+    }
+
+    /**
+     * The key hashes are treated as unsigned 32 bits numbers, so a range of key hashes is
+     * represented using long numbers.
+     *
+     * @return the (exclusive) end of the range of key hashes this chunk is responsible for
+     */
+    long getHashRangeEnd() {
+        return ((long) hashPrefix + 1) << (Integer.SIZE - localDepth);
+    }
+}
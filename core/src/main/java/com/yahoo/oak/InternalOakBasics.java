@@ -0,0 +1,341 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * InternalOakBasics keeps the functionality that is common to the internal engines of all Oak variants:
+ * the ordered InternalOakMap (used by OakMap) and the InternalOakHash (used by OakHashMap).
+ */
+abstract class InternalOakBasics<K, V> {
+
+    /*-------------- Members --------------*/
+
+    static final int MAX_RETRIES = 1024;
+
+    protected final MemoryManager valuesMemoryManager;
+    protected final MemoryManager keysMemoryManager;
+    protected final AtomicInteger size;
+    protected final OakSerializer<K> keySerializer;
+    protected final OakSerializer<V> valueSerializer;
+    protected final ValueUtils valueOperator;
+    // The reference count is used to count the upper objects wrapping this internal map:
+    // OakMaps (including subMaps and Views) when all of the above are closed,
+    // his map can be closed and memory released.
+    private final AtomicInteger referenceCount = new AtomicInteger(1);
+    // The contexts that are free to be reused by the current thread, linked via ThreadContext.nextFree.
+    // More than one context is needed when an operation is invoked from within another operation of the same thread,
+    // e.g., from a user's function that is applied by compute().
+    private final ThreadLocal<ThreadContext> freeThreadContexts = new ThreadLocal<>();
+    // compacts the off-heap memory in the background, if started
+    private volatile MemoryCompactor compactor = null;
+
+    /*-------------- Constructors --------------*/
+
+    InternalOakBasics(OakSerializer<K> keySerializer, OakSerializer<V> valueSerializer,
+        MemoryManager vMM, MemoryManager kMM, ValueUtils valueOperator) {
+        this.size = new AtomicInteger(0);
+        this.valuesMemoryManager = vMM;
+        this.keysMemoryManager = kMM;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.valueOperator = valueOperator;
+    }
+
+    /*-------------- Closable --------------*/
+
+    /**
+     * cleans off heap memory
+     */
+    void close() {
+        int res = referenceCount.decrementAndGet();
+        // once reference count is zeroed, the map meant to be deleted and should not be used.
+        // reference count will never grow again
+        if (res == 0) {
+            if (compactor != null) {
+                compactor.stop();
+            }
+            try {
+                // closing the same memory manager (or memory allocator) twice,
+                // has the same effect as closing once
+                valuesMemoryManager.close();
+                keysMemoryManager.close();
+                freeThreadContexts.remove();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // yet another object started to refer to this internal map
+    void open() {
+        while (true) {
+            int res = referenceCount.get();
+            // once reference count is zeroed, the map meant to be deleted and should not be used.
+            // reference count should never grow again and the referral is not allowed
+            if (res == 0) {
+                throw new ConcurrentModificationException();
+            }
+            // although it is costly CAS is used here on purpose so we never increase
+            // zeroed reference count
+            if (referenceCount.compareAndSet(res, res + 1)) {
+                break;
+            }
+        }
+    }
+
+    /*-------------- size --------------*/
+
+    /**
+     * @return current off heap memory usage in bytes
+     */
+    long memorySize() {
+        if (valuesMemoryManager != keysMemoryManager) {
+            // if two memory managers are not the same instance
+            return valuesMemoryManager.allocated() + keysMemoryManager.allocated();
+        }
+        return valuesMemoryManager.allocated();
+    }
+
+    /**
+     * @return the ratio of the off-heap bytes taken from the blocks, that are not allocated (i.e., released and
+     * not reused yet, or unused)
+     */
+    double memoryFragmentationRatio() {
+        BlockMemoryAllocator valuesAllocator = valuesMemoryManager.getAllocator();
+        BlockMemoryAllocator keysAllocator = keysMemoryManager.getAllocator();
+        long reserved = valuesAllocator.reserved();
+        long allocated = valuesAllocator.allocated();
+        if (keysAllocator != valuesAllocator) {
+            reserved += keysAllocator.reserved();
+            allocated += keysAllocator.allocated();
+        }
+        return reserved == 0 ? 0 : Math.max(0, 1 - (double) allocated / reserved);
+    }
+
+    int entries() {
+        return size.get();
+    }
+
+    /*-------------- Context --------------*/
+
+    /**
+     * Should only be called from API methods at the beginning of the method and be reused in internal calls.
+     * The context is taken from the current thread's free contexts (a new one is created only if there is none),
+     * so the common path does not allocate. It must be returned via {@code releaseThreadContext()} in a finally
+     * block once the API method is done with it, after which it might be reused by the next operation of the
+     * thread. Hence, a Result returned from the context has to be consumed before the next operation.
+     *
+     * @return an invalidated context instance, used exclusively by the caller until it is released.
+     */
+    ThreadContext getThreadContext() {
+        // the keys and value headers that are read by the operation are not reclaimed (nor are their blocks
+        // returned) until its context is released
+        keysMemoryManager.startOperation();
+        valuesMemoryManager.startOperation();
+        ThreadContext ctx = freeThreadContexts.get();
+        if (ctx == null) {
+            // first operation of this thread, or all of its contexts are used by enclosing (reentrant) operations
+            return new ThreadContext(keysMemoryManager, valuesMemoryManager);
+        }
+        freeThreadContexts.set(ctx.nextFree);
+        ctx.nextFree = null;
+        ctx.invalidate();
+        return ctx;
+    }
+
+    /**
+     * Returns a context that was acquired by {@code getThreadContext()} to the current thread's free contexts.
+     * Must be called by the same thread that acquired the context.
+     *
+     * @param ctx the context to release, must not be used by the caller afterwards.
+     */
+    void releaseThreadContext(ThreadContext ctx) {
+        ctx.nextFree = freeThreadContexts.get();
+        freeThreadContexts.set(ctx);
+        valuesMemoryManager.finishOperation();
+        keysMemoryManager.finishOperation();
+    }
+
+    /*-------------- Methods --------------*/
+
+    /**
+     * Releases the keys that were dropped by a rebalance, i.e., the keys of the rebalanced chunks that are not
+     * referenced by their replacements. Must be invoked only once per rebalance, after the replacements are
+     * connected, and only if the keys memory manager defers the release until the concurrent readers are done.
+     * The input arrays are sorted by this method.
+     *
+     * @param oldKeyReferences the key references of the rebalanced chunks
+     * @param oldCount         the number of key references in oldKeyReferences
+     * @param newKeyReferences the key references of the replacements
+     * @param newCount         the number of key references in newKeyReferences
+     */
+    void releaseDroppedKeys(long[] oldKeyReferences, int oldCount, long[] newKeyReferences, int newCount) {
+        assert keysMemoryManager.isReleaseDeferred();
+        Arrays.sort(oldKeyReferences, 0, oldCount);
+        Arrays.sort(newKeyReferences, 0, newCount);
+        Slice slice = keysMemoryManager.getEmptySlice();
+        int newIdx = 0;
+        for (int oldIdx = 0; oldIdx < oldCount; oldIdx++) {
+            long reference = oldKeyReferences[oldIdx];
+            if (oldIdx > 0 && reference == oldKeyReferences[oldIdx - 1]) {
+                continue;
+            }
+            while (newIdx < newCount && newKeyReferences[newIdx] < reference) {
+                newIdx++;
+            }
+            if (newIdx < newCount && newKeyReferences[newIdx] == reference) {
+                continue; // the key is still referenced by a replacement
+            }
+            if (slice.decodeReference(reference)) {
+                slice.release();
+            }
+        }
+    }
+
+    /*-------------- Compaction --------------*/
+
+    /**
+     * Evacuates the blocks of the allocator whose ratio of released bytes is at least the given ratio, and
+     * relocates the keys and the values that reside in the evacuated blocks. The evacuated blocks are returned
+     * (e.g., to the blocks pool) once all their off-heap cuts are reclaimed, which is possible only after the
+     * concurrent readers of the relocated keys and values are done, so the blocks might be returned only by
+     * a following invocation. Thread safe, concurrent operations are not blocked.
+     *
+     * @param minReleasedRatio the minimal ratio of released bytes of a block that is evacuated
+     * @return the number of blocks that are evacuated but not yet returned
+     */
+    int compactMemory(double minReleasedRatio) {
+        if (!keysMemoryManager.isReleaseDeferred() || !valuesMemoryManager.isReleaseDeferred()) {
+            throw new UnsupportedOperationException(
+                "Memory compaction requires the keys and the values to be reclaimed after their readers are done");
+        }
+        BlockMemoryAllocator valuesAllocator = valuesMemoryManager.getAllocator();
+        BlockMemoryAllocator keysAllocator = keysMemoryManager.getAllocator();
+        int numOfEvacuated = valuesAllocator.evacuateSparseBlocks(minReleasedRatio);
+        if (keysAllocator != valuesAllocator) {
+            numOfEvacuated += keysAllocator.evacuateSparseBlocks(minReleasedRatio);
+        }
+        if (numOfEvacuated > 0) {
+            ThreadContext ctx = getThreadContext();
+            try {
+                relocateEvacuated(ctx);
+            } finally {
+                releaseThreadContext(ctx);
+            }
+        }
+        // the relocated keys and values were released by this thread
+        keysMemoryManager.flushReleases();
+        valuesMemoryManager.flushReleases();
+        return numOfEvacuated;
+    }
+
+    /**
+     * Starts compacting the off-heap memory periodically in the background, until the map is closed.
+     * See {@code compactMemory(double)}.
+     *
+     * @param intervalMillis the delay between the end of a compaction and the start of the next one
+     */
+    void startMemoryCompaction(long intervalMillis) {
+        assert compactor == null;
+        compactor = MemoryCompactor.start(this, intervalMillis, MemoryCompactor.DEFAULT_MIN_RELEASED_RATIO);
+    }
+
+    /**
+     * Relocates the keys and the values of all the chunks that reside in evacuated blocks.
+     * The entries that are concurrently updated (or rebalanced) might be skipped, they are relocated by
+     * the next compaction.
+     *
+     * @param ctx a context to be used for the relocation
+     */
+    abstract void relocateEvacuated(ThreadContext ctx);
+
+    /**
+     * Relocates the value of the entry described by {@code ctx}, if the value is valid and it resides in
+     * an evacuated block. The value must be read into {@code ctx} before this method is invoked.
+     */
+    void relocateValue(BasicChunk<K, V> c, ThreadContext ctx) {
+        if (ctx.entryState == EntryArray.EntryState.VALID
+            && valuesMemoryManager.getAllocator().isEvacuated(ctx.value.getSlice())) {
+            // if the value was updated or deleted meanwhile, it was moved out of the evacuated block anyway,
+            // otherwise, it is relocated by the next compaction
+            valueOperator.relocate(c, ctx, this);
+        }
+    }
+
+    /**
+     * Allocates a new value for the entry described by {@code ctx} and links it instead of the old value.
+     * Used by {@code ValueUtils} when the new value does not fit into the old value's off-heap space
+     * (or when the values are never updated in place).
+     *
+     * @return true if the new value was linked to the entry.
+     */
+    boolean overwriteExistingValueForMove(ThreadContext ctx, V newVal, BasicChunk<K, V> c) {
+        // given old entry index (inside ctx) and new value, while old value is locked,
+        // allocate new value, new value is going to be locked as well, write the new value
+        c.allocateValue(ctx, newVal, true);
+        // the moved value keeps its expiration time
+        ctx.newValue.getSlice().setExpiration(ctx.value.getSlice().getExpiration());
+        return linkNewValueForMove(ctx, c);
+    }
+
+    /**
+     * Links the new value of {@code ctx}, which was allocated (and written) for a move, to the entry
+     * described by {@code ctx} instead of the old value. The new value is released if it was not linked.
+     *
+     * @return true if the new value was linked to the entry.
+     */
+    abstract boolean linkNewValueForMove(ThreadContext ctx, BasicChunk<K, V> c);
+
+    /**
+     * Used when value of a key was possibly moved and we try to search for the given key
+     * through the map again.
+     *
+     * @param ctx The context key should be initialized with the key to refresh, and the context value
+     *            will be updated with the refreshed value.
+     * @reutrn true if the refresh was successful.
+     */
+    abstract boolean refreshValuePosition(ThreadContext ctx);
+
+    /**
+     * See {@code refreshValuePosition(ctx)} for more details.
+     *
+     * @param key   the key to refresh
+     * @param value the output value to update
+     * @return true if the refresh was successful.
+     */
+    boolean refreshValuePosition(KeyBuffer key, ValueBuffer value) {
+        ThreadContext ctx = getThreadContext();
+        try {
+            ctx.key.copyFrom(key);
+            boolean isSuccessful = refreshValuePosition(ctx);
+
+            if (!isSuccessful) {
+                return false;
+            }
+
+            value.copyFrom(ctx.value);
+            return true;
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
+    /*-------------- Iterators --------------*/
+
+    protected UnscopedBuffer getKeyUnscopedBuffer(ThreadContext ctx) {
+        return new UnscopedBuffer<>(new KeyBuffer(ctx.key));
+    }
+
+    protected UnscopedValueBufferSynced getValueUnscopedBuffer(ThreadContext ctx) {
+        return new UnscopedValueBufferSynced(ctx.key, ctx.value, valueOperator, this);
+    }
+}
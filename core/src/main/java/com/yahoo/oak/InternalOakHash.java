@@ -0,0 +1,1090 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The internal engine of OakHashMap. Keys are placed according to their hash, in two levels:
+ * the first level (FirstLevelHashArray) chooses the chunk according to the most significant bits
+ * of the key hash, and the second level (HashChunk) chooses the entry according to the least significant bits.
+ * Thus, a look up is O(1): neither the binary search nor the entries' linked list walk are needed.
+ * Iterations over OakHash are unordered.
+ */
+class InternalOakHash<K, V> extends InternalOakBasics<K, V> {
+
+    /*-------------- Constants --------------*/
+
+    // the (exclusive) end of the range of the key hashes, when treated as unsigned numbers
+    private static final long KEY_HASH_RANGE_END = 1L << Integer.SIZE;
+
+    /*-------------- Members --------------*/
+
+    private final FirstLevelHashArray<K, V> hashArray;    // first level of indexing
+    private final OakHasher<K> hasher;
+
+    /*-------------- Constructors --------------*/
+
+    /**
+     * @param oakHasher the keys hasher, if null the keys' {@code hashCode()} is used, and the serialized
+     *                  keys are deserialized whenever their hash is needed
+     */
+    InternalOakHash(OakSerializer<K> keySerializer, OakSerializer<V> valueSerializer,
+        OakComparator<K> oakComparator, OakHasher<K> oakHasher, MemoryManager vMM, MemoryManager kMM,
+        int chunkMaxItems, int msbForFirstLevelHash, ValueUtils valueOperator) {
+
+        super(keySerializer, valueSerializer, vMM, kMM, valueOperator);
+        this.hasher = (oakHasher != null) ? oakHasher : new OakHasher<K>() {
+            @Override
+            public int hash(K key) {
+                return key.hashCode();
+            }
+
+            @Override
+            public int hashSerialized(OakScopedReadBuffer serializedKey) {
+                return keySerializer.deserialize(serializedKey).hashCode();
+            }
+        };
+        this.hashArray = new FirstLevelHashArray<>(msbForFirstLevelHash, chunkMaxItems, this.size,
+            vMM, kMM, oakComparator, keySerializer, valueSerializer);
+    }
+
+    /*-------------- Methods --------------*/
+
+    /**
+     * Calculates the hash of a key, see {@code mixKeyHash()}.
+     */
+    private int calculateKeyHash(K key) {
+        return mixKeyHash(hasher.hash(key));
+    }
+
+    /**
+     * Calculates the hash of a serialized key, without its deserialization (if the hasher was provided).
+     */
+    private int calculateKeyHash(OakScopedReadBuffer serializedKey) {
+        return mixKeyHash(hasher.hashSerialized(serializedKey));
+    }
+
+    /**
+     * The bits of the hasher's output are mixed (MurmurHash3 finalizer), because both the most
+     * significant bits (first level) and the least significant bits (second level) are used for the key placement.
+     * The key hash is never EntryHashSet.INVALID_KEY_HASH.
+     */
+    private static int mixKeyHash(int hash) {
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h == EntryHashSet.INVALID_KEY_HASH) ? 1 : h;
+    }
+
+    @Override
+    boolean linkNewValueForMove(ThreadContext ctx, BasicChunk<K, V> bc) {
+        HashChunk<K, V> c = (HashChunk<K, V>) bc;
+        // in order to connect/overwrite the old entry to point to new value
+        // we need to publish as in the normal write process
+        if (!c.publish()) {
+            c.releaseNewValue(ctx);
+            rebalance(c, ctx);
+            return false;
+        }
+
+        // updating the old entry index
+        if (c.linkValue(ctx) != ValueUtils.ValueResult.TRUE) {
+            c.releaseNewValue(ctx);
+            c.unpublish();
+            return false;
+        }
+
+        c.unpublish();
+        return true;
+    }
+
+    /**
+     * The chunks are traversed according to the ranges of key hashes they are responsible for (like the
+     * iterators), and the keys and the values of their entries are relocated.
+     */
+    @Override
+    void relocateEvacuated(ThreadContext ctx) {
+        long keyHash = 0;
+        while (keyHash < KEY_HASH_RANGE_END) {
+            HashChunk<K, V> c = hashArray.findChunkIfExists((int) keyHash);
+            if (c == null) {
+                // the chunk wasn't created yet, skip the range of its first level cell
+                keyHash = hashArray.getCellRangeEnd((int) keyHash);
+                continue;
+            }
+            if (c.relocateKeys(ctx)) {
+                for (int ei = 0; ei < c.getMaxItems(); ei++) {
+                    ctx.invalidate();
+                    ctx.initEntryContext(ei);
+                    c.readValue(ctx);
+                    relocateValue(c, ctx);
+                }
+            }
+            keyHash = c.getHashRangeEnd();
+        }
+    }
+
+    /**
+     * @param c   - HashChunk to rebalance
+     * @param ctx - the context of the operation that requires the rebalance
+     */
+    private void rebalance(HashChunk<K, V> c, ThreadContext ctx) {
+        List<HashChunk<K, V>> newChunks = c.rebalance(ctx.tempValue);
+        // the replacements are installed in the first level, even if it was already done by another thread
+        // (it could be lost due to the concurrent doubling of the first level)
+        hashArray.replaceChunk(c, newChunks);
+        // only the thread that releases the chunk releases its dropped keys, so they are released once
+        if (c.release() && keysMemoryManager.isReleaseDeferred()) {
+            releaseDroppedKeys(c, newChunks);
+        }
+    }
+
+    private void releaseDroppedKeys(HashChunk<K, V> c, List<HashChunk<K, V>> newChunks) {
+        long[] oldKeyReferences = new long[c.getMaxItems()];
+        int oldCount = c.readKeyReferences(oldKeyReferences, 0);
+        int newCapacity = 0;
+        for (HashChunk<K, V> newChunk : newChunks) {
+            newCapacity += newChunk.getMaxItems();
+        }
+        long[] newKeyReferences = new long[newCapacity];
+        int newCount = 0;
+        for (HashChunk<K, V> newChunk : newChunks) {
+            newCount = newChunk.readKeyReferences(newKeyReferences, newCount);
+        }
+        releaseDroppedKeys(oldKeyReferences, oldCount, newKeyReferences, newCount);
+    }
+
+    private boolean inTheMiddleOfRebalance(HashChunk<K, V> c, ThreadContext ctx) {
+        BasicChunk.State state = c.state();
+        if (state == BasicChunk.State.FROZEN || state == BasicChunk.State.RELEASED) {
+            rebalance(c, ctx);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean finalizeDeletion(HashChunk<K, V> c, ThreadContext ctx) {
+        if (ctx.isKeyValid()) {
+            if (c.finalizeDeletion(ctx)) {
+                rebalance(c, ctx);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isAfterRebalanceOrValueUpdate(HashChunk<K, V> c, ThreadContext ctx) {
+        // If chunk is frozen, can't proceed with put, need to help rebalancer first,
+        // rebalance is done as part of inTheMiddleOfRebalance.
+        // Also if value is off-heap deleted, we need to finalizeDeletion on-heap, which can
+        // cause rebalance as well. If rebalance happened finalizeDeletion returns true.
+        // After rebalance we need to restart.
+        if (inTheMiddleOfRebalance(c, ctx) || finalizeDeletion(c, ctx)) {
+            return true;
+        }
+
+        // Value can be valid again, if key was found and partially deleted value needed help.
+        // But in the meanwhile value was reset to be another, valid value.
+        return ctx.isValueValid();
+    }
+
+    // returns false when restart is needed
+    // (if rebalance happened or valid entry with same key was found)
+    private boolean allocateEntryAndWriteKey(HashChunk<K, V> c, ThreadContext ctx, K key, int keyHash) {
+        // HashChunk allocates the entry (holding the key) and ctx is going to be updated
+        // to be used by subsequent requests to write value.
+        // If the key is already assigned to an entry, this entry is used.
+        if (!c.allocateEntryAndWriteKey(ctx, key, keyHash)) {
+            rebalance(c, ctx); // there was no space to allocate new entry, need to rebalance
+            return false;     // after rebalance always restart
+        }
+        // If our key was found with a valid value, or with a value which deletion needs to be finalized,
+        // returning here false will cause the restart so the value will be found and processed
+        return ctx.entryState != EntryArray.EntryState.VALID
+            && ctx.entryState != EntryArray.EntryState.DELETED_NOT_FINALIZED;
+    }
+
+    // link the value (previously allocated and written into ctx.newValue) to the entry
+    // returns false when restart is needed
+    private boolean linkValue(HashChunk<K, V> c, ThreadContext ctx) {
+        if (!c.publish()) {
+            c.releaseNewValue(ctx);
+            rebalance(c, ctx);
+            return false;
+        }
+
+        if (c.linkValue(ctx) != ValueUtils.ValueResult.TRUE) {
+            c.releaseNewValue(ctx);
+            c.unpublish();
+            return false;
+        }
+        c.unpublish();
+        return true;
+    }
+
+    /*-------------- OakHashMap Methods --------------*/
+
+    // put the value associated with the key, if key existed old value is overwritten
+    V put(K key, V value, OakTransformer<V> transformer) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+
+        ThreadContext ctx = getThreadContext();
+        try {
+            int keyHash = calculateKeyHash(key);
+
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                HashChunk<K, V> c = hashArray.findChunk(keyHash); // find chunk matching key
+                c.lookUp(ctx, key, keyHash);
+                // If there is a matching value reference for the given key, and it is not marked as deleted,
+                // then this put changes the slice pointed by this value reference.
+                if (ctx.isValueValid()) {
+                    // there is a value and it is not deleted
+                    Result res = valueOperator.exchange(c, ctx, value, transformer, valueSerializer, this);
+                    if (res.operationResult == ValueUtils.ValueResult.TRUE) {
+                        return (V) res.value;
+                    }
+                    // Exchange failed because the value was deleted/moved between lookup and exchange. Continue with
+                    // insertion.
+                    continue;
+                }
+
+                if (isAfterRebalanceOrValueUpdate(c, ctx)) {
+                    continue;
+                }
+
+                // AT THIS POINT Key wasn't found (key and value not valid)
+                if (!allocateEntryAndWriteKey(c, ctx, key, keyHash)) {
+                    continue; // allocation wasn't successful and resulted in rebalance - retry
+                }
+
+                c.allocateValue(ctx, value, false); // write value in place
+
+                if (linkValue(c, ctx)) {
+                    return null; // null can be returned only in zero-copy case
+                }
+            }
+            throw new RuntimeException("put failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
+    // put the value associated with the key, only if key didn't exist
+    // returned results describes whether the value was inserted or not
+    Result putIfAbsent(K key, V value, OakTransformer<V> transformer) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+
+        ThreadContext ctx = getThreadContext();
+        try {
+            int keyHash = calculateKeyHash(key);
+
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                HashChunk<K, V> c = hashArray.findChunk(keyHash); // find chunk matching key
+                c.lookUp(ctx, key, keyHash);
+                // If exists a matching value reference for the given key, and it isn't marked deleted,
+                // organize the return value: false for ZC, and old value deserialization for non-ZC
+                if (ctx.isValueValid()) {
+                    if (transformer == null) {
+                        return ctx.result.withFlag(ValueUtils.ValueResult.FALSE);
+                    }
+                    Result res = valueOperator.transform(ctx.result, ctx.value, transformer);
+                    if (res.operationResult == ValueUtils.ValueResult.TRUE) {
+                        return res;
+                    }
+                    continue;
+                }
+
+                if (isAfterRebalanceOrValueUpdate(c, ctx)) {
+                    continue;
+                }
+
+                // AT THIS POINT Key wasn't found (key and value not valid)
+                if (!allocateEntryAndWriteKey(c, ctx, key, keyHash)) {
+                    continue; // allocation wasn't successful and resulted in rebalance - retry
+                }
+
+                c.allocateValue(ctx, value, false); // write value in place
+
+                if (linkValue(c, ctx)) {
+                    return ctx.result.withFlag(ValueUtils.ValueResult.TRUE);
+                }
+            }
+
+            throw new RuntimeException("putIfAbsent failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
+    // if key didn't exist, put the value to be associated with the key
+    // otherwise perform compute on the existing value
+    // return false if compute happened, true if put happened
+    boolean putIfAbsentComputeIfPresent(K key, V value, Consumer<OakScopedWriteBuffer> computer) {
+        if (key == null || value == null || computer == null) {
+            throw new NullPointerException();
+        }
+
+        ThreadContext ctx = getThreadContext();
+        try {
+            int keyHash = calculateKeyHash(key);
+
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                HashChunk<K, V> c = hashArray.findChunk(keyHash); // find chunk matching key
+                c.lookUp(ctx, key, keyHash);
+                // If there is a matching value reference for the given key, and it is not marked as deleted,
+                // then apply compute on the existing value
+                if (ctx.isValueValid()) {
+                    ValueUtils.ValueResult res = valueOperator.compute(c, ctx, computer, this);
+                    if (res == ValueUtils.ValueResult.TRUE) {
+                        // compute was successful and the value wasn't found deleted; in case
+                        // this value was already found as deleted, continue to allocate a new value slice
+                        return false;
+                    } else if (res == ValueUtils.ValueResult.RETRY) {
+                        continue;
+                    }
+                }
+
+                if (isAfterRebalanceOrValueUpdate(c, ctx)) {
+                    continue;
+                }
+
+                // AT THIS POINT Key wasn't found (key and value not valid)
+                if (!allocateEntryAndWriteKey(c, ctx, key, keyHash)) {
+                    continue; // allocation wasn't successful and resulted in rebalance - retry
+                }
+
+                c.allocateValue(ctx, value, false); // write value in place
+
+                if (linkValue(c, ctx)) {
+                    return true;
+                }
+            }
+
+            throw new RuntimeException("putIfAbsentComputeIfPresent failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
+    // associate the key with the output of the remapping function, which is applied on the current value
+    // (or on null if there is no mapping for the key). The function is applied on an existing value while
+    // holding its write lock, so it is applied once on that value. If there is no mapping, the function is
+    // applied on null before the entry of the computed value is linked, so if another value is linked first
+    // (or the chunk is rebalanced), the attempt is retried, and the function is applied again (on the linked
+    // value, if any), as ConcurrentMap.compute() allows.
+    // If the function returns null, the mapping is removed (or not inserted).
+    // returns the new value associated with the key, or null if there is none
+    V compute(K key, Function<? super V, ? extends V> remappingFunction) {
+        if (key == null || remappingFunction == null) {
+            throw new NullPointerException();
+        }
+
+        ThreadContext ctx = getThreadContext();
+        try {
+            int keyHash = calculateKeyHash(key);
+
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                HashChunk<K, V> c = hashArray.findChunk(keyHash); // find chunk matching key
+                c.lookUp(ctx, key, keyHash);
+                // If there is a matching value reference for the given key, and it is not marked as deleted,
+                // then apply the remapping function on the existing value
+                if (ctx.isValueValid()) {
+                    Result res = valueOperator.compute(c, ctx, remappingFunction, valueSerializer, this);
+                    if (res.operationResult != ValueUtils.ValueResult.TRUE) {
+                        // the value was deleted/moved between lookup and compute, retry
+                        continue;
+                    }
+                    if (res.value != null) {
+                        return (V) res.value;
+                    }
+                    // AT THIS POINT value was marked deleted off-heap by this thread,
+                    // continue to set the entry's value reference as deleted.
+                    // If rebalance is needed, the deleted value is disregarded by the rebalance.
+                    ctx.entryState = EntryArray.EntryState.DELETED_NOT_FINALIZED;
+                    finalizeDeletion(c, ctx);
+                    return null;
+                }
+
+                if (isAfterRebalanceOrValueUpdate(c, ctx)) {
+                    continue;
+                }
+
+                // the function is applied before the value is linked, and is applied again upon a retry
+                V value = remappingFunction.apply(null);
+                if (value == null) {
+                    return null;
+                }
+
+                // AT THIS POINT Key wasn't found (key and value not valid)
+                if (!allocateEntryAndWriteKey(c, ctx, key, keyHash)) {
+                    continue; // allocation wasn't successful and resulted in rebalance - retry
+                }
+
+                c.allocateValue(ctx, value, false); // write value in place
+
+                if (linkValue(c, ctx)) {
+                    return value;
+                }
+            }
+
+            throw new RuntimeException("compute failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
+    // if key didn't exist, associate it with the output of the mapping function (unless it is null)
+    // returns the current value associated with the key (deserialized using the transformer),
+    // or null if there is none
+    V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction, OakTransformer<V> transformer) {
+        if (key == null || mappingFunction == null || transformer == null) {
+            throw new NullPointerException();
+        }
+
+        ThreadContext ctx = getThreadContext();
+        try {
+            int keyHash = calculateKeyHash(key);
+
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                HashChunk<K, V> c = hashArray.findChunk(keyHash); // find chunk matching key
+                c.lookUp(ctx, key, keyHash);
+                // If exists a matching value reference for the given key, and it isn't marked deleted,
+                // return its deserialization
+                if (ctx.isValueValid()) {
+                    Result res = valueOperator.transform(ctx.result, ctx.value, transformer);
+                    if (res.operationResult == ValueUtils.ValueResult.TRUE) {
+                        return (V) res.value;
+                    }
+                    continue;
+                }
+
+                if (isAfterRebalanceOrValueUpdate(c, ctx)) {
+                    continue;
+                }
+
+                V value = mappingFunction.apply(key);
+                if (value == null) {
+                    return null;
+                }
+
+                // AT THIS POINT Key wasn't found (key and value not valid)
+                if (!allocateEntryAndWriteKey(c, ctx, key, keyHash)) {
+                    continue; // allocation wasn't successful and resulted in rebalance - retry
+                }
+
+                c.allocateValue(ctx, value, false); // write value in place
+
+                if (linkValue(c, ctx)) {
+                    return value;
+                }
+            }
+
+            throw new RuntimeException("computeIfAbsent failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
+    // if key exists, remove the key-value mapping from the map
+    Result remove(K key, V oldValue, OakTransformer<V> transformer) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+
+        // when logicallyDeleted is true, it means we have marked the value as deleted.
+        // Note that the entry will remain linked until rebalance happens.
+        boolean logicallyDeleted = false;
+        V v = null;
+
+        ThreadContext ctx = getThreadContext();
+        try {
+            int keyHash = calculateKeyHash(key);
+
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                HashChunk<K, V> c = hashArray.findChunk(keyHash); // find chunk matching key
+                c.lookUp(ctx, key, keyHash);
+
+                if (!ctx.isKeyValid()) {
+                    // There is no such key. If we did logical deletion and someone else did the physical deletion,
+                    // then the old value is saved in v. Otherwise v is (correctly) null
+                    return transformer == null ? ctx.result.withFlag(logicallyDeleted) : ctx.result.withValue(v);
+                } else if (!ctx.isValueValid()) {
+                    // There is such a key, but the value is deleted off-heap only
+                    if (!finalizeDeletion(c, ctx)) {
+                        // finalize deletion returns false, meaning no rebalance was requested
+                        // and there was an attempt to finalize deletion
+                        return transformer == null ? ctx.result.withFlag(logicallyDeleted) : ctx.result.withValue(v);
+                    }
+                    continue;
+                }
+
+                if (inTheMiddleOfRebalance(c, ctx)) {
+                    continue;
+                }
+
+                // AT THIS POINT Key was found with a valid value and context is updated
+                if (logicallyDeleted) {
+                    // This is the case where we logically deleted this entry (marked the value off-heap as deleted),
+                    // but someone helped and (marked the value reference as deleted) and reused the entry
+                    // before we marked the value reference as deleted. We have the previous value saved in v.
+                    return transformer == null ? ctx.result.withFlag(ValueUtils.ValueResult.TRUE) :
+                        ctx.result.withValue(v);
+                } else {
+                    Result removeResult = valueOperator.remove(ctx, oldValue, transformer);
+                    if (removeResult.operationResult == ValueUtils.ValueResult.FALSE) {
+                        // we didn't succeed to remove the value: it didn't contain oldValue, or was already marked
+                        // as deleted by someone else)
+                        return ctx.result.withFlag(ValueUtils.ValueResult.FALSE);
+                    } else if (removeResult.operationResult == ValueUtils.ValueResult.RETRY) {
+                        continue;
+                    }
+                    // we have marked this value as deleted (successful remove)
+                    logicallyDeleted = true;
+                    v = (V) removeResult.value;
+                }
+
+                // AT THIS POINT value was marked deleted off-heap by this thread,
+                // continue to set the entry's value reference as deleted
+                assert ctx.entryIndex != EntryArray.INVALID_ENTRY_INDEX;
+                assert ctx.isValueValid();
+                ctx.entryState = EntryArray.EntryState.DELETED_NOT_FINALIZED;
+                if (finalizeDeletion(c, ctx)) {
+                    // rebalance was needed, restart to finalize the deletion in the new chunk
+                    continue;
+                }
+                return transformer == null ? ctx.result.withFlag(logicallyDeleted) : ctx.result.withValue(v);
+            }
+
+            throw new RuntimeException("remove failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
+    // the zero-copy version of get
+    OakUnscopedBuffer get(K key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+
+        ThreadContext ctx = getThreadContext();
+        try {
+            int keyHash = calculateKeyHash(key);
+            HashChunk<K, V> c = hashArray.findChunk(keyHash); // find chunk matching key
+            c.lookUp(ctx, key, keyHash);
+            if (!ctx.isValueValid()) {
+                return null;
+            }
+            return getValueUnscopedBuffer(ctx);
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
+    // if key with a valid value exists in the map, apply compute function on the value
+    // return true if compute did happen
+    boolean computeIfPresent(K key, Consumer<OakScopedWriteBuffer> computer) {
+        if (key == null || computer == null) {
+            throw new NullPointerException();
+        }
+
+        ThreadContext ctx = getThreadContext();
+        try {
+            int keyHash = calculateKeyHash(key);
+
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                HashChunk<K, V> c = hashArray.findChunk(keyHash); // find chunk matching key
+                c.lookUp(ctx, key, keyHash);
+                if (ctx.isValueValid()) {
+                    ValueUtils.ValueResult res = valueOperator.compute(c, ctx, computer, this);
+                    if (res == ValueUtils.ValueResult.TRUE) {
+                        // compute was successful and the value wasn't found deleted; in case
+                        // this value was already marked as deleted, continue to construct another slice
+                        return true;
+                    } else if (res == ValueUtils.ValueResult.RETRY) {
+                        continue;
+                    }
+                }
+                return false;
+            }
+
+            throw new RuntimeException("computeIfPresent failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
+    /**
+     * Used when value of a key was possibly moved and we try to search for the given key
+     * through the OakHash again.
+     *
+     * @param ctx The context key should be initialized with the key to refresh, and the context value
+     *            will be updated with the refreshed value.
+     * @reutrn true if the refresh was successful.
+     */
+    @Override
+    boolean refreshValuePosition(ThreadContext ctx) {
+        // the look up reads the entries' keys into ctx.key, so the key to refresh is kept in ctx.tempKey
+        ctx.tempKey.copyFrom(ctx.key);
+        int keyHash = calculateKeyHash(ctx.tempKey);
+        HashChunk<K, V> c = hashArray.findChunk(keyHash); // find chunk matching key
+        c.lookUp(ctx, ctx.tempKey, keyHash);
+        return ctx.isValueValid();
+    }
+
+    // the non-ZC variation of the get
+    <T> T getValueTransformation(K key, OakTransformer<T> transformer) {
+        if (key == null || transformer == null) {
+            throw new NullPointerException();
+        }
+
+        ThreadContext ctx = getThreadContext();
+        try {
+            int keyHash = calculateKeyHash(key);
+
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                HashChunk<K, V> c = hashArray.findChunk(keyHash); // find chunk matching key
+                c.lookUp(ctx, key, keyHash);
+                if (!ctx.isValueValid()) {
+                    return null;
+                }
+
+                Result res = valueOperator.transform(ctx.result, ctx.value, transformer);
+                if (res.operationResult == ValueUtils.ValueResult.RETRY) {
+                    continue;
+                }
+                return (T) res.value;
+            }
+
+            throw new RuntimeException("getValueTransformation failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
+    V replace(K key, V value, OakTransformer<V> valueDeserializeTransformer) {
+        ThreadContext ctx = getThreadContext();
+        try {
+            int keyHash = calculateKeyHash(key);
+
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                HashChunk<K, V> c = hashArray.findChunk(keyHash); // find chunk matching key
+                c.lookUp(ctx, key, keyHash);
+                if (!ctx.isValueValid()) {
+                    return null;
+                }
+
+                // will return null if the value is deleted
+                Result result = valueOperator.exchange(c, ctx, value, valueDeserializeTransformer, valueSerializer,
+                    this);
+                if (result.operationResult != ValueUtils.ValueResult.RETRY) {
+                    return (V) result.value;
+                }
+            }
+
+            throw new RuntimeException("replace failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
+    boolean replace(K key, V oldValue, V newValue, OakTransformer<V> valueDeserializeTransformer) {
+        ThreadContext ctx = getThreadContext();
+        try {
+            int keyHash = calculateKeyHash(key);
+
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                HashChunk<K, V> c = hashArray.findChunk(keyHash); // find chunk matching key
+                c.lookUp(ctx, key, keyHash);
+                if (!ctx.isValueValid()) {
+                    return false;
+                }
+
+                ValueUtils.ValueResult res = valueOperator.compareExchange(c, ctx, oldValue, newValue,
+                        valueDeserializeTransformer, valueSerializer, this);
+                if (res == ValueUtils.ValueResult.RETRY) {
+                    continue;
+                }
+                return res == ValueUtils.ValueResult.TRUE;
+            }
+
+            throw new RuntimeException("replace failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
+    /*-------------- Iterators --------------*/
+
+    /**
+     * Base of iterator classes.
+     * The iteration is unordered, it goes over the chunks in the order of the key hashes range they
+     * are responsible for, and over the entries of each chunk. The iteration is weakly consistent:
+     * a chunk that was replaced upon rebalance while it is iterated, is still iterated, so the mappings
+     * updated in its replacements after the rebalance may not be reflected.
+     */
+    abstract class Iter<T> implements Iterator<T> {
+
+        /* the (unsigned) key hash from which the next chunk is searched, as long to represent 2^32 */
+        private long nextChunkKeyHash;
+        /* the current chunk, or null if the iteration is over */
+        private HashChunk<K, V> chunk;
+        /* the next entry index to return from next() */
+        private int entryIdx;
+
+        /**
+         * An iterator cannot be accesses concurrently by multiple threads.
+         * Thus, it is safe to have its own thread context.
+         */
+        protected ThreadContext ctx;
+
+        /**
+         * The keys that might be read by the iterator (also between its steps) are not reclaimed
+         * until the guard is released, once the iteration is over.
+         */
+        private final MemoryManager.IterationGuard guard;
+
+        Iter() {
+            this.ctx = new ThreadContext(keysMemoryManager, valuesMemoryManager);
+            this.guard = keysMemoryManager.startIteration(this);
+            this.nextChunkKeyHash = 0;
+            this.chunk = null;
+            this.entryIdx = EntryArray.INVALID_ENTRY_INDEX;
+            valuesMemoryManager.startOperation();
+            try {
+                advanceState();
+            } finally {
+                valuesMemoryManager.finishOperation();
+            }
+        }
+
+        public final boolean hasNext() {
+            return (chunk != null);
+        }
+
+        // the actual next()
+        public abstract T next();
+
+        /**
+         * Advances next to the following entry with a valid value.
+         * The key and the value of the current entry are read into ctx.key and ctx.value
+         */
+        void advance() {
+            // the value headers read by the step are not released (nor are their blocks returned) before it is done
+            valuesMemoryManager.startOperation();
+            try {
+                while (true) {
+                    if (chunk == null) {
+                        throw new NoSuchElementException();
+                    }
+                    final HashChunk<K, V> c = chunk;
+                    final int curIndex = entryIdx;
+                    advanceState();
+
+                    // build the entry context that sets key and value references, and checks for value validity.
+                    // The keys of deleted entries are not returned, as the entry is kept assigned
+                    // to the key after deletion
+                    ctx.initEntryContext(curIndex);
+                    c.readValue(ctx);
+                    if (ctx.isValueValid()) {
+                        c.readKey(ctx);
+                        return;
+                    }
+                }
+            } finally {
+                valuesMemoryManager.finishOperation();
+            }
+        }
+
+        /**
+         * Advances next to the following entry with a valid value, without creating a ByteBuffer for the key.
+         */
+        void advanceStream(UnscopedBuffer<KeyBuffer> key, UnscopedBuffer<ValueBuffer> value) {
+            // the value headers read by the step are not released (nor are their blocks returned) before it is done
+            valuesMemoryManager.startOperation();
+            try {
+                assert key != null || value != null;
+
+                while (true) {
+                    if (chunk == null) {
+                        throw new NoSuchElementException();
+                    }
+                    final HashChunk<K, V> c = chunk;
+                    final int curIndex = entryIdx;
+                    advanceState();
+
+                    ValueBuffer valueBuffer = (value != null) ? value.getInternalScopedReadBuffer() : ctx.tempValue;
+                    // If the current value is deleted, then advance and try again
+                    if (!c.readValueFromEntryIndex(valueBuffer, curIndex)) {
+                        continue;
+                    }
+                    if (key != null) {
+                        boolean isKeyValid = c.readKeyFromEntryIndex(key.getInternalScopedReadBuffer(), curIndex);
+                        assert isKeyValid;
+                    }
+                    return;
+                }
+            } finally {
+                valuesMemoryManager.finishOperation();
+            }
+        }
+
+        /**
+         * Moves the state to the next entry (in this chunk or in the following chunks)
+         * that has a valid value reference
+         */
+        private void advanceState() {
+            while (true) {
+                entryIdx++;
+                while (chunk == null || entryIdx >= chunk.getMaxItems()) {
+                    if (!moveToNextChunk()) {
+                        guard.release();
+                        return; // End of iteration
+                    }
+                }
+                if (chunk.readValueFromEntryIndex(ctx.tempValue, entryIdx)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * The chunks are iterated according to the ranges of key hashes they are responsible for,
+         * so the iteration is not affected by the concurrent splits or first level doubling.
+         *
+         * @return false if there are no more chunks
+         */
+        private boolean moveToNextChunk() {
+            if (chunk != null) {
+                nextChunkKeyHash = chunk.getHashRangeEnd();
+                chunk = null;
+            }
+            while (nextChunkKeyHash < KEY_HASH_RANGE_END) {
+                chunk = hashArray.findChunkIfExists((int) nextChunkKeyHash);
+                if (chunk != null) {
+                    entryIdx = 0;
+                    return true;
+                }
+                // the chunk wasn't created yet, skip the range of its first level cell
+                nextChunkKeyHash = hashArray.getCellRangeEnd((int) nextChunkKeyHash);
+            }
+            return false;
+        }
+    }
+
+    class ValueIterator extends Iter<OakUnscopedBuffer> {
+
+        @Override
+        public OakUnscopedBuffer next() {
+            advance();
+            return getValueUnscopedBuffer(ctx);
+        }
+    }
+
+    class ValueStreamIterator extends Iter<OakUnscopedBuffer> {
+
+        private final UnscopedBuffer<ValueBuffer> value =
+                new UnscopedBuffer<>(new ValueBuffer(valuesMemoryManager.getEmptySlice()));
+
+        @Override
+        public OakUnscopedBuffer next() {
+            advanceStream(null, value);
+            return value;
+        }
+    }
+
+    class ValueTransformIterator<T> extends Iter<T> {
+
+        final OakTransformer<T> transformer;
+
+        ValueTransformIterator(OakTransformer<T> transformer) {
+            super();
+            this.transformer = transformer;
+        }
+
+        public T next() {
+            advance();
+            Result res = valueOperator.transform(ctx.result, ctx.value, transformer);
+            // If this value is deleted, try the next one
+            if (res.operationResult == ValueUtils.ValueResult.FALSE) {
+                return next();
+            }
+            while (res.operationResult == ValueUtils.ValueResult.RETRY) {
+                // if the value was moved, fetch it again using the (serialized) key
+                if (!refreshValuePosition(ctx)) {
+                    // the value was deleted, try the next one
+                    return next();
+                }
+                res = valueOperator.transform(ctx.result, ctx.value, transformer);
+                if (res.operationResult == ValueUtils.ValueResult.FALSE) {
+                    return next();
+                }
+            }
+            return (T) res.value;
+        }
+    }
+
+    class EntryIterator extends Iter<Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer>> {
+
+        public Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer> next() {
+            advance();
+            return new AbstractMap.SimpleImmutableEntry<>(getKeyUnscopedBuffer(ctx), getValueUnscopedBuffer(ctx));
+        }
+    }
+
+    class EntryStreamIterator extends Iter<Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer>>
+            implements Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer> {
+
+        private final UnscopedBuffer<KeyBuffer> key =
+            new UnscopedBuffer<>(new KeyBuffer(keysMemoryManager.getEmptySlice()));
+        private final UnscopedBuffer<ValueBuffer> value =
+                new UnscopedBuffer<>(new ValueBuffer(valuesMemoryManager.getEmptySlice()));
+
+        public Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer> next() {
+            advanceStream(key, value);
+            return this;
+        }
+
+        @Override
+        public OakUnscopedBuffer getKey() {
+            return key;
+        }
+
+        @Override
+        public OakUnscopedBuffer getValue() {
+            return value;
+        }
+
+        @Override
+        public OakUnscopedBuffer setValue(OakUnscopedBuffer value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    class EntryTransformIterator<T> extends Iter<T> {
+
+        final Function<Map.Entry<OakScopedReadBuffer, OakScopedReadBuffer>, T> transformer;
+
+        EntryTransformIterator(Function<Map.Entry<OakScopedReadBuffer, OakScopedReadBuffer>, T> transformer) {
+            super();
+            assert (transformer != null);
+            this.transformer = transformer;
+        }
+
+        public T next() {
+            advance();
+            ValueUtils.ValueResult res = ctx.value.s.lockRead();
+            if (res == ValueUtils.ValueResult.FALSE) {
+                return next();
+            } else if (res == ValueUtils.ValueResult.RETRY) {
+                do {
+                    boolean isSuccessful = refreshValuePosition(ctx);
+                    if (!isSuccessful) {
+                        return next();
+                    }
+                    res = ctx.value.s.lockRead();
+                } while (res != ValueUtils.ValueResult.TRUE);
+            }
+
+            Map.Entry<OakScopedReadBuffer, OakScopedReadBuffer> entry =
+                    new AbstractMap.SimpleEntry<>(ctx.key, ctx.value);
+
+            T transformation = transformer.apply(entry);
+            ctx.value.s.unlockRead();
+            return transformation;
+        }
+    }
+
+    class KeyIterator extends Iter<OakUnscopedBuffer> {
+
+        @Override
+        public OakUnscopedBuffer next() {
+            advance();
+            return getKeyUnscopedBuffer(ctx);
+        }
+    }
+
+    class KeyStreamIterator extends Iter<OakUnscopedBuffer> {
+
+        private final UnscopedBuffer<KeyBuffer> key
+            = new UnscopedBuffer<>(new KeyBuffer(keysMemoryManager.getEmptySlice()));
+
+        @Override
+        public OakUnscopedBuffer next() {
+            advanceStream(key, null);
+            return key;
+        }
+    }
+
+    class KeyTransformIterator<T> extends Iter<T> {
+
+        final OakTransformer<T> transformer;
+
+        KeyTransformIterator(OakTransformer<T> transformer) {
+            super();
+            this.transformer = transformer;
+        }
+
+        public T next() {
+            advance();
+            return transformer.apply(ctx.key);
+        }
+    }
+
+    // Factory methods for iterators
+
+    Iterator<OakUnscopedBuffer> valuesBufferViewIterator() {
+        return new ValueIterator();
+    }
+
+    Iterator<Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer>> entriesBufferViewIterator() {
+        return new EntryIterator();
+    }
+
+    Iterator<OakUnscopedBuffer> keysBufferViewIterator() {
+        return new KeyIterator();
+    }
+
+    Iterator<OakUnscopedBuffer> valuesStreamIterator() {
+        return new ValueStreamIterator();
+    }
+
+    Iterator<Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer>> entriesStreamIterator() {
+        return new EntryStreamIterator();
+    }
+
+    Iterator<OakUnscopedBuffer> keysStreamIterator() {
+        return new KeyStreamIterator();
+    }
+
+    <T> Iterator<T> valuesTransformIterator(OakTransformer<T> transformer) {
+        return new ValueTransformIterator<>(transformer);
+    }
+
+    <T> Iterator<T> entriesTransformIterator(Function<Map.Entry<OakScopedReadBuffer, OakScopedReadBuffer>,
+        T> transformer) {
+        return new EntryTransformIterator<>(transformer);
+    }
+
+    <T> Iterator<T> keysTransformIterator(OakTransformer<T> transformer) {
+        return new KeyTransformIterator<>(transformer);
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * InternalOakLongMap is the internal engine of OakLongMap: an ordered map of LongChunks, whose keys and values
+ * are inlined in their entries.
+ * <p>
+ * An update publishes itself in its chunk, and updates an entry in place (or links a new entry) by a CAS, so the
+ * updates of a chunk do not lock it. A lookup reads the entry without locking, unless it finds a chunk that was
+ * replaced by an ongoing rebalance, in which case it waits for the rebalance (see get()).
+ * <p>
+ * As opposed to InternalOakMap, whose rebalances are per chunk and helped by the threads that encounter a frozen
+ * chunk (see Rebalancer), the rebalances of this map are serialized by a map-wide lock. A full chunk is
+ * rebalanced: it is frozen, its entries that have values are copied into new chunks, and the new chunks replace
+ * it in the index. The lock is acceptable here as a rebalance is rare (once per half a chunk of insertions) and
+ * short (it copies at most two chunks of inlined longs, with no off-heap allocations or releases), and it keeps
+ * the rebalance simple: the chunks are not linked to each other, so there is no chunks list to update lock-free,
+ * and the index is updated only under the lock (see ChunkIndex.OfLongs).
+ */
+class InternalOakLongMap {
+
+    /*-------------- Members --------------*/
+
+    private final int chunkMaxItems;
+    private final long missingValue;
+    private final AtomicInteger size;
+    // the index of the chunks, updated by a rebalance (under the lock of this map)
+    private final ChunkIndex.OfLongs index;
+
+    /*
+     * The updates that are applied to the value of an entry.
+     */
+    enum Operation {
+        PUT,
+        PUT_IF_ABSENT,
+        REMOVE,
+        // adds the operand to the value (an absent value is considered zero), fails if the sum overflows
+        ADD,
+        // same as ADD, where the values are ints (as in OakIntMap), so the sum must not overflow an int
+        ADD_INT
+    }
+
+    /*-------------- Constructors --------------*/
+
+    InternalOakLongMap(int chunkMaxItems, long missingValue) {
+        this.chunkMaxItems = chunkMaxItems;
+        this.missingValue = missingValue;
+        this.size = new AtomicInteger(0);
+        LongChunk first = new LongChunk(Long.MIN_VALUE, chunkMaxItems, size, missingValue);
+        this.index = new ChunkIndex.OfLongs(first);
+    }
+
+    /*-------------- Methods --------------*/
+
+    int size() {
+        return size.get();
+    }
+
+    long getMissingValue() {
+        return missingValue;
+    }
+
+    LongChunk findChunk(long key) {
+        return index.floor(key);
+    }
+
+    /**
+     * @return the chunk that follows the given chunk in the index, or null if it is the last one
+     */
+    LongChunk findNextChunk(LongChunk chunk) {
+        return index.next(chunk);
+    }
+
+    /**
+     * @return the value of the given key, or the missing value if there is none
+     */
+    long get(long key) {
+        while (true) {
+            LongChunk c = findChunk(key);
+            int ei = c.lookUp(key);
+            long value = ei == LongChunk.NONE_NEXT ? missingValue : c.getValue(ei);
+            // The value is up-to-date unless the chunk was already replaced, as the entries of a frozen chunk are
+            // not updated, and its replacement is not reachable until it is released
+            if (c.state() != FreezableChunk.State.RELEASED) {
+                return value;
+            }
+            awaitRebalance();
+        }
+    }
+
+    /**
+     * Applies the given update to the value of the given key.
+     *
+     * @param key       the key to update
+     * @param value     the operand of the update (not the missing value, unless the update is a removal or an
+     *                  addition)
+     * @param operation the update to apply
+     * @return the previous value of the key, or the missing value if there was none
+     * @throws IllegalArgumentException if the update would set the missing value
+     */
+    long update(long key, long value, Operation operation) {
+        while (true) {
+            LongChunk c = findChunk(key);
+            if (!c.publish()) {
+                rebalance(c);
+                continue;
+            }
+            try {
+                int ei = c.lookUp(key);
+                if (ei == LongChunk.NONE_NEXT) {
+                    if (operation == Operation.REMOVE) {
+                        return missingValue;
+                    }
+                    ei = c.allocateEntry(key, checkValue(value));
+                    if (ei != LongChunk.NONE_NEXT) {
+                        int linked = c.linkEntry(ei);
+                        if (linked == ei) {
+                            return missingValue;
+                        }
+                        // the key was linked meanwhile, so its entry is updated instead
+                        ei = linked;
+                    }
+                }
+                if (ei != LongChunk.NONE_NEXT) {
+                    return updateEntry(c, ei, value, operation);
+                }
+            } finally {
+                c.unpublish();
+            }
+            // the chunk is full
+            rebalance(c);
+        }
+    }
+
+    private long updateEntry(LongChunk c, int ei, long value, Operation operation) {
+        while (true) {
+            long oldValue = c.getValue(ei);
+            long newValue;
+            switch (operation) {
+                case PUT:
+                    newValue = value;
+                    break;
+                case PUT_IF_ABSENT:
+                    if (!c.isMissing(oldValue)) {
+                        return oldValue;
+                    }
+                    newValue = value;
+                    break;
+                case REMOVE:
+                    if (c.isMissing(oldValue)) {
+                        return oldValue;
+                    }
+                    newValue = missingValue;
+                    break;
+                case ADD:
+                    newValue = checkValue(c.isMissing(oldValue) ? value : Math.addExact(oldValue, value));
+                    break;
+                case ADD_INT:
+                    newValue = checkValue(c.isMissing(oldValue) ? value
+                        : Math.addExact((int) oldValue, (int) value));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operation " + operation);
+            }
+            if (c.casValue(ei, oldValue, newValue)) {
+                return oldValue;
+            }
+        }
+    }
+
+    private long checkValue(long value) {
+        if (value == missingValue) {
+            throw new IllegalArgumentException("The missing value cannot be set as a value");
+        }
+        return value;
+    }
+
+    /*-------------- Iterations --------------*/
+
+    /**
+     * Iterates over the entries that have values, in ascending order of their keys.
+     * As the iterators of OakMap, it is weakly consistent: it returns each key at most once, and it may or may
+     * not reflect the concurrent updates.
+     */
+    final class EntryIter {
+        private LongChunk chunk;
+        // the next entry to return (or NONE_NEXT if there is none), and its value
+        private int next;
+        private long nextValue;
+        // the least key that was not yet passed by this iterator
+        private long from = Long.MIN_VALUE;
+        private boolean isFinished = false;
+        // the last returned entry
+        private long key;
+        private long value;
+
+        EntryIter() {
+            chunk = findChunk(from);
+            next = chunk.ceilingEntryIndex(from);
+            advanceToValue();
+        }
+
+        boolean hasNext() {
+            return next != LongChunk.NONE_NEXT;
+        }
+
+        /**
+         * Moves to the next entry, whose key and value are then returned by key() and value()
+         */
+        void advance() {
+            key = chunk.getKey(next);
+            value = nextValue;
+            if (key == Long.MAX_VALUE) {
+                isFinished = true;
+            } else {
+                from = key + 1;
+            }
+            next = chunk.getNextEntryIndex(next);
+            advanceToValue();
+        }
+
+        long key() {
+            return key;
+        }
+
+        long value() {
+            return value;
+        }
+
+        // skips the entries without values, and moves to the following chunks once the chunk is exhausted
+        private void advanceToValue() {
+            while (true) {
+                while (next != LongChunk.NONE_NEXT) {
+                    nextValue = chunk.getValue(next);
+                    if (!chunk.isMissing(nextValue)) {
+                        return;
+                    }
+                    next = chunk.getNextEntryIndex(next);
+                }
+                if (isFinished) {
+                    return;
+                }
+                // the chunk might have been replaced (e.g., merged with the next chunk), so the next keys are
+                // looked up in the chunk that currently holds them, unless it is the exhausted chunk itself
+                LongChunk candidate = findChunk(from);
+                if (candidate == chunk) {
+                    candidate = findNextChunk(chunk);
+                    if (candidate == null) {
+                        return;
+                    }
+                    // the keys that are less than the minimal key of the next chunk were passed
+                    from = Math.max(from, candidate.minKey);
+                }
+                chunk = candidate;
+                next = chunk.ceilingEntryIndex(from);
+            }
+        }
+    }
+
+    /*-------------- Rebalance --------------*/
+
+    // waits for the ongoing rebalance to finish (the rebalance holds the lock of this map)
+    private synchronized void awaitRebalance() {
+    }
+
+    /**
+     * Replaces the given chunk by new chunks, with the entries that have values. A sparse chunk is merged with its
+     * next chunk as well. Returns once the chunk is replaced, whether by this thread or another one.
+     */
+    private synchronized void rebalance(LongChunk chunk) {
+        if (index.floor(chunk.minKey) != chunk) {
+            return; // the chunk was already replaced
+        }
+        chunk.freeze();
+        int count = chunk.getLinkedCount();
+        LongChunk[] engagedChunks = {chunk, null};
+        int engaged = 1;
+        if (count < chunkMaxItems / 2) {
+            LongChunk next = index.next(chunk);
+            if (next != null) {
+                next.freeze();
+                count += next.getLinkedCount();
+                engagedChunks[1] = next;
+                engaged = 2;
+            }
+        }
+
+        // the live entries are copied, such that each new chunk is half full
+        long[] keys = new long[count];
+        long[] values = new long[count];
+        int live = 0;
+        for (int i = 0; i < engaged; i++) {
+            LongChunk c = engagedChunks[i];
+            for (int ei = c.getNextEntryIndex(LongChunk.NONE_NEXT); ei != LongChunk.NONE_NEXT;
+                 ei = c.getNextEntryIndex(ei)) {
+                long value = c.getValue(ei);
+                if (!c.isMissing(value)) {
+                    keys[live] = c.getKey(ei);
+                    values[live] = value;
+                    live++;
+                }
+            }
+        }
+        int perChunk = Math.max(1, chunkMaxItems / 2);
+        int newCount = Math.max(1, (live + perChunk - 1) / perChunk);
+        LongChunk[] newChunks = new LongChunk[newCount];
+        for (int i = 0; i < newCount; i++) {
+            int from = i * perChunk;
+            // the first new chunk keeps the minimal key of the chunk, so the chunks still cover all the keys
+            long minKey = i == 0 ? chunk.minKey : keys[from];
+            LongChunk c = new LongChunk(minKey, chunkMaxItems, size, missingValue);
+            for (int j = from; j < Math.min(live, from + perChunk); j++) {
+                c.appendEntry(keys[j], values[j]);
+            }
+            newChunks[i] = c;
+        }
+
+        // the old chunks are released before the new chunks are reachable (see get())
+        for (int i = 0; i < engaged; i++) {
+            engagedChunks[i].release();
+        }
+        index.replace(chunk, engaged, newChunks);
+    }
+}
@@ -9,36 +9,37 @@ package com.yahoo.oak;
 
 import java.io.IOException;
 import java.util.AbstractMap;
-import java.util.Comparator;
-import java.util.ConcurrentModificationException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
-class InternalOakMap<K, V> {
+class InternalOakMap<K, V> extends InternalOakBasics<K, V> {
 
     /*-------------- Members --------------*/
 
-    final ConcurrentSkipListMap<Object, Chunk<K, V>> skiplist;    // skiplist of chunks for fast navigation
+    final ChunkIndex.OfKeys<K, V> chunkIndex;    // index of chunks for fast navigation
     private final AtomicReference<Chunk<K, V>> head;
     private final OakComparator<K> comparator;
-    private final MemoryManager valuesMemoryManager;
-    private final MemoryManager keysMemoryManager;
-    private final AtomicInteger size;
-    private final OakSerializer<K> keySerializer;
-    private final OakSerializer<V> valueSerializer;
-    // The reference count is used to count the upper objects wrapping this internal map:
-    // OakMaps (including subMaps and Views) when all of the above are closed,
-    // his map can be closed and memory released.
-    private final AtomicInteger referenceCount = new AtomicInteger(1);
-    private final ValueUtils valueOperator;
-    static final int MAX_RETRIES = 1024;
+
+    // the maximal number of entries that are visited by a single eviction
+    static final int EVICTION_BATCH_SIZE = 1024;
+    // an eviction frees 1/EVICTION_SLACK of the cache capacity, so the next updates do not evict right away
+    private static final int EVICTION_SLACK = 32;
+    // the number of times an insertion evicts and retries upon an allocation failure, before the failure is thrown
+    private static final int MAX_EVICTION_RETRIES = 64;
+    // the cache capacity in bytes, or 0 if the map does not evict
+    private volatile long cacheCapacity = 0;
+    // the CLOCK hand: the next entry to visit, and the minimal key of its chunk (to find the chunk again once
+    // it is rebalanced), guarded by clockLock
+    private final Object clockLock = new Object();
+    private Chunk<K, V> clockChunk = null;
+    private int clockEntryIndex = Chunk.NONE_NEXT;
+    private K clockChunkMinKey = null;
 
     /*-------------- Constructors --------------*/
 
@@ -50,105 +51,14 @@ class InternalOakMap<K, V> {
         OakComparator<K> oakComparator, MemoryManager vMM, MemoryManager kMM, int chunkMaxItems,
         ValueUtils valueOperator) {
 
-        this.size = new AtomicInteger(0);
-        this.valuesMemoryManager = vMM;
-        this.keysMemoryManager = kMM;
-        this.keySerializer = keySerializer;
-        this.valueSerializer = valueSerializer;
-
+        super(keySerializer, valueSerializer, vMM, kMM, valueOperator);
         this.comparator = oakComparator;
-
-        // This is a trick for letting us search through the skiplist using both serialized and unserialized keys.
-        // Might be nicer to replace it with a proper visitor
-        Comparator<Object> mixedKeyComparator = (o1, o2) -> {
-            if (o1 instanceof OakScopedReadBuffer) {
-                if (o2 instanceof OakScopedReadBuffer) {
-                    return oakComparator.compareSerializedKeys((OakScopedReadBuffer) o1, (OakScopedReadBuffer) o2);
-                } else {
-                    // Note the inversion of arguments, hence sign flip
-                    return (-1) * oakComparator.compareKeyAndSerializedKey((K) o2, (OakScopedReadBuffer) o1);
-                }
-            } else {
-                if (o2 instanceof OakScopedReadBuffer) {
-                    return oakComparator.compareKeyAndSerializedKey((K) o1, (OakScopedReadBuffer) o2);
-                } else {
-                    return oakComparator.compareKeys((K) o1, (K) o2);
-                }
-            }
-        };
-        this.skiplist = new ConcurrentSkipListMap<>(mixedKeyComparator);
+        this.chunkIndex = new ChunkIndex.OfKeys<>(oakComparator);
 
         Chunk<K, V> head = new Chunk<>(minKey, chunkMaxItems, this.size, vMM, kMM, this.comparator,
                 keySerializer, valueSerializer);
-        this.skiplist.put(head.minKey, head);    // add first chunk (head) into skiplist
+        this.chunkIndex.put(head);    // add first chunk (head) into the index
         this.head = new AtomicReference<>(head);
-        this.valueOperator = valueOperator;
-    }
-
-    /*-------------- Closable --------------*/
-
-    /**
-     * cleans off heap memory
-     */
-    void close() {
-        int res = referenceCount.decrementAndGet();
-        // once reference count is zeroed, the map meant to be deleted and should not be used.
-        // reference count will never grow again
-        if (res == 0) {
-            try {
-                // closing the same memory manager (or memory allocator) twice,
-                // has the same effect as closing once
-                valuesMemoryManager.close();
-                keysMemoryManager.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
-    // yet another object started to refer to this internal map
-    void open() {
-        while (true) {
-            int res = referenceCount.get();
-            // once reference count is zeroed, the map meant to be deleted and should not be used.
-            // reference count should never grow again and the referral is not allowed
-            if (res == 0) {
-                throw new ConcurrentModificationException();
-            }
-            // although it is costly CAS is used here on purpose so we never increase
-            // zeroed reference count
-            if (referenceCount.compareAndSet(res, res + 1)) {
-                break;
-            }
-        }
-    }
-
-    /*-------------- size --------------*/
-
-    /**
-     * @return current off heap memory usage in bytes
-     */
-    long memorySize() {
-        if (valuesMemoryManager != keysMemoryManager) {
-            // if two memory managers are not the same instance
-            return valuesMemoryManager.allocated() + keysMemoryManager.allocated();
-        }
-        return valuesMemoryManager.allocated();
-    }
-
-    int entries() {
-        return size.get();
-    }
-
-    /*-------------- Context --------------*/
-
-    /**
-     * Should only be called from API methods at the beginning of the method and be reused in internal calls.
-     *
-     * @return a context instance.
-     */
-    ThreadContext getThreadContext() {
-        return new ThreadContext(keysMemoryManager, valuesMemoryManager);
     }
 
     /*-------------- Methods --------------*/
@@ -161,7 +71,7 @@ class InternalOakMap<K, V> {
         Chunk<K, V> curr = inputChunk;
         Chunk<K, V> next = curr.next.getReference();
 
-        // since skiplist isn't updated atomically in split/compaction, our key might belong in the next chunk
+        // since the index isn't updated atomically in split/compaction, our key might belong in the next chunk
         // we need to iterate the chunks until we find the correct one
         while ((next != null) && (comparator.compareKeyAndSerializedKey(key, next.minKey) >= 0)) {
             curr = next;
@@ -171,11 +81,9 @@ class InternalOakMap<K, V> {
         return curr;
     }
 
-    boolean overwriteExistingValueForMove(ThreadContext ctx, V newVal, Chunk<K, V> c) {
-        // given old entry index (inside ctx) and new value, while old value is locked,
-        // allocate new value, new value is going to be locked as well, write the new value
-        c.allocateValue(ctx, newVal, true);
-
+    @Override
+    boolean linkNewValueForMove(ThreadContext ctx, BasicChunk<K, V> bc) {
+        Chunk<K, V> c = (Chunk<K, V>) bc;
         // in order to connect/overwrite the old entry to point to new value
         // we need to publish as in the normal write process
         if (!c.publish()) {
@@ -196,6 +104,147 @@ class InternalOakMap<K, V> {
         return true;
     }
 
+    /**
+     * The keys and the values of the linked entries are relocated chunk by chunk. The minKey of a chunk (other
+     * than the head chunk, whose minKey is the minimal key of the map) cannot be replaced while it is in use,
+     * so a chunk whose minKey resides in an evacuated block is rebalanced, with a duplicate of its minKey.
+     */
+    @Override
+    void relocateEvacuated(ThreadContext ctx) {
+        Chunk<K, V> c = head.get();
+        while (c != null) {
+            if (c != head.get() && c.isMinKeyEvacuated()) {
+                c.relocateMinKeyOnRebalance();
+                rebalance(c);
+            } else if (c.relocateKeys(ctx)) {
+                for (int ei = c.getFirstItemEntryIndex(); ei != Chunk.NONE_NEXT; ei = c.getNextItemEntryIndex(ei)) {
+                    ctx.invalidate();
+                    ctx.initEntryContext(ei);
+                    c.readValue(ctx);
+                    relocateValue(c, ctx);
+                }
+            }
+            c = c.next.getReference();
+        }
+    }
+
+    /**
+     * Writes the entries of the map to a snapshot, in ascending key order, by traversing the chunks and the
+     * linked entries of each chunk. A rebalanced chunk might be followed by the chunks that replaced it, so an
+     * entry whose key is not greater than the last written key is skipped.
+     * The snapshot is not atomic: an entry that is updated concurrently might be written with either its old or
+     * its new value, but each value is copied consistently (see {@code ValueUtils.transform()}).
+     *
+     * @return the number of the written entries
+     */
+    long snapshot(MapSnapshot.Writer writer) throws IOException {
+        KeyBuffer lastKey = new KeyBuffer(keysMemoryManager.getEmptySlice());
+        ThreadContext ctx = getThreadContext();
+        try {
+            for (Chunk<K, V> c = head.get(); c != null; c = c.next.getReference()) {
+                for (int ei = c.getFirstItemEntryIndex(); ei != Chunk.NONE_NEXT; ei = c.getNextItemEntryIndex(ei)) {
+                    ctx.invalidate();
+                    ctx.initEntryContext(ei);
+                    c.readKey(ctx);
+                    if (!ctx.isKeyValid()
+                        || (lastKey.isInitiated() && comparator.compareSerializedKeys(ctx.key, lastKey) <= 0)) {
+                        continue;
+                    }
+                    c.readValue(ctx);
+                    if (writeSnapshotEntry(ctx, writer)) {
+                        lastKey.copyFrom(ctx.key);
+                    }
+                }
+            }
+            return writer.finish();
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
+    /**
+     * Copies the key and the value of the entry in the context to the snapshot.
+     *
+     * @return false if the value was deleted
+     */
+    private boolean writeSnapshotEntry(ThreadContext ctx, MapSnapshot.Writer writer) throws IOException {
+        K key = null;
+        for (int i = 0; i < MAX_RETRIES; i++) {
+            if (!ctx.isValueValid()) {
+                return false;
+            }
+            final int keyLength = ctx.key.capacity();
+            final int valueLength = ctx.value.getLength();
+            final long keyAddress = writer.startEntry(keyLength, valueLength);
+            UnsafeUtils.UNSAFE.copyMemory(ctx.key.getAddress(), keyAddress, keyLength);
+            // the value is copied under the value read protection, so a concurrent update is not partially copied
+            Result res = valueOperator.transform(ctx.result, ctx.value, value -> {
+                UnsafeUtils.UNSAFE.copyMemory(ctx.value.getAddress(), keyAddress + keyLength, valueLength);
+                return Boolean.TRUE;
+            });
+            if (res.operationResult == ValueUtils.ValueResult.TRUE) {
+                writer.finishEntry();
+                return true;
+            }
+            if (res.operationResult == ValueUtils.ValueResult.FALSE) {
+                return false;
+            }
+            // the value was moved (maybe to a chunk that replaced this one), look the key up again
+            if (key == null) {
+                key = keySerializer.deserialize(ctx.key);
+            }
+            findChunk(key).lookUp(ctx, key);
+        }
+
+        throw new RuntimeException("snapshot failed: reached retry limit (1024).");
+    }
+
+    /**
+     * Populates this map, which must be empty and not yet accessed by other threads, with the entries of a
+     * snapshot. As the entries are read in ascending key order, they are appended to the chunks already sorted,
+     * without searching and linking each entry, and the chunks are linked in order. Each chunk is filled up to
+     * the same threshold that is used by a rebalance, so the following insertions do not split it right away.
+     *
+     * @return the number of the restored entries
+     */
+    long restore(MapSnapshot.Reader reader) throws IOException {
+        KeyBuffer lastKey = new KeyBuffer(keysMemoryManager.getEmptySlice());
+        ThreadContext ctx = getThreadContext();
+        try {
+            Chunk<K, V> c = head.get();
+            assert c.next.getReference() == null && size.get() == 0;
+            final int maxChunkEntries = (int) (c.getMaxItems() * Rebalancer.LOW_THRESHOLD);
+            int chunkEntries = 0;
+            long numOfEntries = 0;
+            while (reader.nextEntry()) {
+                ctx.invalidate();
+                ctx.key.getSlice().allocate(reader.keyLength(), false);
+                UnsafeUtils.UNSAFE.copyMemory(reader.keyAddress(), ctx.key.getAddress(), reader.keyLength());
+                if (lastKey.isInitiated() && comparator.compareSerializedKeys(ctx.key, lastKey) <= 0) {
+                    ctx.key.getSlice().release();
+                    throw new IOException("The snapshot entries are not sorted");
+                }
+                ctx.newValue.getSlice().allocate(reader.valueLength(), false);
+                UnsafeUtils.UNSAFE.copyMemory(reader.valueAddress(), ctx.newValue.getAddress(), reader.valueLength());
+
+                if (chunkEntries == maxChunkEntries) {
+                    c = c.createNextRestoredChunk(ctx.key);
+                    chunkIndex.put(c);
+                    chunkEntries = 0;
+                }
+                boolean appended = c.appendSortedEntry(ctx.key, ctx.newValue);
+                assert appended;
+                chunkEntries++;
+                numOfEntries++;
+                lastKey.copyFrom(ctx.key);
+            }
+            size.addAndGet((int) numOfEntries);
+            return numOfEntries;
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
     /**
      * @param c - Chunk to rebalance
      */
@@ -214,19 +263,110 @@ class InternalOakMap<K, V> {
         rebalancer.freeze();
 
         ThreadContext ctx = getThreadContext();
-        rebalancer.createNewChunks(ctx); // split or compact
-        // if returned true then this thread was responsible for the creation of the new chunks
-        // and it inserted the put
+        try {
+            rebalancer.createNewChunks(ctx); // split or compact
+            // if returned true then this thread was responsible for the creation of the new chunks
+            // and it inserted the put
+
+            // lists may be generated by another thread
+            List<Chunk<K, V>> newChunks = rebalancer.getNewChunks();
+            List<Chunk<K, V>> engaged = rebalancer.getEngagedChunks();
 
-        // lists may be generated by another thread
-        List<Chunk<K, V>> newChunks = rebalancer.getNewChunks();
-        List<Chunk<K, V>> engaged = rebalancer.getEngagedChunks();
+            connectToChunkList(engaged, newChunks);
 
-        connectToChunkList(engaged, newChunks);
+            updateIndexAndNormalize(engaged, newChunks);
+
+            // only the thread that releases the first engaged chunk releases the dropped keys, so they are
+            // released once
+            boolean isReleasedByUs = engaged.get(0).release();
+            engaged.forEach(Chunk::release);
+            if (isReleasedByUs && keysMemoryManager.isReleaseDeferred()) {
+                releaseDroppedKeys(engaged, newChunks);
+            }
+            if (isReleasedByUs && valuesMemoryManager.isExpirationTracked()) {
+                releaseDroppedValues(engaged, newChunks);
+            }
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
 
-        updateIndexAndNormalize(engaged, newChunks);
+    /**
+     * The dropped keys are the keys of the linked entries of the engaged chunks, as well as their minimal keys,
+     * that are not referenced by the new chunks. The first new chunk shares the minimal key of the first
+     * engaged chunk (unless it is relocated), while the minimal keys of the other new chunks are duplicated.
+     */
+    private void releaseDroppedKeys(List<Chunk<K, V>> engaged, List<Chunk<K, V>> newChunks) {
+        int oldCapacity = 0;
+        for (Chunk<K, V> c : engaged) {
+            oldCapacity += c.getMaxItems() + 1;
+        }
+        long[] oldKeyReferences = new long[oldCapacity];
+        int oldCount = 0;
+        for (Chunk<K, V> c : engaged) {
+            oldCount = c.readLinkedKeyReferences(oldKeyReferences, oldCount);
+            if (c != engaged.get(0)) {
+                oldKeyReferences[oldCount++] = c.minKey.getSlice().getReference();
+            }
+        }
+        long firstMinKeyReference = engaged.get(0).minKey.getSlice().getReference();
+        if (newChunks.get(0).minKey.getSlice().getReference() != firstMinKeyReference) {
+            // the minKey of the first engaged chunk was relocated
+            oldKeyReferences[oldCount++] = firstMinKeyReference;
+        }
+        int newCapacity = 0;
+        for (Chunk<K, V> c : newChunks) {
+            newCapacity += c.getMaxItems();
+        }
+        long[] newKeyReferences = new long[newCapacity];
+        int newCount = 0;
+        for (Chunk<K, V> c : newChunks) {
+            newCount = c.readKeyReferences(newKeyReferences, newCount);
+        }
+        releaseDroppedKeys(oldKeyReferences, oldCount, newKeyReferences, newCount);
+    }
 
-        engaged.forEach(Chunk::release);
+    /**
+     * The dropped values are the values of the linked entries of the engaged chunks that were marked as deleted
+     * (e.g., as they expired) but not yet unlinked from their entries, and that are not referenced by the new
+     * chunks. The size of the map is updated, as the dropped values were never unlinked.
+     */
+    private void releaseDroppedValues(List<Chunk<K, V>> engaged, List<Chunk<K, V>> newChunks) {
+        int oldCapacity = 0;
+        for (Chunk<K, V> c : engaged) {
+            oldCapacity += c.getMaxItems();
+        }
+        long[] oldValueReferences = new long[oldCapacity];
+        int oldCount = 0;
+        for (Chunk<K, V> c : engaged) {
+            oldCount = c.readLinkedValueReferences(oldValueReferences, oldCount);
+        }
+        int newCapacity = 0;
+        for (Chunk<K, V> c : newChunks) {
+            newCapacity += c.getMaxItems();
+        }
+        long[] newValueReferences = new long[newCapacity];
+        int newCount = 0;
+        for (Chunk<K, V> c : newChunks) {
+            newCount = c.readValueReferences(newValueReferences, newCount);
+        }
+        Arrays.sort(oldValueReferences, 0, oldCount);
+        Arrays.sort(newValueReferences, 0, newCount);
+        Slice slice = valuesMemoryManager.getEmptySlice();
+        int newIdx = 0;
+        for (int oldIdx = 0; oldIdx < oldCount; oldIdx++) {
+            long reference = oldValueReferences[oldIdx];
+            while (newIdx < newCount && newValueReferences[newIdx] < reference) {
+                newIdx++;
+            }
+            if (newIdx < newCount && newValueReferences[newIdx] == reference) {
+                continue; // the value is still referenced by a replacement
+            }
+            if (slice.decodeReference(reference) && slice.isDeleted() == ValueUtils.ValueResult.TRUE) {
+                slice.release();
+                size.decrementAndGet();
+            }
+        }
     }
 
     private void checkRebalance(Chunk<K, V> c) {
@@ -249,15 +389,13 @@ class InternalOakMap<K, V> {
             assert (countIterations < 10000); // this loop is not supposed to be infinite
 
             // start with first chunk (i.e., head)
-            Map.Entry<Object, Chunk<K, V>> lowerEntry = skiplist.lowerEntry(firstEngaged.minKey);
-
-            Chunk<K, V> prev = lowerEntry != null ? lowerEntry.getValue() : null;
+            Chunk<K, V> prev = chunkIndex.lower(firstEngaged.minKey);
             Chunk<K, V> curr = (prev != null) ? prev.next.getReference() : null;
 
-            // if didn't succeed to find prev through the skiplist - start from the head
+            // if didn't succeed to find prev through the index - start from the head
             if (prev == null || curr != firstEngaged) {
                 prev = null;
-                curr = skiplist.firstEntry().getValue();    // TODO we can store&update head for a little efficiency
+                curr = chunkIndex.first();    // TODO we can store&update head for a little efficiency
                 // iterate until found chunk or reached end of list
                 while ((curr != firstEngaged) && (curr != null)) {
                     prev = curr;
@@ -310,24 +448,35 @@ class InternalOakMap<K, V> {
         Chunk<K, V> firstChild = iterChildren.next();
 
         // need to make the new chunks available, before removing old chunks
-        skiplist.replace(firstEngaged.minKey, firstEngaged, firstChild);
+        if (firstChild.minKey.getSlice().getReference() == firstEngaged.minKey.getSlice().getReference()) {
+            chunkIndex.replace(firstEngaged, firstChild);
+        } else {
+            // The minKey was relocated, so the index must not keep referring to the old minKey. Meanwhile, the
+            // lookups reach the first child from the previous chunk (it is already connected to the chunks list).
+            synchronized (firstChild) {
+                if (firstChild.state() == Chunk.State.INFANT) { // make sure it wasn't added before
+                    chunkIndex.remove(firstEngaged);
+                    chunkIndex.putIfAbsent(firstChild);
+                }
+            }
+        }
 
         // remove all old chunks from index.
         while (iterEngaged.hasNext()) {
             Chunk engagedToRemove = iterEngaged.next();
-            skiplist.remove(engagedToRemove.minKey, engagedToRemove); // conditional remove is used
+            chunkIndex.remove(engagedToRemove); // conditional remove is used
         }
 
         // now after removing old chunks we can start normalizing
         firstChild.normalize();
 
         // for simplicity -  naive lock implementation
-        // can be implemented without locks using versions on next pointer in skiplist
+        // can be implemented without locks using versions on next pointer in the index
         while (iterChildren.hasNext()) {
             Chunk<K, V> childToAdd = iterChildren.next();
             synchronized (childToAdd) {
                 if (childToAdd.state() == Chunk.State.INFANT) { // make sure it wasn't add before
-                    skiplist.putIfAbsent(childToAdd.minKey, childToAdd);
+                    chunkIndex.putIfAbsent(childToAdd);
                     childToAdd.normalize();
                 }
                 // has a built in fence, so no need to add one here
@@ -369,6 +518,13 @@ class InternalOakMap<K, V> {
             return true;
         }
 
+        // An expired value needs to be deleted before the entry is reused, and the deletion might be concurrently
+        // finalized by others, so the operation restarts anyway
+        if (ctx.entryState == EntryArray.EntryState.EXPIRED) {
+            expire(c, ctx);
+            return true;
+        }
+
         // Value can be valid again, if key was found and partially deleted value needed help.
         // But in the meanwhile value was reset to be another, valid value.
         if (ctx.isValueValid()) {
@@ -378,6 +534,16 @@ class InternalOakMap<K, V> {
         return false;
     }
 
+    // Deletes the value of the entry described by ctx, if it is (still) expired. Returns true if it was deleted
+    private boolean expire(Chunk<K, V> c, ThreadContext ctx) {
+        if (valueOperator.expire(ctx) != ValueUtils.ValueResult.TRUE) {
+            return false;
+        }
+        ctx.entryState = EntryArray.EntryState.DELETED_NOT_FINALIZED;
+        finalizeDeletion(c, ctx); // includes publish/unpublish
+        return true;
+    }
+
     // returns false when restart is needed
     // (if rebalance happened or another valid entry with same key was found)
     private boolean allocateAndLinkEntry(Chunk c, ThreadContext ctx, K key, boolean isPutIfAbsent) {
@@ -410,10 +576,10 @@ class InternalOakMap<K, V> {
                 // including off-heap delete bit check
                 ctx.entryIndex = prevEi;
                 c.readValue(ctx);
-                if (ctx.isValueValid()) {
+                if (ctx.isValueValid() || ctx.entryState == EntryArray.EntryState.EXPIRED) {
                     // If exists a matching value reference for the given key,
                     // and it isn't marked deleted, returning here false will cause the restart
-                    // so the new value will be found and processed
+                    // so the new value will be found and processed (or deleted if it is expired)
                     return false;
                 }
             }
@@ -421,186 +587,557 @@ class InternalOakMap<K, V> {
         return true;
     }
 
+    /*-------------- Eviction --------------*/
+
+    /**
+     * Makes the map evict entries once its off-heap memory exceeds the given capacity, see {@code evictIfNeeded()}.
+     * Must be invoked before the map is used.
+     *
+     * @param capacityBytes the cache capacity in bytes
+     */
+    void startEviction(long capacityBytes) {
+        head.get().trackAccesses();
+        cacheCapacity = capacityBytes;
+    }
+
+    /**
+     * Evicts entries if the off-heap memory of the map exceeds its cache capacity, by the CLOCK policy: the
+     * entries are visited in a circular order, an entry that was accessed since the previous visit only has its
+     * reference bit cleared, and the other entries are removed. A single thread evicts at a time.
+     * Invoked by the updates that insert a new value once it is linked, so the insertions are throttled to the
+     * rate of the eviction once the capacity is exceeded, while the in-place updates and the reads are not delayed.
+     * As the eviction removes entries, it must not be invoked while this thread holds a value lock.
+     *
+     * @return the number of the evicted entries
+     */
+    int evictIfNeeded() {
+        long capacity = cacheCapacity;
+        if (capacity == 0 || memorySize() <= capacity) {
+            return 0;
+        }
+        return evictOverCapacity(capacity);
+    }
+
+    /**
+     * Handles an allocation failure of an insertion, once the operation of the insertion is done (so the entries
+     * that are evicted can be reclaimed): if the map is a cache, entries are evicted so the insertion can be
+     * retried, otherwise the failure is rethrown. An insertion retries at most MAX_EVICTION_RETRIES times.
+     * As the eviction removes entries, it must not be invoked while this thread holds a value lock.
+     *
+     * @param e       the allocation failure
+     * @param attempt the number of the insertion's attempts that failed before this one
+     */
+    private void evictOnOutOfMemory(OakOutOfMemoryException e, int attempt) {
+        long capacity = cacheCapacity;
+        if (capacity == 0 || attempt >= MAX_EVICTION_RETRIES) {
+            throw e;
+        }
+        synchronized (clockLock) {
+            // the memory might be exhausted below the cache capacity (e.g., by fragmentation)
+            evict(Math.min(capacity, memorySize()) - capacity / EVICTION_SLACK);
+        }
+        keysMemoryManager.flushReleases();
+        valuesMemoryManager.flushReleases();
+    }
+
+    // the slow path of evictIfNeeded(), kept apart so the fast path is inlined into the insertions
+    private int evictOverCapacity(long capacity) {
+        int evicted;
+        synchronized (clockLock) {
+            // another thread might have evicted meanwhile
+            if (memorySize() <= capacity) {
+                return 0;
+            }
+            evicted = evict(capacity - capacity / EVICTION_SLACK);
+        }
+        // the evicted keys and values were released by this thread
+        keysMemoryManager.flushReleases();
+        valuesMemoryManager.flushReleases();
+        return evicted;
+    }
+
+    // Advances the clock hand until the memory is at most the target, or EVICTION_BATCH_SIZE entries were visited.
+    // The evicted keys and values are reclaimed later (in batches), so their lengths are counted meanwhile
+    private int evict(long targetBytes) {
+        int evicted = 0;
+        long evictedBytes = 0;
+        ThreadContext ctx = getThreadContext();
+        try {
+            Chunk<K, V> c = clockChunk;
+            int ei = clockEntryIndex;
+            if (c == null || c.state() == Chunk.State.RELEASED) {
+                // the minKey of a released chunk might be reclaimed, so the chunk is found by a copy of it
+                c = (c == null) ? head.get() : findChunk(clockChunkMinKey);
+                ei = c.getFirstItemEntryIndex();
+            }
+            for (int visits = 0; visits < EVICTION_BATCH_SIZE && memorySize() - evictedBytes > targetBytes;
+                visits++) {
+                if (c.state() != Chunk.State.NORMAL) {
+                    // the chunk is rebalanced (during this operation, so its minKey is not reclaimed yet),
+                    // continue from its replacement
+                    inTheMiddleOfRebalance(c);
+                    c = chunkIndex.floor(c.minKey);
+                    ei = c.getFirstItemEntryIndex();
+                    continue;
+                }
+                if (ei == Chunk.NONE_NEXT) {
+                    c = c.next.getReference();
+                    if (c == null) {
+                        c = head.get();
+                    }
+                    ei = c.getFirstItemEntryIndex();
+                    continue;
+                }
+                ctx.invalidate();
+                ctx.initEntryContext(ei);
+                c.readKey(ctx);
+                c.readValue(ctx);
+                if (ctx.isValueValid() && !c.clearAccessed(ei)) {
+                    int length = ctx.key.getSlice().getLength() + ctx.value.getSlice().getLength();
+                    if (evictEntry(c, ctx)) {
+                        evicted++;
+                        evictedBytes += length;
+                    }
+                }
+                ei = c.getNextItemEntryIndex(ei);
+            }
+            if (c != clockChunk) {
+                clockChunkMinKey = keySerializer.deserialize(c.minKey);
+                clockChunk = c;
+            }
+            clockEntryIndex = ei;
+        } finally {
+            releaseThreadContext(ctx);
+        }
+        return evicted;
+    }
+
+    // Removes the entry described by ctx, unless it is concurrently updated or rebalanced
+    private boolean evictEntry(Chunk<K, V> c, ThreadContext ctx) {
+        if (inTheMiddleOfRebalance(c)) {
+            return false;
+        }
+        if (valueOperator.remove(ctx, null, null).operationResult != ValueUtils.ValueResult.TRUE) {
+            return false;
+        }
+        ctx.entryState = EntryArray.EntryState.DELETED_NOT_FINALIZED;
+        finalizeDeletion(c, ctx); // includes publish/unpublish
+        if (keysMemoryManager.isReleaseDeferred() && c.shouldCompactDeleted()) {
+            // the removed keys are reclaimed only once they are dropped by a rebalance
+            rebalance(c);
+        }
+        return true;
+    }
+
     /*-------------- OakMap Methods --------------*/
 
     // put the value assosiated with the key, if key existed old value is overwritten
     // TODO: organize the return values for ZC and non-ZC APIs
     V put(K key, V value, OakTransformer<V> transformer) {
+        return put(key, value, transformer, Slice.NO_EXPIRATION);
+    }
+
+    // same as put(key, value, transformer), and the value expires at the given time (in milliseconds since the
+    // epoch), unless it is Slice.NO_EXPIRATION
+    V put(K key, V value, OakTransformer<V> transformer, long expiration) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return tryPut(key, value, transformer, expiration);
+            } catch (OakOutOfMemoryException e) {
+                evictOnOutOfMemory(e, attempt);
+            }
+        }
+    }
+
+    // a single attempt of put(), which fails if the off-heap memory is exhausted
+    private V tryPut(K key, V value, OakTransformer<V> transformer, long expiration) {
         if (key == null || value == null) {
             throw new NullPointerException();
         }
 
         ThreadContext ctx = getThreadContext();
-
-        for (int i = 0; i < MAX_RETRIES; i++) {
-            Chunk<K, V> c = findChunk(key); // find chunk matching key
-            c.lookUp(ctx, key);
-            // If there is a matching value reference for the given key, and it is not marked as deleted,
-            // then this put changes the slice pointed by this value reference.
-            if (ctx.isValueValid()) {
-                // there is a value and it is not deleted
-                Result res = valueOperator.exchange(c, ctx, value, transformer, valueSerializer,
-                    this);
-                if (res.operationResult == ValueUtils.ValueResult.TRUE) {
-                    return (V) res.value;
+        try {
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                Chunk<K, V> c = findChunk(key); // find chunk matching key
+                c.lookUp(ctx, key);
+                // If there is a matching value reference for the given key, and it is not marked as deleted,
+                // then this put changes the slice pointed by this value reference.
+                if (ctx.isValueValid()) {
+                    // there is a value and it is not deleted
+                    Result res = valueOperator.exchange(c, ctx, value, transformer, valueSerializer, expiration,
+                        this);
+                    if (res.operationResult == ValueUtils.ValueResult.TRUE) {
+                        return (V) res.value;
+                    }
+                    // Exchange failed because the value was deleted/moved between lookup and exchange. Continue with
+                    // insertion.
+                    continue;
                 }
-                // Exchange failed because the value was deleted/moved between lookup and exchange. Continue with
-                // insertion.
-                continue;
-            }
 
-            if (isAfterRebalanceOrValueUpdate(c, ctx)) {
-                continue;
-            }
+                if (isAfterRebalanceOrValueUpdate(c, ctx)) {
+                    continue;
+                }
 
-            // AT THIS POINT EITHER (in all cases context is updated):
-            // (1) Key wasn't found (key and value not valid)
-            // (2) Key was found and it's value is deleted/invalid (key valid value invalid)
-            if (!ctx.isKeyValid()) {
-                if (!allocateAndLinkEntry(c, ctx, key, false)) {
-                    continue; // allocation wasn't successfull and resulted in rebalance - retry
+                // AT THIS POINT EITHER (in all cases context is updated):
+                // (1) Key wasn't found (key and value not valid)
+                // (2) Key was found and it's value is deleted/invalid (key valid value invalid)
+                if (!ctx.isKeyValid()) {
+                    if (!allocateAndLinkEntry(c, ctx, key, false)) {
+                        continue; // allocation wasn't successfull and resulted in rebalance - retry
+                    }
                 }
-            }
 
-            c.allocateValue(ctx, value, false); // write value in place
+                c.allocateValue(ctx, value, false); // write value in place
+                ctx.newValue.getSlice().setExpiration(expiration);
 
-            if (!c.publish()) {
-                c.releaseNewValue(ctx);
-                rebalance(c);
-                continue;
-            }
+                if (!c.publish()) {
+                    c.releaseNewValue(ctx);
+                    rebalance(c);
+                    continue;
+                }
 
-            if (c.linkValue(ctx) != ValueUtils.ValueResult.TRUE) {
-                c.releaseNewValue(ctx);
-                c.unpublish();
-            } else {
-                c.unpublish();
-                checkRebalance(c);
-                return null; // null can be returned only in zero-copy case
+                if (c.linkValue(ctx) != ValueUtils.ValueResult.TRUE) {
+                    c.releaseNewValue(ctx);
+                    c.unpublish();
+                } else {
+                    c.unpublish();
+                    checkRebalance(c);
+                    evictIfNeeded();
+                    return null; // null can be returned only in zero-copy case
+                }
             }
+            throw new RuntimeException("put failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
         }
-        throw new RuntimeException("put failed: reached retry limit (1024).");
     }
 
     // put the value assosiated with the key, only if key didn't exist
     // returned results describes whether the value was inserted or not
     Result putIfAbsent(K key, V value, OakTransformer<V> transformer) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return tryPutIfAbsent(key, value, transformer);
+            } catch (OakOutOfMemoryException e) {
+                evictOnOutOfMemory(e, attempt);
+            }
+        }
+    }
+
+    // a single attempt of putIfAbsent(), which fails if the off-heap memory is exhausted
+    private Result tryPutIfAbsent(K key, V value, OakTransformer<V> transformer) {
         if (key == null || value == null) {
             throw new NullPointerException();
         }
 
         ThreadContext ctx = getThreadContext();
+        try {
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                Chunk<K, V> c = findChunk(key); // find chunk matching key
+                c.lookUp(ctx, key);
+                // If exists a matching value reference for the given key, and it isn't marked deleted,
+                // organize the return value: false for ZC, and old value deserialization for non-ZC
+                if (ctx.isValueValid()) {
+                    if (transformer == null) {
+                        return ctx.result.withFlag(ValueUtils.ValueResult.FALSE);
+                    }
+                    Result res = valueOperator.transform(ctx.result, ctx.value, transformer);
+                    if (res.operationResult == ValueUtils.ValueResult.TRUE) {
+                        return res;
+                    }
+                    continue;
+                }
 
-        for (int i = 0; i < MAX_RETRIES; i++) {
-            Chunk<K, V> c = findChunk(key); // find chunk matching key
-            c.lookUp(ctx, key);
-            // If exists a matching value reference for the given key, and it isn't marked deleted,
-            // organize the return value: false for ZC, and old value deserialization for non-ZC
-            if (ctx.isValueValid()) {
-                if (transformer == null) {
-                    return ctx.result.withFlag(ValueUtils.ValueResult.FALSE);
+                if (isAfterRebalanceOrValueUpdate(c, ctx)) {
+                    continue;
                 }
-                Result res = valueOperator.transform(ctx.result, ctx.value, transformer);
-                if (res.operationResult == ValueUtils.ValueResult.TRUE) {
-                    return res;
+
+                // AT THIS POINT EITHER (in all cases context is updated):
+                // (1) Key wasn't found (key and value not valid)
+                // (2) Key was found and it's value is deleted/invalid (key valid value invalid)
+                if (!ctx.isKeyValid()) {
+                    if (!allocateAndLinkEntry(c, ctx, key, true)) {
+                        // allocation wasn't successful and resulted in rebalance,
+                        // or retry is needed for other reason - retry
+                        continue;
+                    }
+                }
+
+                c.allocateValue(ctx, value, false); // write value in place
+
+                if (!c.publish()) {
+                    c.releaseNewValue(ctx);
+                    rebalance(c);
+                    continue;
+                }
+
+                if (c.linkValue(ctx) != ValueUtils.ValueResult.TRUE) {
+                    c.releaseNewValue(ctx);
+                    c.unpublish();
+                } else {
+                    c.unpublish();
+                    checkRebalance(c);
+                    evictIfNeeded();
+                    return ctx.result.withFlag(ValueUtils.ValueResult.TRUE);
                 }
-                continue;
             }
 
-            if (isAfterRebalanceOrValueUpdate(c, ctx)) {
-                continue;
+            throw new RuntimeException("putIfAbsent failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
+    // if key didn't exist, put the value to be associated with the key
+    // otherwise perform compute on the existing value
+    // return false if compute happened, true if put happened
+    boolean putIfAbsentComputeIfPresent(K key, V value, Consumer<OakScopedWriteBuffer> computer) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return tryPutIfAbsentComputeIfPresent(key, value, computer);
+            } catch (OakOutOfMemoryException e) {
+                evictOnOutOfMemory(e, attempt);
             }
+        }
+    }
+
+    // a single attempt of putIfAbsentComputeIfPresent(), which fails if the off-heap memory is exhausted
+    private boolean tryPutIfAbsentComputeIfPresent(K key, V value, Consumer<OakScopedWriteBuffer> computer) {
+        if (key == null || value == null || computer == null) {
+            throw new NullPointerException();
+        }
+
+        ThreadContext ctx = getThreadContext();
+        try {
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                Chunk<K, V> c = findChunk(key); // find chunk matching key
+                c.lookUp(ctx, key);
+                // If there is a matching value reference for the given key, and it is not marked as deleted,
+                // then apply compute on the existing value
+                if (ctx.isValueValid()) {
+                    ValueUtils.ValueResult res = valueOperator.compute(c, ctx, computer, this);
+                    if (res == ValueUtils.ValueResult.TRUE) {
+                        // compute was successful and the value wasn't found deleted; in case
+                        // this value was already found as deleted, continue to allocate a new value slice
+                        return false;
+                    } else if (res == ValueUtils.ValueResult.RETRY) {
+                        continue;
+                    }
+                }
 
-            // AT THIS POINT EITHER (in all cases context is updated):
-            // (1) Key wasn't found (key and value not valid)
-            // (2) Key was found and it's value is deleted/invalid (key valid value invalid)
-            if (!ctx.isKeyValid()) {
-                if (!allocateAndLinkEntry(c, ctx, key, true)) {
-                    // allocation wasn't successful and resulted in rebalance,
-                    // or retry is needed for other reason - retry
+                if (isAfterRebalanceOrValueUpdate(c, ctx)) {
                     continue;
                 }
+
+                // AT THIS POINT EITHER (in all cases context is updated):
+                // (1) Key wasn't found (key and value not valid)
+                // (2) Key was found and it's value is deleted/invalid (key valid value invalid)
+                if (!ctx.isKeyValid()) {
+                    if (!allocateAndLinkEntry(c, ctx, key, false)) {
+                        continue;
+                    }
+                }
+
+                c.allocateValue(ctx, value, false); // write value in place
+
+                if (!c.publish()) {
+                    c.releaseNewValue(ctx);
+                    rebalance(c);
+                    continue;
+                }
+
+                if (c.linkValue(ctx) != ValueUtils.ValueResult.TRUE) {
+                    c.releaseNewValue(ctx);
+                    c.unpublish();
+                } else {
+                    c.unpublish();
+                    checkRebalance(c);
+                    evictIfNeeded();
+                    return true;
+                }
             }
 
-            c.allocateValue(ctx, value, false); // write value in place
+            throw new RuntimeException("putIfAbsentComputeIfPresent failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
 
-            if (!c.publish()) {
-                c.releaseNewValue(ctx);
-                rebalance(c);
-                continue;
+    // associate the key with the output of the remapping function, which is applied on the current value
+    // (or on null if there is no mapping for the key). The function is applied on an existing value while
+    // holding its write lock, so it is applied once on that value. If there is no mapping, the function is
+    // applied on null before the entry of the computed value is linked, so if another value is linked first
+    // (or the chunk is rebalanced), the attempt is retried, and the function is applied again (on the linked
+    // value, if any), as ConcurrentMap.compute() allows.
+    // If the function returns null, the mapping is removed (or not inserted).
+    // returns the new value associated with the key, or null if there is none
+    V compute(K key, Function<? super V, ? extends V> remappingFunction) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return tryCompute(key, remappingFunction);
+            } catch (OakOutOfMemoryException e) {
+                evictOnOutOfMemory(e, attempt);
             }
+        }
+    }
 
-            if (c.linkValue(ctx) != ValueUtils.ValueResult.TRUE) {
-                c.releaseNewValue(ctx);
-                c.unpublish();
-            } else {
-                c.unpublish();
-                checkRebalance(c);
-                return ctx.result.withFlag(ValueUtils.ValueResult.TRUE);
+    // a single attempt of compute(), which fails if the off-heap memory is exhausted
+    private V tryCompute(K key, Function<? super V, ? extends V> remappingFunction) {
+        if (key == null || remappingFunction == null) {
+            throw new NullPointerException();
+        }
+
+        ThreadContext ctx = getThreadContext();
+        try {
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                Chunk<K, V> c = findChunk(key); // find chunk matching key
+                c.lookUp(ctx, key);
+                // If there is a matching value reference for the given key, and it is not marked as deleted,
+                // then apply the remapping function on the existing value
+                if (ctx.isValueValid()) {
+                    Result res = valueOperator.compute(c, ctx, remappingFunction, valueSerializer, this);
+                    if (res.operationResult != ValueUtils.ValueResult.TRUE) {
+                        // the value was deleted/moved between lookup and compute, retry
+                        continue;
+                    }
+                    if (res.value != null) {
+                        return (V) res.value;
+                    }
+                    // AT THIS POINT value was marked deleted off-heap by this thread,
+                    // continue to set the entry's value reference as deleted
+                    ctx.entryState = EntryArray.EntryState.DELETED_NOT_FINALIZED;
+                    finalizeDeletion(c, ctx); // includes publish/unpublish
+                    return null;
+                }
+
+                if (isAfterRebalanceOrValueUpdate(c, ctx)) {
+                    continue;
+                }
+
+                // the function is applied before the value is linked, and is applied again upon a retry
+                V value = remappingFunction.apply(null);
+                if (value == null) {
+                    return null;
+                }
+
+                // AT THIS POINT EITHER (in all cases context is updated):
+                // (1) Key wasn't found (key and value not valid)
+                // (2) Key was found and it's value is deleted/invalid (key valid value invalid)
+                if (!ctx.isKeyValid()) {
+                    if (!allocateAndLinkEntry(c, ctx, key, true)) {
+                        // allocation wasn't successful and resulted in rebalance,
+                        // or another value was concurrently inserted - retry
+                        continue;
+                    }
+                }
+
+                c.allocateValue(ctx, value, false); // write value in place
+
+                if (!c.publish()) {
+                    c.releaseNewValue(ctx);
+                    rebalance(c);
+                    continue;
+                }
+
+                if (c.linkValue(ctx) != ValueUtils.ValueResult.TRUE) {
+                    c.releaseNewValue(ctx);
+                    c.unpublish();
+                } else {
+                    c.unpublish();
+                    checkRebalance(c);
+                    evictIfNeeded();
+                    return value;
+                }
             }
+
+            throw new RuntimeException("compute failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
         }
+    }
 
-        throw new RuntimeException("putIfAbsent failed: reached retry limit (1024).");
+    // if key didn't exist, associate it with the output of the mapping function (unless it is null).
+    // The function is applied before the entry of the computed value is linked, so if another value is linked
+    // first (or the chunk is rebalanced), the attempt is retried, and the function might be applied again, as
+    // ConcurrentMap.computeIfAbsent() allows.
+    // returns the current value associated with the key (deserialized using the transformer),
+    // or null if there is none
+    V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction, OakTransformer<V> transformer) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return tryComputeIfAbsent(key, mappingFunction, transformer);
+            } catch (OakOutOfMemoryException e) {
+                evictOnOutOfMemory(e, attempt);
+            }
+        }
     }
 
-    // if key didn't exist, put the value to be associated with the key
-    // otherwise perform compute on the existing value
-    // return false if compute happened, true if put happened
-    boolean putIfAbsentComputeIfPresent(K key, V value, Consumer<OakScopedWriteBuffer> computer) {
-        if (key == null || value == null || computer == null) {
+    // a single attempt of computeIfAbsent(), which fails if the off-heap memory is exhausted
+    private V tryComputeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction,
+        OakTransformer<V> transformer) {
+        if (key == null || mappingFunction == null || transformer == null) {
             throw new NullPointerException();
         }
 
         ThreadContext ctx = getThreadContext();
+        try {
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                Chunk<K, V> c = findChunk(key); // find chunk matching key
+                c.lookUp(ctx, key);
+                // If exists a matching value reference for the given key, and it isn't marked deleted,
+                // return its deserialization
+                if (ctx.isValueValid()) {
+                    Result res = valueOperator.transform(ctx.result, ctx.value, transformer);
+                    if (res.operationResult == ValueUtils.ValueResult.TRUE) {
+                        return (V) res.value;
+                    }
+                    continue;
+                }
 
-        for (int i = 0; i < MAX_RETRIES; i++) {
-            Chunk<K, V> c = findChunk(key); // find chunk matching key
-            c.lookUp(ctx, key);
-            // If there is a matching value reference for the given key, and it is not marked as deleted,
-            // then apply compute on the existing value
-            if (ctx.isValueValid()) {
-                ValueUtils.ValueResult res = valueOperator.compute(ctx.value, computer);
-                if (res == ValueUtils.ValueResult.TRUE) {
-                    // compute was successful and the value wasn't found deleted; in case
-                    // this value was already found as deleted, continue to allocate a new value slice
-                    return false;
-                } else if (res == ValueUtils.ValueResult.RETRY) {
+                if (isAfterRebalanceOrValueUpdate(c, ctx)) {
                     continue;
                 }
-            }
 
-            if (isAfterRebalanceOrValueUpdate(c, ctx)) {
-                continue;
-            }
+                // the function is applied before the value is linked, and is applied again upon a retry
+                V value = mappingFunction.apply(key);
+                if (value == null) {
+                    return null;
+                }
 
-            // AT THIS POINT EITHER (in all cases context is updated):
-            // (1) Key wasn't found (key and value not valid)
-            // (2) Key was found and it's value is deleted/invalid (key valid value invalid)
-            if (!ctx.isKeyValid()) {
-                if (!allocateAndLinkEntry(c, ctx, key, false)) {
-                    continue;
+                // AT THIS POINT EITHER (in all cases context is updated):
+                // (1) Key wasn't found (key and value not valid)
+                // (2) Key was found and it's value is deleted/invalid (key valid value invalid)
+                if (!ctx.isKeyValid()) {
+                    if (!allocateAndLinkEntry(c, ctx, key, true)) {
+                        // allocation wasn't successful and resulted in rebalance,
+                        // or another value was concurrently inserted - retry
+                        continue;
+                    }
                 }
-            }
 
-            c.allocateValue(ctx, value, false); // write value in place
+                c.allocateValue(ctx, value, false); // write value in place
 
-            if (!c.publish()) {
-                c.releaseNewValue(ctx);
-                rebalance(c);
-                continue;
-            }
+                if (!c.publish()) {
+                    c.releaseNewValue(ctx);
+                    rebalance(c);
+                    continue;
+                }
 
-            if (c.linkValue(ctx) != ValueUtils.ValueResult.TRUE) {
-                c.releaseNewValue(ctx);
-                c.unpublish();
-            } else {
-                c.unpublish();
-                checkRebalance(c);
-                return true;
+                if (c.linkValue(ctx) != ValueUtils.ValueResult.TRUE) {
+                    c.releaseNewValue(ctx);
+                    c.unpublish();
+                } else {
+                    c.unpublish();
+                    checkRebalance(c);
+                    evictIfNeeded();
+                    return value;
+                }
             }
-        }
 
-        throw new RuntimeException("putIfAbsentComputeIfPresent failed: reached retry limit (1024).");
+            throw new RuntimeException("computeIfAbsent failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
     }
 
     // if key exists, remove the key-value mapping from the map
@@ -615,60 +1152,73 @@ class InternalOakMap<K, V> {
         V v = null;
 
         ThreadContext ctx = getThreadContext();
-
-        for (int i = 0; i < MAX_RETRIES; i++) {
-            Chunk<K, V> c = findChunk(key); // find chunk matching key
-            c.lookUp(ctx, key);
-
-            if (!ctx.isKeyValid()) {
-                // There is no such key. If we did logical deletion and someone else did the physical deletion,
-                // then the old value is saved in v. Otherwise v is (correctly) null
-                return transformer == null ? ctx.result.withFlag(logicallyDeleted) : ctx.result.withValue(v);
-            } else if (!ctx.isValueValid()) {
-                // There is such a key, but the value is invalid,
-                // either deleted (maybe only off-heap) or not yet allocated
-                if (!finalizeDeletion(c, ctx)) {
-                    // finalize deletion returns false, meaning no rebalance was requested
-                    // and there was an attempt to finalize deletion
+        try {
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                Chunk<K, V> c = findChunk(key); // find chunk matching key
+                c.lookUp(ctx, key);
+
+                if (!ctx.isKeyValid()) {
+                    // There is no such key. If we did logical deletion and someone else did the physical deletion,
+                    // then the old value is saved in v. Otherwise v is (correctly) null
                     return transformer == null ? ctx.result.withFlag(logicallyDeleted) : ctx.result.withValue(v);
+                } else if (!ctx.isValueValid()) {
+                    // There is such a key, but the value is invalid,
+                    // either deleted (maybe only off-heap), expired or not yet allocated
+                    if (ctx.entryState == EntryArray.EntryState.EXPIRED) {
+                        // the expired value is absent anyway, but it is deleted on the way
+                        expire(c, ctx);
+                        continue;
+                    }
+                    if (!finalizeDeletion(c, ctx)) {
+                        // finalize deletion returns false, meaning no rebalance was requested
+                        // and there was an attempt to finalize deletion
+                        return transformer == null ? ctx.result.withFlag(logicallyDeleted) : ctx.result.withValue(v);
+                    }
+                    continue;
                 }
-                continue;
-            }
-
-            if (inTheMiddleOfRebalance(c)) {
-                continue;
-            }
 
-            // AT THIS POINT Key wasn't found (key and value not valid) and context is updated
-            if (logicallyDeleted) {
-                // This is the case where we logically deleted this entry (marked the value off-heap as deleted),
-                // but someone helped and (marked the value reference as deleted) and reused the entry
-                // before we marked the value reference as deleted. We have the previous value saved in v.
-                return transformer == null ? ctx.result.withFlag(ValueUtils.ValueResult.TRUE) : ctx.result.withValue(v);
-            } else {
-                Result removeResult = valueOperator.remove(ctx, oldValue, transformer);
-                if (removeResult.operationResult == ValueUtils.ValueResult.FALSE) {
-                    // we didn't succeed to remove the value: it didn't contain oldValue, or was already marked
-                    // as deleted by someone else)
-                    return ctx.result.withFlag(ValueUtils.ValueResult.FALSE);
-                } else if (removeResult.operationResult == ValueUtils.ValueResult.RETRY) {
+                if (inTheMiddleOfRebalance(c)) {
                     continue;
                 }
-                // we have marked this value as deleted (successful remove)
-                logicallyDeleted = true;
-                v = (V) removeResult.value;
+
+                // AT THIS POINT Key wasn't found (key and value not valid) and context is updated
+                if (logicallyDeleted) {
+                    // This is the case where we logically deleted this entry (marked the value off-heap as deleted),
+                    // but someone helped and (marked the value reference as deleted) and reused the entry
+                    // before we marked the value reference as deleted. We have the previous value saved in v.
+                    return transformer == null ? ctx.result.withFlag(ValueUtils.ValueResult.TRUE) :
+                        ctx.result.withValue(v);
+                } else {
+                    Result removeResult = valueOperator.remove(ctx, oldValue, transformer);
+                    if (removeResult.operationResult == ValueUtils.ValueResult.FALSE) {
+                        // we didn't succeed to remove the value: it didn't contain oldValue, or was already marked
+                        // as deleted by someone else)
+                        return ctx.result.withFlag(ValueUtils.ValueResult.FALSE);
+                    } else if (removeResult.operationResult == ValueUtils.ValueResult.RETRY) {
+                        continue;
+                    }
+                    // we have marked this value as deleted (successful remove)
+                    logicallyDeleted = true;
+                    v = (V) removeResult.value;
+                }
+
+                // AT THIS POINT value was marked deleted off-heap by this thread,
+                // continue to set the entry's value reference as deleted
+                assert ctx.entryIndex != EntryArray.INVALID_ENTRY_INDEX;
+                assert ctx.isValueValid();
+                ctx.entryState = EntryArray.EntryState.DELETED_NOT_FINALIZED;
+                finalizeDeletion(c, ctx); // includes publish/unpublish
+                if (keysMemoryManager.isReleaseDeferred() && c.shouldCompactDeleted()) {
+                    // the removed keys are reclaimed only once they are dropped by a rebalance
+                    rebalance(c);
+                }
+                return transformer == null ? ctx.result.withFlag(logicallyDeleted) : ctx.result.withValue(v);
             }
 
-            // AT THIS POINT value was marked deleted off-heap by this thread,
-            // continue to set the entry's value reference as deleted
-            assert ctx.entryIndex != EntryArray.INVALID_ENTRY_INDEX;
-            assert ctx.isValueValid();
-            ctx.entryState = EntryArray.EntryState.DELETED_NOT_FINALIZED;
-            finalizeDeletion(c, ctx); // includes publish/unpublish
-            return transformer == null ? ctx.result.withFlag(logicallyDeleted) : ctx.result.withValue(v);
+            throw new RuntimeException("remove failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
         }
-
-        throw new RuntimeException("remove failed: reached retry limit (1024).");
     }
 
     // the zero-copy version of get
@@ -678,13 +1228,17 @@ class InternalOakMap<K, V> {
         }
 
         ThreadContext ctx = getThreadContext();
-        Chunk<K, V> c = findChunk(key); // find chunk matching key
-        c.lookUp(ctx, key);
-        if (!ctx.isValueValid()) {
-            return null;
-        }
-        return getValueUnscopedBuffer(ctx);
+        try {
+            Chunk<K, V> c = findChunk(key); // find chunk matching key
+            c.lookUp(ctx, key);
+            if (!ctx.isValueValid()) {
+                return null;
+            }
+            return getValueUnscopedBuffer(ctx);
 
+        } finally {
+            releaseThreadContext(ctx);
+        }
     }
 
     // if key with a valid value exists in the map, apply compute function on the value
@@ -695,24 +1249,27 @@ class InternalOakMap<K, V> {
         }
 
         ThreadContext ctx = getThreadContext();
-
-        for (int i = 0; i < MAX_RETRIES; i++) {
-            Chunk<K, V> c = findChunk(key); // find chunk matching key
-            c.lookUp(ctx, key);
-            if (ctx.isValueValid()) {
-                ValueUtils.ValueResult res = valueOperator.compute(ctx.value, computer);
-                if (res == ValueUtils.ValueResult.TRUE) {
-                    // compute was successful and the value wasn't found deleted; in case
-                    // this value was already marked as deleted, continue to construct another slice
-                    return true;
-                } else if (res == ValueUtils.ValueResult.RETRY) {
-                    continue;
+        try {
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                Chunk<K, V> c = findChunk(key); // find chunk matching key
+                c.lookUp(ctx, key);
+                if (ctx.isValueValid()) {
+                    ValueUtils.ValueResult res = valueOperator.compute(c, ctx, computer, this);
+                    if (res == ValueUtils.ValueResult.TRUE) {
+                        // compute was successful and the value wasn't found deleted; in case
+                        // this value was already marked as deleted, continue to construct another slice
+                        return true;
+                    } else if (res == ValueUtils.ValueResult.RETRY) {
+                        continue;
+                    }
                 }
+                return false;
             }
-            return false;
-        }
 
-        throw new RuntimeException("computeIfPresent failed: reached retry limit (1024).");
+            throw new RuntimeException("computeIfPresent failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
     }
 
     /**
@@ -723,6 +1280,7 @@ class InternalOakMap<K, V> {
      *            will be updated with the refreshed value.
      * @reutrn true if the refresh was successful.
      */
+    @Override
     boolean refreshValuePosition(ThreadContext ctx) {
         K deserializedKey = keySerializer.deserialize(ctx.key);
         Chunk<K, V> c = findChunk(deserializedKey); // find chunk matching key
@@ -730,26 +1288,6 @@ class InternalOakMap<K, V> {
         return ctx.isValueValid();
     }
 
-    /**
-     * See {@code refreshValuePosition(ctx)} for more details.
-     *
-     * @param key   the key to refresh
-     * @param value the output value to update
-     * @return true if the refresh was successful.
-     */
-    boolean refreshValuePosition(KeyBuffer key, ValueBuffer value) {
-        ThreadContext ctx = getThreadContext();
-        ctx.key.copyFrom(key);
-        boolean isSuccessful = refreshValuePosition(ctx);
-
-        if (!isSuccessful) {
-            return false;
-        }
-
-        value.copyFrom(ctx.value);
-        return true;
-    }
-
     private <T> T getValueTransformation(OakScopedReadBuffer key, OakTransformer<T> transformer) {
         K deserializedKey = keySerializer.deserialize(key);
         return getValueTransformation(deserializedKey, transformer);
@@ -762,22 +1300,25 @@ class InternalOakMap<K, V> {
         }
 
         ThreadContext ctx = getThreadContext();
+        try {
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                Chunk<K, V> c = findChunk(key); // find chunk matching key
+                c.lookUp(ctx, key);
+                if (!ctx.isValueValid()) {
+                    return null;
+                }
 
-        for (int i = 0; i < MAX_RETRIES; i++) {
-            Chunk<K, V> c = findChunk(key); // find chunk matching key
-            c.lookUp(ctx, key);
-            if (!ctx.isValueValid()) {
-                return null;
+                Result res = valueOperator.transform(ctx.result, ctx.value, transformer);
+                if (res.operationResult == ValueUtils.ValueResult.RETRY) {
+                    continue;
+                }
+                return (T) res.value;
             }
 
-            Result res = valueOperator.transform(ctx.result, ctx.value, transformer);
-            if (res.operationResult == ValueUtils.ValueResult.RETRY) {
-                continue;
-            }
-            return (T) res.value;
+            throw new RuntimeException("getValueTransformation failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
         }
-
-        throw new RuntimeException("getValueTransformation failed: reached retry limit (1024).");
     }
 
     <T> T getKeyTransformation(K key, OakTransformer<T> transformer) {
@@ -786,19 +1327,27 @@ class InternalOakMap<K, V> {
         }
 
         ThreadContext ctx = getThreadContext();
-        Chunk<K, V> c = findChunk(key);
-        c.lookUp(ctx, key);
-        if (!ctx.isValueValid()) {
-            return null;
+        try {
+            Chunk<K, V> c = findChunk(key);
+            c.lookUp(ctx, key);
+            if (!ctx.isValueValid()) {
+                return null;
+            }
+            return transformer.apply(ctx.key);
+        } finally {
+            releaseThreadContext(ctx);
         }
-        return transformer.apply(ctx.key);
     }
 
     OakUnscopedBuffer getMinKey() {
-        Chunk<K, V> c = skiplist.firstEntry().getValue();
         ThreadContext ctx = getThreadContext();
-        boolean isAllocated = c.readMinKey(ctx.key);
-        return isAllocated ? getKeyUnscopedBuffer(ctx) : null;
+        try {
+            Chunk<K, V> c = chunkIndex.first();
+            boolean isAllocated = c.readMinKey(ctx.key);
+            return isAllocated ? getKeyUnscopedBuffer(ctx) : null;
+        } finally {
+            releaseThreadContext(ctx);
+        }
     }
 
     <T> T getMinKeyTransformation(OakTransformer<T> transformer) {
@@ -806,25 +1355,32 @@ class InternalOakMap<K, V> {
             throw new NullPointerException();
         }
 
-        Chunk<K, V> c = skiplist.firstEntry().getValue();
         ThreadContext ctx = getThreadContext();
-        boolean isAllocated = c.readMinKey(ctx.tempKey);
-        return isAllocated ? transformer.apply(ctx.tempKey) : null;
+        try {
+            Chunk<K, V> c = chunkIndex.first();
+            boolean isAllocated = c.readMinKey(ctx.tempKey);
+            return isAllocated ? transformer.apply(ctx.tempKey) : null;
+        } finally {
+            releaseThreadContext(ctx);
+        }
     }
 
     OakUnscopedBuffer getMaxKey() {
-        Chunk<K, V> c = skiplist.lastEntry().getValue();
-        Chunk<K, V> next = c.next.getReference();
-        // since skiplist isn't updated atomically in split/compaction, the max key might belong in the next chunk
-        // we need to iterate the chunks until we find the last one
-        while (next != null) {
-            c = next;
-            next = c.next.getReference();
-        }
-
         ThreadContext ctx = getThreadContext();
-        boolean isAllocated = c.readMaxKey(ctx.key);
-        return isAllocated ? getKeyUnscopedBuffer(ctx) : null;
+        try {
+            Chunk<K, V> c = chunkIndex.last();
+            Chunk<K, V> next = c.next.getReference();
+            // since the index isn't updated atomically in split/compaction, the max key might belong in the next chunk
+            // we need to iterate the chunks until we find the last one
+            while (next != null) {
+                c = next;
+                next = c.next.getReference();
+            }
+            boolean isAllocated = c.readMaxKey(ctx.key);
+            return isAllocated ? getKeyUnscopedBuffer(ctx) : null;
+        } finally {
+            releaseThreadContext(ctx);
+        }
     }
 
     <T> T getMaxKeyTransformation(OakTransformer<T> transformer) {
@@ -832,121 +1388,257 @@ class InternalOakMap<K, V> {
             throw new NullPointerException();
         }
 
-        Chunk<K, V> c = skiplist.lastEntry().getValue();
-        Chunk<K, V> next = c.next.getReference();
-        // since skiplist isn't updated atomically in split/compaction, the max key might belong in the next chunk
-        // we need to iterate the chunks until we find the last one
-        while (next != null) {
-            c = next;
-            next = c.next.getReference();
-        }
         ThreadContext ctx = getThreadContext();
-        boolean isAllocated = c.readMaxKey(ctx.tempKey);
-        return isAllocated ? transformer.apply(ctx.tempKey) : null;
+        try {
+            Chunk<K, V> c = chunkIndex.last();
+            Chunk<K, V> next = c.next.getReference();
+            // since the index isn't updated atomically in split/compaction, the max key might belong in the next chunk
+            // we need to iterate the chunks until we find the last one
+            while (next != null) {
+                c = next;
+                next = c.next.getReference();
+            }
+            boolean isAllocated = c.readMaxKey(ctx.tempKey);
+            return isAllocated ? transformer.apply(ctx.tempKey) : null;
+        } finally {
+            releaseThreadContext(ctx);
+        }
     }
 
-    // encapsulates finding of the chunk in the skip list and later chunk list traversal
+    // encapsulates finding of the chunk in the index and later chunk list traversal
     private Chunk<K, V> findChunk(K key) {
-        Chunk<K, V> c = skiplist.floorEntry(key).getValue();
+        Chunk<K, V> c = chunkIndex.floor(key);
         c = iterateChunks(c, key);
         return c;
     }
 
     V replace(K key, V value, OakTransformer<V> valueDeserializeTransformer) {
         ThreadContext ctx = getThreadContext();
+        try {
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                Chunk<K, V> c = findChunk(key); // find chunk matching key
+                c.lookUp(ctx, key);
+                if (!ctx.isValueValid()) {
+                    return null;
+                }
 
-        for (int i = 0; i < MAX_RETRIES; i++) {
-            Chunk<K, V> c = findChunk(key); // find chunk matching key
-            c.lookUp(ctx, key);
-            if (!ctx.isValueValid()) {
-                return null;
+                // will return null if the value is deleted
+                Result result = valueOperator.exchange(c, ctx, value, valueDeserializeTransformer, valueSerializer,
+                    this);
+                if (result.operationResult != ValueUtils.ValueResult.RETRY) {
+                    return (V) result.value;
+                }
             }
 
-            // will return null if the value is deleted
-            Result result = valueOperator.exchange(c, ctx, value, valueDeserializeTransformer, valueSerializer,
-                this);
-            if (result.operationResult != ValueUtils.ValueResult.RETRY) {
-                return (V) result.value;
-            }
+            throw new RuntimeException("replace failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
         }
-
-        throw new RuntimeException("replace failed: reached retry limit (1024).");
     }
 
     boolean replace(K key, V oldValue, V newValue, OakTransformer<V> valueDeserializeTransformer) {
         ThreadContext ctx = getThreadContext();
+        try {
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                Chunk<K, V> c = findChunk(key); // find chunk matching key
+                c.lookUp(ctx, key);
+                if (!ctx.isValueValid()) {
+                    return false;
+                }
 
-        for (int i = 0; i < MAX_RETRIES; i++) {
-            Chunk<K, V> c = findChunk(key); // find chunk matching key
-            c.lookUp(ctx, key);
-            if (!ctx.isValueValid()) {
-                return false;
+                ValueUtils.ValueResult res = valueOperator.compareExchange(c, ctx, oldValue, newValue,
+                        valueDeserializeTransformer, valueSerializer, this);
+                if (res == ValueUtils.ValueResult.RETRY) {
+                    continue;
+                }
+                return res == ValueUtils.ValueResult.TRUE;
             }
 
-            ValueUtils.ValueResult res = valueOperator.compareExchange(c, ctx, oldValue, newValue,
-                    valueDeserializeTransformer, valueSerializer, this);
-            if (res == ValueUtils.ValueResult.RETRY) {
+            throw new RuntimeException("replace failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
+
+    /*-------------- Navigation Methods --------------*/
+
+    // returns the last chunk in the chunks list
+    private Chunk<K, V> getLastChunk() {
+        Chunk<K, V> c = chunkIndex.last();
+        Chunk<K, V> next = c.next.getReference();
+        // since the index isn't updated atomically in split/compaction, the max key might belong in the next chunk
+        // we need to iterate the chunks until we find the last one
+        while (next != null) {
+            c = next;
+            next = c.next.getReference();
+        }
+        return c;
+    }
+
+    // returns the chunk preceding the given chunk in the chunks list, or null if it is the first chunk
+    private Chunk<K, V> getPrevChunk(Chunk<K, V> c) {
+        Chunk<K, V> prev = chunkIndex.lower(c.minKey);
+        if (prev == null) {
+            return null;
+        }
+        Chunk<K, V> next = prev.next.getReference();
+        // since the index isn't updated atomically in split/compaction, there might be more chunks before c
+        while (next != null && comparator.compareSerializedKeys(next.minKey, c.minKey) < 0) {
+            prev = next;
+            next = prev.next.getReference();
+        }
+        return prev;
+    }
+
+    /**
+     * Finds the entry with the greatest key lower than the given key (or the least key higher than the given key),
+     * without deserializing any key or value. Each chunk is searched using its sorted prefix (see
+     * {@code Chunk.findLowerEntryIndex()}), the preceding (following) chunks are searched only if all the
+     * relevant entries of the chunk are deleted.
+     *
+     * @param ctx       the context to be updated with the found entry (key and value)
+     * @param key       the key to look up, or null to find the greatest (least) key in the map
+     * @param inclusive whether the entry with the given key may be found
+     * @param isLower   whether to look for a lower key, or for a higher key
+     * @return the chunk of the found entry, or null if there is no such entry
+     */
+    private Chunk<K, V> findNavigationEntry(ThreadContext ctx, K key, boolean inclusive, boolean isLower) {
+        Chunk<K, V> c;
+        if (key != null) {
+            c = findChunk(key);
+        } else {
+            c = isLower ? getLastChunk() : chunkIndex.first();
+        }
+
+        while (c != null) {
+            int ei = isLower ? c.findLowerEntryIndex(ctx.tempKey, ctx.tempValue, key, inclusive)
+                : c.findHigherEntryIndex(ctx.tempKey, ctx.tempValue, key, inclusive);
+            if (ei == Chunk.NONE_NEXT) {
+                c = isLower ? getPrevChunk(c) : c.next.getReference();
                 continue;
             }
-            return res == ValueUtils.ValueResult.TRUE;
+            ctx.entryIndex = ei;
+            c.readKey(ctx);
+            c.readValue(ctx);
+            if (ctx.isValueValid()) {
+                return c;
+            }
+            // the value was concurrently deleted, search this chunk again
         }
-
-        throw new RuntimeException("replace failed: reached retry limit (1024).");
+        ctx.invalidate();
+        return null;
     }
 
-    Map.Entry<K, V> lowerEntry(K key) {
-        Map.Entry<Object, Chunk<K, V>> lowerChunkEntry = skiplist.lowerEntry(key);
-        if (lowerChunkEntry == null) {
-            /* we were looking for the minimal key */
-            return new AbstractMap.SimpleImmutableEntry<>(null, null);
+    // the non-ZC variation of the navigation methods (lower, floor, ceiling, higher, first, last)
+    // applies the transformer on the found entry (while its value is read-locked)
+    // returns null if there is no such entry
+    <T> T getNavigationTransformation(K key, boolean inclusive, boolean isLower,
+        Function<Map.Entry<OakScopedReadBuffer, OakScopedReadBuffer>, T> transformer) {
+        if (transformer == null) {
+            throw new NullPointerException();
         }
 
         ThreadContext ctx = getThreadContext();
+        try {
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                if (findNavigationEntry(ctx, key, inclusive, isLower) == null) {
+                    return null;
+                }
+                ValueUtils.ValueResult res = ctx.value.s.lockRead();
+                if (res != ValueUtils.ValueResult.TRUE) {
+                    // the value was deleted/moved after it was found, search again
+                    continue;
+                }
+                try {
+                    return transformer.apply(new AbstractMap.SimpleImmutableEntry<>(ctx.key, ctx.value));
+                } finally {
+                    ctx.value.s.unlockRead();
+                }
+            }
 
-        Chunk<K, V> c = lowerChunkEntry.getValue();
-        /* Iterate chunk to find prev(key), no upper limit */
-        Chunk.AscendingIter chunkIter = c.ascendingIter(ctx, null, false, null);
-        int prevIndex = chunkIter.next(ctx);
+            throw new RuntimeException("getNavigationTransformation failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
+    }
 
-        while (chunkIter.hasNext()) {
-            int nextIndex = chunkIter.next(ctx);
-            if (c.compareKeyAndEntryIndex(ctx.tempKey, key, nextIndex) <= 0) {
-                break;
+    // the ZC variation of the navigation methods (lower, floor, ceiling, higher, first, last)
+    // returns null if there is no such entry
+    Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer> getNavigationEntry(K key, boolean inclusive, boolean isLower) {
+        ThreadContext ctx = getThreadContext();
+        try {
+            if (findNavigationEntry(ctx, key, inclusive, isLower) == null) {
+                return null;
             }
-            prevIndex = nextIndex;
+            return new AbstractMap.SimpleImmutableEntry<>(getKeyUnscopedBuffer(ctx), getValueUnscopedBuffer(ctx));
+        } finally {
+            releaseThreadContext(ctx);
         }
+    }
 
-        /* Edge case: we're looking for the lowest key in the map and it's still greater than minkey
-            (in which  case prevKey == key) */
-        if (c.compareKeyAndEntryIndex(ctx.tempKey, key, prevIndex) == 0) {
-            return new AbstractMap.SimpleImmutableEntry<>(null, null);
+    // the ZC variation of the navigation methods, that returns only the key
+    // returns null if there is no such entry
+    OakUnscopedBuffer getNavigationKey(K key, boolean inclusive, boolean isLower) {
+        ThreadContext ctx = getThreadContext();
+        try {
+            if (findNavigationEntry(ctx, key, inclusive, isLower) == null) {
+                return null;
+            }
+            return getKeyUnscopedBuffer(ctx);
+        } finally {
+            releaseThreadContext(ctx);
         }
-        // ctx.tempKey was updated with prevIndex key as a side effect of compareKeyAndEntryIndex()
-        K keyDeserialized = keySerializer.deserialize(ctx.tempKey);
+    }
 
-        // get value associated with this (prev) key
-        boolean isAllocated = c.readValueFromEntryIndex(ctx.value, prevIndex);
-        if (!isAllocated) { // value reference was invalid, try again
-            return lowerEntry(key);
-        }
-        Result valueDeserialized = valueOperator.transform(ctx.result, ctx.value,
-                valueSerializer::deserialize);
-        if (valueDeserialized.operationResult != ValueUtils.ValueResult.TRUE) {
-            return lowerEntry(key);
+    // removes the entry with the least (or greatest, if isLast) key in the map
+    // returns the removed entry (transformed), or null if the map is empty
+    <T> T pollNavigationEntry(boolean isLast,
+        Function<Map.Entry<OakScopedReadBuffer, OakScopedReadBuffer>, T> transformer) {
+        if (transformer == null) {
+            throw new NullPointerException();
         }
-        return new AbstractMap.SimpleImmutableEntry<>(keyDeserialized, (V) valueDeserialized.value);
-    }
 
-    /*-------------- Iterators --------------*/
+        ThreadContext ctx = getThreadContext();
+        try {
+            for (int i = 0; i < MAX_RETRIES; i++) {
+                Chunk<K, V> c = findNavigationEntry(ctx, null, true, isLast);
+                if (c == null) {
+                    return null;
+                }
+                if (inTheMiddleOfRebalance(c)) {
+                    continue;
+                }
+                // Mark the value as deleted (under the write lock), and transform the entry before the deletion
+                // is finalized (the value is not yet freed)
+                ValueUtils.ValueResult res = ctx.value.s.lockWrite();
+                if (res != ValueUtils.ValueResult.TRUE) {
+                    // the value was deleted/moved after it was found, search again
+                    continue;
+                }
+                T transformation;
+                try {
+                    transformation = transformer.apply(new AbstractMap.SimpleImmutableEntry<>(ctx.key, ctx.value));
+                } catch (RuntimeException | Error e) {
+                    ctx.value.s.unlockWrite();
+                    throw e;
+                }
+                ctx.value.s.markAsDeleted();
 
-    private UnscopedBuffer getKeyUnscopedBuffer(ThreadContext ctx) {
-        return new UnscopedBuffer<>(new KeyBuffer(ctx.key));
-    }
+                // AT THIS POINT value was marked deleted off-heap by this thread,
+                // continue to set the entry's value reference as deleted
+                ctx.entryState = EntryArray.EntryState.DELETED_NOT_FINALIZED;
+                finalizeDeletion(c, ctx); // includes publish/unpublish
+                return transformation;
+            }
 
-    private UnscopedValueBufferSynced getValueUnscopedBuffer(ThreadContext ctx) {
-        return new UnscopedValueBufferSynced(ctx.key, ctx.value, valueOperator, InternalOakMap.this);
+            throw new RuntimeException("pollNavigationEntry failed: reached retry limit (1024).");
+        } finally {
+            releaseThreadContext(ctx);
+        }
     }
 
+    /*-------------- Iterators --------------*/
+
     private static final class IteratorState<K, V> {
 
         private Chunk<K, V> chunk;
@@ -1016,6 +1708,12 @@ class InternalOakMap<K, V> {
          */
         protected ThreadContext ctx;
 
+        /**
+         * The keys that might be read by the iterator (also between its steps) are not reclaimed
+         * until the guard is released, once the iteration is over.
+         */
+        private final MemoryManager.IterationGuard guard;
+
         /**
          * Initializes ascending iterator for entire range.
          */
@@ -1028,7 +1726,13 @@ class InternalOakMap<K, V> {
             this.hiInclusive = hiInclusive;
             this.isDescending = isDescending;
             this.ctx = new ThreadContext(keysMemoryManager, valuesMemoryManager);
-            initState(isDescending, lo, loInclusive, hi, hiInclusive);
+            this.guard = keysMemoryManager.startIteration(this);
+            valuesMemoryManager.startOperation();
+            try {
+                initState(isDescending, lo, loInclusive, hi, hiInclusive);
+            } finally {
+                valuesMemoryManager.finishOperation();
+            }
 
         }
 
@@ -1090,41 +1794,47 @@ class InternalOakMap<K, V> {
          * the value's reference. If {@code needsValue == false}, then the value of the map entry is {@code null}.
          */
         void advance(boolean needsValue) {
-            boolean validState = false;
+            // the value headers read by the step are not released (nor are their blocks returned) before it is done
+            valuesMemoryManager.startOperation();
+            try {
+                boolean validState = false;
 
-            while (!validState) {
-                if (state == null) {
-                    throw new NoSuchElementException();
-                }
+                while (!validState) {
+                    if (state == null) {
+                        throw new NoSuchElementException();
+                    }
 
-                final Chunk<K, V> c = state.getChunk();
-                if (c.state() == Chunk.State.RELEASED) {
-                    initAfterRebalance();
-                    continue;
-                }
+                    final Chunk<K, V> c = state.getChunk();
+                    if (c.state() == Chunk.State.RELEASED) {
+                        initAfterRebalance();
+                        continue;
+                    }
 
-                final int curIndex = state.getIndex();
+                    final int curIndex = state.getIndex();
 
-                // build the entry context that sets key references and does not check for value validity.
-                ctx.initEntryContext(curIndex);
+                    // build the entry context that sets key references and does not check for value validity.
+                    ctx.initEntryContext(curIndex);
 
-                if (!state.chunkIter.isBoundCheckNeeded()) {
-                    c.readKey(ctx);
-                } else {
-                    // If we checked the boundary, than we already read the current key into ctx.tempKey
-                    ctx.key.copyFrom(ctx.tempKey);
-                }
-                validState = ctx.isKeyValid();
-                assert validState;
+                    if (!state.chunkIter.isBoundCheckNeeded()) {
+                        c.readKey(ctx);
+                    } else {
+                        // If we checked the boundary, than we already read the current key into ctx.tempKey
+                        ctx.key.copyFrom(ctx.tempKey);
+                    }
+                    validState = ctx.isKeyValid();
+                    assert validState;
+
+                    if (needsValue) {
+                        // Set value references and checks for value validity.
+                        // if value is deleted ctx.entryState is going to be invalid
+                        c.readValue(ctx);
+                        validState = ctx.isValueValid();
+                    }
 
-                if (needsValue) {
-                    // Set value references and checks for value validity.
-                    // if value is deleted ctx.entryState is going to be invalid
-                    c.readValue(ctx);
-                    validState = ctx.isValueValid();
+                    advanceState();
                 }
-
-                advanceState();
+            } finally {
+                valuesMemoryManager.finishOperation();
             }
         }
 
@@ -1133,40 +1843,46 @@ class InternalOakMap<K, V> {
          * Return previous index
          */
         void advanceStream(UnscopedBuffer<KeyBuffer> key, UnscopedBuffer<ValueBuffer> value) {
-            assert key != null || value != null;
+            // the value headers read by the step are not released (nor are their blocks returned) before it is done
+            valuesMemoryManager.startOperation();
+            try {
+                assert key != null || value != null;
 
-            boolean validState = false;
+                boolean validState = false;
 
-            while (!validState) {
-                if (state == null) {
-                    throw new NoSuchElementException();
-                }
+                while (!validState) {
+                    if (state == null) {
+                        throw new NoSuchElementException();
+                    }
 
-                final Chunk<K, V> c = state.getChunk();
-                if (c.state() == Chunk.State.RELEASED) {
-                    initAfterRebalance();
-                    continue;
-                }
+                    final Chunk<K, V> c = state.getChunk();
+                    if (c.state() == Chunk.State.RELEASED) {
+                        initAfterRebalance();
+                        continue;
+                    }
 
-                final int curIndex = state.getIndex();
+                    final int curIndex = state.getIndex();
+
+                    if (key != null) {
+                        if (!state.chunkIter.isBoundCheckNeeded()) {
+                            validState = c.readKeyFromEntryIndex(key.getInternalScopedReadBuffer(), curIndex);
+                            assert validState;
+                        } else {
+                            // If we checked the boundary, than we already read the current key into ctx.tempKey
+                            key.copyFrom(ctx.tempKey);
+                            validState = true;
+                        }
+                    }
 
-                if (key != null) {
-                    if (!state.chunkIter.isBoundCheckNeeded()) {
-                        validState = c.readKeyFromEntryIndex(key.getInternalScopedReadBuffer(), curIndex);
-                        assert validState;
-                    } else {
-                        // If we checked the boundary, than we already read the current key into ctx.tempKey
-                        key.copyFrom(ctx.tempKey);
-                        validState = true;
+                    if (value != null) {
+                        // If the current value is deleted, then advance and try again
+                        validState = c.readValueFromEntryIndex(value.getInternalScopedReadBuffer(), curIndex);
                     }
-                }
 
-                if (value != null) {
-                    // If the current value is deleted, then advance and try again
-                    validState = c.readValueFromEntryIndex(value.getInternalScopedReadBuffer(), curIndex);
+                    advanceState();
                 }
-
-                advanceState();
+            } finally {
+                valuesMemoryManager.finishOperation();
             }
         }
 
@@ -1178,9 +1894,9 @@ class InternalOakMap<K, V> {
 
             if (!isDescending) {
                 if (lowerBound != null) {
-                    nextChunk = skiplist.floorEntry(lowerBound).getValue();
+                    nextChunk = chunkIndex.floor(lowerBound);
                 } else {
-                    nextChunk = skiplist.firstEntry().getValue();
+                    nextChunk = chunkIndex.first();
                     // need to iterate from the beginning of the chunk till the end
                 }
                 if (nextChunk != null) {
@@ -1190,18 +1906,18 @@ class InternalOakMap<K, V> {
                             upperBoundKeyForChunk)
                         : nextChunk.ascendingIter(ctx, upperBound, upperInclusive, upperBoundKeyForChunk);
                 } else {
-                    state = null;
+                    finishIteration();
                     return;
                 }
             } else {
-                nextChunk = upperBound != null ? skiplist.floorEntry(upperBound).getValue()
-                        : skiplist.lastEntry().getValue();
+                nextChunk = upperBound != null ? chunkIndex.floor(upperBound)
+                        : chunkIndex.last();
                 if (nextChunk != null) {
                     nextChunkIter = upperBound != null ?
                             nextChunk.descendingIter(ctx, upperBound, upperInclusive, lowerBound, lowerInclusive)
                         : nextChunk.descendingIter(ctx, lowerBound, lowerInclusive);
                 } else {
-                    state = null;
+                    finishIteration();
                     return;
                 }
             }
@@ -1215,12 +1931,7 @@ class InternalOakMap<K, V> {
             if (!isDescending) {
                 return current.next.getReference();
             } else {
-                Map.Entry<Object, Chunk<K, V>> entry = skiplist.lowerEntry(current.minKey);
-                if (entry == null) {
-                    return null;
-                } else {
-                    return entry.getValue();
-                }
+                return chunkIndex.lower(current.minKey);
             }
         }
 
@@ -1250,6 +1961,11 @@ class InternalOakMap<K, V> {
             return upperBoundKeyForChunk;
         }
 
+        private void finishIteration() {
+            state = null;
+            guard.release();
+        }
+
         private void advanceState() {
 
             Chunk<K, V> chunk = state.getChunk();
@@ -1259,7 +1975,7 @@ class InternalOakMap<K, V> {
                 chunk = getNextChunk(chunk);
                 if (chunk == null) {
                     //End of iteration
-                    state = null;
+                    finishIteration();
                     return;
                 }
                 chunkIter = getChunkIter(chunk);
@@ -1273,7 +1989,7 @@ class InternalOakMap<K, V> {
             if (chunkIter.isBoundCheckNeeded()) {
                 chunk.readKeyFromEntryIndex(ctx.tempKey, nextIndex);
                 if (!inBounds(ctx.tempKey)) {
-                    state = null;
+                    finishIteration();
                 }
             }
         }
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * LongChunk is the chunk of OakLongMap. It is organized as the ordered Chunk (an array of entries, linked in
+ * the order of their keys, whose prefix is sorted), but the keys and the values are inlined in the entries:
+ *
+ * Entries Array:
+ * --------------------------------------------------------------------------------------
+ * 0 | Key                    | The key itself                                  |
+ * -----------------------------------------------------------------------------| entry with
+ * 1 | Value                  | The value itself, or the missing value          | entry index
+ *   |                        | if the entry has no value (e.g., removed)       | 1
+ * -----------------------------------------------------------------------------|
+ * 2 | Next Entry Index       | The index of the entry with the next key        |
+ * ---------------------------------------------------------------------------------------
+ * ...
+ *
+ * Hence, an entry costs 3 longs, and there are no off-heap allocations, headers or references to decode.
+ * The entry with index 0 is the (dummy) head of the linked list.
+ * A value is updated in place, by a CAS, and an entry is never unlinked (nor is its key changed):
+ * the entries without a value are dropped by the rebalance.
+ */
+class LongChunk extends FreezableChunk {
+
+    /*-------------- Constants --------------*/
+
+    // the index of the head entry, which also marks the end of the linked list
+    static final int NONE_NEXT = 0;
+
+    private static final int KEY_OFFSET = 0;
+    private static final int VALUE_OFFSET = 1;
+    private static final int NEXT_OFFSET = 2;
+    private static final int FIELDS = 3;
+
+    /*-------------- Members --------------*/
+
+    // the least key of the chunk (the keys of the chunk are less than the minKey of the next chunk)
+    final long minKey;
+    // the value of the entries without a value, never stored by the users
+    private final long missingValue;
+    private final long[] entries;
+    // the index of the next entry to allocate (the head entry is never allocated)
+    private final AtomicInteger nextFreeIndex;
+    // the entries 1..sortedCount are sorted by their keys (and linked in this order)
+    private final AtomicInteger sortedCount;
+
+    /*-------------- Constructors --------------*/
+
+    /**
+     * Creates a new empty chunk.
+     *
+     * @param minKey       the least key of the chunk
+     * @param maxItems     the number of entries of the chunk
+     * @param externalSize the size of the map, updated upon an insertion or a removal
+     * @param missingValue the value of the entries without a value
+     */
+    LongChunk(long minKey, int maxItems, AtomicInteger externalSize, long missingValue) {
+        super(maxItems, externalSize);
+        this.minKey = minKey;
+        this.missingValue = missingValue;
+        this.entries = new long[(maxItems + 1) * FIELDS];
+        this.nextFreeIndex = new AtomicInteger(1);
+        this.sortedCount = new AtomicInteger(0);
+    }
+
+    /********************************************************************************************/
+    /*---------------- Methods for setting and getting specific entry's field ------------------*/
+
+    private static long fieldOffset(int ei, int offset) {
+        return UnsafeUtils.LONG_ARRAY_BASE_OFFSET + (long) (ei * FIELDS + offset) * UnsafeUtils.LONG_ARRAY_INDEX_SCALE;
+    }
+
+    long getKey(int ei) {
+        // the key is written before the entry is linked (or before the sorted count is increased)
+        return entries[ei * FIELDS + KEY_OFFSET];
+    }
+
+    long getValue(int ei) {
+        return UnsafeUtils.UNSAFE.getLongVolatile(entries, fieldOffset(ei, VALUE_OFFSET));
+    }
+
+    int getNextEntryIndex(int ei) {
+        return (int) UnsafeUtils.UNSAFE.getLongVolatile(entries, fieldOffset(ei, NEXT_OFFSET));
+    }
+
+    private boolean casNextEntryIndex(int ei, int nextOld, int nextNew) {
+        return UnsafeUtils.UNSAFE.compareAndSwapLong(entries, fieldOffset(ei, NEXT_OFFSET), nextOld, nextNew);
+    }
+
+    /**
+     * CAS the value of the entry (given by entry index "ei") to be the "newValue" only if it was "oldValue".
+     * The size of the map is updated if the entry gains or loses a value.
+     * Must be invoked while the chunk is published.
+     *
+     * @return true if the value was CASed successfully
+     */
+    boolean casValue(int ei, long oldValue, long newValue) {
+        if (!UnsafeUtils.UNSAFE.compareAndSwapLong(entries, fieldOffset(ei, VALUE_OFFSET), oldValue, newValue)) {
+            return false;
+        }
+        if (oldValue == missingValue) {
+            externalSize.incrementAndGet();
+        } else if (newValue == missingValue) {
+            externalSize.decrementAndGet();
+        }
+        return true;
+    }
+
+    /********************************************************************************************/
+    /*--------------------------------- Methods for lookups ------------------------------------*/
+
+    /**
+     * @param key the key to look up
+     * @return the index of the entry of the given key (which might have no value), or NONE_NEXT if there is none
+     */
+    int lookUp(long key) {
+        int curr = getNextEntryIndex(binaryFind(key));
+        while (curr != NONE_NEXT) {
+            long currKey = getKey(curr);
+            if (currKey == key) {
+                return curr;
+            }
+            if (currKey > key) {
+                return NONE_NEXT;
+            }
+            curr = getNextEntryIndex(curr);
+        }
+        return NONE_NEXT;
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the index of the first entry whose key is greater than or equal to the given key
+     * (which might have no value), or NONE_NEXT if there is none
+     */
+    int ceilingEntryIndex(long key) {
+        int curr = getNextEntryIndex(binaryFind(key));
+        while (curr != NONE_NEXT && getKey(curr) < key) {
+            curr = getNextEntryIndex(curr);
+        }
+        return curr;
+    }
+
+    /**
+     * Binary search for the greatest sorted entry whose key is less than the given key.
+     *
+     * @param key the key to look up
+     * @return the index of the found entry, or the index of the head entry (NONE_NEXT) if there is none
+     */
+    private int binaryFind(long key) {
+        int start = 0;
+        int end = sortedCount.get();
+        // the entries start..end are sorted; the key of start (unless it is the head) is less than the given key
+        while (start < end) {
+            int mid = (start + end + 1) >>> 1;
+            if (getKey(mid) < key) {
+                start = mid;
+            } else {
+                end = mid - 1;
+            }
+        }
+        return start;
+    }
+
+    /********************************************************************************************/
+    /*---------------------------- Methods for the insertions ----------------------------------*/
+
+    /**
+     * Allocates a new entry, and writes the given key and value into it.
+     * The entry is not reachable until it is linked (see {@code linkEntry(int, long)}).
+     *
+     * @return the index of the new entry, or NONE_NEXT if the chunk is full
+     */
+    int allocateEntry(long key, long value) {
+        int ei = nextFreeIndex.getAndIncrement();
+        if (ei > maxItems) {
+            return NONE_NEXT;
+        }
+        entries[ei * FIELDS + KEY_OFFSET] = key;
+        entries[ei * FIELDS + VALUE_OFFSET] = value;
+        return ei;
+    }
+
+    /**
+     * Links the given allocated entry into the list, unless the key of the entry is already linked.
+     * In the latter case, the given entry is abandoned.
+     * Must be invoked while the chunk is published.
+     *
+     * @param ei the index of the allocated entry
+     * @return the given entry index if it was linked (and then the size of the map is updated),
+     * or the index of the entry that already has the key
+     */
+    int linkEntry(int ei) {
+        final long key = getKey(ei);
+        final int anchor = binaryFind(key);
+        while (true) {
+            int prev = anchor;
+            int curr = getNextEntryIndex(prev);
+            while (curr != NONE_NEXT) {
+                long currKey = getKey(curr);
+                if (currKey == key) {
+                    // someone else managed to add the key to the linked list
+                    return curr;
+                }
+                if (currKey > key) {
+                    break;
+                }
+                prev = curr;
+                curr = getNextEntryIndex(curr);
+            }
+
+            // no need for CAS since the entry is not reachable yet
+            entries[ei * FIELDS + NEXT_OFFSET] = curr;
+            if (casNextEntryIndex(prev, curr, ei)) {
+                externalSize.incrementAndGet();
+                // extend the sorted prefix if the new entry follows it, both in the array and in the order
+                int sorted = sortedCount.get();
+                if (ei == sorted + 1 && (sorted == 0 || getKey(sorted) < key)) {
+                    sortedCount.compareAndSet(sorted, ei);
+                }
+                return ei;
+            }
+            // CAS didn't succeed, try again
+        }
+    }
+
+    /**
+     * Appends an entry after the last entry of the chunk.
+     * The keys of the appended entries must be in ascending order, so the entries are kept sorted.
+     * <p>
+     * Note: NOT THREAD SAFE, only used to populate a chunk that is not yet reachable (i.e., by a rebalance)
+     *
+     * @return false if the chunk is full
+     */
+    boolean appendEntry(long key, long value) {
+        int ei = nextFreeIndex.get();
+        if (ei > maxItems) {
+            return false;
+        }
+        entries[ei * FIELDS + KEY_OFFSET] = key;
+        entries[ei * FIELDS + VALUE_OFFSET] = value;
+        entries[ei * FIELDS + NEXT_OFFSET] = NONE_NEXT;
+        entries[(ei - 1) * FIELDS + NEXT_OFFSET] = ei;
+        nextFreeIndex.set(ei + 1);
+        sortedCount.set(ei);
+        return true;
+    }
+
+    /**
+     * @return the number of entries that are linked, with or without a value (used by the rebalance)
+     */
+    int getLinkedCount() {
+        int count = 0;
+        for (int ei = getNextEntryIndex(NONE_NEXT); ei != NONE_NEXT; ei = getNextEntryIndex(ei)) {
+            count++;
+        }
+        return count;
+    }
+
+    boolean isMissing(long value) {
+        return value == missingValue;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+ * The format of a snapshot of an OakMap (see {@code OakMap.snapshot()}): a header, followed by the serialized
+ * keys and values of the entries in ascending key order, followed by a trailer with the number of the entries.
+ *
+ *     header:  | magic (8 bytes) | version (4 bytes) |
+ *     entry:   | key length (4 bytes) | value length (4 bytes) | key | value |
+ *     trailer: | END_OF_ENTRIES (4 bytes) | number of entries (8 bytes) | CRC32 (4 bytes) |
+ *
+ * The CRC covers all the preceding bytes of the snapshot, so a corrupted snapshot is rejected once it is read
+ * (as the write-ahead log rejects its corrupted records). The lengths of an entry are validated before it is
+ * read, so a corrupted length fails the restore rather than an allocation.
+ *
+ * The entries are staged in a direct buffer, which is written to (or read from) the channel as a whole,
+ * so the serialized keys and values are copied between the off-heap memory of the map and the channel without
+ * passing through the heap.
+ */
+final class MapSnapshot {
+    static final long MAGIC = 0x4f414b534e415031L; // "OAKSNAP1"
+    static final int VERSION = 2;
+    private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int ENTRY_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int TRAILER_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int END_OF_ENTRIES = -1;
+    static final int BUFFER_SIZE = 1024 * 1024;
+
+    private MapSnapshot() {
+    }
+
+    private static ByteBuffer allocateBuffer(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Writes the entries to a channel, an entry at a time. Not thread safe.
+     */
+    static final class Writer {
+        private final WritableByteChannel channel;
+        private ByteBuffer buffer = allocateBuffer(BUFFER_SIZE);
+        // the checksum of the flushed bytes
+        private final CRC32 crc = new CRC32();
+        private long numOfEntries = 0;
+        // the position of the current entry within the buffer
+        private int entryPosition = 0;
+        private int entrySize = 0;
+
+        Writer(WritableByteChannel channel) throws IOException {
+            this.channel = channel;
+            buffer.putLong(MAGIC);
+            buffer.putInt(VERSION);
+        }
+
+        /**
+         * Reserves the space of an entry in the buffer. The key and the value must be copied to the returned
+         * address (the key first, followed by the value) before the entry is finished. The entry might be
+         * rewritten (e.g., if its value was updated concurrently) until {@code finishEntry()} is invoked.
+         *
+         * @return the off-heap address to which the key and the value are copied
+         */
+        long startEntry(int keyLength, int valueLength) throws IOException {
+            entrySize = ENTRY_HEADER_SIZE + keyLength + valueLength;
+            ensureRemaining(entrySize);
+            entryPosition = buffer.position();
+            buffer.putInt(entryPosition, keyLength);
+            buffer.putInt(entryPosition + Integer.BYTES, valueLength);
+            return UnsafeUtils.getAddress(buffer) + entryPosition + ENTRY_HEADER_SIZE;
+        }
+
+        void finishEntry() {
+            buffer.position(entryPosition + entrySize);
+            numOfEntries++;
+        }
+
+        /**
+         * Writes the trailer, and flushes the buffer to the channel.
+         *
+         * @return the number of the written entries
+         */
+        long finish() throws IOException {
+            ensureRemaining(TRAILER_SIZE);
+            buffer.putInt(END_OF_ENTRIES);
+            buffer.putLong(numOfEntries);
+            flush();
+            buffer.putInt((int) crc.getValue());
+            write();
+            return numOfEntries;
+        }
+
+        private void ensureRemaining(int size) throws IOException {
+            if (buffer.remaining() >= size) {
+                return;
+            }
+            flush();
+            if (buffer.capacity() < size) {
+                // an entry larger than the buffer
+                buffer = allocateBuffer(size);
+            }
+        }
+
+        private void flush() throws IOException {
+            ByteBuffer flushed = buffer.duplicate();
+            flushed.flip();
+            crc.update(flushed);
+            write();
+        }
+
+        private void write() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reads the entries from a channel, an entry at a time. Not thread safe.
+     */
+    static final class Reader {
+        private final SeekableByteChannel channel;
+        private ByteBuffer buffer = allocateBuffer(BUFFER_SIZE);
+        // the checksum of the bytes that were read, up to the given position of the buffer
+        private final CRC32 crc = new CRC32();
+        private int checksumPosition = 0;
+        private long numOfEntries = 0;
+        private long entryAddress;
+        private int keyLength;
+        private int valueLength;
+
+        Reader(SeekableByteChannel channel) throws IOException {
+            this.channel = channel;
+            buffer.limit(0);
+            ensureAvailable(HEADER_SIZE);
+            if (buffer.getLong() != MAGIC) {
+                throw new IOException("Not an Oak map snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported snapshot version %d", version));
+            }
+        }
+
+        /**
+         * Reads the next entry, whose key and value are available (in the buffer) until the next invocation.
+         *
+         * @return false once all the entries were read
+         */
+        boolean nextEntry() throws IOException {
+            ensureAvailable(Integer.BYTES);
+            keyLength = buffer.getInt();
+            if (keyLength == END_OF_ENTRIES) {
+                ensureAvailable(Long.BYTES + Integer.BYTES);
+                long expectedEntries = buffer.getLong();
+                updateChecksum();
+                if (buffer.getInt() != (int) crc.getValue()) {
+                    throw new IOException("The snapshot is corrupted (checksum mismatch)");
+                }
+                if (expectedEntries != numOfEntries) {
+                    throw new IOException(String.format("The snapshot has %d entries instead of %d",
+                        numOfEntries, expectedEntries));
+                }
+                return false;
+            }
+            ensureAvailable(Integer.BYTES);
+            valueLength = buffer.getInt();
+            // the entry (and the trailer) must fit in the rest of the snapshot
+            long entrySize = (long) keyLength + valueLength;
+            long remaining = buffer.remaining() + channel.size() - channel.position();
+            if (keyLength <= 0 || valueLength < 0 || entrySize > Integer.MAX_VALUE
+                || entrySize + TRAILER_SIZE > remaining) {
+                throw new IOException(String.format("Corrupted snapshot entry (key length %d, value length %d)",
+                    keyLength, valueLength));
+            }
+            ensureAvailable((int) entrySize);
+            entryAddress = UnsafeUtils.getAddress(buffer) + buffer.position();
+            buffer.position(buffer.position() + keyLength + valueLength);
+            numOfEntries++;
+            return true;
+        }
+
+        long keyAddress() {
+            return entryAddress;
+        }
+
+        int keyLength() {
+            return keyLength;
+        }
+
+        long valueAddress() {
+            return entryAddress + keyLength;
+        }
+
+        int valueLength() {
+            return valueLength;
+        }
+
+        // Updates the checksum with the bytes that were read since the last update
+        private void updateChecksum() {
+            ByteBuffer read = buffer.duplicate();
+            read.limit(buffer.position());
+            read.position(checksumPosition);
+            crc.update(read);
+            checksumPosition = buffer.position();
+        }
+
+        // Makes the given number of bytes available in the buffer, after its position
+        private void ensureAvailable(int size) throws IOException {
+            if (buffer.remaining() >= size) {
+                return;
+            }
+            // the bytes that were read are discarded from the buffer
+            updateChecksum();
+            checksumPosition = 0;
+            if (buffer.capacity() < size) {
+                // an entry larger than the buffer
+                ByteBuffer larger = allocateBuffer(size);
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+            // the buffer is in write mode
+            while (buffer.position() < size) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("The snapshot is truncated");
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Provides blocks which are memory-mapped regions of files, rather than anonymous memory.
+ * The pages of such blocks reside in the page cache, so the kernel can write them back to their files and
+ * evict them under memory pressure, and the blocks of a map may exceed the physical memory.
+ *
+ * A file is created in each of the given directories (e.g., on tmpfs or on a local SSD), and the blocks are
+ * mapped at their ends in turn, so the files grow as more blocks are needed. A returned block is kept for reuse,
+ * as its file region cannot be shrunk. The blocks are unmapped, and the files are deleted, once the provider is
+ * closed. The provider is used by a single allocator (see MappedMemoryAllocator).
+ */
+final class MappedBlocksProvider implements BlocksProvider, Closeable {
+
+    private final int blockSizeBytes;
+    private final List<Path> files = new ArrayList<>();
+    private final List<FileChannel> channels = new ArrayList<>();
+    // the size of each file, guarded by this provider's lock
+    private final long[] fileSizes;
+    // the file in which the next block is mapped, guarded by this provider's lock
+    private int nextFile = 0;
+
+    // all the mapped blocks, guarded by this provider's lock
+    private final List<MappedBlock> mappedBlocks = new ArrayList<>();
+    // the returned blocks, which are reused before new blocks are mapped
+    private final ConcurrentLinkedQueue<Block> blocks = new ConcurrentLinkedQueue<>();
+    private boolean closed = false;
+
+    /**
+     * @param directories the directories in which the files are created, a directory that appears more than
+     *                    once has more than one file
+     * @param blockSizeBytes the size of a block
+     */
+    MappedBlocksProvider(List<Path> directories, int blockSizeBytes) {
+        if (directories.isEmpty()) {
+            throw new IllegalArgumentException("At least one directory is required for the mapped files");
+        }
+        this.blockSizeBytes = blockSizeBytes;
+        this.fileSizes = new long[directories.size()];
+        try {
+            for (Path directory : directories) {
+                Path file = Files.createTempFile(directory, "oak-blocks-", ".mmap");
+                files.add(file);
+                channels.add(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int blockSize() {
+        return blockSizeBytes;
+    }
+
+    /**
+     * Returns a returned block, or a new block which is mapped in the end of the next file. Thread safe.
+     */
+    @Override
+    public Block getBlock() {
+        Block b = blocks.poll();
+        if (b != null) {
+            return b;
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The mapped blocks provider is closed");
+            }
+            int file = nextFile;
+            MappedByteBuffer buffer;
+            try {
+                buffer = channels.get(file).map(FileChannel.MapMode.READ_WRITE, fileSizes[file], blockSizeBytes);
+            } catch (IOException e) {
+                // e.g., the file system is out of space
+                throw new OakOutOfMemoryException(
+                    String.format("Cannot map a block in %s: %s", files.get(file), e.getMessage()));
+            }
+            fileSizes[file] += blockSizeBytes;
+            nextFile = (file + 1) % channels.size();
+            MappedBlock mb = new MappedBlock(buffer);
+            mappedBlocks.add(mb);
+            return mb;
+        }
+    }
+
+    /**
+     * Keeps the given block for reuse. Assumes block is not used by any concurrent thread, otherwise thread-safe.
+     */
+    @Override
+    public void returnBlock(Block b) {
+        b.reset();
+        blocks.add(b);
+    }
+
+    /**
+     * Unmaps all the blocks, and deletes the files. Must be called only once the blocks are not used anymore.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        blocks.clear();
+        mappedBlocks.forEach(MappedBlock::clean);
+        mappedBlocks.clear();
+        IOException error = null;
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                if (i < channels.size()) {
+                    channels.get(i).close();
+                }
+                Files.deleteIfExists(files.get(i));
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    // used only for testing
+    synchronized int numOfMappedBlocks() {
+        return mappedBlocks.size();
+    }
+
+    // used only for testing
+    List<Path> getFiles() {
+        return files;
+    }
+
+    // A block whose memory is a mapped region of a file
+    private static final class MappedBlock extends Block {
+        private final MappedByteBuffer buffer;
+
+        MappedBlock(MappedByteBuffer buffer) {
+            super(UnsafeUtils.getAddress(buffer), buffer.capacity());
+            this.buffer = buffer;
+        }
+
+        // unmaps the memory of the block
+        @Override
+        void clean() {
+            UnsafeUtils.freeDirectBuffer(buffer);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A Native Memory Allocator whose blocks are memory-mapped regions of files (see MappedBlocksProvider),
+ * so the memory of a map can exceed the physical memory, and its cold pages are paged out by the kernel.
+ * The blocks are not shared with other allocators, and the files are deleted once the allocator is closed.
+ */
+class MappedMemoryAllocator extends NativeMemoryAllocator {
+
+    private final MappedBlocksProvider mappedBlocksProvider;
+
+    MappedMemoryAllocator(long capacity, List<Path> directories, int blockSizeBytes) {
+        this(capacity, new MappedBlocksProvider(directories, blockSizeBytes), false, false);
+    }
+
+    MappedMemoryAllocator(long capacity, List<Path> directories, int blockSizeBytes, boolean useThreadBuffers,
+                          boolean splitFreeSlices) {
+        this(capacity, new MappedBlocksProvider(directories, blockSizeBytes), useThreadBuffers, splitFreeSlices);
+    }
+
+    private MappedMemoryAllocator(long capacity, MappedBlocksProvider mappedBlocksProvider, boolean useThreadBuffers,
+                                  boolean splitFreeSlices) {
+        super(capacity, mappedBlocksProvider, useThreadBuffers, splitFreeSlices);
+        this.mappedBlocksProvider = mappedBlocksProvider;
+    }
+
+    // Returns the blocks to the provider, then unmaps them and deletes their files
+    @Override
+    public void close() {
+        super.close();
+        mappedBlocksProvider.close();
+    }
+
+    // used only for testing
+    MappedBlocksProvider getMappedBlocksProvider() {
+        return mappedBlocksProvider;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compacts the off-heap memory of a map periodically in the background, so the blocks that became sparse
+ * (e.g., after a large purge) are returned to the blocks pool. See {@code InternalOakBasics.compactMemory()}.
+ * A single daemon thread runs the compactions of all the maps.
+ */
+final class MemoryCompactor implements Runnable {
+    // a block is evacuated once at least half of its allocated bytes were released
+    static final double DEFAULT_MIN_RELEASED_RATIO = 0.5;
+
+    private static final Logger LOGGER = Logger.getLogger(MemoryCompactor.class.getName());
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "oak-memory-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final InternalOakBasics<?, ?> map;
+    private final double minReleasedRatio;
+    private ScheduledFuture<?> future; // guarded by this
+    private boolean stopped = false;   // guarded by this
+
+    private MemoryCompactor(InternalOakBasics<?, ?> map, double minReleasedRatio) {
+        this.map = map;
+        this.minReleasedRatio = minReleasedRatio;
+    }
+
+    /**
+     * Starts the periodic compaction of the given map.
+     *
+     * @param map              the map to compact
+     * @param intervalMillis   the delay between the end of a compaction and the start of the next one
+     * @param minReleasedRatio the minimal ratio of released bytes of a block that is evacuated
+     * @return the compactor, which must be stopped before the map is closed
+     */
+    static MemoryCompactor start(InternalOakBasics<?, ?> map, long intervalMillis, double minReleasedRatio) {
+        MemoryCompactor compactor = new MemoryCompactor(map, minReleasedRatio);
+        synchronized (compactor) {
+            compactor.future = EXECUTOR.scheduleWithFixedDelay(compactor, intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+        }
+        return compactor;
+    }
+
+    @Override
+    public synchronized void run() {
+        if (stopped) {
+            return;
+        }
+        try {
+            map.compactMemory(minReleasedRatio);
+        } catch (OakOutOfMemoryException e) {
+            // there is no memory to relocate to, the compaction is retried later
+        } catch (RuntimeException e) {
+            // a failure must not cancel the periodic task, so it is logged and the compaction is retried later
+            LOGGER.log(Level.WARNING, "Memory compaction failed", e);
+        }
+    }
+
+    /**
+     * Stops the periodic compaction. Once it returns, a compaction is not running and will not run anymore.
+     */
+    synchronized void stop() {
+        stopped = true;
+        future.cancel(false);
+    }
+}
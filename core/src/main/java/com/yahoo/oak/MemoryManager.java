@@ -58,4 +58,56 @@ interface MemoryManager extends Closeable {
     @VisibleForTesting
     int getHeaderSize();
 
+    /**
+     * @return true if the off-heap header of each off-heap cut holds its expiration time, see
+     * {@code Slice.getExpiration()}
+     */
+    boolean isExpirationTracked();
+
+    /*-------------- Protection of readers without synchronization --------------*/
+
+    /**
+     * @return true if a released off-heap cut is reused only after all the operations and iterations that
+     * started before its release are done. Only then off-heap cuts which are read without any synchronization
+     * (e.g., keys) can be released while they are still reachable by concurrent readers.
+     */
+    boolean isReleaseDeferred();
+
+    /**
+     * Marks the start of an operation of the current thread, which accesses off-heap cuts of this memory manager.
+     * Operations can be nested, and each call must be followed by {@code finishOperation()}.
+     */
+    void startOperation();
+
+    /**
+     * Marks the end of the current thread's operation that was started by {@code startOperation()}.
+     */
+    void finishOperation();
+
+    /**
+     * Marks the start of an iteration, which accesses off-heap cuts of this memory manager between its steps.
+     *
+     * @param iterator the iterator, the iteration is considered done if it is not reachable anymore
+     * @return a guard which must be released once the iteration is done
+     */
+    IterationGuard startIteration(Object iterator);
+
+    interface IterationGuard {
+        IterationGuard NONE = () -> { };
+
+        void release();
+    }
+
+    /*-------------- Compaction --------------*/
+
+    /**
+     * @return the allocator of the off-heap cuts of this memory manager
+     */
+    BlockMemoryAllocator getAllocator();
+
+    /**
+     * Returns the released off-heap cuts, whose reclamation is deferred, to the allocator as soon as possible
+     * (i.e., even if the current thread did not release enough off-heap cuts for a batch).
+     */
+    void flushReleases();
 }
@@ -6,11 +6,26 @@
 
 package com.yahoo.oak;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * The blocks of a Native Memory Allocator can be evacuated (see {@code evacuateSparseBlocks()}): an evacuated block
+ * is not reused anymore, so once all its off-heap cuts are released (e.g., relocated by the data structure), the
+ * block is returned to the blocks provider, and its id is reused by a later block.
+ *
+ * If free slices splitting is enabled, a released off-heap cut that is larger than the requested size is split,
+ * and its remainder stays in the free list. A released off-heap cut is then also merged with the address-adjacent
+ * released off-heap cuts of its block (see {@code addToFreeList()}), so the memory of many small released
+ * allocations can be reused by a larger one.
+ */
 class NativeMemoryAllocator implements BlockMemoryAllocator {
 
     // When allocating n bytes and there are buffers in the free list, only free buffers of size <= n *
@@ -18,18 +33,38 @@ class NativeMemoryAllocator implements BlockMemoryAllocator {
     // This parameter may be tuned for performance vs off-heap memory utilization
     private static final int REUSE_MAX_MULTIPLIER = 2;
     public static final int INVALID_BLOCK_ID = 0;
+    // The size of a thread-local allocation buffer (if enabled), and the largest allocation served from it.
+    // Larger allocations are bumped directly in the current block.
+    static final int THREAD_BUFFER_SIZE = 64 * 1024; /* Bytes */
+    static final int THREAD_BUFFER_MAX_ALLOCATION = THREAD_BUFFER_SIZE / 16;
+    // A thread-local allocation buffer is counted as this number of live allocations in its block, which is larger
+    // than the number of allocations within it, so the block is never empty while the buffer is in use
+    private static final int THREAD_BUFFER_LIVE_ALLOCATIONS = THREAD_BUFFER_SIZE + 1;
 
     // mapping IDs to blocks allocated solely to this Allocator
     private Block[] blocksArray;
     private final AtomicInteger idGenerator = new AtomicInteger(1);
+    // the ids of the blocks that were returned to the blocks provider, to be reused by new blocks
+    // guarded by this allocator's lock
+    private final BitSet returnedBlockIDs = new BitSet();
+    private volatile int numOfReturnedBlocks = 0;
+    // the total number of times a block was returned, see allocateFromCurrentBlock()
+    private volatile int numOfBlockReturns = 0;
+    // guards the evacuation of blocks, so only one evacuation is started at a time
+    private final Object evacuationLock = new Object();
 
     // free list of Slices which can be reused.
     // They are sorted by the slice length, then by the block id, then by their offset.
     // See {@code Slice.compareTo(Slice)} for more information.
     private final ConcurrentSkipListSet<BlockAllocationSlice> freeList = new ConcurrentSkipListSet<>();
+    // The members of the free list, by their block id and offset (see addressOf()), to find the free neighbours
+    // of a released off-heap cut. Null if free slices are not split and merged.
+    // It is only a hint: an entry might be stale, and a member of the free list is used (by a reuse or by a merge)
+    // only by the thread that succeeds in removing it from the free list.
+    private final ConcurrentSkipListMap<Long, BlockAllocationSlice> freeSlicesByAddress;
 
     private final BlocksProvider blocksProvider;
-    private Block currentBlock;
+    private volatile Block currentBlock;
 
     // the memory allocation limit for this Allocator
     // current capacity is set as number of blocks (!) allocated for this OakMap
@@ -43,6 +78,9 @@ class NativeMemoryAllocator implements BlockMemoryAllocator {
     // flag allowing not to close the same allocator twice
     private final AtomicBoolean closed = new AtomicBoolean(false);
 
+    // the thread-local allocation buffers, null if they are disabled
+    private final ThreadLocal<ThreadBuffer> threadBuffers;
+
     // constructor
     // input param: memory capacity given to this Oak. Uses default BlocksPool
     NativeMemoryAllocator(long capacity) {
@@ -51,7 +89,22 @@ class NativeMemoryAllocator implements BlockMemoryAllocator {
 
     // A testable constructor
     NativeMemoryAllocator(long capacity, BlocksProvider blocksProvider) {
+        this(capacity, blocksProvider, false);
+    }
+
+    // input param: whether each thread allocates within a sub-range of the current block
+    // that it grabs at once (see ThreadBuffer)
+    NativeMemoryAllocator(long capacity, BlocksProvider blocksProvider, boolean useThreadBuffers) {
+        this(capacity, blocksProvider, useThreadBuffers, false);
+    }
+
+    // input param: whether released off-heap cuts are split upon reuse, and merged with their free neighbours
+    NativeMemoryAllocator(long capacity, BlocksProvider blocksProvider, boolean useThreadBuffers,
+                          boolean splitFreeSlices) {
         this.blocksProvider = blocksProvider;
+        this.freeSlicesByAddress = splitFreeSlices ? new ConcurrentSkipListMap<>() : null;
+        this.threadBuffers = useThreadBuffers && THREAD_BUFFER_SIZE <= blocksProvider.blockSize()
+            ? ThreadLocal.withInitial(ThreadBuffer::new) : null;
         int blockArraySize = ((int) (capacity / blocksProvider.blockSize())) + 1;
         // first entry of blocksArray is always empty
         this.blocksArray = new Block[blockArraySize + 1];
@@ -79,12 +132,16 @@ class NativeMemoryAllocator implements BlockMemoryAllocator {
             if (bestFit == null) {
                 break;
             }
-            // If the best fit is more than REUSE_MAX_MULTIPLIER times as big than the desired length, than a new
-            // buffer is allocated instead of reusing.
-            // This means that currently buffers are not split, so there is some internal fragmentation.
-            if (bestFit.getAllocatedLength() > (REUSE_MAX_MULTIPLIER * size)) {
+            // If the free slices are not split, and the best fit is more than REUSE_MAX_MULTIPLIER times as big
+            // than the desired length, than a new buffer is allocated instead of reusing.
+            // Otherwise, there is some internal fragmentation.
+            if (freeSlicesByAddress == null && bestFit.getAllocatedLength() > (REUSE_MAX_MULTIPLIER * size)) {
                 break;     // all remaining buffers are too big
             }
+            // The best fit is counted as live before it is removed from the free list,
+            // so its block is never considered empty while it is reused.
+            Block block = blocksArray[bestFit.getAllocatedBlockID()];
+            block.addLiveAllocations(1);
             // If multiple threads got the same bestFit only one can use it (the one which succeeds in removing it
             // from the free list).
             // The rest restart the while loop.
@@ -93,17 +150,63 @@ class NativeMemoryAllocator implements BlockMemoryAllocator {
                     stats.reclaim(size);
                 }
                 s.copyAllocationInfoFrom(bestFit);
+                if (freeSlicesByAddress != null) {
+                    freeSlicesByAddress.remove(addressOf(bestFit), bestFit);
+                    splitFreeSlice(block, s, size);
+                }
+                // the whole reused off-heap cut is counted, as it is released as a whole (unless it was split)
+                block.addReleased(-s.getAllocatedLength());
+                allocated.addAndGet(s.getAllocatedLength());
                 return true;
             }
+            block.addLiveAllocations(-1);
+            tryReturnBlock(block);
         }
 
-        boolean isAllocated = false;
         // freeList is empty or there is no suitable slice
-        while (!isAllocated) {
+        allocateFromBlocks(s, size);
+        allocated.addAndGet(size);
+        return true;
+    }
+
+    // Allocates an off-heap cut of the given size within the thread's allocation buffer (if enabled),
+    // the current block bounds, or within a new block (if it is still possible within Oak memory bounds).
+    // Thread safe.
+    void allocateFromBlocks(BlockAllocationSlice s, int size) {
+        if (threadBuffers != null && size <= THREAD_BUFFER_MAX_ALLOCATION) {
+            ThreadBuffer buffer = threadBuffers.get();
+            if (buffer.allocate(s, size)) {
+                return;
+            }
+            buffer.retire();
+            try {
+                // the slice is used to grab a new buffer, and is then associated with an allocation within it
+                allocateFromCurrentBlock(s, THREAD_BUFFER_SIZE, THREAD_BUFFER_LIVE_ALLOCATIONS);
+                buffer.reset(blocksArray[s.getAllocatedBlockID()], s.getAllocatedOffset());
+                boolean isAllocated = buffer.allocate(s, size);
+                assert isAllocated;
+                return;
+            } catch (OakOutOfMemoryException e) {
+                // there is no space for a new buffer within the capacity, but there might be for this allocation
+            }
+        }
+        allocateFromCurrentBlock(s, size, 1);
+    }
+
+    // Allocates an off-heap cut of the given size within the current block bounds,
+    // or within a new block (if it is still possible within Oak memory bounds). Thread safe.
+    // The allocation is counted as the given number of live allocations within its block.
+    private void allocateFromCurrentBlock(BlockAllocationSlice s, int size, int liveAllocations) {
+        while (true) {
+            int blockReturns = numOfBlockReturns;
+            Block block = currentBlock;
+            // counted as live before the allocation, so the block is never considered empty meanwhile
+            block.addLiveAllocations(liveAllocations);
             try {
                 // The ByteBuffer inside this slice is the thread's ByteBuffer
-                isAllocated = currentBlock.allocate(s, size);
+                block.allocate(s, size);
             } catch (OakOutOfMemoryException e) {
+                block.addLiveAllocations(-liveAllocations);
                 // there is no space in current block
                 // may be a buffer bigger than any block is requested?
                 if (size > blocksProvider.blockSize()) {
@@ -125,10 +228,16 @@ class NativeMemoryAllocator implements BlockMemoryAllocator {
                         }
                     }
                 }
+                continue;
+            }
+            if (blockReturns == numOfBlockReturns) {
+                return;
             }
+            // A block was returned meanwhile, it might be the block that was read as the current one (and it might
+            // be reused since then), so the allocation is abandoned.
+            block.addLiveAllocations(-liveAllocations);
+            block.addReleased(size);
         }
-        allocated.addAndGet(size);
-        return true;
     }
 
     // Releases memory (makes it available for reuse) without other GC consideration.
@@ -144,7 +253,173 @@ class NativeMemoryAllocator implements BlockMemoryAllocator {
         if (stats != null) {
             stats.release(size);
         }
-        freeList.add(s.duplicate());
+        Block[] blocks = blocksArray;
+        if (blocks == null) {
+            return; // the allocator is closed, all its blocks were returned already
+        }
+        Block block = blocks[s.getAllocatedBlockID()];
+        if (block.getEvacuationState() == Block.EvacuationState.NONE && addToFreeList(block, s.duplicate())) {
+            block.addReleased(size);
+            block.addLiveAllocations(-1);
+            return;
+        }
+        // the off-heap cut is not reused, as its block is evacuated
+        block.addReleased(size);
+        block.addLiveAllocations(-1);
+        tryReturnBlock(block);
+    }
+
+    // Adds the given released off-heap cut of the given block to the free list. If free slices are split,
+    // the off-heap cut is first merged with its free neighbours, which are taken out of the free list.
+    // If the evacuation of the block started meanwhile, the evacuation might have missed the new member of
+    // the free list, so it is removed here (unless it was already removed, by the evacuation, by a reuse or by
+    // a merge). Returns false if the off-heap cut was removed, so it is not reused.
+    private boolean addToFreeList(Block block, BlockAllocationSlice freed) {
+        if (freeSlicesByAddress != null) {
+            mergeFreeNeighbours(freed);
+        }
+        freeList.add(freed);
+        if (freeSlicesByAddress != null) {
+            freeSlicesByAddress.put(addressOf(freed), freed);
+        }
+        if (block.getEvacuationState() == Block.EvacuationState.NONE || !freeList.remove(freed)) {
+            return true;
+        }
+        if (freeSlicesByAddress != null) {
+            freeSlicesByAddress.remove(addressOf(freed), freed);
+        }
+        return false;
+    }
+
+    // Extends the given released off-heap cut (which is not in the free list) with the address-adjacent members
+    // of the free list, as long as they can be taken out of the free list.
+    private void mergeFreeNeighbours(BlockAllocationSlice freed) {
+        int blockID = freed.getAllocatedBlockID();
+        int offset = freed.getAllocatedOffset();
+        int length = freed.getAllocatedLength();
+        while (true) {
+            BlockAllocationSlice next = freeSlicesByAddress.get(address(blockID, offset + length));
+            if (next != null && takeFreeNeighbour(next)) {
+                length += next.getAllocatedLength();
+                continue;
+            }
+            Map.Entry<Long, BlockAllocationSlice> prevEntry = freeSlicesByAddress.lowerEntry(address(blockID, offset));
+            BlockAllocationSlice prev = prevEntry == null ? null : prevEntry.getValue();
+            if (prev != null && prev.getAllocatedBlockID() == blockID
+                && prev.getAllocatedOffset() + prev.getAllocatedLength() == offset && takeFreeNeighbour(prev)) {
+                offset = prev.getAllocatedOffset();
+                length += prev.getAllocatedLength();
+                continue;
+            }
+            break;
+        }
+        freed.setBlockIdOffsetAndLength(blockID, offset, length);
+    }
+
+    // Takes the given member of the free list (found by its address) out of the free list, to be merged.
+    // Returns false if it is not a member of the free list anymore, and then its stale entry is dropped.
+    private boolean takeFreeNeighbour(BlockAllocationSlice neighbour) {
+        boolean isTaken = freeList.remove(neighbour);
+        freeSlicesByAddress.remove(addressOf(neighbour), neighbour);
+        return isTaken;
+    }
+
+    // Shortens the given slice, associated with a reused off-heap cut of the given block, to the given size.
+    // The remainder of the off-heap cut is returned to the free list.
+    private void splitFreeSlice(Block block, BlockAllocationSlice s, int size) {
+        int remainderLength = s.getAllocatedLength() - size;
+        if (remainderLength == 0) {
+            return;
+        }
+        BlockAllocationSlice remainder = s.duplicate();
+        remainder.setBlockIdOffsetAndLength(s.getAllocatedBlockID(), s.getAllocatedOffset() + size, remainderLength);
+        s.setBlockIdOffsetAndLength(s.getAllocatedBlockID(), s.getAllocatedOffset(), size);
+        // the remainder stays counted as released, and it is not reused if the block is evacuated
+        addToFreeList(block, remainder);
+    }
+
+    private static long address(int blockID, int offset) {
+        return ((long) blockID << Integer.SIZE) | offset;
+    }
+
+    private static long addressOf(BlockAllocationSlice s) {
+        return address(s.getAllocatedBlockID(), s.getAllocatedOffset());
+    }
+
+    // Starts the evacuation of the blocks (except the current one), whose ratio of released bytes is at least
+    // the given ratio. The released off-heap cuts of an evacuated block are not reused anymore, and once all its
+    // off-heap cuts are released, the block is returned to the blocks provider. Thread safe.
+    // Returns the number of the blocks that are evacuated (including the ones evacuated previously),
+    // whose off-heap cuts should be relocated by the data structure.
+    @Override
+    public int evacuateSparseBlocks(double minReleasedRatio) {
+        synchronized (evacuationLock) {
+            List<Block> evacuated = new ArrayList<>();
+            synchronized (this) {
+                for (int id = 1; id < idGenerator.get(); id++) {
+                    Block b = blocksArray[id];
+                    if (!returnedBlockIDs.get(id) && b != currentBlock
+                        && b.getEvacuationState() == Block.EvacuationState.NONE
+                        && b.getReleasedRatio() >= minReleasedRatio) {
+                        b.setEvacuationState(Block.EvacuationState.STARTED);
+                        evacuated.add(b);
+                    }
+                }
+            }
+            if (!evacuated.isEmpty()) {
+                // the released off-heap cuts of the evacuated blocks stay counted as released
+                freeList.removeIf(slice -> blocksArray[slice.getAllocatedBlockID()].getEvacuationState()
+                    == Block.EvacuationState.STARTED);
+                if (freeSlicesByAddress != null) {
+                    freeSlicesByAddress.values().removeIf(slice -> blocksArray[slice.getAllocatedBlockID()]
+                        .getEvacuationState() == Block.EvacuationState.STARTED);
+                }
+                evacuated.forEach(b -> b.setEvacuationState(Block.EvacuationState.PURGED));
+            }
+
+            int numOfEvacuated = 0;
+            for (int id = 1; id < idGenerator.get(); id++) {
+                Block b;
+                synchronized (this) {
+                    if (returnedBlockIDs.get(id)) {
+                        continue;
+                    }
+                    b = blocksArray[id];
+                }
+                if (b.getEvacuationState() == Block.EvacuationState.PURGED && !tryReturnBlock(b)) {
+                    numOfEvacuated++;
+                }
+            }
+            return numOfEvacuated;
+        }
+    }
+
+    // Returns whether the off-heap cut of the given slice resides in an evacuated block
+    @Override
+    public boolean isEvacuated(Slice sl) {
+        BlockAllocationSlice s = (BlockAllocationSlice) sl;
+        return blocksArray[s.getAllocatedBlockID()].getEvacuationState() != Block.EvacuationState.NONE;
+    }
+
+    // Returns the given block to the blocks provider, if it is evacuated and empty.
+    // Returns whether the block was returned (by this call).
+    private boolean tryReturnBlock(Block b) {
+        if (b.getEvacuationState() != Block.EvacuationState.PURGED || !b.isEmpty()) {
+            return false;
+        }
+        synchronized (this) {
+            if (b.getEvacuationState() != Block.EvacuationState.PURGED || !b.isEmpty() || closed.get()) {
+                return false;
+            }
+            b.setEvacuationState(Block.EvacuationState.RETURNED);
+            returnedBlockIDs.set(b.getID());
+            numOfReturnedBlocks++;
+            numOfBlockReturns++;
+        }
+        // the block (and the block object) might be reused by another allocator,
+        // the entry of blocksArray is overwritten once the id is reused
+        blocksProvider.returnBlock(b);
+        return true;
     }
 
     // Releases all memory allocated for this Oak (should be used as part of the Oak destruction)
@@ -162,8 +437,15 @@ class NativeMemoryAllocator implements BlockMemoryAllocator {
         // Reset "closed" to apply a memory barrier before actually returning the block.
         closed.set(true);
 
-        for (int i = 1; i <= numberOfBlocks(); i++) {
-            blocksProvider.returnBlock(b[i]);
+        // the blocks that were already returned (and whose ids were not reused) are skipped
+        BitSet returned;
+        synchronized (this) {
+            returned = (BitSet) returnedBlockIDs.clone();
+        }
+        for (int i = 1; i < idGenerator.get(); i++) {
+            if (!returned.get(i)) {
+                blocksProvider.returnBlock(b[i]);
+            }
         }
         // no need to do anything with the free list,
         // as all free list members were residing on one of the (already released) blocks
@@ -175,6 +457,25 @@ class NativeMemoryAllocator implements BlockMemoryAllocator {
         return allocated.get();
     }
 
+    // Returns the number of bytes taken from the blocks of this Allocator (which were not returned),
+    // either allocated, released or unused
+    @Override
+    public long reserved() {
+        Block[] blocks = blocksArray;
+        if (blocks == null) {
+            return 0;
+        }
+        long reserved = 0;
+        synchronized (this) {
+            for (int id = 1; id < idGenerator.get(); id++) {
+                if (!returnedBlockIDs.get(id)) {
+                    reserved += Math.min(blocks[id].allocatedWithPossibleDelta(), blocks[id].getCapacity());
+                }
+            }
+        }
+        return reserved;
+    }
+
     public int getFreeListLength() {
         return freeList.size();
     }
@@ -195,8 +496,18 @@ class NativeMemoryAllocator implements BlockMemoryAllocator {
         // This check should be automatically eliminated by the compiler in production.
         assert blockID > NativeMemoryAllocator.INVALID_BLOCK_ID :
                 String.format("Invalid block-id: %s", s);
-        Block b = blocksArray[blockID];
-        s.setAddress(b.getStartMemAddress());
+        s.setAddress(getBlockAddress(blockID));
+    }
+
+    // Returns the start address of the block with the given id
+    long getBlockAddress(int blockID) {
+        return blocksArray[blockID].getStartMemAddress();
+    }
+
+    // Returns the size of the blocks allocated by this Allocator
+    @Override
+    public int getBlockSize() {
+        return blocksProvider.blockSize();
     }
 
 
@@ -213,14 +524,69 @@ class NativeMemoryAllocator implements BlockMemoryAllocator {
     // This method MUST be called within a thread safe context !!!
     private void allocateNewCurrentBlock() {
         Block b = blocksProvider.getBlock();
-        int blockID = idGenerator.getAndIncrement();
+        int blockID = returnedBlockIDs.nextSetBit(1);
+        if (blockID > 0) {
+            returnedBlockIDs.clear(blockID);
+            numOfReturnedBlocks--;
+        } else {
+            blockID = idGenerator.getAndIncrement();
+        }
         this.blocksArray[blockID] = b;
         b.setID(blockID);
         this.currentBlock = b;
     }
 
     private long numberOfBlocks() {
-        return idGenerator.get() - 1;
+        return idGenerator.get() - 1 - numOfReturnedBlocks;
+    }
+
+    /*=====================================================================*/
+    /*           ThreadBuffer                                              */
+    /* A thread-local allocation buffer: a sub-range of a block, which is   */
+    /* grabbed at once, so the thread bumps its allocations within it       */
+    /* without updating the shared offset of the block                     */
+    /*=====================================================================*/
+
+    private final class ThreadBuffer {
+        private Block block = null;
+        private int offset;
+        private int end;
+        private int numOfAllocations;
+
+        // Allocates an off-heap cut of the given size within the buffer, returns false if the buffer is too short
+        boolean allocate(BlockAllocationSlice s, int size) {
+            // the buffer is abandoned once its block is evacuated, so the block can become empty
+            if (block == null || offset + size > end
+                || block.getEvacuationState() != Block.EvacuationState.NONE) {
+                return false;
+            }
+            s.associateBlockAllocation(block.getID(), offset, size, block.getStartMemAddress());
+            offset += size;
+            numOfAllocations++;
+            return true;
+        }
+
+        // Returns the unused remainder of the buffer to its block, if it is still the latest allocation of the
+        // block. Otherwise (or if the block was switched meanwhile), the remainder is left unused in the block,
+        // as the remainder of a block upon a block switch, and it is counted as released.
+        void retire() {
+            if (block != null) {
+                if (!block.returnTail(offset, end)) {
+                    block.addReleased(end - offset);
+                }
+                // the allocations within the buffer are counted instead of the buffer
+                block.addLiveAllocations(numOfAllocations - THREAD_BUFFER_LIVE_ALLOCATIONS);
+                tryReturnBlock(block);
+                block = null;
+            }
+        }
+
+        void reset(Block block, int offset) {
+            this.block = block;
+            this.offset = offset;
+            this.end = offset + THREAD_BUFFER_SIZE;
+            this.numOfAllocations = 0;
+        }
     }
 
     private Stats stats = null;
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.nio.ByteOrder;
+
+/**
+ * Bulk access to byte sequences in Oak buffers and in byte arrays, for serializers and comparators of byte-based
+ * keys and values (e.g., OakBytesSerializer and OakBytesComparator).
+ * <p>
+ * A sequence is given by a buffer (or an array), the index of its first byte and its length, which are checked
+ * against the capacity of the buffer (or the length of the array), so only the memory of the given buffers is
+ * accessed. The bytes are copied and compared 8 bytes at a time, rather than through the per-byte accessors of
+ * the buffers.
+ */
+public final class OakBufferBytes {
+
+    private static final boolean NATIVE_BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+
+    private OakBufferBytes() {
+    }
+
+    /*-------------- Copies --------------*/
+
+    /**
+     * Copies bytes from the given array into the given buffer.
+     *
+     * @throws IndexOutOfBoundsException if a sequence exceeds its array or buffer
+     */
+    public static void copy(byte[] src, int srcOffset, OakScopedWriteBuffer dst, int dstIndex, int length) {
+        checkBounds(srcOffset, length, src.length);
+        UnsafeUtils.copyMemory(src, UnsafeUtils.BYTE_ARRAY_BASE_OFFSET + srcOffset, null,
+            address(dst, dstIndex, length), length);
+    }
+
+    /**
+     * Copies bytes from the given buffer into the given array.
+     *
+     * @throws IndexOutOfBoundsException if a sequence exceeds its array or buffer
+     */
+    public static void copy(OakScopedReadBuffer src, int srcIndex, byte[] dst, int dstOffset, int length) {
+        checkBounds(dstOffset, length, dst.length);
+        UnsafeUtils.copyMemory(null, address(src, srcIndex, length), dst,
+            UnsafeUtils.BYTE_ARRAY_BASE_OFFSET + dstOffset, length);
+    }
+
+    /*-------------- Comparisons --------------*/
+
+    /**
+     * Compares two byte sequences lexicographically, where the bytes are compared as unsigned values (as memcmp()
+     * does), and a proper prefix of a sequence precedes it.
+     *
+     * @return a negative number, zero or a positive number if the first sequence is less than, equal to or
+     * greater than the second one, respectively
+     * @throws IndexOutOfBoundsException if a sequence exceeds its array
+     */
+    public static int compare(byte[] bytes1, int offset1, int length1, byte[] bytes2, int offset2, int length2) {
+        checkBounds(offset1, length1, bytes1.length);
+        checkBounds(offset2, length2, bytes2.length);
+        return compare(bytes1, UnsafeUtils.BYTE_ARRAY_BASE_OFFSET + offset1, length1,
+            bytes2, UnsafeUtils.BYTE_ARRAY_BASE_OFFSET + offset2, length2);
+    }
+
+    /**
+     * Compares a byte sequence of an array with a byte sequence of a buffer, see
+     * {@code compare(byte[], int, int, byte[], int, int)}.
+     *
+     * @throws IndexOutOfBoundsException if a sequence exceeds its array or buffer
+     */
+    public static int compare(byte[] bytes1, int offset1, int length1,
+                              OakScopedReadBuffer buffer2, int index2, int length2) {
+        checkBounds(offset1, length1, bytes1.length);
+        return compare(bytes1, UnsafeUtils.BYTE_ARRAY_BASE_OFFSET + offset1, length1,
+            null, address(buffer2, index2, length2), length2);
+    }
+
+    /**
+     * Compares two byte sequences of buffers, see {@code compare(byte[], int, int, byte[], int, int)}.
+     *
+     * @throws IndexOutOfBoundsException if a sequence exceeds its buffer
+     */
+    public static int compare(OakScopedReadBuffer buffer1, int index1, int length1,
+                              OakScopedReadBuffer buffer2, int index2, int length2) {
+        return compare(null, address(buffer1, index1, length1), length1,
+            null, address(buffer2, index2, length2), length2);
+    }
+
+    /**
+     * Returns the first (up to) 8 bytes of the given sequence, as a big-endian long whose missing bytes are zeros.
+     * Hence, the prefixes of two sequences, compared as unsigned longs, are ordered as the sequences (or tie).
+     *
+     * @throws IndexOutOfBoundsException if the sequence exceeds its array
+     */
+    public static long getPrefix(byte[] bytes, int offset, int length) {
+        checkBounds(offset, length, bytes.length);
+        return prefix(bytes, UnsafeUtils.BYTE_ARRAY_BASE_OFFSET + offset, length);
+    }
+
+    /**
+     * Returns the first (up to) 8 bytes of the given sequence, see {@code getPrefix(byte[], int, int)}.
+     *
+     * @throws IndexOutOfBoundsException if the sequence exceeds its buffer
+     */
+    public static long getPrefix(OakScopedReadBuffer buffer, int index, int length) {
+        return prefix(null, address(buffer, index, length), length);
+    }
+
+    /*-------------- Internals --------------*/
+
+    private static void checkBounds(int index, int length, int capacity) {
+        if (index < 0 || length < 0 || (long) index + length > capacity) {
+            throw new IndexOutOfBoundsException(String.format("Range [%s, %s + %s) is out of bound (length: %s)",
+                index, index, length, capacity));
+        }
+    }
+
+    // the address of the given (checked) sequence of the given buffer
+    private static long address(OakBuffer buffer, int index, int length) {
+        if (!(buffer instanceof OakUnsafeDirectBuffer)) {
+            throw new IllegalArgumentException("The buffer is not an Oak buffer");
+        }
+        checkBounds(index, length, buffer.capacity());
+        return ((OakUnsafeDirectBuffer) buffer).getAddress() + index;
+    }
+
+    private static long toBigEndian(long word) {
+        return NATIVE_BIG_ENDIAN ? word : Long.reverseBytes(word);
+    }
+
+    private static long prefix(Object base, long offset, int length) {
+        if (length >= Long.BYTES) {
+            return toBigEndian(UnsafeUtils.getLong(base, offset));
+        }
+        long prefix = 0;
+        for (int i = 0; i < length; i++) {
+            prefix |= (UnsafeUtils.get(base, offset + i) & 0xffL) << (Byte.SIZE * (Long.BYTES - 1 - i));
+        }
+        return prefix;
+    }
+
+    // compares two byte sequences, each given by a base object (a byte array) and an offset, or by a null base
+    // and an address (as with Unsafe), which were already checked
+    private static int compare(Object base1, long offset1, int length1, Object base2, long offset2, int length2) {
+        final int minLength = Math.min(length1, length2);
+        final int wordsEnd = minLength & ~(Long.BYTES - 1);
+
+        int i = 0;
+        for (; i < wordsEnd; i += Long.BYTES) {
+            long word1 = UnsafeUtils.getLong(base1, offset1 + i);
+            long word2 = UnsafeUtils.getLong(base2, offset2 + i);
+            if (word1 != word2) {
+                return Long.compareUnsigned(toBigEndian(word1), toBigEndian(word2));
+            }
+        }
+        for (; i < minLength; i++) {
+            int b1 = UnsafeUtils.get(base1, offset1 + i) & 0xff;
+            int b2 = UnsafeUtils.get(base2, offset2 + i) & 0xff;
+            if (b1 != b2) {
+                return b1 - b2;
+            }
+        }
+
+        return Integer.compare(length1, length2);
+    }
+}
@@ -19,4 +19,35 @@ public interface OakComparator<K> extends Comparator<K> {
     int compareSerializedKeys(OakScopedReadBuffer serializedKey1, OakScopedReadBuffer serializedKey2);
 
     int compareKeyAndSerializedKey(K key, OakScopedReadBuffer serializedKey);
+
+    /**
+     * A comparator may abbreviate each key to an order-preserving 8-byte prefix, which Oak keeps next to the
+     * key reference of each entry. Then, a search compares the prefixes (as signed longs), and reads the
+     * serialized keys (off-heap) only when the prefixes are equal.
+     * The prefixes must preserve the order of the keys: for any keys k1 and k2,
+     * if getKeyPrefix(k1) is less than getKeyPrefix(k2) then k1 is less than k2. Hence, equal keys have equal
+     * prefixes, and different keys may have equal prefixes as well. The prefix of a serialized key must equal
+     * the prefix of the key.
+     *
+     * @return true if this comparator provides key prefixes (by default, it does not)
+     */
+    default boolean hasKeyPrefix() {
+        return false;
+    }
+
+    /**
+     * @param key the key to abbreviate
+     * @return the order-preserving prefix of the key (used only if hasKeyPrefix() returns true)
+     */
+    default long getKeyPrefix(K key) {
+        throw new UnsupportedOperationException("The comparator does not provide key prefixes");
+    }
+
+    /**
+     * @param serializedKey the serialized key to abbreviate
+     * @return the order-preserving prefix of the key (used only if hasKeyPrefix() returns true)
+     */
+    default long getSerializedKeyPrefix(OakScopedReadBuffer serializedKey) {
+        throw new UnsupportedOperationException("The comparator does not provide key prefixes");
+    }
 }
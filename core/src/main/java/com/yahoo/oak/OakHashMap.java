@@ -14,6 +14,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -34,15 +35,13 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
     private final Function<Map.Entry<OakScopedReadBuffer, OakScopedReadBuffer>,
             Map.Entry<K, V>> entryDeserializeTransformer;
     private final OakComparator<K> comparator;
-    private final InternalOakMap<K , V> internalOakMap;
-
-
+    private final InternalOakHash<K, V> internalOakHash;
 
     // internal constructor, to create OakHashMap use OakMapBuilder
-    OakHashMap(K minKey, //TODO:  this parameter is to be removed when internalOakHashMap  implementation is done
-               OakSerializer<K> keySerializer,
+    OakHashMap(OakSerializer<K> keySerializer,
                OakSerializer<V> valueSerializer,
                OakComparator<K> oakComparator,
+               OakHasher<K> oakHasher,
                int chunkMaxItems,
                MemoryManager vMM,
                MemoryManager kMM) {
@@ -54,10 +53,9 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
         this.entryDeserializeTransformer = entry -> new AbstractMap.SimpleEntry<>(
                 keySerializer.deserialize(entry.getKey()),
                 valueSerializer.deserialize(entry.getValue()));
-        this.internalOakMap = new InternalOakMap<>(minKey, keySerializer, valueSerializer, oakComparator,
-                this.valuesMemoryManager, kMM, chunkMaxItems, new ValueUtils());
-
-
+        this.internalOakHash = new InternalOakHash<>(keySerializer, valueSerializer, oakComparator, oakHasher,
+                this.valuesMemoryManager, kMM, chunkMaxItems,
+                FirstLevelHashArray.MSB_FOR_FIRST_LEVEL_HASH_DEFAULT, new ValueUtils());
     }
 
     /* ------ Map API methods ------ */
@@ -70,7 +68,7 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
      */
     @Override
     public int size() {
-        return internalOakMap.entries();
+        return internalOakHash.entries();
     }
 
     /**
@@ -85,7 +83,7 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
     @Override
     public V get(Object key) {
         checkKey((K) key);
-        return internalOakMap.getValueTransformation((K) key, valueDeserializeTransformer);
+        return internalOakHash.getValueTransformation((K) key, valueDeserializeTransformer);
     }
 
     /**
@@ -106,7 +104,7 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
         if (value == null) {
             throw new NullPointerException();
         }
-        return internalOakMap.put(key, value, valueDeserializeTransformer);
+        return internalOakHash.put(key, value, valueDeserializeTransformer);
     }
 
     /**
@@ -120,7 +118,7 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
     @Override
     public V remove(Object key) {
         checkKey((K) key);
-        return (V) internalOakMap.remove((K) key, null, valueDeserializeTransformer).value;
+        return (V) internalOakHash.remove((K) key, null, valueDeserializeTransformer).value;
     }
 
 
@@ -133,7 +131,7 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
     public boolean remove(Object key, Object value) {
         checkKey((K) key);
         Objects.requireNonNull(value);
-        return  (internalOakMap.remove((K) key, (V) value,
+        return  (internalOakHash.remove((K) key, (V) value,
                 valueDeserializeTransformer).operationResult == ValueUtils.ValueResult.TRUE);
     }
 
@@ -149,7 +147,7 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
         if (value == null) {
             throw new NullPointerException();
         }
-        return internalOakMap.replace(key, value, valueDeserializeTransformer);
+        return internalOakHash.replace(key, value, valueDeserializeTransformer);
     }
 
 
@@ -165,7 +163,7 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
             throw new NullPointerException();
         }
 
-        return internalOakMap.replace(key, oldValue, newValue, valueDeserializeTransformer);
+        return internalOakHash.replace(key, oldValue, newValue, valueDeserializeTransformer);
     }
 
     /**
@@ -183,7 +181,110 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
         if (value == null) {
             throw new NullPointerException();
         }
-        return (V) internalOakMap.putIfAbsent(key, value, valueDeserializeTransformer).value;
+        return (V) internalOakHash.putIfAbsent(key, value, valueDeserializeTransformer).value;
+    }
+
+    /**
+     * If the specified key is not already associated with a value, attempts to compute its value using the
+     * given mapping function and associates it with the key, unless the computed value is {@code null}.
+     * The mapping function may be applied more than once, if a value is concurrently associated with the key.
+     *
+     * @param key             key with which the specified value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value associated with the specified key, or
+     * {@code null} if the computed value is {@code null}
+     * @throws NullPointerException     if the specified key or mappingFunction is null
+     */
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        checkKey(key);
+        if (mappingFunction == null) {
+            throw new NullPointerException();
+        }
+        return internalOakHash.computeIfAbsent(key, mappingFunction, valueDeserializeTransformer);
+    }
+
+    /**
+     * Attempts to compute a mapping for the specified key and its current mapped value
+     * (or {@code null} if there is no current mapping).
+     * The remapping function is applied on an existing value while holding its write lock,
+     * so concurrent updates of the same key are serialized.
+     * If the function returns {@code null}, the mapping is removed.
+     *
+     * @param key               key with which the specified value is to be associated
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with the specified key, or null if none
+     * @throws NullPointerException     if the specified key or remappingFunction is null
+     */
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        checkKey(key);
+        if (remappingFunction == null) {
+            throw new NullPointerException();
+        }
+        return internalOakHash.compute(key, oldValue -> remappingFunction.apply(key, oldValue));
+    }
+
+    /**
+     * If the value for the specified key is present, attempts to compute a new mapping given the key and its
+     * current mapped value. The remapping function is applied while holding the value's write lock.
+     * If the function returns {@code null}, the mapping is removed.
+     *
+     * @param key               key with which the specified value is to be associated
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with the specified key, or null if none
+     * @throws NullPointerException     if the specified key or remappingFunction is null
+     */
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        checkKey(key);
+        if (remappingFunction == null) {
+            throw new NullPointerException();
+        }
+        return internalOakHash.compute(key,
+            oldValue -> (oldValue == null) ? null : remappingFunction.apply(key, oldValue));
+    }
+
+    /**
+     * If the specified key is not already associated with a value, associates it with the given value.
+     * Otherwise, replaces the value with the results of the given remapping function (applied while
+     * holding the value's write lock), or removes it if the result is {@code null}.
+     *
+     * @param key               key with which the specified value is to be associated
+     * @param value             the value to use if absent
+     * @param remappingFunction the function to recompute a value if present
+     * @return the new value associated with the specified key, or null if none
+     * @throws NullPointerException     if the specified key, value or remappingFunction is null
+     */
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        checkKey(key);
+        if (value == null || remappingFunction == null) {
+            throw new NullPointerException();
+        }
+        return internalOakHash.compute(key,
+            oldValue -> (oldValue == null) ? value : remappingFunction.apply(oldValue, value));
+    }
+
+    /**
+     * Replaces each entry's value with the result of invoking the given function on that entry.
+     * Each entry is replaced atomically (as in {@code compute()}), but not the whole map.
+     * Entries that are concurrently removed are skipped.
+     *
+     * @param function the function to apply to each entry
+     * @throws NullPointerException if the specified function is null, or if it returns null
+     */
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        if (function == null) {
+            throw new NullPointerException();
+        }
+        Iterator<K> keysIterator = keysIterator();
+        while (keysIterator.hasNext()) {
+            K key = keysIterator.next();
+            internalOakHash.compute(key, oldValue -> (oldValue == null) ? null :
+                Objects.requireNonNull(function.apply(key, oldValue)));
+        }
     }
 
 
@@ -226,18 +327,23 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
                 throw new NullPointerException();
             }
 
-            m.internalOakMap.put(key, value, null);
+            m.internalOakHash.put(key, value, null);
+        }
+
+        // the entries of a hash map never expire (see OakMapBuilder.setExpiringEntries())
+        public void put(K key, V value, long timeToLive, TimeUnit unit) {
+            throw new UnsupportedOperationException("The entries of the map do not expire");
         }
 
         public OakUnscopedBuffer get(K key) {
             m.checkKey(key);
 
-            return m.internalOakMap.get(key);
+            return m.internalOakHash.get(key);
         }
 
         public boolean remove(K key) {
             m.checkKey(key);
-            return m.internalOakMap.remove(key, null, null).operationResult == ValueUtils.ValueResult.TRUE;
+            return m.internalOakHash.remove(key, null, null).operationResult == ValueUtils.ValueResult.TRUE;
         }
 
         public boolean putIfAbsent(K key, V value) {
@@ -246,7 +352,7 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
                 throw new NullPointerException();
             }
 
-            return m.internalOakMap.putIfAbsent(key, value, null).operationResult == ValueUtils.ValueResult.TRUE;
+            return m.internalOakHash.putIfAbsent(key, value, null).operationResult == ValueUtils.ValueResult.TRUE;
         }
 
         public boolean computeIfPresent(K key, Consumer<OakScopedWriteBuffer> computer) {
@@ -255,7 +361,7 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
                 throw new NullPointerException();
             }
 
-            return m.internalOakMap.computeIfPresent(key, computer);
+            return m.internalOakHash.computeIfPresent(key, computer);
         }
 
 
@@ -265,7 +371,7 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
                 throw new IllegalArgumentException();
             }
 
-            return m.internalOakMap.putIfAbsentComputeIfPresent(key, value, computer);
+            return m.internalOakHash.putIfAbsentComputeIfPresent(key, value, computer);
         }
 
 
@@ -301,7 +407,34 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
      * @return current off heap memory usage in bytes
      */
     public long memorySize() {
-        return internalOakMap.memorySize();
+        return internalOakHash.memorySize();
+    }
+
+    /**
+     * @return the ratio of the off-heap memory taken by this map, that is not used by its keys and values
+     * (e.g., released by removals and not reused yet)
+     */
+    public double memoryFragmentationRatio() {
+        return internalOakHash.memoryFragmentationRatio();
+    }
+
+    /**
+     * Returns the sparse off-heap blocks to the blocks pool: the blocks whose ratio of released bytes is at
+     * least the given ratio are evacuated, and their keys and values are relocated. A block is returned once
+     * its relocated keys and values are not read anymore by concurrent operations, which might happen only
+     * upon a following compaction. Can be invoked concurrently with any other operation. Requires the keys
+     * to be reclaimed, and the values to be read without locking (see {@code OakMapBuilder}).
+     *
+     * @param minReleasedRatio the minimal ratio of released bytes of a block that is evacuated
+     * @return the number of evacuated blocks that were not returned yet
+     */
+    public int compactMemory(double minReleasedRatio) {
+        return internalOakHash.compactMemory(minReleasedRatio);
+    }
+
+    // Starts compacting the off-heap memory periodically (see OakMapBuilder.setMemoryCompactionInterval())
+    void startMemoryCompaction(long intervalMillis) {
+        internalOakHash.startMemoryCompaction(intervalMillis);
     }
 
     /**
@@ -312,7 +445,7 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
      */
     @Override
     public void close() {
-        internalOakMap.close();
+        internalOakHash.close();
     }
 
 
@@ -324,77 +457,50 @@ public class OakHashMap<K, V>  extends AbstractMap<K, V> implements AutoCloseabl
 
 
     /**
-     * Returns a {@link Iterator} of the values contained in this map
-     * in ascending order of the corresponding keys.
+     * Returns a {@link Iterator} of the values contained in this map (unordered).
      */
     private Iterator<V> valuesIterator() {
-        return internalOakMap.valuesTransformIterator(null, false, null, false, false,
-                valueDeserializeTransformer);
+        return internalOakHash.valuesTransformIterator(valueDeserializeTransformer);
     }
 
     /**
-     * Returns a {@link Iterator} of the mappings contained in this map in ascending key order.
+     * Returns a {@link Iterator} of the mappings contained in this map (unordered).
      */
     private Iterator<Map.Entry<K, V>> entriesIterator() {
-        return internalOakMap.entriesTransformIterator(null, false, null, false, false,
-                entryDeserializeTransformer);
+        return internalOakHash.entriesTransformIterator(entryDeserializeTransformer);
     }
 
     /**
-     * Returns a {@link Iterator} of the keys contained in this map in ascending order.
+     * Returns a {@link Iterator} of the keys contained in this map (unordered).
      */
     private Iterator<K> keysIterator() {
-        return internalOakMap.keysTransformIterator(null, false, null, false, false,
-                keyDeserializeTransformer);
+        return internalOakHash.keysTransformIterator(keyDeserializeTransformer);
     }
 
     private Iterator<OakUnscopedBuffer> keysBufferIterator() {
-        return internalOakMap.keysBufferViewIterator(null, false, null, false, false);
+        return internalOakHash.keysBufferViewIterator();
     }
 
 
     private Iterator<OakUnscopedBuffer> valuesBufferIterator() {
-        return internalOakMap.valuesBufferViewIterator(null, false, null, false, false);
+        return internalOakHash.valuesBufferViewIterator();
     }
 
     private Iterator<Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer>> entriesBufferIterator() {
-        return internalOakMap.entriesBufferViewIterator(null, false, null, false, false);
+        return internalOakHash.entriesBufferViewIterator();
     }
 
     private Iterator<OakUnscopedBuffer> keysStreamIterator() {
-        return internalOakMap.keysStreamIterator(null, false, null, false, false);
+        return internalOakHash.keysStreamIterator();
     }
 
 
     private Iterator<OakUnscopedBuffer> valuesStreamIterator() {
-        return internalOakMap.valuesStreamIterator(null, false, null, false, false);
+        return internalOakHash.valuesStreamIterator();
     }
 
     private Iterator<Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer>> entriesStreamIterator() {
-        return internalOakMap.entriesStreamIterator(null, false, null, false, false);
-    }
-
-    /* ---------------- TODO: Move methods below to their proper place as they are implemented -------------- */
-
-
-    @Override
-    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
-        return null;
-    }
-
-    @Override
-    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
-        return null;
-    }
-
-    @Override
-    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
-        return null;
+        return internalOakHash.entriesStreamIterator();
     }
 
     /* ---------------- View Classes -------------- */
@@ -0,0 +1,23 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+/**
+ * OakHasher calculates the hash of the keys of OakHashMap, both from the key object and from the serialized key,
+ * so the hash of a key that is kept off-heap is calculated without its deserialization.
+ * The two methods must agree: for any key, {@code hash(key)} equals {@code hashSerialized()} of the key
+ * serialized by the key serializer of the map.
+ * Keys that are equal according to the map's comparator must have the same hash.
+ *
+ * @param <K> The key object type.
+ */
+public interface OakHasher<K> {
+
+    int hash(K key);
+
+    int hashSerialized(OakScopedReadBuffer serializedKey);
+}
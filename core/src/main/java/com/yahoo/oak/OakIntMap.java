@@ -0,0 +1,192 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A concurrent ordered map from ints to ints, whose keys and values are inlined in the entries of its chunks.
+ * <p>
+ * This is the int variant of OakLongMap, which backs it: the keys and the values are widened to longs, so an
+ * entry costs the same as an entry of OakLongMap, and there is no boxing or allocation upon an update.
+ * <p>
+ * A map is created with a missing value, which marks the keys without values. It is returned by the lookups
+ * of the absent keys, and it cannot be put as a value.
+ */
+public class OakIntMap {
+
+    private final InternalOakLongMap internalOakLongMap;
+
+    /**
+     * Iterates over the entries of the map, see {@code forEach(EntryConsumer)}.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(int key, int value);
+    }
+
+    /**
+     * Creates an empty map with the default number of entries per chunk.
+     *
+     * @param missingValue the value returned by the lookups of the absent keys
+     */
+    public OakIntMap(int missingValue) {
+        this(missingValue, Chunk.MAX_ITEMS_DEFAULT);
+    }
+
+    /**
+     * Creates an empty map.
+     *
+     * @param missingValue  the value returned by the lookups of the absent keys
+     * @param chunkMaxItems the number of entries per chunk
+     */
+    public OakIntMap(int missingValue, int chunkMaxItems) {
+        if (chunkMaxItems < 2) {
+            throw new IllegalArgumentException("A chunk must have at least two entries");
+        }
+        this.internalOakLongMap = new InternalOakLongMap(chunkMaxItems, missingValue);
+    }
+
+    /* ------ Map API methods ------ */
+
+    /**
+     * @return the value that marks the absent keys
+     */
+    public int getMissingValue() {
+        return (int) internalOakLongMap.getMissingValue();
+    }
+
+    /**
+     * @return the current number of key-value mappings in this map
+     */
+    public int size() {
+        return internalOakLongMap.size();
+    }
+
+    /**
+     * @return true if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @param key the key whose associated value is to be returned
+     * @return the value associated with the key, or the missing value if this map contains no mapping for the key
+     */
+    public int get(int key) {
+        return (int) internalOakLongMap.get(key);
+    }
+
+    /**
+     * @param key the key whose presence in this map is to be tested
+     * @return true if this map contains a mapping for the key
+     */
+    public boolean containsKey(int key) {
+        return get(key) != getMissingValue();
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     *
+     * @param key   the key with which the specified value is to be associated
+     * @param value the value to be associated with the specified key
+     * @return the previous value associated with the key, or the missing value if there was no mapping for the key
+     * @throws IllegalArgumentException if the value is the missing value
+     */
+    public int put(int key, int value) {
+        checkValue(value);
+        return (int) internalOakLongMap.update(key, value, InternalOakLongMap.Operation.PUT);
+    }
+
+    /**
+     * If the specified key is not already associated with a value, associates it with the given value.
+     *
+     * @param key   the key with which the specified value is to be associated
+     * @param value the value to be associated with the specified key
+     * @return the current value associated with the key, or the missing value if there was no mapping for the key
+     * (and then the given value was associated with it)
+     * @throws IllegalArgumentException if the value is the missing value
+     */
+    public int putIfAbsent(int key, int value) {
+        checkValue(value);
+        return (int) internalOakLongMap.update(key, value, InternalOakLongMap.Operation.PUT_IF_ABSENT);
+    }
+
+    /**
+     * Removes the mapping for a key from this map if it is present.
+     *
+     * @param key the key whose mapping is to be removed from the map
+     * @return the previous value associated with the key, or the missing value if there was no mapping for the key
+     */
+    public int remove(int key) {
+        return (int) internalOakLongMap.update(key, getMissingValue(), InternalOakLongMap.Operation.REMOVE);
+    }
+
+    /**
+     * Atomically adds the given delta to the value associated with the given key. If the key is not associated
+     * with a value, it is associated with the delta (as if its value were zero).
+     *
+     * @param key   the key whose value is to be updated
+     * @param delta the value to add
+     * @return the updated value
+     * @throws ArithmeticException      if the updated value overflows an int (in which case, the map is not
+     *                                  updated)
+     * @throws IllegalArgumentException if the updated value is the missing value, for example if the key is absent
+     *                                  and the delta is the missing value (in which case, the map is not updated)
+     */
+    public int addAndGet(int key, int delta) {
+        int prev = (int) internalOakLongMap.update(key, delta, InternalOakLongMap.Operation.ADD_INT);
+        return prev == getMissingValue() ? delta : prev + delta;
+    }
+
+    /* ------ Iterations ------ */
+
+    /**
+     * Performs the given action for each entry of this map, in ascending order of the keys.
+     * The iteration is weakly consistent, as the iterations of OakMap.
+     *
+     * @param action the action to perform for each entry
+     */
+    public void forEach(EntryConsumer action) {
+        InternalOakLongMap.EntryIter iter = internalOakLongMap.new EntryIter();
+        while (iter.hasNext()) {
+            iter.advance();
+            action.accept((int) iter.key(), (int) iter.value());
+        }
+    }
+
+    /**
+     * @return an iterator over the keys of this map, in ascending order (the iteration is weakly consistent, as
+     * the iterations of OakMap)
+     */
+    public PrimitiveIterator.OfInt keyIterator() {
+        InternalOakLongMap.EntryIter iter = internalOakLongMap.new EntryIter();
+        return new PrimitiveIterator.OfInt() {
+            @Override
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+
+            @Override
+            public int nextInt() {
+                if (!iter.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                iter.advance();
+                return (int) iter.key();
+            }
+        };
+    }
+
+    private void checkValue(int value) {
+        if (value == getMissingValue()) {
+            throw new IllegalArgumentException("The missing value cannot be put as a value");
+        }
+    }
+}
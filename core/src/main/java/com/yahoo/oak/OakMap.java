@@ -6,6 +6,11 @@
 
 package com.yahoo.oak;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.AbstractCollection;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
@@ -14,9 +19,11 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NavigableSet;
+import java.util.Objects;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -39,6 +46,8 @@ public class OakMap<K, V> extends AbstractMap<K, V>
     private final Function<Map.Entry<OakScopedReadBuffer, OakScopedReadBuffer>,
             Map.Entry<K, V>> entryDeserializeTransformer;
     private final OakComparator<K> comparator;
+    // logs the updates if the map is durable (null otherwise), see OakMapBuilder.setWriteAheadLog()
+    private WriteAheadLog<K, V> writeAheadLog;
 
     // SubOakMap fields
     private final K fromKey;
@@ -79,6 +88,7 @@ public class OakMap<K, V> extends AbstractMap<K, V>
         this.valueDeserializeTransformer = oakMap.valueDeserializeTransformer;
         this.entryDeserializeTransformer = oakMap.entryDeserializeTransformer;
         this.comparator = oakMap.comparator;
+        this.writeAheadLog = oakMap.writeAheadLog;
         this.fromKey = fromKey;
         this.fromInclusive = fromInclusive;
         this.toKey = toKey;
@@ -139,7 +149,34 @@ public class OakMap<K, V> extends AbstractMap<K, V>
         if (value == null) {
             throw new NullPointerException();
         }
-        return internalOakMap.put(key, value, valueDeserializeTransformer);
+        if (writeAheadLog == null) {
+            // the update is applied directly, so a put does not allocate the lambda of a logged update
+            return internalOakMap.put(key, value, valueDeserializeTransformer);
+        }
+        return writeAheadLog.update(key, value, () -> internalOakMap.put(key, value, valueDeserializeTransformer));
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map, as {@code put(key, value)} does, and
+     * the mapping expires once the given time to live passes: it is then absent, until it is replaced.
+     * The expiration is reset by the following puts (and replaces) of the key, but it is kept by the other updates.
+     * Supported only if the map was built with expiring entries (see {@code OakMapBuilder.setExpiringEntries()}).
+     *
+     * @param key        key with which the specified value is to be associated
+     * @param value      value to be associated with the specified key
+     * @param timeToLive the time to live of the mapping, must be positive
+     * @param unit       the time unit of timeToLive
+     * @return the previous value associated with the key, or {@code null} if there was no mapping for the key
+     * @throws NullPointerException          if the specified key or value is null
+     * @throws IllegalArgumentException      if the specified key is out of bounds, or timeToLive is not positive
+     * @throws UnsupportedOperationException if the entries of the map do not expire
+     */
+    public V put(K key, V value, long timeToLive, TimeUnit unit) {
+        checkKey(key);
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        return internalOakMap.put(key, value, valueDeserializeTransformer, getExpiration(timeToLive, unit));
     }
 
     /**
@@ -154,6 +191,9 @@ public class OakMap<K, V> extends AbstractMap<K, V>
     @Override
     public V remove(Object key) {
         checkKey((K) key);
+        if (writeAheadLog != null) {
+            return writeAheadLog.update((K) key, current -> null, (current, value) -> current);
+        }
         return (V) internalOakMap.remove((K) key, null, valueDeserializeTransformer).value;
     }
 
@@ -208,8 +248,15 @@ public class OakMap<K, V> extends AbstractMap<K, V>
     @Override
     public boolean remove(Object key, Object value) {
         checkKey((K) key);
-        return (value != null) && (internalOakMap.remove((K) key, (V) value,
-                valueDeserializeTransformer).operationResult == ValueUtils.ValueResult.TRUE);
+        if (value == null) {
+            return false;
+        }
+        if (writeAheadLog != null) {
+            return writeAheadLog.update((K) key, current -> value.equals(current) ? null : current,
+                (current, newValue) -> current != newValue);
+        }
+        return internalOakMap.remove((K) key, (V) value,
+                valueDeserializeTransformer).operationResult == ValueUtils.ValueResult.TRUE;
     }
 
 
@@ -226,6 +273,10 @@ public class OakMap<K, V> extends AbstractMap<K, V>
             throw new NullPointerException();
         }
 
+        if (writeAheadLog != null) {
+            return writeAheadLog.update(key, current -> (current == null) ? null : value,
+                (current, newValue) -> current);
+        }
         return internalOakMap.replace(key, value, valueDeserializeTransformer);
     }
 
@@ -243,6 +294,10 @@ public class OakMap<K, V> extends AbstractMap<K, V>
             throw new NullPointerException();
         }
 
+        if (writeAheadLog != null) {
+            return writeAheadLog.update(key, current -> oldValue.equals(current) ? newValue : current,
+                (current, value) -> current != value);
+        }
         return internalOakMap.replace(key, oldValue, newValue, valueDeserializeTransformer);
     }
 
@@ -262,12 +317,147 @@ public class OakMap<K, V> extends AbstractMap<K, V>
         if (value == null) {
             throw new NullPointerException();
         }
+        if (writeAheadLog != null) {
+            return writeAheadLog.update(key, current -> (current == null) ? value : current,
+                (current, newValue) -> current);
+        }
         return (V) internalOakMap.putIfAbsent(key, value, valueDeserializeTransformer).value;
     }
 
+    /**
+     * If the specified key is not already associated with a value, attempts to compute its value using the
+     * given mapping function and associates it with the key, unless the computed value is {@code null}.
+     * The mapping function is applied before the computed value is inserted, so it may be applied more than
+     * once, if a value is concurrently associated with the key (as {@code ConcurrentMap.computeIfAbsent()}
+     * allows). Hence, the function should have no side effects.
+     *
+     * @param key             key with which the specified value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value associated with the specified key, or
+     * {@code null} if the computed value is {@code null}
+     * @throws NullPointerException     if the specified key or mappingFunction is null
+     * @throws IllegalArgumentException if the specified key is out of bounds
+     */
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        checkKey(key);
+        if (mappingFunction == null) {
+            throw new NullPointerException();
+        }
+        if (writeAheadLog != null) {
+            return writeAheadLog.update(key, current -> (current == null) ? mappingFunction.apply(key) : current,
+                (current, value) -> value);
+        }
+        return internalOakMap.computeIfAbsent(key, mappingFunction, valueDeserializeTransformer);
+    }
+
+    /**
+     * Attempts to compute a mapping for the specified key and its current mapped value
+     * (or {@code null} if there is no current mapping).
+     * The remapping function is applied on an existing value while holding its write lock,
+     * so concurrent updates of an existing value are serialized.
+     * If there is no current mapping, the function is applied on {@code null} before the computed value is
+     * inserted, so if a value is concurrently associated with the key, the function may be applied again, on
+     * that value (as {@code ConcurrentMap.compute()} allows). Hence, the function should have no side effects.
+     * If the function returns {@code null}, the mapping is removed.
+     *
+     * @param key               key with which the specified value is to be associated
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with the specified key, or null if none
+     * @throws NullPointerException     if the specified key or remappingFunction is null
+     * @throws IllegalArgumentException if the specified key is out of bounds
+     */
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        checkKey(key);
+        if (remappingFunction == null) {
+            throw new NullPointerException();
+        }
+        return compute(key, oldValue -> remappingFunction.apply(key, oldValue));
+    }
+
+    /**
+     * If the value for the specified key is present, attempts to compute a new mapping given the key and its
+     * current mapped value. The remapping function is applied while holding the value's write lock.
+     * If the function returns {@code null}, the mapping is removed.
+     *
+     * @param key               key with which the specified value is to be associated
+     * @param remappingFunction the function to compute a value
+     * @return the new value associated with the specified key, or null if none
+     * @throws NullPointerException     if the specified key or remappingFunction is null
+     * @throws IllegalArgumentException if the specified key is out of bounds
+     */
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        checkKey(key);
+        if (remappingFunction == null) {
+            throw new NullPointerException();
+        }
+        return compute(key, oldValue -> (oldValue == null) ? null : remappingFunction.apply(key, oldValue));
+    }
+
+    /**
+     * If the specified key is not already associated with a value, associates it with the given value.
+     * Otherwise, replaces the value with the results of the given remapping function (applied while
+     * holding the value's write lock), or removes it if the result is {@code null}.
+     *
+     * @param key               key with which the specified value is to be associated
+     * @param value             the value to use if absent
+     * @param remappingFunction the function to recompute a value if present
+     * @return the new value associated with the specified key, or null if none
+     * @throws NullPointerException     if the specified key, value or remappingFunction is null
+     * @throws IllegalArgumentException if the specified key is out of bounds
+     */
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        checkKey(key);
+        if (value == null || remappingFunction == null) {
+            throw new NullPointerException();
+        }
+        return compute(key, oldValue -> (oldValue == null) ? value : remappingFunction.apply(oldValue, value));
+    }
+
+    /**
+     * Replaces each entry's value with the result of invoking the given function on that entry.
+     * Each entry is replaced atomically (as in {@code compute()}), but not the whole map.
+     * Entries that are concurrently removed are skipped.
+     *
+     * @param function the function to apply to each entry
+     * @throws NullPointerException if the specified function is null, or if it returns null
+     */
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        if (function == null) {
+            throw new NullPointerException();
+        }
+        Iterator<K> keysIterator = keysIterator();
+        while (keysIterator.hasNext()) {
+            K key = keysIterator.next();
+            compute(key, oldValue -> (oldValue == null) ? null :
+                Objects.requireNonNull(function.apply(key, oldValue)));
+        }
+    }
+
 
     /* ---------------- NavigableMap API methods -------------- */
 
+    // the navigation methods are not supported on a SubMap, on a descending map the lower and higher are swapped
+    private Entry<K, V> navigationEntry(K key, boolean inclusive, boolean isLower) {
+        if (this.isSubmap()) {
+            throw new UnsupportedOperationException();
+        }
+        return internalOakMap.getNavigationTransformation(key, inclusive, isLower != isDescending,
+            entryDeserializeTransformer);
+    }
+
+    private K navigationKey(K key, boolean inclusive, boolean isLower) {
+        if (this.isSubmap()) {
+            throw new UnsupportedOperationException();
+        }
+        return internalOakMap.getNavigationTransformation(key, inclusive, isLower != isDescending,
+            entry -> keyDeserializeTransformer.apply(entry.getKey()));
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -275,15 +465,49 @@ public class OakMap<K, V> extends AbstractMap<K, V>
      */
     @Override
     public Entry<K, V> lowerEntry(K key) {
-        if (this.isSubmap()) {
-            throw new UnsupportedOperationException();
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        return navigationEntry(key, false, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException if used on a SubMap
+     */
+    @Override
+    public K lowerKey(K key) {
+        if (key == null) {
+            throw new NullPointerException();
         }
+        return navigationKey(key, false, true);
+    }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException if used on a SubMap
+     */
+    @Override
+    public Entry<K, V> floorEntry(K key) {
         if (key == null) {
             throw new NullPointerException();
         }
+        return navigationEntry(key, true, true);
+    }
 
-        return internalOakMap.lowerEntry(key);
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException if used on a SubMap
+     */
+    @Override
+    public K floorKey(K key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        return navigationKey(key, true, true);
     }
 
     /**
@@ -292,16 +516,110 @@ public class OakMap<K, V> extends AbstractMap<K, V>
      * @throws UnsupportedOperationException if used on a SubMap
      */
     @Override
-    public K lowerKey(K key) {
-        if (this.isSubmap()) {
-            throw new UnsupportedOperationException();
+    public Entry<K, V> ceilingEntry(K key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        return navigationEntry(key, true, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException if used on a SubMap
+     */
+    @Override
+    public K ceilingKey(K key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        return navigationKey(key, true, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException if used on a SubMap
+     */
+    @Override
+    public Entry<K, V> higherEntry(K key) {
+        if (key == null) {
+            throw new NullPointerException();
         }
+        return navigationEntry(key, false, false);
+    }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException if used on a SubMap
+     */
+    @Override
+    public K higherKey(K key) {
         if (key == null) {
             throw new NullPointerException();
         }
+        return navigationKey(key, false, false);
+    }
 
-        return internalOakMap.lowerEntry(key).getKey();
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException if used on a SubMap
+     */
+    @Override
+    public Entry<K, V> firstEntry() {
+        return navigationEntry(null, true, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException if used on a SubMap
+     */
+    @Override
+    public Entry<K, V> lastEntry() {
+        return navigationEntry(null, true, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException if used on a SubMap
+     */
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        if (this.isSubmap()) {
+            throw new UnsupportedOperationException();
+        }
+        return pollEntry(isDescending);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UnsupportedOperationException if used on a SubMap
+     */
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        if (this.isSubmap()) {
+            throw new UnsupportedOperationException();
+        }
+        return pollEntry(!isDescending);
+    }
+
+    private Entry<K, V> pollEntry(boolean isLast) {
+        if (writeAheadLog == null) {
+            return internalOakMap.pollNavigationEntry(isLast, entryDeserializeTransformer);
+        }
+        // the polled key is logged as any removed key, so it must be known before the removal
+        while (true) {
+            Entry<K, V> entry = internalOakMap.getNavigationTransformation(null, true, isLast,
+                entryDeserializeTransformer);
+            if (entry == null || remove(entry.getKey(), entry.getValue())) {
+                return entry;
+            }
+        }
     }
 
 
@@ -472,7 +790,7 @@ public class OakMap<K, V> extends AbstractMap<K, V>
 
     /* ------ Zero-Copy API methods  ------ */
 
-    public ZeroCopyMap<K, V> zc() {
+    public ZeroCopyNavigableMap<K, V> zc() {
         return new OakZeroCopyMap<>(this);
     }
 
@@ -480,7 +798,7 @@ public class OakMap<K, V> extends AbstractMap<K, V>
         return valuesMemoryManager;
     }
 
-    public static class OakZeroCopyMap<K, V> implements ZeroCopyMap<K, V> {
+    public static class OakZeroCopyMap<K, V> implements ZeroCopyNavigableMap<K, V> {
         private OakMap<K, V> m;
 
         OakZeroCopyMap(OakMap<K, V> kvOakMap) {
@@ -493,7 +811,21 @@ public class OakMap<K, V> extends AbstractMap<K, V>
                 throw new NullPointerException();
             }
 
-            m.internalOakMap.put(key, value, null);
+            if (m.writeAheadLog == null) {
+                // the update is applied directly, so a put does not allocate the lambda of a logged update
+                m.internalOakMap.put(key, value, null);
+                return;
+            }
+            m.writeAheadLog.update(key, value, () -> m.internalOakMap.put(key, value, null));
+        }
+
+        public void put(K key, V value, long timeToLive, TimeUnit unit) {
+            m.checkKey(key);
+            if (value == null) {
+                throw new NullPointerException();
+            }
+
+            m.internalOakMap.put(key, value, null, m.getExpiration(timeToLive, unit));
         }
 
         public OakUnscopedBuffer get(K key) {
@@ -505,6 +837,9 @@ public class OakMap<K, V> extends AbstractMap<K, V>
         public boolean remove(K key) {
             m.checkKey(key);
 
+            if (m.writeAheadLog != null) {
+                return m.writeAheadLog.update(key, current -> null, (current, value) -> current != null);
+            }
             return m.internalOakMap.remove(key, null, null).operationResult == ValueUtils.ValueResult.TRUE;
         }
 
@@ -514,6 +849,10 @@ public class OakMap<K, V> extends AbstractMap<K, V>
                 throw new NullPointerException();
             }
 
+            if (m.writeAheadLog != null) {
+                return m.writeAheadLog.update(key, current -> (current == null) ? value : current,
+                    (current, newValue) -> current == null);
+            }
             return m.internalOakMap.putIfAbsent(key, value, null).operationResult == ValueUtils.ValueResult.TRUE;
         }
 
@@ -523,6 +862,9 @@ public class OakMap<K, V> extends AbstractMap<K, V>
                 throw new NullPointerException();
             }
 
+            if (m.writeAheadLog != null) {
+                return m.writeAheadLog.computeIfPresent(key, computer);
+            }
             return m.internalOakMap.computeIfPresent(key, computer);
         }
 
@@ -533,6 +875,9 @@ public class OakMap<K, V> extends AbstractMap<K, V>
                 throw new IllegalArgumentException();
             }
 
+            if (m.writeAheadLog != null) {
+                return m.writeAheadLog.putIfAbsentComputeIfPresent(key, value, computer);
+            }
             return m.internalOakMap.putIfAbsentComputeIfPresent(key, value, computer);
         }
 
@@ -560,6 +905,86 @@ public class OakMap<K, V> extends AbstractMap<K, V>
         public Set<Entry<OakUnscopedBuffer, OakUnscopedBuffer>> entryStreamSet() {
             return new EntryStreamBufferSet<>(m);
         }
+
+        // the navigation methods are not supported on a SubMap, on a descending map the lower and higher are swapped
+        private Entry<OakUnscopedBuffer, OakUnscopedBuffer> navigationEntry(K key, boolean inclusive,
+            boolean isLower) {
+            if (m.isSubmap()) {
+                throw new UnsupportedOperationException();
+            }
+            return m.internalOakMap.getNavigationEntry(key, inclusive, isLower != m.isDescending);
+        }
+
+        private OakUnscopedBuffer navigationKey(K key, boolean inclusive, boolean isLower) {
+            if (m.isSubmap()) {
+                throw new UnsupportedOperationException();
+            }
+            return m.internalOakMap.getNavigationKey(key, inclusive, isLower != m.isDescending);
+        }
+
+        public Entry<OakUnscopedBuffer, OakUnscopedBuffer> lowerEntry(K key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            return navigationEntry(key, false, true);
+        }
+
+        public OakUnscopedBuffer lowerKey(K key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            return navigationKey(key, false, true);
+        }
+
+        public Entry<OakUnscopedBuffer, OakUnscopedBuffer> floorEntry(K key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            return navigationEntry(key, true, true);
+        }
+
+        public OakUnscopedBuffer floorKey(K key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            return navigationKey(key, true, true);
+        }
+
+        public Entry<OakUnscopedBuffer, OakUnscopedBuffer> ceilingEntry(K key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            return navigationEntry(key, true, false);
+        }
+
+        public OakUnscopedBuffer ceilingKey(K key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            return navigationKey(key, true, false);
+        }
+
+        public Entry<OakUnscopedBuffer, OakUnscopedBuffer> higherEntry(K key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            return navigationEntry(key, false, false);
+        }
+
+        public OakUnscopedBuffer higherKey(K key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+            return navigationKey(key, false, false);
+        }
+
+        public Entry<OakUnscopedBuffer, OakUnscopedBuffer> firstEntry() {
+            return navigationEntry(null, true, false);
+        }
+
+        public Entry<OakUnscopedBuffer, OakUnscopedBuffer> lastEntry() {
+            return navigationEntry(null, true, true);
+        }
     }
 
 
@@ -573,6 +998,94 @@ public class OakMap<K, V> extends AbstractMap<K, V>
         return internalOakMap.memorySize();
     }
 
+    /**
+     * @return the ratio of the off-heap memory taken by this map, that is not used by its keys and values
+     * (e.g., released by removals and not reused yet)
+     */
+    public double memoryFragmentationRatio() {
+        return internalOakMap.memoryFragmentationRatio();
+    }
+
+    /**
+     * Returns the sparse off-heap blocks to the blocks pool: the blocks whose ratio of released bytes is at
+     * least the given ratio are evacuated, and their keys and values are relocated. A block is returned once
+     * its relocated keys and values are not read anymore by concurrent operations, which might happen only
+     * upon a following compaction. Can be invoked concurrently with any other operation. Requires the keys
+     * to be reclaimed, and the values to be read without locking (see {@code OakMapBuilder}).
+     *
+     * @param minReleasedRatio the minimal ratio of released bytes of a block that is evacuated
+     * @return the number of evacuated blocks that were not returned yet
+     */
+    public int compactMemory(double minReleasedRatio) {
+        return internalOakMap.compactMemory(minReleasedRatio);
+    }
+
+    // Starts compacting the off-heap memory periodically (see OakMapBuilder.setMemoryCompactionInterval())
+    void startMemoryCompaction(long intervalMillis) {
+        internalOakMap.startMemoryCompaction(intervalMillis);
+    }
+
+    // Makes this empty map a cache, which evicts entries beyond the given capacity (see OakMapBuilder.setCache())
+    void startEviction(long capacityBytes) {
+        internalOakMap.startEviction(capacityBytes);
+    }
+
+    /**
+     * Writes the entries of the map to a file, in ascending key order, so the map can be rebuilt from the file
+     * (see {@code OakMapBuilder.restore()}). The serialized keys and values are copied from the off-heap memory
+     * to the file without being deserialized. Can be invoked concurrently with other operations, but the
+     * snapshot is not atomic: concurrent updates might or might not be included.
+     * Not supported for SubMaps.
+     *
+     * @param file the file to write, which is created or truncated
+     * @return the number of the written entries
+     * @throws IOException if the file cannot be written
+     * @throws UnsupportedOperationException if used on a SubMap
+     */
+    public long snapshot(Path file) throws IOException {
+        if (this.isSubmap()) {
+            throw new UnsupportedOperationException();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            return internalOakMap.snapshot(new MapSnapshot.Writer(channel));
+        }
+    }
+
+    // Populates this empty map with the entries of a snapshot (see OakMapBuilder.restore())
+    long restore(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return internalOakMap.restore(new MapSnapshot.Reader(channel));
+        }
+    }
+
+    /**
+     * Writes a checkpoint of a durable map (see {@code OakMapBuilder.setWriteAheadLog()}): a snapshot of the map,
+     * after which the write-ahead log is truncated, so the recovery replays only the updates that follow the
+     * checkpoint. Can be invoked concurrently with other operations.
+     *
+     * @return the number of the entries in the checkpoint
+     * @throws IOException if the checkpoint cannot be written
+     * @throws IllegalStateException if the map is not durable
+     */
+    public long checkpoint() throws IOException {
+        if (writeAheadLog == null) {
+            throw new IllegalStateException("The map has no write-ahead log");
+        }
+        return writeAheadLog.checkpoint();
+    }
+
+    // Recovers this empty map from a write-ahead log directory, and logs the following updates to it
+    void openWriteAheadLog(Path directory, OakSerializer<K> keySerializer, OakSerializer<V> valueSerializer)
+        throws IOException {
+        writeAheadLog = WriteAheadLog.recover(directory, this, internalOakMap, keySerializer, valueSerializer);
+    }
+
+    @VisibleForTesting
+    WriteAheadLog<K, V> getWriteAheadLog() {
+        return writeAheadLog;
+    }
+
     /**
      * Close and release the map and all the memory that is used by it.
      * The user should ensure that there are no concurrent operations
@@ -581,12 +1094,44 @@ public class OakMap<K, V> extends AbstractMap<K, V>
      */
     @Override
     public void close() {
-        internalOakMap.close();
+        try {
+            if (writeAheadLog != null) {
+                writeAheadLog.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            internalOakMap.close();
+        }
     }
 
 
     /* ---------------- Private utility methods -------------- */
 
+    // Applies a remapping of the value of the key, which is logged if the map is durable (see
+    // {@code WriteAheadLog.update(K, Function, BiFunction)}). Returns the new value associated with the key,
+    // or null if there is none
+    private V compute(K key, Function<? super V, ? extends V> remappingFunction) {
+        if (writeAheadLog == null) {
+            return internalOakMap.compute(key, remappingFunction);
+        }
+        return writeAheadLog.update(key, remappingFunction, (current, value) -> value);
+    }
+
+    // the expiration time of a mapping that is put now with the given time to live
+    private long getExpiration(long timeToLive, TimeUnit unit) {
+        if (!valuesMemoryManager.isExpirationTracked()) {
+            throw new UnsupportedOperationException(
+                "The entries of the map do not expire, see OakMapBuilder.setExpiringEntries()");
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("The time to live must be positive");
+        }
+        long now = System.currentTimeMillis();
+        long timeToLiveMillis = unit.toMillis(timeToLive);
+        return timeToLiveMillis < Slice.NO_EXPIRATION - now ? now + timeToLiveMillis : Slice.NO_EXPIRATION;
+    }
+
     private void checkKey(K key) {
         if (key == null) {
             throw new NullPointerException();
@@ -651,79 +1196,6 @@ public class OakMap<K, V> extends AbstractMap<K, V>
         return internalOakMap.entriesStreamIterator(fromKey, fromInclusive, toKey, toInclusive, isDescending);
     }
 
-    /* ---------------- TODO: Move methods below to their proper place as they are implemented -------------- */
-
-
-    @Override
-    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
-        return null;
-    }
-
-    @Override
-    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
-        return null;
-    }
-
-    @Override
-    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
-        return null;
-    }
-
-    @Override
-    public Entry<K, V> floorEntry(K key) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public K floorKey(K key) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public Entry<K, V> ceilingEntry(K key) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public K ceilingKey(K key) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public Entry<K, V> higherEntry(K key) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public K higherKey(K key) {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public Entry<K, V> firstEntry() {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public Entry<K, V> lastEntry() {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public Entry<K, V> pollFirstEntry() {
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public Entry<K, V> pollLastEntry() {
-        throw new UnsupportedOperationException();
-    }
-
     /* ---------------- View Classes -------------- */
 
     static class KeySet<K> extends AbstractSet<K> implements NavigableSet<K> {
@@ -6,6 +6,12 @@
 
 package com.yahoo.oak;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * This class builds a new OakMap instance, and sets serializers, deserializers and allocation size calculators,
  * received from the user.
@@ -24,12 +30,28 @@ public class OakMapBuilder<K, V> {
 
     // comparators
     private OakComparator<K> comparator;
+    // hasher (used only by OakHashMap, optional)
+    private OakHasher<K> hasher;
 
     // Off-heap fields
     private int chunkMaxItems;
     private long memoryCapacity;
     private BlockMemoryAllocator memoryAllocator;
     private Integer preferredBlockSizeBytes;
+    private long blocksPoolPreAllocSizeBytes;
+    private long blocksPoolLowReservedSizeBytes;
+    private long blocksPoolHighReservedSizeBytes;
+    private boolean blocksPoolPreTouch;
+    private List<Path> mappedFilesDirectories;
+    private boolean reclaimKeys;
+    private boolean lockFreeValueReads;
+    private boolean sizeClassAllocation;
+    private boolean threadLocalAllocation;
+    private boolean freeSliceCoalescing;
+    private long memoryCompactionIntervalMillis;
+    private Path writeAheadLogDirectory;
+    private long cacheCapacityBytes;
+    private boolean expiringEntries;
 
     public OakMapBuilder(OakComparator<K> comparator,
                          OakSerializer<K> keySerializer, OakSerializer<V> valueSerializer, K minKey) {
@@ -38,11 +60,23 @@ public class OakMapBuilder<K, V> {
         this.minKey = minKey;
 
         this.comparator = comparator;
+        this.hasher = null;
 
         this.chunkMaxItems = Chunk.MAX_ITEMS_DEFAULT;
         this.memoryCapacity = MAX_MEM_CAPACITY;
         this.memoryAllocator = null;
         this.preferredBlockSizeBytes = null;
+        this.blocksPoolPreAllocSizeBytes = BlocksPool.DEFAULT_PRE_ALLOC_SIZE_BYTES;
+        this.blocksPoolLowReservedSizeBytes = BlocksPool.DEFAULT_LOW_RESERVED_SIZE_BYTES;
+        this.blocksPoolHighReservedSizeBytes = BlocksPool.DEFAULT_HIGH_RESERVED_SIZE_BYTES;
+        this.blocksPoolPreTouch = false;
+        this.mappedFilesDirectories = null;
+        this.reclaimKeys = false;
+        this.lockFreeValueReads = false;
+        this.sizeClassAllocation = false;
+        this.threadLocalAllocation = false;
+        this.freeSliceCoalescing = false;
+        this.memoryCompactionIntervalMillis = 0;
     }
 
     public OakMapBuilder<K, V> setKeySerializer(OakSerializer<K> keySerializer) {
@@ -75,20 +109,255 @@ public class OakMapBuilder<K, V> {
         return this;
     }
 
+    /**
+     * Sets the hasher of the keys, used only by OakHashMap.
+     * If no hasher is set, the keys' {@code hashCode()} is used, which requires the deserialization
+     * of the off-heap keys whenever their hash is calculated.
+     * @param hasher the keys hasher
+     */
+    public OakMapBuilder<K, V> setHasher(OakHasher<K> hasher) {
+        this.hasher = hasher;
+        return this;
+    }
+
     public OakMapBuilder<K, V> setMemoryAllocator(BlockMemoryAllocator ma) {
         this.memoryAllocator = ma;
         return this;
     }
 
     /**
-     * Sets the preferred block size. This only has an effect if OakMap was never instantiated before.
+     * Sets the preferred block size. If OakMap was never instantiated before, the shared blocks pool uses this block
+     * size. Otherwise, if the shared blocks pool uses a different block size, the map uses a blocks pool of its own
+     * configuration (see {@code setBlocksPoolPreAllocation}). Has no effect if a memory allocator is set.
      * @param preferredBlockSizeBytes the preferred block size
      */
     public OakMapBuilder<K, V> setPreferredBlockSize(int preferredBlockSizeBytes) {
+        if (preferredBlockSizeBytes <= 0) {
+            throw new IllegalArgumentException("The block size must be positive");
+        }
         this.preferredBlockSizeBytes = preferredBlockSizeBytes;
         return this;
     }
 
+    /**
+     * Sets the off-heap memory size that is allocated when the map is built (by default none).
+     * The blocks of the map are taken from a pool, which is shared by all the maps of the same pool configuration
+     * (the block size, the pre-allocation, the reserved size and the pre-touch). A map with the default configuration
+     * uses the default pool, which allocates its memory on demand. A map with any other configuration uses a pool of
+     * its configuration, which pre-allocates the given size once it is created (while building the first map of that
+     * configuration), so later allocations do not have to wait for the memory.
+     * Has no effect if a memory allocator is set.
+     * @param preAllocSizeBytes the size of the memory to pre-allocate in bytes
+     */
+    public OakMapBuilder<K, V> setBlocksPoolPreAllocation(long preAllocSizeBytes) {
+        if (preAllocSizeBytes < 0) {
+            throw new IllegalArgumentException("The pre-allocated size must not be negative");
+        }
+        this.blocksPoolPreAllocSizeBytes = preAllocSizeBytes;
+        return this;
+    }
+
+    /**
+     * Sets the thresholds of the unused off-heap memory that the blocks pool keeps for future use (by default
+     * 2GB and 4GB). Once the unused memory of the pool reaches the high threshold, it is released back to the
+     * system, until the low threshold remains. See {@code setBlocksPoolPreAllocation}.
+     * @param lowReservedSizeBytes the size of the unused memory that remains after a release in bytes
+     * @param highReservedSizeBytes the size of the unused memory that triggers a release in bytes
+     */
+    public OakMapBuilder<K, V> setBlocksPoolReservedSize(long lowReservedSizeBytes, long highReservedSizeBytes) {
+        if (lowReservedSizeBytes < 0 || lowReservedSizeBytes > highReservedSizeBytes) {
+            throw new IllegalArgumentException(
+                "The reserved sizes must not be negative, and the low size must not exceed the high size");
+        }
+        this.blocksPoolLowReservedSizeBytes = lowReservedSizeBytes;
+        this.blocksPoolHighReservedSizeBytes = highReservedSizeBytes;
+        return this;
+    }
+
+    /**
+     * Sets whether the pages of the blocks are touched once the blocks are allocated by the blocks pool
+     * (by default they are not), so the pages are mapped (e.g., together with the pre-allocation) before
+     * they are used by the map. See {@code setBlocksPoolPreAllocation}.
+     * @param preTouch whether to touch the pages of the allocated blocks
+     */
+    public OakMapBuilder<K, V> setBlocksPoolPreTouch(boolean preTouch) {
+        this.blocksPoolPreTouch = preTouch;
+        return this;
+    }
+
+    /**
+     * Sets the directories of the files that back the off-heap memory of the map (by default it is not backed
+     * by files). A file is created in each directory (e.g., on tmpfs or on a local SSD), and the memory blocks of
+     * the map are mapped regions of these files, so the memory of the map may exceed the physical memory: its
+     * cold pages are written back to the files and evicted by the kernel. The files are deleted once the map is
+     * closed. The blocks are not taken from a blocks pool, so the blocks pool settings have no effect (except for
+     * the preferred block size). Cannot be combined with the size class allocation. Has no effect if a memory
+     * allocator is set.
+     * @param directories the directories, in which the files are created
+     */
+    public OakMapBuilder<K, V> setMappedFilesDirectories(Path... directories) {
+        if (directories.length == 0) {
+            throw new IllegalArgumentException("At least one directory is required for the mapped files");
+        }
+        this.mappedFilesDirectories = Arrays.asList(directories);
+        return this;
+    }
+
+    /**
+     * Sets whether the off-heap memory of the removed keys is reclaimed (by default it is not).
+     * The memory of a removed key is reused only once no concurrent operation or iterator can read it.
+     * However, an unscoped key buffer (e.g., returned by a key iterator) must not be read after its key is removed.
+     * @param reclaimKeys whether to reclaim the memory of the removed keys
+     */
+    public OakMapBuilder<K, V> setReclaimKeys(boolean reclaimKeys) {
+        this.reclaimKeys = reclaimKeys;
+        return this;
+    }
+
+    /**
+     * Sets whether the values are read without locking them (by default they are locked).
+     * The readers of a value only announce themselves in a per-thread slot, so reads scale with the number of
+     * cores. In turn, every update writes a new copy of the value, and the old copy is reused only once no
+     * concurrent reader can access it. Suits read-mostly workloads.
+     * @param lockFreeValueReads whether to read the values without locking them
+     */
+    public OakMapBuilder<K, V> setLockFreeValueReads(boolean lockFreeValueReads) {
+        this.lockFreeValueReads = lockFreeValueReads;
+        return this;
+    }
+
+    /**
+     * Sets whether the off-heap memory is allocated in size classes (by default it is allocated in exact sizes).
+     * Every allocation is rounded up to its size class, so a released allocation is reused by any allocation of the
+     * same size class, without searching a shared free list. Suits update-heavy workloads.
+     * Cannot be combined with mapped files (see {@code setMappedFilesDirectories}). Has no effect if a memory
+     * allocator is set.
+     * @param sizeClassAllocation whether to allocate the off-heap memory in size classes
+     */
+    public OakMapBuilder<K, V> setSizeClassAllocation(boolean sizeClassAllocation) {
+        this.sizeClassAllocation = sizeClassAllocation;
+        return this;
+    }
+
+    /**
+     * Sets whether each thread allocates the off-heap memory within a buffer of its own (by default it does not).
+     * A thread grabs a buffer of the current block at once, and then allocates within it without synchronizing
+     * with the other threads, which improves the scalability of concurrent insertions. In turn, a part of a buffer
+     * may be left unused. Has no effect if a memory allocator is set.
+     * @param threadLocalAllocation whether to allocate the off-heap memory within thread-local buffers
+     */
+    public OakMapBuilder<K, V> setThreadLocalAllocation(boolean threadLocalAllocation) {
+        this.threadLocalAllocation = threadLocalAllocation;
+        return this;
+    }
+
+    /**
+     * Sets whether the released off-heap memory is split and merged (by default it is not).
+     * A released allocation that is larger than a new one is split, and its remainder is kept for reuse.
+     * A released allocation is also merged with the released allocations next to it, so it can be reused by a larger
+     * allocation. This reduces the fragmentation of the memory with values of varying sizes (see
+     * {@code OakMap.memoryFragmentationRatio()}), at the cost of some synchronization upon release.
+     * Requires the values to be read without locking (see {@code setLockFreeValueReads}), since a merged allocation
+     * covers the headers of the released values, which are otherwise kept for their stale references.
+     * Has no effect if a memory allocator is set, or if the memory is allocated in size classes.
+     * @param freeSliceCoalescing whether to split and merge the released off-heap memory
+     */
+    public OakMapBuilder<K, V> setFreeSliceCoalescing(boolean freeSliceCoalescing) {
+        this.freeSliceCoalescing = freeSliceCoalescing;
+        return this;
+    }
+
+    /**
+     * Sets the interval of the background compaction of the off-heap memory (by default there is none).
+     * The compaction returns the blocks that became sparse (e.g., after many removals) to the blocks pool,
+     * by relocating their keys and values, see {@code OakMap.compactMemory(double)}.
+     * Requires the keys to be reclaimed (see {@code setReclaimKeys}) and the values to be read without
+     * locking (see {@code setLockFreeValueReads}).
+     * @param intervalMillis the delay between two compactions in milliseconds, or 0 for no compaction
+     */
+    public OakMapBuilder<K, V> setMemoryCompactionInterval(long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("The memory compaction interval must not be negative");
+        }
+        this.memoryCompactionIntervalMillis = intervalMillis;
+        return this;
+    }
+
+    /**
+     * Sets the directory of a write-ahead log, which makes the updates of the map durable (by default there is none).
+     * Each update appends the resulting mapping of its key to the log, and returns only once the log is synced to
+     * the disk; concurrent updates share a single sync (group commit). When the map is built, it is recovered from
+     * the latest snapshot in the directory and the log that follows it. {@code OakMap.checkpoint()} snapshots the
+     * map and truncates the log. Supported only by the ordered map.
+     * @param directory the directory of the log and the snapshots, which is created if it does not exist
+     */
+    public OakMapBuilder<K, V> setWriteAheadLog(Path directory) {
+        this.writeAheadLogDirectory = directory;
+        return this;
+    }
+
+    /**
+     * Makes the map a cache, which evicts entries once its off-heap memory (of the keys and the values) exceeds
+     * the given capacity, instead of failing with an {@code OakOutOfMemoryException} (by default there is none).
+     * The entries are evicted by the CLOCK policy, an approximation of LRU: each entry has a reference bit which
+     * is set when the entry is accessed, and the eviction skips (and clears) the entries whose bit is set.
+     * The updates evict incrementally, so the eviction keeps up with them, and an insertion that fails to allocate
+     * evicts and retries. The capacity must be below the memory capacity, and should leave room for the concurrent
+     * updates. Requires the keys to be reclaimed (see {@code setReclaimKeys}), and is supported only by the
+     * ordered map, without a write-ahead log.
+     * @param capacityBytes the cache capacity in bytes, or 0 for no eviction
+     */
+    public OakMapBuilder<K, V> setCache(long capacityBytes) {
+        if (capacityBytes < 0) {
+            throw new IllegalArgumentException("The cache capacity must not be negative");
+        }
+        this.cacheCapacityBytes = capacityBytes;
+        return this;
+    }
+
+    /**
+     * Makes the entries of the map expire once their time to live, which is given when they are put (see
+     * {@code OakMap.put(key, value, timeToLive, unit)}), passes (by default they never expire). The expiration
+     * time is kept in the off-heap header of each value, which grows by 8 bytes. An expired entry is absent for
+     * all the operations, and it is removed lazily, by the updates that encounter it and by the rebalance of its
+     * chunk. Until then it is counted by {@code size()}. Supported only by the ordered map, without a write-ahead
+     * log (a snapshot does not keep the expiration times either).
+     * @param expiringEntries whether the entries of the map can expire
+     */
+    public OakMapBuilder<K, V> setExpiringEntries(boolean expiringEntries) {
+        this.expiringEntries = expiringEntries;
+        return this;
+    }
+
+    private BlocksPool getBlocksPool() {
+        int blockSize = preferredBlockSizeBytes != null ? preferredBlockSizeBytes
+            : BlocksPool.getInstance().blockSize();
+        return BlocksPool.getInstance(new BlocksPool.Config(blockSize, blocksPoolPreAllocSizeBytes,
+            blocksPoolLowReservedSizeBytes, blocksPoolHighReservedSizeBytes, blocksPoolPreTouch));
+    }
+
+    private BlockMemoryAllocator createMemoryAllocator() {
+        if (mappedFilesDirectories != null) {
+            int blockSize = preferredBlockSizeBytes != null ? preferredBlockSizeBytes
+                : BlocksPool.getInstance().blockSize();
+            return new MappedMemoryAllocator(memoryCapacity, mappedFilesDirectories, blockSize,
+                threadLocalAllocation, freeSliceCoalescing);
+        }
+        BlocksProvider blocksProvider = getBlocksPool();
+        return sizeClassAllocation
+            ? new SizeClassMemoryAllocator(memoryCapacity, blocksProvider, threadLocalAllocation)
+            : new NativeMemoryAllocator(memoryCapacity, blocksProvider, threadLocalAllocation, freeSliceCoalescing);
+    }
+
+    private MemoryManager createValuesMemoryManager() {
+        return lockFreeValueReads ? new EpochSyncRecycleMemoryManager(memoryAllocator, expiringEntries)
+            : new SyncRecycleMemoryManager(memoryAllocator, expiringEntries);
+    }
+
+    private MemoryManager createKeysMemoryManager() {
+        return reclaimKeys ? new EpochRecycleMemoryManager(memoryAllocator)
+            : new SeqExpandMemoryManager(memoryAllocator);
+    }
 
     private void checkPreconditions() {
         if (comparator == null) {
@@ -100,30 +369,98 @@ public class OakMapBuilder<K, V> {
         if (valueSerializer == null) {
             throw new IllegalStateException("Must provide a non-null value serializer to build the OakHashMap");
         }
+        if (memoryCompactionIntervalMillis > 0 && !(reclaimKeys && lockFreeValueReads)) {
+            throw new IllegalStateException(
+                "Memory compaction requires the keys to be reclaimed and the values to be read without locking");
+        }
+        if (sizeClassAllocation && mappedFilesDirectories != null) {
+            throw new IllegalStateException("The memory backed by mapped files cannot be allocated in size classes");
+        }
+        if (freeSliceCoalescing && !lockFreeValueReads) {
+            throw new IllegalStateException("Free slice coalescing requires the values to be read without locking");
+        }
+        if (cacheCapacityBytes > 0 && !reclaimKeys) {
+            throw new IllegalStateException("A cache requires the keys to be reclaimed");
+        }
+        if (cacheCapacityBytes > 0 && memoryAllocator == null && cacheCapacityBytes >= memoryCapacity) {
+            throw new IllegalStateException("The cache capacity must be below the memory capacity");
+        }
+        if (cacheCapacityBytes > 0 && writeAheadLogDirectory != null) {
+            throw new IllegalStateException("A cache cannot have a write-ahead log");
+        }
+        if (expiringEntries && writeAheadLogDirectory != null) {
+            throw new IllegalStateException("Expiring entries cannot have a write-ahead log");
+        }
     }
 
 
     public OakMap<K, V> buildOrderedMap() {
-        if (preferredBlockSizeBytes != null) {
-            BlocksPool.preferBlockSize(preferredBlockSizeBytes);
+        OakMap<K, V> map = createOrderedMap();
+        if (writeAheadLogDirectory != null) {
+            try {
+                map.openWriteAheadLog(writeAheadLogDirectory, keySerializer, valueSerializer);
+            } catch (IOException e) {
+                map.close();
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException | Error e) {
+                map.close();
+                throw e;
+            }
+        }
+        if (memoryCompactionIntervalMillis > 0) {
+            map.startMemoryCompaction(memoryCompactionIntervalMillis);
         }
+        return map;
+    }
 
-        if (memoryAllocator == null) {
-            this.memoryAllocator = new NativeMemoryAllocator(memoryCapacity);
+    /**
+     * Builds an ordered map that is populated with the entries of a snapshot, which was written by
+     * {@code OakMap.snapshot()} of a map with the same serializers and comparator.
+     * The entries are appended to the map already sorted, which is much faster than inserting them one by one.
+     *
+     * @param file the snapshot file
+     * @return the restored map
+     * @throws IOException if the file cannot be read, or is not a complete snapshot
+     */
+    public OakMap<K, V> restore(Path file) throws IOException {
+        if (writeAheadLogDirectory != null) {
+            throw new IllegalStateException("A map with a write-ahead log is restored by building it");
+        }
+        OakMap<K, V> map = createOrderedMap();
+        try {
+            map.restore(file);
+        } catch (IOException | RuntimeException | Error e) {
+            map.close();
+            throw e;
         }
+        if (memoryCompactionIntervalMillis > 0) {
+            map.startMemoryCompaction(memoryCompactionIntervalMillis);
+        }
+        return map;
+    }
 
-        MemoryManager valuesMemoryManager = new SyncRecycleMemoryManager(memoryAllocator);
-        MemoryManager keysMemoryManager = new SeqExpandMemoryManager(memoryAllocator);
+    private OakMap<K, V> createOrderedMap() {
+        // validated before the allocator is created, so a failure does not leave created (e.g., mapped) memory
         checkPreconditions();
         if (minKey == null) {
             throw new IllegalStateException("Must provide a non-null minimal key object to build the OakMap");
         }
-        return new OakMap<>(
+        if (memoryAllocator == null) {
+            this.memoryAllocator = createMemoryAllocator();
+        }
+
+        MemoryManager valuesMemoryManager = createValuesMemoryManager();
+        MemoryManager keysMemoryManager = createKeysMemoryManager();
+        OakMap<K, V> map = new OakMap<>(
                 minKey,
                 keySerializer,
                 valueSerializer,
                 comparator, chunkMaxItems,
                 valuesMemoryManager, keysMemoryManager);
+        if (cacheCapacityBytes > 0) {
+            map.startEviction(cacheCapacityBytes);
+        }
+        return map;
     }
 
 
@@ -131,25 +468,33 @@ public class OakMapBuilder<K, V> {
 
 
     public OakHashMap<K, V> buildHashMap() {
-        if (preferredBlockSizeBytes != null) {
-            BlocksPool.preferBlockSize(preferredBlockSizeBytes);
+        if (writeAheadLogDirectory != null) {
+            throw new IllegalStateException("The write-ahead log is supported only by the ordered map");
         }
-
+        if (cacheCapacityBytes > 0) {
+            throw new IllegalStateException("A cache is supported only by the ordered map");
+        }
+        if (expiringEntries) {
+            throw new IllegalStateException("Expiring entries are supported only by the ordered map");
+        }
+        checkPreconditions();
         if (memoryAllocator == null) {
-            this.memoryAllocator = new NativeMemoryAllocator(memoryCapacity);
+            this.memoryAllocator = createMemoryAllocator();
         }
-        //Todo assert that minkey is not null after the implmention of internalHashmap if it is throw exception??
-        MemoryManager valuesMemoryManager = new SyncRecycleMemoryManager(memoryAllocator);
-        MemoryManager keysMemoryManager = new SeqExpandMemoryManager(memoryAllocator);
+        MemoryManager valuesMemoryManager = createValuesMemoryManager();
+        MemoryManager keysMemoryManager = createKeysMemoryManager();
 
-        checkPreconditions();
-        return new OakHashMap<>(minKey,
-                keySerializer,
+        OakHashMap<K, V> map = new OakHashMap<>(keySerializer,
                 valueSerializer,
                 comparator,
+                hasher,
                 chunkMaxItems,
                 valuesMemoryManager,
                 keysMemoryManager);
+        if (memoryCompactionIntervalMillis > 0) {
+            map.startMemoryCompaction(memoryCompactionIntervalMillis);
+        }
+        return map;
     }
 
 }
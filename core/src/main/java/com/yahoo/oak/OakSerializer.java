@@ -14,7 +14,7 @@ public interface OakSerializer<T> {
     // serializes the object
     void serialize(T object, OakScopedWriteBuffer targetBuffer);
 
-    // deserializes the given Oak buffer
+    // deserializes the given Oak buffer, which might be updated concurrently (see OakTransformer)
     T deserialize(OakScopedReadBuffer byteBuffer);
 
     // returns the number of bytes needed for serializing the given object
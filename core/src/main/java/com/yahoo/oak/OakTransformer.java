@@ -8,5 +8,21 @@ package com.yahoo.oak;
 
 import java.util.function.Function;
 
+/**
+ * A function over a serialized (key or) value, which is applied while the value is accessible.
+ * <p>
+ * A small value might be read optimistically, without locking it: the transformer is applied while the value
+ * might be updated concurrently, and its result is used only if no update overlapped it. Otherwise, the result
+ * (or exception) is discarded, and the transformer is applied again while the value is locked. Hence, a
+ * transformer might be applied more than once, and it might read a mix of the bytes of two versions of the value
+ * (e.g., a length that does not fit the rest of the value). A transformer must therefore have no side effects
+ * that depend on the bytes it read, and it must terminate (returning or throwing) for any bytes. For example, its
+ * loops are bounded by the capacity of the buffer, rather than by a length that was read from the buffer.
+ * The transformers that only copy the bytes (e.g., through OakUnsafeDirectBuffer) or deserialize fixed-size
+ * fields meet these requirements.
+ * <p>
+ * The values are deserialized by {@code OakSerializer.deserialize()} as a transformer, so the same requirements
+ * apply to it.
+ */
 public interface OakTransformer<T> extends Function<OakScopedReadBuffer, T> {
 }
@@ -20,7 +20,7 @@ class Rebalancer<K, V> {
 
     private static final int REBALANCE_SIZE = 2;
     private static final double MAX_AFTER_MERGE_PART = 0.7;
-    private static final double LOW_THRESHOLD = 0.5;
+    static final double LOW_THRESHOLD = 0.5;
     private static final double APPEND_THRESHOLD = 0.2;
 
     private final int entriesLowThreshold;
@@ -43,6 +43,40 @@ final class ScopedWriteBuffer extends ScopedReadBuffer implements OakScopedWrite
         writeBuffer.enabled = false;
     }
 
+    /**
+     * Creates a buffer that can be reused (by a single thread) for serializations into different Slices
+     * of the same memory manager, instead of instantiating a new buffer per serialization.
+     * The buffer is disabled until it is used.
+     *
+     * @param emptySlice an empty slice of the memory manager, used to hold the target of each serialization.
+     * @see #serialize(ScopedWriteBuffer, Slice, Object, OakSerializer)
+     */
+    static ScopedWriteBuffer createReusable(Slice emptySlice) {
+        ScopedWriteBuffer writeBuffer = new ScopedWriteBuffer(emptySlice);
+        writeBuffer.enabled = false;
+        return writeBuffer;
+    }
+
+    /**
+     * Same as {@code serialize(s, obj, serializer)}, but reuses {@code writeBuffer} instead of instantiating
+     * a new ScopedWriteBuffer object, so the serialization does not allocate. The buffer is enabled only for
+     * the duration of the serialization.
+     *
+     * @param writeBuffer a buffer created by {@code createReusable()}, not in use by another serialization
+     * @param s           the buffer to write to
+     * @param obj         the object to write
+     * @param serializer  the serialization method
+     */
+    static <T> void serialize(ScopedWriteBuffer writeBuffer, Slice s, T obj, OakSerializer<T> serializer) {
+        writeBuffer.s.copyFrom(s);
+        writeBuffer.enabled = true;
+        try {
+            serializer.serialize(obj, writeBuffer);
+        } finally {
+            writeBuffer.enabled = false;
+        }
+    }
+
     /**
      * Perform an update on an object using this class, following three steps:
      * (1) instantiate a new ScopedWriteBuffer object from the input Slice
@@ -57,14 +57,15 @@ class SeqExpandMemoryManager implements MemoryManager  {
      * Note: these limitations will change for different block sizes.
      *
      */
-    private final ReferenceCodec rc = new ReferenceCodec(
-        ReferenceCodec.INVALID_BIT_SIZE, // bits# to represent block id are calculated upon other parameters
-        ReferenceCodec.requiredBits(BlocksPool.getInstance().blockSize()),   // bits# to represent offset
-        ReferenceCodec.requiredBits(BlocksPool.getInstance().blockSize()));  // bits# to represent length
+    private final ReferenceCodec rc;
 
     SeqExpandMemoryManager(BlockMemoryAllocator memoryAllocator) {
         assert memoryAllocator != null;
         this.allocator = memoryAllocator;
+        this.rc = new ReferenceCodec(
+            ReferenceCodec.INVALID_BIT_SIZE, // bits# to represent block id are calculated upon other parameters
+            ReferenceCodec.requiredBits(memoryAllocator.getBlockSize()),   // bits# to represent offset
+            ReferenceCodec.requiredBits(memoryAllocator.getBlockSize()));  // bits# to represent length
     }
 
     public void close() {
@@ -129,6 +130,38 @@ class SeqExpandMemoryManager implements MemoryManager  {
         return 0;
     }
 
+    @Override
+    public boolean isExpirationTracked() {
+        return false;
+    }
+
+    @Override
+    public boolean isReleaseDeferred() {
+        return false;
+    }
+
+    @Override
+    public void startOperation() {
+    }
+
+    @Override
+    public void finishOperation() {
+    }
+
+    @Override
+    public IterationGuard startIteration(Object iterator) {
+        return IterationGuard.NONE;
+    }
+
+    @Override
+    public BlockMemoryAllocator getAllocator() {
+        return allocator;
+    }
+
+    @Override
+    public void flushReleases() {
+    }
+
     /*===================================================================*/
     /*           SliceSeqExpand                   */
     /* Inner Class for easier access to SeqExpandMemoryManager abilities */
@@ -334,6 +367,27 @@ class SeqExpandMemoryManager implements MemoryManager  {
             return ValueUtils.ValueResult.TRUE;
         }
 
+        /**
+         * Sequential Slice doesn't support synchronization, as {@code lockRead()} is a NOP there is no need
+         * for an optimistic read.
+         *
+         * @return {@code INVALID_STAMP}
+         */
+        @Override
+        public long beginOptimisticRead() {
+            return INVALID_STAMP;
+        }
+
+        /**
+         * Sequential Slice doesn't support synchronization, therefore for this type of slice this is NOP.
+         *
+         * @return true
+         */
+        @Override
+        public boolean validateOptimisticRead(long stamp) {
+            return true;
+        }
+
         /**
          * Acquires a write lock.
          * Sequential Slice doesn't support synchronization, therefore for this type of slice this is NOP.
@@ -370,6 +424,14 @@ class SeqExpandMemoryManager implements MemoryManager  {
             return ValueUtils.ValueResult.TRUE;
         }
 
+        /**
+         * Same as {@code logicalDelete()}.
+         * Expand-only Slice doesn't support deletion, therefore for this type of slice this is NOP.
+         */
+        public ValueUtils.ValueResult tryLogicalDelete() {
+            return ValueUtils.ValueResult.TRUE;
+        }
+
         /**
          * Is the associated off-heap cut marked as logically deleted
          *
@@ -381,6 +443,19 @@ class SeqExpandMemoryManager implements MemoryManager  {
             return ValueUtils.ValueResult.FALSE;
         }
 
+        /**
+         * Expand-only Slice doesn't support expiration, therefore for this type of slice it never expires.
+         */
+        public long getExpiration() {
+            return NO_EXPIRATION;
+        }
+
+        public void setExpiration(long expiration) {
+            if (expiration != NO_EXPIRATION) {
+                throw new UnsupportedOperationException("The memory manager does not track the expiration");
+            }
+        }
+
         /**
          * Marks the header of the associated off-heap cut as moved, just write (without CAS)
          * The write lock must be held (asserted inside the header)
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Size-Class Memory Allocator is a Native Memory Allocator (same blocks management), whose released off-heap cuts
+ * are segregated by size classes instead of being kept in a single sorted free list.
+ *
+ * Each allocation is rounded up to its size class: up to SMALL_CLASS_MAX_SIZE the classes are SIZE_ALIGNMENT bytes
+ * apart, above it each power of two is divided into CLASSES_PER_DOUBLING classes (so at most 25% of an allocation is
+ * wasted). A released off-heap cut is therefore reused by any allocation of its size class.
+ *
+ * The released off-heap cuts of each size class are kept in a lock-free stack, whose links are written into the
+ * released off-heap cuts themselves, so freeing does not create any on-heap object. The head of a stack is a
+ * reference to an off-heap cut (block id and offset) tagged with a modification count, to prevent the ABA problem.
+ * In addition, each thread caches a few released off-heap cuts of the small size classes, so most allocations and
+ * releases do not access the shared stacks at all. The off-heap cuts cached by a thread that terminates are moved
+ * to the shared stacks once the thread is found terminated (when new threads create their caches).
+ *
+ * Allocations larger than the largest size class that fits a block are not rounded, and are not reused.
+ */
+class SizeClassMemoryAllocator extends NativeMemoryAllocator {
+
+    // all the size classes (and thus all the off-heap cuts) are aligned to SIZE_ALIGNMENT bytes,
+    // which is also the minimal space needed to link a released off-heap cut
+    static final int SIZE_ALIGNMENT = Long.BYTES;
+    static final int SMALL_CLASS_MAX_SIZE = 128; /* Bytes */
+    private static final int SMALL_CLASSES = SMALL_CLASS_MAX_SIZE / SIZE_ALIGNMENT;
+    private static final int CLASSES_PER_DOUBLING = 4;
+    private static final int SMALL_CLASS_MAX_SIZE_LOG = Integer.numberOfTrailingZeros(SMALL_CLASS_MAX_SIZE);
+
+    // only the off-heap cuts of size classes up to THREAD_CACHE_MAX_SIZE bytes are cached per thread,
+    // at most THREAD_CACHE_CAPACITY off-heap cuts per size class
+    static final int THREAD_CACHE_MAX_SIZE = 1024; /* Bytes */
+    static final int THREAD_CACHE_CAPACITY = 32;
+    // the number of thread caches that are expected to be created before the terminated ones are drained
+    static final int THREAD_CACHES_SCAN_THRESHOLD = 64;
+
+    /*
+     * A reference to a released off-heap cut (and the head of a stack) is composed as follows:
+     * | tag (16 bits) | block id (20 bits) | offset / SIZE_ALIGNMENT (28 bits) |
+     * The tag is used only in the heads of the stacks, and it is advanced upon each modification.
+     * Block id zero is invalid, so zero is the reference of an empty stack.
+     */
+    private static final int OFFSET_BITS = 28;
+    private static final int BLOCK_ID_BITS = 20;
+    private static final int TAG_SHIFT = OFFSET_BITS + BLOCK_ID_BITS;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final long REFERENCE_MASK = (1L << TAG_SHIFT) - 1;
+    private static final long EMPTY = 0;
+
+    // the size of each size class, the last class is the largest one that fits a block
+    private final int[] classSizes;
+    private final AtomicLongArray freeStacks;
+    // the number of the (smallest) size classes that are cached per thread
+    private final int cachedClasses;
+    private final ThreadLocal<ThreadCache> threadCache;
+    // all the thread caches, checked for terminated threads whose cached off-heap cuts are drained
+    private final Set<ThreadCache> threadCaches = ConcurrentHashMap.newKeySet();
+    // the number of thread caches created since the caches were last checked for terminated threads
+    private final AtomicInteger newCachesSinceScan = new AtomicInteger(0);
+
+    // number of bytes allocated for this Oak (including the rounding to the size classes)
+    private final AtomicLong allocated = new AtomicLong(0);
+
+    SizeClassMemoryAllocator(long capacity) {
+        this(capacity, BlocksPool.getInstance());
+    }
+
+    // A testable constructor
+    SizeClassMemoryAllocator(long capacity, BlocksProvider blocksProvider) {
+        this(capacity, blocksProvider, false);
+    }
+
+    SizeClassMemoryAllocator(long capacity, BlocksProvider blocksProvider, boolean useThreadBuffers) {
+        super(capacity, blocksProvider, useThreadBuffers);
+        assert capacity / blocksProvider.blockSize() < (1L << BLOCK_ID_BITS) - 1;
+        assert blocksProvider.blockSize() <= (1L << OFFSET_BITS) * SIZE_ALIGNMENT;
+        int numClasses = sizeClassIndex(blocksProvider.blockSize()) + 1;
+        while (sizeClassSizeLong(numClasses - 1) > blocksProvider.blockSize()) {
+            numClasses--;
+        }
+        this.classSizes = new int[numClasses];
+        for (int i = 0; i < numClasses; i++) {
+            classSizes[i] = (int) sizeClassSizeLong(i);
+        }
+        this.freeStacks = new AtomicLongArray(numClasses);
+        this.cachedClasses = Math.min(sizeClassIndex(THREAD_CACHE_MAX_SIZE) + 1, numClasses);
+        this.threadCache = ThreadLocal.withInitial(this::newThreadCache);
+    }
+
+    private ThreadCache newThreadCache() {
+        ThreadCache cache = new ThreadCache(Thread.currentThread());
+        threadCaches.add(cache);
+        // the caches are checked only after creating (at least) half as many caches as there are,
+        // so a thread creates its cache in amortized constant time
+        if (newCachesSinceScan.incrementAndGet() >= Math.max(THREAD_CACHES_SCAN_THRESHOLD, threadCaches.size() / 2)) {
+            newCachesSinceScan.set(0);
+            drainTerminatedThreadCaches();
+        }
+        return cache;
+    }
+
+    // Moves the off-heap cuts cached by the terminated threads to the size class stacks
+    private void drainTerminatedThreadCaches() {
+        for (ThreadCache cache : threadCaches) {
+            // the cache might be found terminated by several threads, only the one that removes it drains it.
+            // Observing that the thread is not alive happens-after all its actions, so its cache is safely taken
+            if (cache.isTerminated() && threadCaches.remove(cache)) {
+                for (int index = 0; index < cachedClasses; index++) {
+                    cache.flush(index, cache.counts[index]);
+                }
+            }
+        }
+    }
+
+    // used only for testing
+    @VisibleForTesting
+    int getThreadCacheCount() {
+        return threadCaches.size();
+    }
+
+    /* ------------------------------------------------------------------------------------
+     * Size classes
+     * ------------------------------------------------------------------------------------*/
+
+    // Returns the index of the smallest size class, which can hold the given size
+    static int sizeClassIndex(int size) {
+        assert size > 0;
+        if (size <= SMALL_CLASS_MAX_SIZE) {
+            return (size - 1) / SIZE_ALIGNMENT;
+        }
+        // (size - 1) is within [2^log, 2^(log+1)), which is divided into CLASSES_PER_DOUBLING classes
+        int log = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(size - 1);
+        int classInDoubling = (size - 1 - (1 << log)) >>> (log - 2);
+        return SMALL_CLASSES + (log - SMALL_CLASS_MAX_SIZE_LOG) * CLASSES_PER_DOUBLING + classInDoubling;
+    }
+
+    // Returns the size of the given size class (as long, as the largest classes exceed the int range)
+    static long sizeClassSizeLong(int index) {
+        if (index < SMALL_CLASSES) {
+            return (long) (index + 1) * SIZE_ALIGNMENT;
+        }
+        int log = SMALL_CLASS_MAX_SIZE_LOG + (index - SMALL_CLASSES) / CLASSES_PER_DOUBLING;
+        int classInDoubling = (index - SMALL_CLASSES) % CLASSES_PER_DOUBLING;
+        return (1L << log) + ((long) (classInDoubling + 1) << (log - 2));
+    }
+
+    /* ------------------------------------------------------------------------------------
+     * Allocation
+     * ------------------------------------------------------------------------------------*/
+
+    // Allocates an off-heap cut of the size class of the given size, either from the thread's cache, from the
+    // size class stack, or (if there is no released off-heap cut of this size class) from the blocks.
+    // The allocated slice is associated with the given size, so its size class can be computed upon free.
+    @Override
+    public boolean allocate(Slice sl, int size) {
+        BlockAllocationSlice s = (BlockAllocationSlice) sl;
+        int index = sizeClassIndex(size);
+        if (index >= classSizes.length) {
+            // too large for any size class, allocated as is (but aligned) and never reused
+            int alignedSize = align(size);
+            allocateFromBlocks(s, alignedSize);
+            s.associateBlockAllocation(s.getAllocatedBlockID(), s.getAllocatedOffset(), size,
+                getBlockAddress(s.getAllocatedBlockID()));
+            allocated.addAndGet(alignedSize);
+            return true;
+        }
+
+        int classSize = classSizes[index];
+        long reference = EMPTY;
+        if (index < cachedClasses) {
+            reference = threadCache.get().pop(index);
+        }
+        if (reference == EMPTY) {
+            reference = popFreeStack(index);
+        }
+
+        if (reference != EMPTY) {
+            int blockID = getBlockID(reference);
+            s.associateBlockAllocation(blockID, getOffset(reference), size, getBlockAddress(blockID));
+            Stats stats = getStats();
+            if (stats != null) {
+                stats.reclaim(classSize);
+            }
+        } else {
+            allocateFromBlocks(s, classSize);
+            s.associateBlockAllocation(s.getAllocatedBlockID(), s.getAllocatedOffset(), size,
+                getBlockAddress(s.getAllocatedBlockID()));
+        }
+        allocated.addAndGet(classSize);
+        return true;
+    }
+
+    // Releases the off-heap cut to the thread's cache, or to its size class stack.
+    // Meaning this request should come while it is ensured none is using this memory.
+    // Thread safe.
+    @Override
+    public void free(Slice sl) {
+        BlockAllocationSlice s = (BlockAllocationSlice) sl;
+        int index = sizeClassIndex(s.getAllocatedLength());
+        if (index >= classSizes.length) {
+            allocated.addAndGet(-align(s.getAllocatedLength()));
+            return;
+        }
+        int classSize = classSizes[index];
+        allocated.addAndGet(-classSize);
+        Stats stats = getStats();
+        if (stats != null) {
+            stats.release(classSize);
+        }
+
+        long reference = getReference(s.getAllocatedBlockID(), s.getAllocatedOffset());
+        if (index < cachedClasses) {
+            ThreadCache cache = threadCache.get();
+            if (cache.isFull(index)) {
+                cache.flush(index, THREAD_CACHE_CAPACITY / 2);
+            }
+            cache.push(index, reference);
+        } else {
+            pushFreeStack(index, reference, reference);
+        }
+    }
+
+    // Returns the off-heap allocation of this OakMap
+    @Override
+    public long allocated() {
+        return allocated.get();
+    }
+
+    // The released off-heap cuts are kept by the size classes and not by their blocks, so blocks are not evacuated
+    @Override
+    public int evacuateSparseBlocks(double minReleasedRatio) {
+        return 0;
+    }
+
+    @Override
+    public boolean isEvacuated(Slice s) {
+        return false;
+    }
+
+    // used only for testing
+    @VisibleForTesting
+    int getSizeClassSize(int size) {
+        int index = sizeClassIndex(size);
+        return index < classSizes.length ? classSizes[index] : align(size);
+    }
+
+    private static int align(int size) {
+        return (size + SIZE_ALIGNMENT - 1) & -SIZE_ALIGNMENT;
+    }
+
+    /* ------------------------------------------------------------------------------------
+     * Free stacks
+     * ------------------------------------------------------------------------------------*/
+
+    private static long getReference(int blockID, int offset) {
+        assert offset % SIZE_ALIGNMENT == 0;
+        return ((long) blockID << OFFSET_BITS) | (offset / SIZE_ALIGNMENT);
+    }
+
+    private static int getBlockID(long reference) {
+        return (int) ((reference & REFERENCE_MASK) >>> OFFSET_BITS);
+    }
+
+    private static int getOffset(long reference) {
+        return (int) (reference & OFFSET_MASK) * SIZE_ALIGNMENT;
+    }
+
+    private long getLinkAddress(long reference) {
+        return getBlockAddress(getBlockID(reference)) + getOffset(reference);
+    }
+
+    // Pushes a chain of linked off-heap cuts (from first to last) to the stack of the given size class
+    private void pushFreeStack(int index, long first, long last) {
+        long linkAddress = getLinkAddress(last);
+        long head;
+        do {
+            head = freeStacks.get(index);
+            UnsafeUtils.UNSAFE.putLong(linkAddress, head & REFERENCE_MASK);
+        } while (!freeStacks.compareAndSet(index, head, first | nextTag(head)));
+    }
+
+    // Pops an off-heap cut from the stack of the given size class, returns EMPTY if the stack is empty
+    private long popFreeStack(int index) {
+        long head;
+        long next;
+        do {
+            head = freeStacks.get(index);
+            if ((head & REFERENCE_MASK) == EMPTY) {
+                return EMPTY;
+            }
+            // if the head was popped (and reused) meanwhile, the link may be garbage,
+            // but then the tag was advanced, so the CAS fails
+            next = UnsafeUtils.UNSAFE.getLong(getLinkAddress(head));
+        } while (!freeStacks.compareAndSet(index, head, (next & REFERENCE_MASK) | nextTag(head)));
+        return head & REFERENCE_MASK;
+    }
+
+    private static long nextTag(long head) {
+        return ((head >>> TAG_SHIFT) + 1) << TAG_SHIFT;
+    }
+
+    /*=====================================================================*/
+    /*           ThreadCache                                               */
+    /* Inner Class for easier access to the free stacks                    */
+    /*=====================================================================*/
+
+    private final class ThreadCache {
+        // the owner thread is weakly referenced, so a terminated thread is not kept alive by the allocator
+        private final WeakReference<Thread> owner;
+        private final long[][] references;
+        private final int[] counts;
+
+        ThreadCache(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+            this.references = new long[cachedClasses][];
+            this.counts = new int[cachedClasses];
+        }
+
+        boolean isTerminated() {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+
+        long pop(int index) {
+            if (counts[index] == 0) {
+                return EMPTY;
+            }
+            return references[index][--counts[index]];
+        }
+
+        boolean isFull(int index) {
+            return counts[index] == THREAD_CACHE_CAPACITY;
+        }
+
+        void push(int index, long reference) {
+            if (references[index] == null) {
+                references[index] = new long[THREAD_CACHE_CAPACITY];
+            }
+            references[index][counts[index]++] = reference;
+        }
+
+        // Moves the given number of the older cached off-heap cuts of the given size class to the size class stack,
+        // linking them to each other first, so they are pushed at once
+        void flush(int index, int flushed) {
+            if (flushed == 0) {
+                return;
+            }
+            long[] cached = references[index];
+            for (int i = 0; i < flushed - 1; i++) {
+                UnsafeUtils.UNSAFE.putLong(getLinkAddress(cached[i]), cached[i + 1]);
+            }
+            pushFreeStack(index, cached[0], cached[flushed - 1]);
+            System.arraycopy(cached, flushed, cached, 0, counts[index] - flushed);
+            counts[index] -= flushed;
+        }
+    }
+}
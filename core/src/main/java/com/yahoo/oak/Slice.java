@@ -15,6 +15,12 @@ package com.yahoo.oak;
 ** */
 interface Slice {
 
+    // returned by beginOptimisticRead() if the off-heap cut cannot be read optimistically
+    long INVALID_STAMP = -1;
+
+    // returned by getExpiration() if the off-heap cut never expires
+    long NO_EXPIRATION = Long.MAX_VALUE;
+
     /**
      * Allocate new off-heap cut and associate this slice with a new off-heap cut of memory
      *
@@ -120,6 +126,24 @@ interface Slice {
      */
     ValueUtils.ValueResult unlockRead();
 
+    /**
+     * Starts an optimistic read: the caller reads the off-heap cut without holding the read lock,
+     * and then validates the read via {@code validateOptimisticRead()}. If the validation fails,
+     * whatever was read must be discarded (and read again, e.g., using {@code lockRead()}).
+     *
+     * @return a stamp to validate the read with, or {@code INVALID_STAMP} if the off-heap cut
+     * cannot be read optimistically (e.g., it is write locked, deleted or moved)
+     */
+    long beginOptimisticRead();
+
+    /**
+     * Validates an optimistic read that was started by {@code beginOptimisticRead()}
+     *
+     * @param stamp the stamp returned by {@code beginOptimisticRead()}
+     * @return true if the off-heap cut was not updated since the optimistic read started
+     */
+    boolean validateOptimisticRead(long stamp);
+
     /**
      * Acquires a write lock
      *
@@ -147,6 +171,16 @@ interface Slice {
      */
     ValueUtils.ValueResult logicalDelete();
 
+    /**
+     * Same as {@code logicalDelete()}, but fails instead of waiting if the off-heap cut is locked.
+     *
+     * @return {@code TRUE} if the value was marked successfully
+     * {@code FALSE} if the value is already marked as deleted
+     * {@code RETRY} if the value is locked or was moved, or the version of the off-heap value does not match
+     * {@code version}.
+     */
+    ValueUtils.ValueResult tryLogicalDelete();
+
     /**
      * Is the associated off-heap cut marked as logically deleted
      *
@@ -156,6 +190,24 @@ interface Slice {
      */
     ValueUtils.ValueResult isDeleted();
 
+    /**
+     * @return the time (in milliseconds since the epoch) from which the associated off-heap cut is considered
+     * expired, or {@code NO_EXPIRATION} if it never expires (as well as if the memory manager does not track
+     * the expiration).
+     */
+    long getExpiration();
+
+    /**
+     * Sets the expiration time of the associated off-heap cut. The write lock must be held, unless the off-heap
+     * cut is not yet linked.
+     *
+     * @param expiration the time (in milliseconds since the epoch) from which the off-heap cut is considered
+     *                   expired, or {@code NO_EXPIRATION}
+     * @throws UnsupportedOperationException if the memory manager does not track the expiration (unless
+     *                                       {@code expiration} is {@code NO_EXPIRATION})
+     */
+    void setExpiration(long expiration);
+
     /**
      * Marks the header of the associated off-heap cut as moved, just write (without CAS)
      * The write lock must be held (asserted inside the header)
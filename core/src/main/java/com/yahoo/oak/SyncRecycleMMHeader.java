@@ -10,13 +10,22 @@ class SyncRecycleMMHeader {
 
     /*
     * Long SyncRecycleMMHeader: int version + int lock
-    * 0...  ...31 | 32...                  ...61| 62 63
-    *  version    |   lock: current_readers#    | lock state
+    * 0...  ...31 | 32...              ...47 | 48...            ...61| 62 63
+    *  version    |  lock: write sequence#   | lock: current_readers# | lock state
     *
     * lock state: 0x00 - FREE, 0x01 - LOCKED, 0x10 - DELETED, 0x11 - MOVED
     *
+    * The write sequence is advanced whenever the write lock is released, so an optimistic reader
+    * (which does not lock the header) can validate that no writer updated the data during its read.
+    * The readers counter has 14 bits, so a reader waits while it is saturated (by MAX_READERS readers), rather
+    * than carry the counter into the write sequence.
+    *
     * The length (in integer size) of the data is also held just following the header (in long size)
-    * The length is set once upon header allocation and later can only be read. */
+    * The length is set once upon header allocation and later can only be read.
+    *
+    * If the memory manager tracks the expiration of the values, the expiration time (in long size, in milliseconds
+    * since the epoch) follows the length. It is written while the write lock is held (or before the value is
+    * linked), and it is read without locking. */
 
     enum LockStates {
         FREE(0), LOCKED(1), DELETED(2), MOVED(3);
@@ -36,9 +45,21 @@ class SyncRecycleMMHeader {
 
     private static final int LOCK_STATE_MASK = 0x3;
     private static final int LOCK_STATE_SHIFT = 2;
+    private static final int WRITE_SEQUENCE_SHIFT = 16;
+    // the readers counter takes the bits between the lock state and the write sequence
+    private static final int READERS_MASK = ((1 << WRITE_SEQUENCE_SHIFT) - 1) & ~LOCK_STATE_MASK;
+    private static final int WRITE_SEQUENCE_MASK = ~(READERS_MASK | LOCK_STATE_MASK);
+    static final int MAX_READERS = READERS_MASK >>> LOCK_STATE_SHIFT;
 
+    private static final int LENGTH_SIZE = 4;
     private static final int LENGTH_OFFSET = VERSION_SIZE + LOCK_SIZE;
 
+    private static final int EXPIRATION_SIZE = 8;
+    private static final int EXPIRATION_OFFSET = LENGTH_OFFSET + LENGTH_SIZE;
+
+    static final int SIZE = LENGTH_OFFSET + LENGTH_SIZE;
+    static final int SIZE_WITH_EXPIRATION = SIZE + EXPIRATION_SIZE;
+
     private static int getInt(long headerAddress, int intOffsetInBytes) {
         return UnsafeUtils.UNSAFE.getInt(headerAddress + intOffsetInBytes);
     }
@@ -63,6 +84,15 @@ class SyncRecycleMMHeader {
         putInt(headerAddress, LOCK_OFFSET, state.value);
     }
 
+    private static boolean isInState(int lockState, LockStates state) {
+        return (lockState & LOCK_STATE_MASK) == state.value;
+    }
+
+    // the lock with the same write sequence as the given lock, in the given state and without readers
+    private static int withState(int lockState, LockStates state) {
+        return (lockState & WRITE_SEQUENCE_MASK) | state.value;
+    }
+
     int getDataLength(long headerAddress) {
         return getInt(headerAddress, LENGTH_OFFSET);
     }
@@ -71,6 +101,14 @@ class SyncRecycleMMHeader {
         putInt(headerAddress, LENGTH_OFFSET, length);
     }
 
+    long getExpiration(long headerAddress) {
+        return UnsafeUtils.UNSAFE.getLong(headerAddress + EXPIRATION_OFFSET);
+    }
+
+    void setExpiration(long headerAddress, long expiration) {
+        UnsafeUtils.UNSAFE.putLong(headerAddress + EXPIRATION_OFFSET, expiration);
+    }
+
     private void initHeader(long headerAddress, LockStates state, int dataLength, int version) {
         setOffHeapVersion(headerAddress, version);
         setLockState(headerAddress, state);
@@ -99,7 +137,7 @@ class SyncRecycleMMHeader {
         int lockState;
         assert onHeapVersion > ReferenceCodecSyncRecycle.INVALID_VERSION
             : "In locking for read the version was: " + onHeapVersion;
-        do {
+        while (true) {
             int offHeapVersion = getOffHeapVersion(headerAddress);
             if (offHeapVersion != onHeapVersion) {
                 return ValueUtils.ValueResult.RETRY;
@@ -108,14 +146,42 @@ class SyncRecycleMMHeader {
             if (offHeapVersion != getOffHeapVersion(headerAddress)) {
                 return ValueUtils.ValueResult.RETRY;
             }
-            if (lockState == LockStates.DELETED.value) {
+            if (isInState(lockState, LockStates.DELETED)) {
                 return ValueUtils.ValueResult.FALSE;
             }
-            if (lockState == LockStates.MOVED.value) {
+            if (isInState(lockState, LockStates.MOVED)) {
                 return ValueUtils.ValueResult.RETRY;
             }
             lockState &= ~LOCK_STATE_MASK;
-        } while (!cas(headerAddress, lockState, lockState + (1 << LOCK_STATE_SHIFT), onHeapVersion));
+            if ((lockState & READERS_MASK) == READERS_MASK) {
+                // the readers counter is saturated, so another reader must unlock first
+                Thread.yield();
+            } else if (cas(headerAddress, lockState, lockState + (1 << LOCK_STATE_SHIFT), onHeapVersion)) {
+                return ValueUtils.ValueResult.TRUE;
+            }
+        }
+    }
+
+    /**
+     * Checks, without acquiring the lock, that the value can be read, as done by readers that are
+     * protected from the reclamation of the off-heap cut otherwise (a writer never updates such value in place).
+     */
+    ValueUtils.ValueResult validateRead(final int onHeapVersion, long headerAddress) {
+        assert onHeapVersion > ReferenceCodecSyncRecycle.INVALID_VERSION;
+        int offHeapVersion = getOffHeapVersion(headerAddress);
+        if (offHeapVersion != onHeapVersion) {
+            return ValueUtils.ValueResult.RETRY;
+        }
+        int lockState = getLockState(headerAddress);
+        if (offHeapVersion != getOffHeapVersion(headerAddress)) {
+            return ValueUtils.ValueResult.RETRY;
+        }
+        if (isInState(lockState, LockStates.DELETED)) {
+            return ValueUtils.ValueResult.FALSE;
+        }
+        if (isInState(lockState, LockStates.MOVED)) {
+            return ValueUtils.ValueResult.RETRY;
+        }
         return ValueUtils.ValueResult.TRUE;
     }
 
@@ -124,7 +190,7 @@ class SyncRecycleMMHeader {
         assert onHeapVersion > ReferenceCodecSyncRecycle.INVALID_VERSION;
         do {
             lockState = getLockState(headerAddress);
-            assert lockState > LockStates.MOVED.value;
+            assert (lockState & READERS_MASK) != 0;
             lockState &= ~LOCK_STATE_MASK;
         } while (!cas(headerAddress, lockState, lockState - (1 << LOCK_STATE_SHIFT), onHeapVersion));
         return ValueUtils.ValueResult.TRUE;
@@ -132,55 +198,85 @@ class SyncRecycleMMHeader {
 
     ValueUtils.ValueResult lockWrite(final int onHeapVersion, long headerAddress) {
         assert onHeapVersion > ReferenceCodecSyncRecycle.INVALID_VERSION;
+        int lockState;
         do {
             int oldVersion = getOffHeapVersion(headerAddress);
             if (oldVersion != onHeapVersion) {
                 return ValueUtils.ValueResult.RETRY;
             }
-            int lockState = getLockState(headerAddress);
+            lockState = getLockState(headerAddress);
             if (oldVersion != getOffHeapVersion(headerAddress)) {
                 return ValueUtils.ValueResult.RETRY;
             }
-            if (lockState == LockStates.DELETED.value) {
+            if (isInState(lockState, LockStates.DELETED)) {
                 return ValueUtils.ValueResult.FALSE;
             }
-            if (lockState == LockStates.MOVED.value) {
+            if (isInState(lockState, LockStates.MOVED)) {
                 return ValueUtils.ValueResult.RETRY;
             }
-        } while (!cas(headerAddress, LockStates.FREE.value, LockStates.LOCKED.value, onHeapVersion));
+        } while (!cas(headerAddress, withState(lockState, LockStates.FREE), withState(lockState, LockStates.LOCKED),
+            onHeapVersion));
         return ValueUtils.ValueResult.TRUE;
     }
 
     ValueUtils.ValueResult unlockWrite(final int onHeapVersion, long headerAddress) {
         int lockState = getLockState(headerAddress);
-        assert (lockState == LockStates.LOCKED.value)
+        assert isInState(lockState, LockStates.LOCKED) && (lockState & READERS_MASK) == 0
             && (onHeapVersion == getOffHeapVersion(headerAddress));
+        // advance the write sequence, so the optimistic readers that overlapped the write do not validate
+        int unlocked = withState(lockState + (1 << WRITE_SEQUENCE_SHIFT), LockStates.FREE);
         // use CAS and not just write so potential waiting reads can proceed immediately
-        cas(headerAddress, lockState, LockStates.FREE.value, onHeapVersion);
+        cas(headerAddress, lockState, unlocked, onHeapVersion);
         return ValueUtils.ValueResult.TRUE;
     }
 
     ValueUtils.ValueResult logicalDelete(final int onHeapVersion, long headerAddress) {
         assert onHeapVersion > ReferenceCodecSyncRecycle.INVALID_VERSION;
+        int lockState;
         do {
             int oldVersion = getOffHeapVersion(headerAddress);
             if (oldVersion != onHeapVersion) {
                 return ValueUtils.ValueResult.RETRY;
             }
-            int lockState = getLockState(headerAddress);
+            lockState = getLockState(headerAddress);
             if (oldVersion != getOffHeapVersion(headerAddress)) {
                 return ValueUtils.ValueResult.RETRY;
             }
-            if (lockState == LockStates.DELETED.value) {
+            if (isInState(lockState, LockStates.DELETED)) {
                 return ValueUtils.ValueResult.FALSE;
             }
-            if (lockState == LockStates.MOVED.value) {
+            if (isInState(lockState, LockStates.MOVED)) {
                 return ValueUtils.ValueResult.RETRY;
             }
-        } while (!cas(headerAddress, LockStates.FREE.value, LockStates.DELETED.value, onHeapVersion));
+        } while (!cas(headerAddress, withState(lockState, LockStates.FREE), withState(lockState, LockStates.DELETED),
+            onHeapVersion));
         return ValueUtils.ValueResult.TRUE;
     }
 
+    /**
+     * Same as {@code logicalDelete()}, but makes a single attempt, so it fails (rather than waits) if the header
+     * is locked by a reader or a writer.
+     */
+    ValueUtils.ValueResult tryLogicalDelete(final int onHeapVersion, long headerAddress) {
+        assert onHeapVersion > ReferenceCodecSyncRecycle.INVALID_VERSION;
+        int oldVersion = getOffHeapVersion(headerAddress);
+        if (oldVersion != onHeapVersion) {
+            return ValueUtils.ValueResult.RETRY;
+        }
+        int lockState = getLockState(headerAddress);
+        if (oldVersion != getOffHeapVersion(headerAddress)) {
+            return ValueUtils.ValueResult.RETRY;
+        }
+        if (isInState(lockState, LockStates.DELETED)) {
+            return ValueUtils.ValueResult.FALSE;
+        }
+        if (lockState != withState(lockState, LockStates.FREE)) {
+            return ValueUtils.ValueResult.RETRY;
+        }
+        return cas(headerAddress, lockState, withState(lockState, LockStates.DELETED), onHeapVersion)
+            ? ValueUtils.ValueResult.TRUE : ValueUtils.ValueResult.RETRY;
+    }
+
     ValueUtils.ValueResult isLogicallyDeleted(final int onHeapVersion, long headerAddress) {
         int oldVersion = getOffHeapVersion(headerAddress);
         if (oldVersion != onHeapVersion) {
@@ -190,22 +286,61 @@ class SyncRecycleMMHeader {
         if (oldVersion != getOffHeapVersion(headerAddress)) {
             return ValueUtils.ValueResult.RETRY;
         }
-        if (lockState == LockStates.MOVED.value) {
+        if (isInState(lockState, LockStates.MOVED)) {
             return ValueUtils.ValueResult.RETRY;
         }
-        if (lockState == LockStates.DELETED.value) {
+        if (isInState(lockState, LockStates.DELETED)) {
             return ValueUtils.ValueResult.TRUE;
         }
         return ValueUtils.ValueResult.FALSE;
     }
 
     void markAsMoved(long headerAddress) {
-        assert getLockState(headerAddress) == LockStates.LOCKED.value;
-        setLockState(headerAddress, LockStates.MOVED);
+        int lockState = getLockState(headerAddress);
+        assert isInState(lockState, LockStates.LOCKED);
+        putInt(headerAddress, LOCK_OFFSET, withState(lockState, LockStates.MOVED));
     }
 
     void markAsDeleted(long headerAddress) {
-        assert getLockState(headerAddress) == LockStates.LOCKED.value;
-        setLockState(headerAddress, LockStates.DELETED);
+        int lockState = getLockState(headerAddress);
+        assert isInState(lockState, LockStates.LOCKED);
+        putInt(headerAddress, LOCK_OFFSET, withState(lockState, LockStates.DELETED));
+    }
+
+    /*---------------- Optimistic Reads Implementation ----------------*/
+
+    /**
+     * Starts an optimistic read: the data is read without locking the header, and the read is valid only if
+     * {@code validateOptimisticRead()} succeeds afterwards.
+     *
+     * @return a stamp to validate the read with, or {@code Slice.INVALID_STAMP} if the version does not match,
+     * or if the header is not free (a writer holds the lock, or the data is deleted/moved)
+     */
+    long beginOptimisticRead(final int onHeapVersion, long headerAddress) {
+        assert onHeapVersion > ReferenceCodecSyncRecycle.INVALID_VERSION;
+        if (getOffHeapVersion(headerAddress) != onHeapVersion) {
+            return Slice.INVALID_STAMP;
+        }
+        int lockState = getLockState(headerAddress);
+        // the data must not be read before the lock
+        UnsafeUtils.UNSAFE.loadFence();
+        if (getOffHeapVersion(headerAddress) != onHeapVersion || !isInState(lockState, LockStates.FREE)) {
+            return Slice.INVALID_STAMP;
+        }
+        // the readers that lock the header do not invalidate the optimistic read
+        return Integer.toUnsignedLong(lockState & ~READERS_MASK);
+    }
+
+    /**
+     * @return true if no writer locked the header (and the header was not reused) since the optimistic read
+     * that returned {@code stamp} started
+     */
+    boolean validateOptimisticRead(final int onHeapVersion, long headerAddress, long stamp) {
+        assert stamp != Slice.INVALID_STAMP;
+        // the data must be read before the lock is validated
+        UnsafeUtils.UNSAFE.loadFence();
+        int lockState = getLockState(headerAddress);
+        return Integer.toUnsignedLong(lockState & ~READERS_MASK) == stamp
+            && getOffHeapVersion(headerAddress) == onHeapVersion;
     }
 }
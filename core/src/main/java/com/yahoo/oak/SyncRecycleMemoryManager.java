@@ -16,11 +16,15 @@ class SyncRecycleMemoryManager implements MemoryManager {
     private static final SyncRecycleMMHeader HEADER =
         new SyncRecycleMMHeader(); // for off-heap header operations
     private static final int VERS_INIT_VALUE = 1;
-    private static final int OFF_HEAP_HEADER_SIZE = 12; /* Bytes */
+    // larger values are not read optimistically, as they are more likely to be read twice (and at higher cost)
+    static final int OPTIMISTIC_READ_MAX_SIZE = 64; /* Bytes */
     private final ThreadIndexCalculator threadIndexCalculator;
+    // the release list of each thread index; new lists are added as more thread indices are handed out
     private final List<List<SliceSyncRecycle>> releaseLists;
     private final AtomicInteger globalVersionNumber;
     private final BlockMemoryAllocator allocator;
+    private final boolean isExpirationTracked;
+    private final int offHeapHeaderSize; /* Bytes */
 
     /*
      * The VALUE_RC reference codec encodes the reference (with memory manager abilities) of the values
@@ -31,14 +35,24 @@ class SyncRecycleMemoryManager implements MemoryManager {
     private final ReferenceCodecSyncRecycle rc;
 
     SyncRecycleMemoryManager(BlockMemoryAllocator allocator) {
+        this(allocator, false);
+    }
+
+    /**
+     * @param allocator           the allocator of the off-heap cuts
+     * @param isExpirationTracked whether the off-heap header of each off-heap cut holds its expiration time
+     */
+    SyncRecycleMemoryManager(BlockMemoryAllocator allocator, boolean isExpirationTracked) {
         this.threadIndexCalculator = ThreadIndexCalculator.newInstance();
-        this.releaseLists = new CopyOnWriteArrayList<>();
-        for (int i = 0; i < ThreadIndexCalculator.MAX_THREADS; i++) {
-            this.releaseLists.add(new ArrayList<>(RELEASE_LIST_LIMIT));
-        }
+        this.releaseLists = new CopyOnWriteArrayList<>(newReleaseLists(ThreadIndexCalculator.INITIAL_CAPACITY));
         globalVersionNumber = new AtomicInteger(VERS_INIT_VALUE);
         this.allocator = allocator;
-        rc = new ReferenceCodecSyncRecycle(BlocksPool.getInstance().blockSize(), allocator);
+        this.isExpirationTracked = isExpirationTracked;
+        this.offHeapHeaderSize = isExpirationTracked ? SyncRecycleMMHeader.SIZE_WITH_EXPIRATION
+            : SyncRecycleMMHeader.SIZE;
+        // the allocator might be missing only in tests
+        int blockSize = allocator != null ? allocator.getBlockSize() : BlocksPool.getInstance().blockSize();
+        rc = new ReferenceCodecSyncRecycle(blockSize, allocator);
     }
 
     @Override
@@ -103,7 +117,77 @@ class SyncRecycleMemoryManager implements MemoryManager {
     @VisibleForTesting
     @Override
     public int getHeaderSize() {
-        return OFF_HEAP_HEADER_SIZE;
+        return offHeapHeaderSize;
+    }
+
+    @Override
+    public boolean isExpirationTracked() {
+        return isExpirationTracked;
+    }
+
+    @Override
+    public boolean isReleaseDeferred() {
+        return false;
+    }
+
+    @Override
+    public void startOperation() {
+    }
+
+    @Override
+    public void finishOperation() {
+    }
+
+    @Override
+    public IterationGuard startIteration(Object iterator) {
+        return IterationGuard.NONE;
+    }
+
+    @Override
+    public BlockMemoryAllocator getAllocator() {
+        return allocator;
+    }
+
+    @Override
+    public void flushReleases() {
+        List<SliceSyncRecycle> myReleaseList = getMyReleaseList();
+        if (!myReleaseList.isEmpty()) {
+            freeReleaseList(myReleaseList);
+        }
+    }
+
+    private static List<List<SliceSyncRecycle>> newReleaseLists(int count) {
+        List<List<SliceSyncRecycle>> lists = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lists.add(new ArrayList<>(RELEASE_LIST_LIMIT));
+        }
+        return lists;
+    }
+
+    private List<SliceSyncRecycle> getMyReleaseList() {
+        int idx = threadIndexCalculator.getIndex();
+        if (idx >= releaseLists.size()) {
+            growReleaseLists(idx);
+        }
+        return releaseLists.get(idx);
+    }
+
+    // the lists are at least doubled, so the copy-on-write list is copied only a few times
+    private synchronized void growReleaseLists(int idx) {
+        int size = releaseLists.size();
+        if (idx >= size) {
+            releaseLists.addAll(newReleaseLists(Math.max(idx + 1, 2 * size) - size));
+        }
+    }
+
+    // The released off-heap cuts are reused only once the global version was advanced, so the version
+    // of their new allocations differs from the version of the previous ones
+    private void freeReleaseList(List<SliceSyncRecycle> releaseList) {
+        increaseGlobalVersion();
+        for (SliceSyncRecycle allocToRelease : releaseList) {
+            allocator.free(allocToRelease);
+        }
+        releaseList.clear();
     }
 
     @Override
@@ -111,6 +195,14 @@ class SyncRecycleMemoryManager implements MemoryManager {
         return allocator.allocated();
     }
 
+    /**
+     * The version given to a newly allocated off-heap cut. It must differ from the version of
+     * any previous allocation of the same off-heap cut, that might still be referenced.
+     */
+    int getAllocationVersion() {
+        return globalVersionNumber.get();
+    }
+
     // The version takes specific number of bits (including delete bit)
     // the version increasing needs to restart once the maximal number of bits is reached
     //
@@ -170,9 +262,9 @@ class SyncRecycleMemoryManager implements MemoryManager {
          */
         @Override
         public void allocate(int size, boolean existing) {
-            boolean allocated = allocator.allocate(this, size + OFF_HEAP_HEADER_SIZE);
+            boolean allocated = allocator.allocate(this, size + offHeapHeaderSize);
             assert allocated;
-            int allocationVersion = globalVersionNumber.get();
+            int allocationVersion = getAllocationVersion();
             version = allocationVersion;
             associated = true;
             // Initiate the header that is serving for synchronization and memory management
@@ -184,6 +276,9 @@ class SyncRecycleMemoryManager implements MemoryManager {
             } else {
                 HEADER.initFreeHeader(getMetadataAddress(), size, allocationVersion);
             }
+            if (isExpirationTracked) {
+                HEADER.setExpiration(getMetadataAddress(), NO_EXPIRATION);
+            }
             assert HEADER.getOffHeapVersion(getMetadataAddress()) == allocationVersion;
             reference = encodeReference();
         }
@@ -198,16 +293,11 @@ class SyncRecycleMemoryManager implements MemoryManager {
         @Override
         public void release() {
             prefetchDataLength(); // this will set the length from off-heap header, if needed
-            int idx = threadIndexCalculator.getIndex();
-            List<SliceSyncRecycle> myReleaseList = releaseLists.get(idx);
+            List<SliceSyncRecycle> myReleaseList = getMyReleaseList();
             // ensure the length of the slice is always set
             myReleaseList.add(duplicate());
             if (myReleaseList.size() >= RELEASE_LIST_LIMIT) {
-                increaseGlobalVersion();
-                for (SliceSyncRecycle allocToRelease : myReleaseList) {
-                    allocator.free(allocToRelease);
-                }
-                myReleaseList.clear();
+                freeReleaseList(myReleaseList);
             }
         }
 
@@ -303,7 +393,7 @@ class SyncRecycleMemoryManager implements MemoryManager {
             if (length == UNDEFINED_LENGTH_OR_OFFSET_OR_ADDRESS) {
                 // the length kept in header is the length of the data only!
                 // add header size
-                this.length = HEADER.getDataLength(getMetadataAddress()) + OFF_HEAP_HEADER_SIZE;
+                this.length = HEADER.getDataLength(getMetadataAddress()) + offHeapHeaderSize;
             }
         }
 
@@ -332,12 +422,12 @@ class SyncRecycleMemoryManager implements MemoryManager {
         public int getLength() {
             // prefetchDataLength() prefetches the length from header only if Slice's length is undefined
             prefetchDataLength();
-            return length - OFF_HEAP_HEADER_SIZE;
+            return length - offHeapHeaderSize;
         }
 
         @Override
         public long getAddress() {
-            return memAddress + offset + OFF_HEAP_HEADER_SIZE;
+            return memAddress + offset + offHeapHeaderSize;
         }
 
         @Override
@@ -375,6 +465,32 @@ class SyncRecycleMemoryManager implements MemoryManager {
             return HEADER.unlockRead(version, getMetadataAddress());
         }
 
+        /**
+         * Starts an optimistic read, which does not write to the off-heap header. Only small values
+         * (up to {@code OPTIMISTIC_READ_MAX_SIZE} bytes) are read optimistically.
+         *
+         * @return a stamp to validate the read with, or {@code INVALID_STAMP} if the value is too large, if the
+         * header is write locked or marked as deleted/moved, or if the version of the off-heap header does not
+         * match {@code version}.
+         */
+        @Override
+        public long beginOptimisticRead() {
+            assert version != ReferenceCodecSyncRecycle.INVALID_VERSION;
+            if (getLength() > OPTIMISTIC_READ_MAX_SIZE) {
+                return INVALID_STAMP;
+            }
+            return HEADER.beginOptimisticRead(version, getMetadataAddress());
+        }
+
+        /**
+         * @param stamp the stamp returned by {@code beginOptimisticRead()}
+         * @return true if no writer locked the header since the optimistic read started
+         */
+        @Override
+        public boolean validateOptimisticRead(long stamp) {
+            return HEADER.validateOptimisticRead(version, getMetadataAddress(), stamp);
+        }
+
         /**
          * Acquires a write lock
          *
@@ -411,6 +527,19 @@ class SyncRecycleMemoryManager implements MemoryManager {
             return HEADER.logicalDelete(version, getMetadataAddress());
         }
 
+        /**
+         * Same as {@code logicalDelete()}, but fails instead of waiting if the off-heap cut is locked.
+         *
+         * @return {@code TRUE} if the value was marked successfully
+         * {@code FALSE} if the value is already marked as deleted
+         * {@code RETRY} if the value is locked or was moved, or the version of the off-heap value does not match
+         * {@code version}.
+         */
+        public ValueUtils.ValueResult tryLogicalDelete() {
+            assert version != ReferenceCodecSyncRecycle.INVALID_VERSION;
+            return HEADER.tryLogicalDelete(version, getMetadataAddress());
+        }
+
         /**
          * Is the associated off-heap cut marked as logically deleted
          *
@@ -423,6 +552,19 @@ class SyncRecycleMemoryManager implements MemoryManager {
             return HEADER.isLogicallyDeleted(version, getMetadataAddress());
         }
 
+        public long getExpiration() {
+            return isExpirationTracked ? HEADER.getExpiration(getMetadataAddress()) : NO_EXPIRATION;
+        }
+
+        public void setExpiration(long expiration) {
+            assert associated;
+            if (isExpirationTracked) {
+                HEADER.setExpiration(getMetadataAddress(), expiration);
+            } else if (expiration != NO_EXPIRATION) {
+                throw new UnsupportedOperationException("The memory manager does not track the expiration");
+            }
+        }
+
         /**
          * Marks the header of the associated off-heap cut as moved, just write (without CAS)
          * The write lock must be held (asserted inside the header)
@@ -42,6 +42,12 @@ class ThreadContext {
      */
     boolean isNewValueForMove;
 
+    /*
+     * Flags if the values are never updated in place, but replaced by a new copy.
+     * This is the case when their readers do not lock them, i.e., their release is deferred.
+     */
+    final boolean isValueCopyOnWrite;
+
     /* The key hash of the found (serialized) entry's key. Relevant and used only for OakHash */
     long keyHash;
 
@@ -58,10 +64,21 @@ class ThreadContext {
     final KeyBuffer tempKey;
     final ValueBuffer tempValue;
 
+    /* Used to serialize values off-heap without instantiating a new write buffer per serialization */
+    final ScopedWriteBuffer valueWriteBuffer;
+
+    /*-----------------------------------------------------------
+     * Reuse Context
+     *-----------------------------------------------------------*/
+
+    /* The next free context of the owner thread, set only while this context is free (see getThreadContext()) */
+    ThreadContext nextFree;
+
     ThreadContext(MemoryManager kmm, MemoryManager vmm) {
         entryIndex = EntryArray.INVALID_ENTRY_INDEX;
         entryState = EntryArray.EntryState.UNKNOWN;
         isNewValueForMove = false;
+        isValueCopyOnWrite = vmm.isReleaseDeferred();
 
         this.key = new KeyBuffer(kmm.getEmptySlice());
         this.value = new ValueBuffer(vmm.getEmptySlice());
@@ -69,6 +86,7 @@ class ThreadContext {
         this.result = new Result();
         this.tempKey = new KeyBuffer(kmm.getEmptySlice());
         this.tempValue = new ValueBuffer(vmm.getEmptySlice());
+        this.valueWriteBuffer = ScopedWriteBuffer.createReusable(vmm.getEmptySlice());
 
         this.keyHash = EntryHashSet.INVALID_KEY_HASH;
     }
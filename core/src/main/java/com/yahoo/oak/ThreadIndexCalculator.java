@@ -6,68 +6,97 @@
 
 package com.yahoo.oak;
 
-import sun.misc.Unsafe;
-
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 
+/**
+ * Assigns each thread a small index, unique among the threads that currently hold one, so per-thread
+ * resources can be kept in a plain list. The indices are not bounded by a fixed number of threads:
+ * the first call of a thread takes a free index or a new one, and the index of a thread is freed either
+ * explicitly (see releaseIndex()) or once the thread terminates. Hence, short-lived threads (e.g., a virtual
+ * thread per request) reuse the indices of the terminated ones, and the indices stay close to the maximal
+ * number of threads that were alive at once.
+ */
 final class ThreadIndexCalculator {
 
-    public static final int MAX_THREADS = 64;
-    private static final int INVALID_THREAD_ID = -1;
-    // Long for correctness and anti false-sharing
-    private final long[] indices = new long[MAX_THREADS];
+    // the number of indices that are expected to be used; more indices are handed out as needed
+    public static final int INITIAL_CAPACITY = 64;
 
-    private ThreadIndexCalculator() {
-        for (int i = 0; i < MAX_THREADS; ++i) {
-            indices[i] = INVALID_THREAD_ID;
-        }
-    }
+    // the index of the current thread; only its first lookup (per thread) goes through the slow path
+    private final ThreadLocal<Integer> localIndex = new ThreadLocal<>();
 
-    private int getExistingIndex(long threadID) {
-        int iterationCnt = 0;
-        int currentIndex = ((int) threadID) % MAX_THREADS;
-        while (indices[currentIndex] != threadID) {
-            if (indices[currentIndex] == INVALID_THREAD_ID) {
-                // negative output indicates that a new index need to be created for this thread id
-                return -1 * currentIndex;
-            }
-            currentIndex = (currentIndex + 1) % MAX_THREADS;
-            iterationCnt++;
-            assert iterationCnt < MAX_THREADS;
-        }
-        return currentIndex;
+    /*
+     * The slow path state, guarded by this calculator. The owner of each index is weakly referenced,
+     * so a terminated thread (that never released its index) is not kept alive by the calculator.
+     */
+    private final List<WeakReference<Thread>> owners = new ArrayList<>(INITIAL_CAPACITY);
+    private final List<Integer> freeIndices = new ArrayList<>();
+    // the number of indices handed out since the owners were last checked for terminated threads
+    private int acquiredSinceReclaim = 0;
+
+    private ThreadIndexCalculator() {
     }
 
     public int getIndex() {
-        long tid = Thread.currentThread().getId();
-        int threadIdx = getExistingIndex(tid);
-        if (threadIdx > 0) {
-            return threadIdx;
-        }
-        if (threadIdx == 0) {
-            // due to multiplying by -1 check this special array element
-            if (tid == indices[0]) {
-                return threadIdx;
-            }
+        Integer index = localIndex.get();
+        if (index == null) {
+            index = acquireIndex(Thread.currentThread());
+            localIndex.set(index);
         }
-        int i = threadIdx * -1;
-        while (!UnsafeUtils.UNSAFE.compareAndSwapLong(indices,
-                Unsafe.ARRAY_LONG_BASE_OFFSET + i * Unsafe.ARRAY_LONG_INDEX_SCALE, INVALID_THREAD_ID, tid)) {
-            //TODO get out of loop sometime
-            i = (i + 1) % MAX_THREADS;
-        }
-        return i;
+        return index;
     }
 
     public void releaseIndex() {
-        long tid = Thread.currentThread().getId();
-        int index = getExistingIndex(tid);
-        if (index < 0) {
+        Integer index = localIndex.get();
+        if (index == null) {
             // There is no such thread index in the calculator, so throw NoSuchElementException
             // Probably releasing the same thread twice
             throw new NoSuchElementException();
         }
-        indices[index] = INVALID_THREAD_ID;
+        localIndex.remove();
+        synchronized (this) {
+            owners.set(index, null);
+            freeIndices.add(index);
+        }
+    }
+
+    private synchronized int acquireIndex(Thread thread) {
+        // the owners are checked only after handing out (at least) half as many indices as there are since
+        // the last check, so a thread takes an index in amortized constant time, and the indices exceed the
+        // threads that were alive at once by at most half
+        if (freeIndices.isEmpty() && acquiredSinceReclaim >= Math.max(INITIAL_CAPACITY, owners.size() / 2)) {
+            reclaimIndices();
+        }
+        acquiredSinceReclaim++;
+        WeakReference<Thread> owner = new WeakReference<>(thread);
+        if (!freeIndices.isEmpty()) {
+            int index = freeIndices.remove(freeIndices.size() - 1);
+            owners.set(index, owner);
+            return index;
+        }
+        owners.add(owner);
+        return owners.size() - 1;
+    }
+
+    /*
+     * Frees the indices of the terminated threads. Observing that a thread is not alive happens-after all its
+     * actions, so the per-thread resources of a reclaimed index are safely handed over to its next owner.
+     */
+    private void reclaimIndices() {
+        for (int i = 0; i < owners.size(); i++) {
+            WeakReference<Thread> owner = owners.get(i);
+            if (owner == null) {
+                continue; // the index is already free
+            }
+            Thread thread = owner.get();
+            if (thread == null || !thread.isAlive()) {
+                owners.set(i, null);
+                freeIndices.add(i);
+            }
+        }
+        acquiredSinceReclaim = 0;
     }
 
     public static ThreadIndexCalculator newInstance() {
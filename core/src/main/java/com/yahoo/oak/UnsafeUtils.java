@@ -10,6 +10,8 @@ import sun.misc.Unsafe;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 
@@ -101,6 +103,39 @@ final class UnsafeUtils {
     public static void putDouble(long address, double value) {
         UNSAFE.putDouble(address, value);
     }
+
+    // the offset of the first element of a long array, and the distance between its elements
+    static final long LONG_ARRAY_BASE_OFFSET = Unsafe.ARRAY_LONG_BASE_OFFSET;
+    static final int LONG_ARRAY_INDEX_SCALE = Unsafe.ARRAY_LONG_INDEX_SCALE;
+
+    /*-------------- Accessing byte arrays and memory alike --------------*/
+
+    // the offset of the first byte of a byte array, used with a byte array as the base
+    static final long BYTE_ARRAY_BASE_OFFSET = Unsafe.ARRAY_BYTE_BASE_OFFSET;
+
+    /**
+     * Reads a byte from the given base object (a byte array) at the given offset,
+     * or from the given address (the offset) if the base is null.
+     */
+    static byte get(Object base, long offset) {
+        return UNSAFE.getByte(base, offset);
+    }
+
+    /**
+     * Reads a long (in its native endianness) from the given base object (a byte array) at the given offset,
+     * or from the given address (the offset) if the base is null. The offset need not be aligned.
+     */
+    static long getLong(Object base, long offset) {
+        return UNSAFE.getLong(base, offset);
+    }
+
+    /**
+     * Copies the given number of bytes, where each side is either a base object (a byte array) and an offset,
+     * or a null base and an address.
+     */
+    static void copyMemory(Object srcBase, long srcOffset, Object dstBase, long dstOffset, long bytes) {
+        UNSAFE.copyMemory(srcBase, srcOffset, dstBase, dstOffset, bytes);
+    }
     
 
     /*-------------- Wrapping address with bytebuffer --------------*/
@@ -128,4 +163,35 @@ final class UnsafeUtils {
         }
         return bb;
     }
+
+    // Returns the memory address of the given direct (or mapped) buffer
+    static long getAddress(ByteBuffer bb) {
+        assert bb.isDirect();
+        try {
+            return ADDRESS.getLong(bb);
+        } catch (IllegalAccessException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    // Releases (or unmaps) the memory of the given direct (or mapped) buffer at once, rather than once the buffer
+    // is garbage collected. The memory must not be accessed afterwards.
+    static void freeDirectBuffer(ByteBuffer bb) {
+        assert bb.isDirect();
+        try {
+            try {
+                // Java 9 and above
+                Method invokeCleaner = Unsafe.class.getMethod("invokeCleaner", ByteBuffer.class);
+                invokeCleaner.invoke(UNSAFE, bb);
+            } catch (NoSuchMethodException e) {
+                // Java 8
+                Method cleanerMethod = bb.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(bb);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            throw new AssertionError(e);
+        }
+    }
 }
@@ -15,7 +15,8 @@ import java.util.ConcurrentModificationException;
  *  - EntryIterator (for values)
  * <p>
  * It extends the non-synchronized version, and overrides the transform() and safeAccessToScopedBuffer() methods to
- * perform synchronization before any access to the data.
+ * perform synchronization before any access to the data. A small value is first read optimistically (without
+ * locking it), and it is locked (and read again) only if the optimistic read is invalidated by a concurrent update.
  */
 class UnscopedValueBufferSynced extends UnscopedBuffer<ValueBuffer> {
 
@@ -28,10 +29,10 @@ class UnscopedValueBufferSynced extends UnscopedBuffer<ValueBuffer> {
     /**
      * In case of a search, this is the map we search in.
      */
-    private final InternalOakMap<?, ?> internalOakMap;
+    private final InternalOakBasics<?, ?> internalOakMap;
 
     UnscopedValueBufferSynced(KeyBuffer key, ValueBuffer value,
-                              ValueUtils valueOperator, InternalOakMap<?, ?> internalOakMap) {
+                              ValueUtils valueOperator, InternalOakBasics<?, ?> internalOakMap) {
         super(new ValueBuffer(value));
         this.key = new KeyBuffer(key);
         this.valueOperator = valueOperator;
@@ -44,6 +45,21 @@ class UnscopedValueBufferSynced extends UnscopedBuffer<ValueBuffer> {
             throw new NullPointerException();
         }
 
+        long stamp = internalScopedReadBuffer.s.beginOptimisticRead();
+        if (stamp != Slice.INVALID_STAMP) {
+            try {
+                T transformation = transformer.apply(internalScopedReadBuffer);
+                if (internalScopedReadBuffer.s.validateOptimisticRead(stamp)) {
+                    return transformation;
+                }
+            } catch (RuntimeException | Error e) {
+                // the exception might be caused by reading a value that was concurrently updated
+                if (internalScopedReadBuffer.s.validateOptimisticRead(stamp)) {
+                    throw e;
+                }
+            }
+        }
+
         start();
         try {
             return transformer.apply(internalScopedReadBuffer);
@@ -56,6 +72,21 @@ class UnscopedValueBufferSynced extends UnscopedBuffer<ValueBuffer> {
     protected <R> R safeAccessToScopedBuffer(Getter<R> getter, int index) {
         // Internal call. No input validation.
 
+        long stamp = internalScopedReadBuffer.s.beginOptimisticRead();
+        if (stamp != Slice.INVALID_STAMP) {
+            try {
+                R value = getter.get(internalScopedReadBuffer, index);
+                if (internalScopedReadBuffer.s.validateOptimisticRead(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException | Error e) {
+                // the exception might be caused by reading a value that was concurrently updated
+                if (internalScopedReadBuffer.s.validateOptimisticRead(stamp)) {
+                    throw e;
+                }
+            }
+        }
+
         start();
         try {
             return getter.get(internalScopedReadBuffer, index);
@@ -7,6 +7,7 @@
 package com.yahoo.oak;
 
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 class ValueUtils {
 
@@ -27,8 +28,26 @@ class ValueUtils {
      * {@code FALSE} if the value is deleted
      * {@code RETRY} if the value was moved, or the version of the off-heap value does not match {@code version}.
      * In case of {@code TRUE}, the read value is stored in the returned Result, otherwise, the value is {@code null}.
+     * A small value is first read optimistically (without locking it), it is locked only if the read is
+     * invalidated by a concurrent update, so {@code transformer} might be applied more than once, and it might
+     * read a value that is concurrently updated (see the requirements in OakTransformer).
      */
     <T> Result transform(Result result, ValueBuffer value, OakTransformer<T> transformer) {
+        long stamp = value.s.beginOptimisticRead();
+        if (stamp != Slice.INVALID_STAMP) {
+            try {
+                T transformation = transformer.apply(value);
+                if (value.s.validateOptimisticRead(stamp)) {
+                    return result.withValue(transformation);
+                }
+            } catch (RuntimeException | Error e) {
+                // the exception might be caused by reading a value that was concurrently updated
+                if (value.s.validateOptimisticRead(stamp)) {
+                    throw e;
+                }
+            }
+        }
+
         ValueResult ret = value.s.lockRead();
         if (ret != ValueResult.TRUE) {
             return result.withFlag(ret);
@@ -43,11 +62,11 @@ class ValueUtils {
     }
 
     /**
-     * @see #exchange(Chunk, ThreadContext, Object, OakTransformer, OakSerializer, InternalOakMap)
+     * @see #exchange(BasicChunk, ThreadContext, Object, OakTransformer, OakSerializer, InternalOakBasics)
      * Does not return the value previously written off-heap
      */
-    <V> ValueResult put(Chunk<?, V> chunk, ThreadContext ctx, V newVal, OakSerializer<V> serializer,
-        InternalOakMap internalOakMap) {
+    <V> ValueResult put(BasicChunk<?, V> chunk, ThreadContext ctx, V newVal, OakSerializer<V> serializer,
+        InternalOakBasics internalOakMap) {
 
         ValueResult result = ctx.value.s.lockWrite();
         if (result != ValueResult.TRUE) {
@@ -61,34 +80,43 @@ class ValueUtils {
         return result;
     }
 
-    private <V> ValueResult innerPut(Chunk<?, V> chunk, ThreadContext ctx, V newVal, OakSerializer<V> serializer,
-        InternalOakMap internalOakMap) {
+    private <V> ValueResult innerPut(BasicChunk<?, V> chunk, ThreadContext ctx, V newVal, OakSerializer<V> serializer,
+        InternalOakBasics internalOakMap) {
         int capacity = serializer.calculateSize(newVal);
-        if (capacity > ctx.value.getLength()) {
+        // values whose readers do not lock them are never updated in place (copy-on-write)
+        if (capacity > ctx.value.getLength() || ctx.isValueCopyOnWrite) {
             return moveValue(chunk, ctx, internalOakMap, newVal);
         }
-        ScopedWriteBuffer.serialize(ctx.value.s, newVal, serializer);
+        ScopedWriteBuffer.serialize(ctx.valueWriteBuffer, ctx.value.s, newVal, serializer);
         return ValueResult.TRUE;
     }
 
     private <V> ValueResult moveValue(
-        Chunk<?, V> chunk, ThreadContext ctx, InternalOakMap internalOakMap, V newVal) {
+        BasicChunk<?, V> chunk, ThreadContext ctx, InternalOakBasics internalOakMap, V newVal) {
 
         boolean moved = internalOakMap.overwriteExistingValueForMove(ctx, newVal, chunk);
         if (!moved) {
             // rebalance was needed or the entry was updated by someone else, need to retry
             return ValueResult.RETRY;
         }
+        finishMove(ctx);
+        return ValueResult.TRUE;
+    }
+
+    private void finishMove(ThreadContext ctx) {
         // The value was moved, the header of the old slice needs to me marked as moved
         // Couldn't release the write lock on the old slice or mark it as moved, before the new one is updated!
         // Marking the old slide as moved now, the write lock is still held
         ctx.value.s.markAsMoved();
-        // currently the slices which value was moved aren't going to be released, to keep the MOVED mark
+        if (ctx.isValueCopyOnWrite) {
+            // the old slice is reused only after its readers are done, and they will find it marked as moved
+            ctx.value.s.release();
+        }
+        // otherwise, the slices which value was moved aren't going to be released, to keep the MOVED mark
         // They need to be released when the target slice is released (moved to free list)
         // TODO: deal with the reallocation of the moved memory
 
         ctx.value.copyFrom(ctx.newValue);
-        return ValueResult.TRUE;
     }
 
     /**
@@ -113,6 +141,120 @@ class ValueUtils {
         return ValueResult.TRUE;
     }
 
+    /**
+     * Applies {@code computer} on the value referenced by {@code ctx}. If the values are never updated in place
+     * (their readers do not lock them), the computer is applied on a copy of the value, which is then linked
+     * to the entry instead of the old value.
+     *
+     * @param <V>            the type of the value
+     * @param chunk          the chunk with the entry to which the value is linked to
+     * @param ctx            has the entry index and its value
+     * @param computer       the function to apply on the value
+     * @param internalOakMap
+     * @return {@code TRUE} if the function was applied successfully,
+     * {@code FALSE} if the value is deleted,
+     * {@code RETRY} if the value was moved, or if the copy could not be linked.
+     * @see #compute(ValueBuffer, Consumer)
+     */
+    <V> ValueResult compute(BasicChunk<?, V> chunk, ThreadContext ctx, Consumer<OakScopedWriteBuffer> computer,
+        InternalOakBasics internalOakMap) {
+        if (!ctx.isValueCopyOnWrite) {
+            return compute(ctx.value, computer);
+        }
+
+        ValueResult result = ctx.value.s.lockWrite();
+        if (result != ValueResult.TRUE) {
+            return result;
+        }
+        int length = ctx.value.getLength();
+        ctx.newValue.s.allocate(length, true);
+        ctx.isNewValueForMove = true;
+        UnsafeUtils.UNSAFE.copyMemory(ctx.value.getAddress(), ctx.newValue.getAddress(), length);
+        ctx.newValue.s.setExpiration(ctx.value.s.getExpiration());
+        try {
+            ScopedWriteBuffer.compute(ctx.newValue.s, computer);
+        } catch (RuntimeException | Error e) {
+            // the value stays untouched
+            ctx.newValue.s.release();
+            ctx.value.s.unlockWrite();
+            throw e;
+        }
+        if (!internalOakMap.linkNewValueForMove(ctx, chunk)) {
+            // rebalance was needed or the entry was updated by someone else, need to retry
+            ctx.value.s.unlockWrite();
+            return ValueResult.RETRY;
+        }
+        finishMove(ctx);
+        ctx.value.s.unlockWrite();
+        return ValueResult.TRUE;
+    }
+
+    /**
+     * Relocates the value referenced by {@code ctx} (e.g., out of a block that is evacuated by the allocator),
+     * by linking a copy of the value to the entry instead of the old value.
+     * Must be invoked only if the values are never updated in place, so the old value is released only after
+     * its concurrent readers are done.
+     *
+     * @param <V>            the type of the value
+     * @param chunk          the chunk with the entry to which the value is linked to
+     * @param ctx            has the entry index and its value
+     * @param internalOakMap
+     * @return {@code TRUE} if the value was relocated,
+     * {@code FALSE} if the value is deleted,
+     * {@code RETRY} if the value was moved, or if the copy could not be linked.
+     */
+    <V> ValueResult relocate(BasicChunk<?, V> chunk, ThreadContext ctx, InternalOakBasics internalOakMap) {
+        assert ctx.isValueCopyOnWrite;
+        return compute(chunk, ctx, buffer -> { }, internalOakMap);
+    }
+
+    /**
+     * Replaces the value referenced by {@code ctx} with the output of {@code remappingFunction}, which is applied
+     * on the (deserialized) current value while holding the value's write lock.
+     * If the function returns {@code null}, the value is marked as deleted (and the write lock is not released),
+     * the caller is responsible to continue the deletion of the entry.
+     *
+     * @param <V>               the type of the value
+     * @param chunk             the chunk with the entry to which the value is linked to
+     * @param ctx               has the entry index and its value
+     * @param remappingFunction the function to compute the new value from the current value
+     * @param serializer        value serializer to read the current value and to write the new value
+     * @param internalOakMap
+     * @return {@code TRUE} if the function was applied and its output was written off-heap (or the value was
+     * marked as deleted), in this case the value of the returned Result is the new value
+     * {@code FALSE} if the value is deleted
+     * {@code RETRY} for the same reasons as exchange
+     * @see #exchange(BasicChunk, ThreadContext, Object, OakTransformer, OakSerializer, InternalOakBasics)
+     */
+    <V> Result compute(
+        BasicChunk<?, V> chunk, ThreadContext ctx, Function<? super V, ? extends V> remappingFunction,
+        OakSerializer<V> serializer, InternalOakBasics internalOakMap) {
+
+        ValueResult result = ctx.value.s.lockWrite();
+        if (result != ValueResult.TRUE) {
+            return ctx.result.withFlag(result);
+        }
+        V newValue;
+        try {
+            newValue = remappingFunction.apply(serializer.deserialize(ctx.value));
+        } catch (RuntimeException | Error e) {
+            // the value stays untouched
+            ctx.value.s.unlockWrite();
+            throw e;
+        }
+        if (newValue == null) {
+            // No need for a CAS since a write lock is exclusive
+            ctx.value.s.markAsDeleted();
+            return ctx.result.withValue(null);
+        }
+        result = innerPut(chunk, ctx, newValue, serializer, internalOakMap);
+        // in case move happened: ctx.value might be set to a new allocation.
+        // Alternatively, if returned result is RETRY, a rebalance might be needed
+        // or the entry might be updated by someone else, need to retry
+        ctx.value.s.unlockWrite();
+        return result == ValueResult.TRUE ? ctx.result.withValue(newValue) : ctx.result.withFlag(ValueResult.RETRY);
+    }
+
     /**
      * Marks a value as deleted and frees its slice (whether the header is freed or not is implementation dependant).
      *
@@ -163,6 +305,31 @@ class ValueUtils {
         }
     }
 
+    /**
+     * Marks the value referenced by {@code ctx} as deleted if it is expired, which is checked while holding the
+     * value's write lock. The write lock is not released, the caller is responsible to continue the deletion
+     * of the entry (as done upon {@code remove()}).
+     *
+     * @param ctx has the entry index and its value
+     * @return {@code TRUE} if the value was marked as deleted,
+     * {@code FALSE} if the value is already deleted, or it is not expired (anymore),
+     * {@code RETRY} if the value was moved, or the version of the off-heap value does not match.
+     */
+    ValueResult expire(ThreadContext ctx) {
+        ValueResult result = ctx.value.s.lockWrite();
+        if (result != ValueResult.TRUE) {
+            return result;
+        }
+        if (!EntryArray.isExpired(ctx.value.s)) {
+            // the value was concurrently replaced
+            ctx.value.s.unlockWrite();
+            return ValueResult.FALSE;
+        }
+        // No need for a CAS since a write lock is exclusive
+        ctx.value.s.markAsDeleted();
+        return ValueResult.TRUE;
+    }
+
     /**
      * Replaces the value written in the Slice referenced by {@code ctx} with {@code value}.
      * {@code chuck} is used iff {@code newValue} takes more space than the old value does, meaning it has to move.
@@ -183,8 +350,23 @@ class ValueUtils {
      * was written before the exchange.
      */
     <V> Result exchange(
-        Chunk<?, V> chunk, ThreadContext ctx, V value, OakTransformer<V> valueDeserializeTransformer,
-        OakSerializer<V> serializer, InternalOakMap internalOakMap) {
+        BasicChunk<?, V> chunk, ThreadContext ctx, V value, OakTransformer<V> valueDeserializeTransformer,
+        OakSerializer<V> serializer, InternalOakBasics internalOakMap) {
+        return exchange(chunk, ctx, value, valueDeserializeTransformer, serializer, Slice.NO_EXPIRATION,
+            internalOakMap);
+    }
+
+    /**
+     * Same as {@code exchange(chunk, ctx, value, valueDeserializeTransformer, serializer, internalOakMap)},
+     * and also sets the expiration time of the new value.
+     *
+     * @param expiration the time (in milliseconds since the epoch) from which the new value is considered expired,
+     *                   or {@code Slice.NO_EXPIRATION}
+     * @see #exchange(BasicChunk, ThreadContext, Object, OakTransformer, OakSerializer, InternalOakBasics)
+     */
+    <V> Result exchange(
+        BasicChunk<?, V> chunk, ThreadContext ctx, V value, OakTransformer<V> valueDeserializeTransformer,
+        OakSerializer<V> serializer, long expiration, InternalOakBasics internalOakMap) {
 
         ValueResult result = ctx.value.s.lockWrite();
         if (result != ValueResult.TRUE) {
@@ -195,6 +377,10 @@ class ValueUtils {
             oldValue = valueDeserializeTransformer.apply(ctx.value);
         }
         result = innerPut(chunk, ctx, value, serializer, internalOakMap);
+        if (result == ValueResult.TRUE) {
+            // the (possibly moved) value is still locked
+            ctx.value.s.setExpiration(expiration);
+        }
         // in case move happened: ctx.value might be set to a new slice.
         // Alternatively, if returned result is RETRY, a rebalance might be needed
         // or the entry might be updated by someone else, need to retry
@@ -209,12 +395,12 @@ class ValueUtils {
      * {@code FAILURE} if the value is deleted or if the actual value referenced in {@code ctx} does not equal to
      * {@code expected}
      * {@code RETRY} for the same reasons as exchange
-     * @see #exchange(Chunk, ThreadContext, Object, OakTransformer, OakSerializer, InternalOakMap)
+     * @see #exchange(BasicChunk, ThreadContext, Object, OakTransformer, OakSerializer, InternalOakBasics)
      */
     <V> ValueResult compareExchange(
-        Chunk<?, V> chunk, ThreadContext ctx, V expected, V value,
+        BasicChunk<?, V> chunk, ThreadContext ctx, V expected, V value,
         OakTransformer<V> valueDeserializeTransformer, OakSerializer<V> serializer,
-        InternalOakMap internalOakMap) {
+        InternalOakBasics internalOakMap) {
 
         ValueResult result = ctx.value.s.lockWrite();
         if (result != ValueResult.TRUE) {
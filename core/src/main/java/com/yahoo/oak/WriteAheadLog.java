@@ -0,0 +1,683 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead log of the updates of an OakMap, which makes the map durable: the map is recovered by restoring
+ * its last checkpoint (a snapshot, see {@code OakMap.snapshot()}), and replaying the log over it.
+ *
+ * The log is kept in a directory, as a sequence of segment files, each starting at a checkpoint. A checkpoint
+ * starts a new segment and then writes a snapshot with the same id, so the snapshot includes all the updates of
+ * the previous segments, which are deleted. The snapshot might also include some of the updates of its segment.
+ *
+ * A record holds the mapping of a key after it was updated: the serialized key and value, or the key alone if
+ * it was removed. Replaying a record is therefore idempotent, so replaying a segment over a snapshot that
+ * already includes some of its updates results in the same map.
+ *     record: | CRC32 (4 bytes) | key length (4 bytes) | value length, REMOVED if removed (4 bytes) | key | value |
+ * The CRC covers the rest of the record, so a record that was not fully written (e.g., upon a crash) ends the
+ * replay of its segment.
+ *
+ * The updates of the same key are serialized (by striped locks): an update computes the mapping of the key after
+ * the update, appends its record, waits until the record is forced to the storage device, and only then applies
+ * the update to the map, before it releases the lock. Hence, an update is never visible before it is durable,
+ * the order of the records of a key is the order of its updates, and an update that fails to be logged is not
+ * applied. Once the log fails, it fails all the following updates.
+ *
+ * The records are appended to a direct buffer, which is written to the segment file as a whole. A single thread
+ * forces the log at a time (group commit): it writes all the records that were appended so far (by the updates
+ * of all the keys), and forces them at once, while the next records are appended.
+ */
+final class WriteAheadLog<K, V> implements AutoCloseable {
+    static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int NUM_OF_LOCKS = 1024;
+    private static final int RECORD_HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int REMOVED = -1;
+    private static final String SEGMENT_FORMAT = "wal-%016d.log";
+    private static final String SNAPSHOT_FORMAT = "snapshot-%016d.oak";
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile("wal-(\\d{16})\\.log");
+    private static final Pattern SNAPSHOT_PATTERN = Pattern.compile("snapshot-(\\d{16})\\.oak");
+
+    private final Path directory;
+    private final InternalOakMap<K, V> internalOakMap;
+    private final OakSerializer<K> keySerializer;
+    private final OakSerializer<V> valueSerializer;
+    private final Object[] locks;
+    // the values that are updated in place are copied to a staging buffer of the updating thread, where they are
+    // updated and then appended
+    private final ThreadLocal<ByteBuffer> stagingBuffers = ThreadLocal.withInitial(() -> allocateBuffer(0));
+    private final ThreadLocal<RecordBuffer> stagingRecordBuffers = ThreadLocal.withInitial(RecordBuffer::new);
+    // the keys are serialized to a key staging buffer of the updating thread, to choose their locks
+    private final ThreadLocal<ByteBuffer> keyStagingBuffers = ThreadLocal.withInitial(() -> allocateBuffer(0));
+    private final ThreadLocal<RecordBuffer> keyStagingRecordBuffers = ThreadLocal.withInitial(RecordBuffer::new);
+
+    // guarded by this
+    private FileChannel channel;
+    private long segmentId;
+    private ByteBuffer buffer = allocateBuffer(BUFFER_SIZE);
+    private final RecordBuffer recordBuffer = new RecordBuffer();
+    private final CRC32 crc = new CRC32();
+    // the log positions are counted in bytes since the log was opened
+    private long appendedPosition = 0;
+    private long writtenPosition = 0;
+
+    // guarded by syncLock
+    private final Object syncLock = new Object();
+    private boolean isSyncing = false;
+    private long durablePosition = 0;
+    private IOException failure = null;
+
+    private WriteAheadLog(Path directory, long segmentId, InternalOakMap<K, V> internalOakMap,
+        OakSerializer<K> keySerializer, OakSerializer<V> valueSerializer) throws IOException {
+        this.directory = directory;
+        this.internalOakMap = internalOakMap;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.locks = new Object[NUM_OF_LOCKS];
+        for (int i = 0; i < NUM_OF_LOCKS; i++) {
+            locks[i] = new Object();
+        }
+        this.segmentId = segmentId;
+        this.channel = openSegment(segmentId);
+    }
+
+    /**
+     * Recovers the map from the log directory (which is created if needed): restores the last snapshot, and
+     * replays the following segments over it. The map must be empty, and is not logged while it is recovered.
+     *
+     * @return the log, which appends the records to a new segment
+     */
+    static <K, V> WriteAheadLog<K, V> recover(Path directory, OakMap<K, V> map, InternalOakMap<K, V> internalOakMap,
+        OakSerializer<K> keySerializer, OakSerializer<V> valueSerializer) throws IOException {
+        Files.createDirectories(directory);
+        List<Long> snapshotIds = listIds(directory, SNAPSHOT_PATTERN);
+        long snapshotId = snapshotIds.isEmpty() ? -1 : snapshotIds.get(snapshotIds.size() - 1);
+        if (snapshotId >= 0) {
+            map.restore(directory.resolve(String.format(SNAPSHOT_FORMAT, snapshotId)));
+        }
+        long lastSegmentId = snapshotId;
+        RecordBuffer keyBuffer = new RecordBuffer();
+        RecordBuffer valueBuffer = new RecordBuffer();
+        for (long id : listIds(directory, SEGMENT_PATTERN)) {
+            if (id >= snapshotId) {
+                replaySegment(directory.resolve(String.format(SEGMENT_FORMAT, id)), map, keyBuffer, valueBuffer,
+                    keySerializer, valueSerializer);
+                lastSegmentId = id;
+            }
+        }
+        return new WriteAheadLog<>(directory, lastSegmentId + 1, internalOakMap, keySerializer, valueSerializer);
+    }
+
+    private static <K, V> void replaySegment(Path segment, OakMap<K, V> map, RecordBuffer keyBuffer,
+        RecordBuffer valueBuffer, OakSerializer<K> keySerializer, OakSerializer<V> valueSerializer)
+        throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer buffer = allocateBuffer(BUFFER_SIZE);
+            buffer.limit(0);
+            while (true) {
+                buffer = fill(channel, buffer, RECORD_HEADER_SIZE);
+                if (buffer == null) {
+                    return;
+                }
+                int position = buffer.position();
+                int checksum = buffer.getInt(position);
+                int keyLength = buffer.getInt(position + Integer.BYTES);
+                int valueLength = buffer.getInt(position + 2 * Integer.BYTES);
+                if (keyLength <= 0 || valueLength < REMOVED) {
+                    return; // a partially written record
+                }
+                long recordSize = (long) RECORD_HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+                if (recordSize > buffer.remaining() + channel.size() - channel.position()) {
+                    return; // the lengths of a partially written record
+                }
+                int size = (int) recordSize;
+                buffer = fill(channel, buffer, size);
+                if (buffer == null) {
+                    return;
+                }
+                position = buffer.position();
+                if (checksum(crc, buffer, position + Integer.BYTES, size - Integer.BYTES) != checksum) {
+                    return;
+                }
+                long keyAddress = UnsafeUtils.getAddress(buffer) + position + RECORD_HEADER_SIZE;
+                K key = keySerializer.deserialize(keyBuffer.wrap(keyAddress, keyLength));
+                if (valueLength == REMOVED) {
+                    map.remove(key);
+                } else {
+                    map.put(key, valueSerializer.deserialize(valueBuffer.wrap(keyAddress + keyLength, valueLength)));
+                }
+                buffer.position(position + size);
+            }
+        }
+    }
+
+    // Makes the given number of bytes available in the buffer, after its position.
+    // Returns the (maybe reallocated) buffer, or null if the segment ends before.
+    private static ByteBuffer fill(FileChannel channel, ByteBuffer buffer, int size) throws IOException {
+        if (buffer.remaining() >= size) {
+            return buffer;
+        }
+        ByteBuffer filled;
+        if (buffer.capacity() < size) {
+            filled = allocateBuffer(size);
+            filled.put(buffer);
+        } else {
+            filled = buffer;
+            filled.compact();
+        }
+        while (filled.position() < size) {
+            if (channel.read(filled) < 0) {
+                return null;
+            }
+        }
+        filled.flip();
+        return filled;
+    }
+
+    private static List<Long> listIds(Path directory, Pattern pattern) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher matcher = pattern.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    ids.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private FileChannel openSegment(long id) throws IOException {
+        return FileChannel.open(directory.resolve(String.format(SEGMENT_FORMAT, id)),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private static ByteBuffer allocateBuffer(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    // Calculates the checksum of a range of the buffer, without changing the buffer's position and limit
+    private static int checksum(CRC32 crc, ByteBuffer buffer, int position, int length) {
+        int originalPosition = buffer.position();
+        int originalLimit = buffer.limit();
+        buffer.limit(position + length);
+        buffer.position(position);
+        crc.reset();
+        crc.update(buffer);
+        buffer.limit(originalLimit);
+        buffer.position(originalPosition);
+        return (int) crc.getValue();
+    }
+
+    /*-------------- Logging the updates --------------*/
+
+    /**
+     * Logs and applies an update that maps the key to the given value (e.g., a put). The update is applied once
+     * its record is durable, so if the log fails, the map is not updated.
+     */
+    <T> T update(K key, V value, Supplier<T> update) {
+        synchronized (lockOf(key)) {
+            checkFailure();
+            sync(append(key, value));
+            return update.get();
+        }
+    }
+
+    /**
+     * Logs and applies an update of a key, whose value after the update is computed by the given function from
+     * its current value (or from null if it is absent). The function returns null to remove the key, or the
+     * current value to leave the map unchanged, which is not logged. The update is applied as a put (or as a
+     * remove) once its record is durable, while the lock of the key is held, so no other logged update of the
+     * key intervenes, and if the log fails, the map is not updated.
+     *
+     * @return the result of the current value and of the value after the update
+     */
+    <T> T update(K key, Function<? super V, ? extends V> remapping, BiFunction<? super V, ? super V, T> result) {
+        synchronized (lockOf(key)) {
+            checkFailure();
+            V current = internalOakMap.getValueTransformation(key, valueSerializer::deserialize);
+            V value = remapping.apply(current);
+            if (value != current) {
+                if (value == null) {
+                    sync(append(key, REMOVED, 0));
+                    internalOakMap.remove(key, null, null);
+                } else {
+                    sync(append(key, value));
+                    internalOakMap.put(key, value, null);
+                }
+            }
+            return result.apply(current, value);
+        }
+    }
+
+    /**
+     * Logs and applies an in-place update of the value of a key, if it is present: the computer is applied to
+     * a copy of the value, which is logged, and is copied to the value in the map once its record is durable.
+     *
+     * @return true if the key is present (and its value was updated)
+     */
+    boolean computeIfPresent(K key, Consumer<OakScopedWriteBuffer> computer) {
+        synchronized (lockOf(key)) {
+            checkFailure();
+            Integer valueLength = internalOakMap.getValueTransformation(key, this::copyToStagingBuffer);
+            if (valueLength == null) {
+                return false;
+            }
+            long stagingAddress = UnsafeUtils.getAddress(stagingBuffers.get());
+            computer.accept(stagingRecordBuffers.get().wrap(stagingAddress, valueLength));
+            sync(append(key, valueLength, stagingAddress));
+            // the value has the length of its copy, as it is not updated by others while the lock is held
+            return internalOakMap.computeIfPresent(key, value -> UnsafeUtils.UNSAFE.copyMemory(stagingAddress,
+                ((OakUnsafeDirectBuffer) value).getAddress(), Math.min(valueLength, value.capacity())));
+        }
+    }
+
+    /**
+     * Logs and applies a put of the given value if the key is absent, or else an in-place update of its value,
+     * see {@code computeIfPresent(K, Consumer)}.
+     *
+     * @return true if the value was put
+     */
+    boolean putIfAbsentComputeIfPresent(K key, V value, Consumer<OakScopedWriteBuffer> computer) {
+        synchronized (lockOf(key)) {
+            if (computeIfPresent(key, computer)) {
+                return false;
+            }
+            sync(append(key, value));
+            return internalOakMap.putIfAbsent(key, value, null).operationResult == ValueUtils.ValueResult.TRUE;
+        }
+    }
+
+    // The lock is chosen by the serialized key, as the keys are compared serialized, so the updates of the same
+    // key take the same lock even if the key type has no value-based hashCode() (e.g., byte[])
+    @VisibleForTesting
+    Object lockOf(K key) {
+        int length = keySerializer.calculateSize(key);
+        ByteBuffer s = keyStagingBuffers.get();
+        if (s.capacity() < length) {
+            s = allocateBuffer(Math.max(length, 64));
+            keyStagingBuffers.set(s);
+        }
+        long address = UnsafeUtils.getAddress(s);
+        keySerializer.serialize(key, keyStagingRecordBuffers.get().wrap(address, length));
+        int h = 1;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + UnsafeUtils.get(address + i);
+        }
+        return locks[(h ^ (h >>> 16)) & (NUM_OF_LOCKS - 1)];
+    }
+
+    // Copies a value of the map to the staging buffer of this thread, returns its length. It might be applied more
+    // than once, upon a concurrent relocation of the value
+    private int copyToStagingBuffer(OakScopedReadBuffer value) {
+        int length = value.capacity();
+        ByteBuffer s = stagingBuffers.get();
+        if (s.capacity() < length) {
+            s = allocateBuffer(Math.max(length, BUFFER_SIZE / 16));
+            stagingBuffers.set(s);
+        }
+        UnsafeUtils.UNSAFE.copyMemory(((OakUnsafeDirectBuffer) value).getAddress(), UnsafeUtils.getAddress(s), length);
+        return length;
+    }
+
+    private synchronized long append(K key, int valueLength, long valueAddress) {
+        int keyLength = keySerializer.calculateSize(key);
+        int recordPosition = reserve(RECORD_HEADER_SIZE + keyLength + Math.max(valueLength, 0));
+        long keyAddress = UnsafeUtils.getAddress(buffer) + recordPosition + RECORD_HEADER_SIZE;
+        keySerializer.serialize(key, recordBuffer.wrap(keyAddress, keyLength));
+        if (valueLength > 0) {
+            UnsafeUtils.UNSAFE.copyMemory(valueAddress, keyAddress + keyLength, valueLength);
+        }
+        return finishRecord(recordPosition, keyLength, valueLength);
+    }
+
+    private synchronized long append(K key, V value) {
+        int keyLength = keySerializer.calculateSize(key);
+        int valueLength = valueSerializer.calculateSize(value);
+        int recordPosition = reserve(RECORD_HEADER_SIZE + keyLength + valueLength);
+        long keyAddress = UnsafeUtils.getAddress(buffer) + recordPosition + RECORD_HEADER_SIZE;
+        keySerializer.serialize(key, recordBuffer.wrap(keyAddress, keyLength));
+        valueSerializer.serialize(value, recordBuffer.wrap(keyAddress + keyLength, valueLength));
+        return finishRecord(recordPosition, keyLength, valueLength);
+    }
+
+    // Reserves the space of a record in the buffer, returns the position of the record within the buffer
+    private int reserve(int recordSize) {
+        if (buffer.remaining() < recordSize) {
+            writeBuffer();
+            if (buffer.capacity() < recordSize) {
+                // a record larger than the buffer
+                buffer = allocateBuffer(recordSize);
+            }
+        }
+        return buffer.position();
+    }
+
+    // Returns the log position after the record
+    private long finishRecord(int recordPosition, int keyLength, int valueLength) {
+        int recordSize = RECORD_HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+        buffer.putInt(recordPosition + Integer.BYTES, keyLength);
+        buffer.putInt(recordPosition + 2 * Integer.BYTES, valueLength);
+        buffer.putInt(recordPosition, checksum(crc, buffer, recordPosition + Integer.BYTES,
+            recordSize - Integer.BYTES));
+        buffer.position(recordPosition + recordSize);
+        appendedPosition += recordSize;
+        return appendedPosition;
+    }
+
+    // Writes the appended records to the segment file, the caller must hold the lock of this
+    private void writeBuffer() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            buffer.clear();
+        }
+        writtenPosition = appendedPosition;
+    }
+
+    /**
+     * Waits until the log is durable up to the given position. If no other thread forces the log, this thread
+     * writes all the appended records, and forces them.
+     */
+    private void sync(long position) {
+        boolean isInterrupted = false;
+        long synced;
+        synchronized (syncLock) {
+            while (durablePosition < position && failure == null && isSyncing) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+            checkFailure();
+            if (durablePosition >= position) {
+                return;
+            }
+            isSyncing = true;
+            synced = durablePosition;
+        }
+
+        try {
+            FileChannel syncedChannel;
+            synchronized (this) {
+                writeBuffer();
+                synced = writtenPosition;
+                syncedChannel = channel;
+            }
+            syncedChannel.force(false);
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            synchronized (syncLock) {
+                durablePosition = Math.max(durablePosition, synced);
+                isSyncing = false;
+                syncLock.notifyAll();
+            }
+        }
+        checkFailure();
+    }
+
+    private void fail(IOException e) {
+        synchronized (syncLock) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        throw new UncheckedIOException(e);
+    }
+
+    private void checkFailure() {
+        synchronized (syncLock) {
+            if (failure != null) {
+                throw new UncheckedIOException("The write-ahead log failed", failure);
+            }
+        }
+    }
+
+    /*-------------- Checkpoints --------------*/
+
+    /**
+     * Starts a new segment, and writes a snapshot of the map with the same id. Once the snapshot is durable,
+     * the previous segments and snapshots are deleted. Can be invoked concurrently with updates.
+     *
+     * @return the number of the entries in the snapshot
+     */
+    long checkpoint() throws IOException {
+        long id = startSegment();
+        Path snapshot = directory.resolve(String.format(SNAPSHOT_FORMAT, id));
+        Path tempSnapshot = directory.resolve(snapshot.getFileName() + ".tmp");
+        long numOfEntries;
+        try (FileChannel snapshotChannel = FileChannel.open(tempSnapshot, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            numOfEntries = internalOakMap.snapshot(new MapSnapshot.Writer(snapshotChannel));
+            snapshotChannel.force(true);
+        }
+        // an incomplete snapshot is never recovered
+        Files.move(tempSnapshot, snapshot, StandardCopyOption.ATOMIC_MOVE);
+
+        for (long oldId : listIds(directory, SEGMENT_PATTERN)) {
+            if (oldId < id) {
+                Files.deleteIfExists(directory.resolve(String.format(SEGMENT_FORMAT, oldId)));
+            }
+        }
+        for (long oldId : listIds(directory, SNAPSHOT_PATTERN)) {
+            if (oldId < id) {
+                Files.deleteIfExists(directory.resolve(String.format(SNAPSHOT_FORMAT, oldId)));
+            }
+        }
+        return numOfEntries;
+    }
+
+    // Forces the current segment, and appends the following records to a new segment. Returns the new segment id
+    private long startSegment() throws IOException {
+        long synced;
+        synchronized (syncLock) {
+            boolean isInterrupted = false;
+            while (isSyncing) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+            checkFailure();
+            // the updates are not synced until the new segment is started
+            isSyncing = true;
+            synced = durablePosition;
+        }
+        try {
+            synchronized (this) {
+                writeBuffer();
+                channel.force(false);
+                channel.close();
+                synced = writtenPosition;
+                segmentId++;
+                channel = openSegment(segmentId);
+                return segmentId;
+            }
+        } finally {
+            synchronized (syncLock) {
+                durablePosition = Math.max(durablePosition, synced);
+                isSyncing = false;
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes and forces the appended records, and closes the segment file.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                writeBuffer();
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * A buffer over a serialized key or value in the log, which is used to serialize it (when a record is
+     * appended) or to deserialize it (when a record is replayed).
+     */
+    private static final class RecordBuffer implements OakScopedReadBuffer, OakScopedWriteBuffer,
+        OakUnsafeDirectBuffer {
+        private long address;
+        private int length;
+
+        RecordBuffer wrap(long address, int length) {
+            this.address = address;
+            this.length = length;
+            return this;
+        }
+
+        private long getDataAddress(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(String.format("Index %s is out of bound (length: %s)",
+                    index, length));
+            }
+            return address + index;
+        }
+
+        @Override
+        public int capacity() {
+            return length;
+        }
+
+        @Override
+        public byte get(int index) {
+            return UnsafeUtils.get(getDataAddress(index));
+        }
+
+        @Override
+        public char getChar(int index) {
+            return UnsafeUtils.getChar(getDataAddress(index));
+        }
+
+        @Override
+        public short getShort(int index) {
+            return UnsafeUtils.getShort(getDataAddress(index));
+        }
+
+        @Override
+        public int getInt(int index) {
+            return UnsafeUtils.getInt(getDataAddress(index));
+        }
+
+        @Override
+        public long getLong(int index) {
+            return UnsafeUtils.getLong(getDataAddress(index));
+        }
+
+        @Override
+        public float getFloat(int index) {
+            return UnsafeUtils.getFloat(getDataAddress(index));
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return UnsafeUtils.getDouble(getDataAddress(index));
+        }
+
+        @Override
+        public OakScopedWriteBuffer put(int index, byte value) {
+            UnsafeUtils.put(getDataAddress(index), value);
+            return this;
+        }
+
+        @Override
+        public OakScopedWriteBuffer putChar(int index, char value) {
+            UnsafeUtils.putChar(getDataAddress(index), value);
+            return this;
+        }
+
+        @Override
+        public OakScopedWriteBuffer putShort(int index, short value) {
+            UnsafeUtils.putShort(getDataAddress(index), value);
+            return this;
+        }
+
+        @Override
+        public OakScopedWriteBuffer putInt(int index, int value) {
+            UnsafeUtils.putInt(getDataAddress(index), value);
+            return this;
+        }
+
+        @Override
+        public OakScopedWriteBuffer putLong(int index, long value) {
+            UnsafeUtils.putLong(getDataAddress(index), value);
+            return this;
+        }
+
+        @Override
+        public OakScopedWriteBuffer putFloat(int index, float value) {
+            UnsafeUtils.putFloat(getDataAddress(index), value);
+            return this;
+        }
+
+        @Override
+        public OakScopedWriteBuffer putDouble(int index, double value) {
+            UnsafeUtils.putDouble(getDataAddress(index), value);
+            return this;
+        }
+
+        @Override
+        public ByteBuffer getByteBuffer() {
+            return UnsafeUtils.wrapAddress(address, length);
+        }
+
+        @Override
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public long getAddress() {
+            return address;
+        }
+    }
+}
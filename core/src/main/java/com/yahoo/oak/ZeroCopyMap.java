@@ -9,6 +9,7 @@ package com.yahoo.oak;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 public interface ZeroCopyMap<K, V> {
@@ -25,6 +26,21 @@ public interface ZeroCopyMap<K, V> {
      */
     void put(K key, V value);
 
+    /**
+     * Associates the specified value with the specified key in this map, as {@code put(key, value)} does, and
+     * the mapping expires once the given time to live passes: it is then absent, until it is replaced.
+     * Supported only if the map was built with expiring entries (see {@code OakMapBuilder.setExpiringEntries()}).
+     *
+     * @param key        key with which the specified value is to be associated
+     * @param value      value to be associated with the specified key
+     * @param timeToLive the time to live of the mapping, must be positive
+     * @param unit       the time unit of timeToLive
+     * @throws NullPointerException          if the specified key or value is null
+     * @throws IllegalArgumentException      if the specified key is out of bounds, or timeToLive is not positive
+     * @throws UnsupportedOperationException if the entries of the map do not expire
+     */
+    void put(K key, V value, long timeToLive, TimeUnit unit);
+
     /**
      * Returns a read only view of the value to which the specified key is mapped,
      * or {@code null} if this map contains no mapping for the key.
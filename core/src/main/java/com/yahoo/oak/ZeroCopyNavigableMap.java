@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import java.util.Map;
+
+/**
+ * The zero-copy navigation methods of an ordered map. Neither the keys nor the values are deserialized,
+ * the returned buffers are read only views of the serialized keys and values.
+ */
+public interface ZeroCopyNavigableMap<K, V> extends ZeroCopyMap<K, V> {
+
+    /**
+     * Returns a key-value mapping associated with the greatest key strictly less than the given key,
+     * or {@code null} if there is no such key.
+     *
+     * @param key the key
+     * @return an entry with the greatest key strictly less than {@code key}, or {@code null} if there is no such key
+     * @throws NullPointerException if the specified key is null
+     */
+    Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer> lowerEntry(K key);
+
+    /**
+     * Returns the greatest key strictly less than the given key, or {@code null} if there is no such key.
+     *
+     * @param key the key
+     * @return the greatest key strictly less than {@code key}, or {@code null} if there is no such key
+     * @throws NullPointerException if the specified key is null
+     */
+    OakUnscopedBuffer lowerKey(K key);
+
+    /**
+     * Returns a key-value mapping associated with the greatest key less than or equal to the given key,
+     * or {@code null} if there is no such key.
+     *
+     * @param key the key
+     * @return an entry with the greatest key less than or equal to {@code key}, or {@code null} if there is no such key
+     * @throws NullPointerException if the specified key is null
+     */
+    Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer> floorEntry(K key);
+
+    /**
+     * Returns the greatest key less than or equal to the given key, or {@code null} if there is no such key.
+     *
+     * @param key the key
+     * @return the greatest key less than or equal to {@code key}, or {@code null} if there is no such key
+     * @throws NullPointerException if the specified key is null
+     */
+    OakUnscopedBuffer floorKey(K key);
+
+    /**
+     * Returns a key-value mapping associated with the least key greater than or equal to the given key,
+     * or {@code null} if there is no such key.
+     *
+     * @param key the key
+     * @return an entry with the least key greater than or equal to {@code key}, or {@code null} if there is no such key
+     * @throws NullPointerException if the specified key is null
+     */
+    Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer> ceilingEntry(K key);
+
+    /**
+     * Returns the least key greater than or equal to the given key, or {@code null} if there is no such key.
+     *
+     * @param key the key
+     * @return the least key greater than or equal to {@code key}, or {@code null} if there is no such key
+     * @throws NullPointerException if the specified key is null
+     */
+    OakUnscopedBuffer ceilingKey(K key);
+
+    /**
+     * Returns a key-value mapping associated with the least key strictly greater than the given key,
+     * or {@code null} if there is no such key.
+     *
+     * @param key the key
+     * @return an entry with the least key strictly greater than {@code key}, or {@code null} if there is no such key
+     * @throws NullPointerException if the specified key is null
+     */
+    Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer> higherEntry(K key);
+
+    /**
+     * Returns the least key strictly greater than the given key, or {@code null} if there is no such key.
+     *
+     * @param key the key
+     * @return the least key strictly greater than {@code key}, or {@code null} if there is no such key
+     * @throws NullPointerException if the specified key is null
+     */
+    OakUnscopedBuffer higherKey(K key);
+
+    /**
+     * Returns a key-value mapping associated with the least key in this map,
+     * or {@code null} if the map is empty.
+     *
+     * @return an entry with the least key, or {@code null} if this map is empty
+     */
+    Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer> firstEntry();
+
+    /**
+     * Returns a key-value mapping associated with the greatest key in this map,
+     * or {@code null} if the map is empty.
+     *
+     * @return an entry with the greatest key, or {@code null} if this map is empty
+     */
+    Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer> lastEntry();
+}
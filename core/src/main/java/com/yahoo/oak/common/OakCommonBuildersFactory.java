@@ -7,13 +7,20 @@
 package com.yahoo.oak.common;
 
 import com.yahoo.oak.OakComparator;
+import com.yahoo.oak.OakHasher;
 import com.yahoo.oak.OakMapBuilder;
 import com.yahoo.oak.OakSerializer;
+import com.yahoo.oak.common.bytes.OakBytesComparator;
+import com.yahoo.oak.common.bytes.OakBytesHasher;
+import com.yahoo.oak.common.bytes.OakBytesSerializer;
 import com.yahoo.oak.common.intbuffer.OakIntBufferComparator;
+import com.yahoo.oak.common.intbuffer.OakIntBufferHasher;
 import com.yahoo.oak.common.intbuffer.OakIntBufferSerializer;
 import com.yahoo.oak.common.integer.OakIntComparator;
+import com.yahoo.oak.common.integer.OakIntHasher;
 import com.yahoo.oak.common.integer.OakIntSerializer;
 import com.yahoo.oak.common.string.OakStringComparator;
+import com.yahoo.oak.common.string.OakStringHasher;
 import com.yahoo.oak.common.string.OakStringSerializer;
 
 import java.nio.ByteBuffer;
@@ -26,10 +33,12 @@ public class OakCommonBuildersFactory {
 
     public static final OakComparator<Integer> DEFAULT_INT_COMPARATOR = new OakIntComparator();
     public static final OakSerializer<Integer> DEFAULT_INT_SERIALIZER = new OakIntSerializer();
+    public static final OakHasher<Integer> DEFAULT_INT_HASHER = new OakIntHasher();
 
     public static OakMapBuilder<Integer, Integer> getDefaultIntBuilder() {
         return new OakMapBuilder<>(
-                DEFAULT_INT_COMPARATOR, DEFAULT_INT_SERIALIZER, DEFAULT_INT_SERIALIZER, Integer.MIN_VALUE);
+                DEFAULT_INT_COMPARATOR, DEFAULT_INT_SERIALIZER, DEFAULT_INT_SERIALIZER, Integer.MIN_VALUE)
+                .setHasher(DEFAULT_INT_HASHER);
     }
 
 
@@ -39,10 +48,27 @@ public class OakCommonBuildersFactory {
 
     public static final OakComparator<String> DEFAULT_STRING_COMPARATOR = new OakStringComparator();
     public static final OakSerializer<String> DEFAULT_STRING_SERIALIZER = new OakStringSerializer();
+    public static final OakHasher<String> DEFAULT_STRING_HASHER = new OakStringHasher();
 
     public static OakMapBuilder<String, String> getDefaultStringBuilder() {
         return new OakMapBuilder<>(
-                DEFAULT_STRING_COMPARATOR, DEFAULT_STRING_SERIALIZER, DEFAULT_STRING_SERIALIZER, "");
+                DEFAULT_STRING_COMPARATOR, DEFAULT_STRING_SERIALIZER, DEFAULT_STRING_SERIALIZER, "")
+                .setHasher(DEFAULT_STRING_HASHER);
+    }
+
+
+    // #####################################################################################
+    // Byte array factories
+    // #####################################################################################
+
+    public static final OakComparator<byte[]> DEFAULT_BYTES_COMPARATOR = new OakBytesComparator();
+    public static final OakSerializer<byte[]> DEFAULT_BYTES_SERIALIZER = new OakBytesSerializer();
+    public static final OakHasher<byte[]> DEFAULT_BYTES_HASHER = new OakBytesHasher();
+
+    public static OakMapBuilder<byte[], byte[]> getDefaultBytesBuilder() {
+        return new OakMapBuilder<>(
+                DEFAULT_BYTES_COMPARATOR, DEFAULT_BYTES_SERIALIZER, DEFAULT_BYTES_SERIALIZER, new byte[0])
+                .setHasher(DEFAULT_BYTES_HASHER);
     }
 
 
@@ -60,6 +86,7 @@ public class OakCommonBuildersFactory {
         minKey.position(0);
 
         return new OakMapBuilder<>(new OakIntBufferComparator(keySize),
-                new OakIntBufferSerializer(keySize), new OakIntBufferSerializer(valueSize), minKey);
+                new OakIntBufferSerializer(keySize), new OakIntBufferSerializer(valueSize), minKey)
+                .setHasher(new OakIntBufferHasher(keySize));
     }
 }
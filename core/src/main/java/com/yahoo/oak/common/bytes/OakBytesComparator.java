@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak.common.bytes;
+
+import com.yahoo.oak.OakBufferBytes;
+import com.yahoo.oak.OakComparator;
+import com.yahoo.oak.OakScopedReadBuffer;
+
+/**
+ * Orders byte arrays lexicographically, comparing their bytes as unsigned values (as memcmp() does), where a
+ * proper prefix of an array precedes it.
+ * <p>
+ * The arrays are compared 8 bytes at a time (see OakBufferBytes): a pair of longs is read from the arrays (either
+ * on-heap or serialized), and only the first pair that differs is compared, after its bytes are put in big-endian
+ * order. The remaining (less than 8) bytes are compared one by one.
+ */
+public class OakBytesComparator implements OakComparator<byte[]> {
+
+    @Override
+    public int compareKeys(byte[] key1, byte[] key2) {
+        return OakBufferBytes.compare(key1, 0, key1.length, key2, 0, key2.length);
+    }
+
+    @Override
+    public int compareSerializedKeys(OakScopedReadBuffer serializedKey1, OakScopedReadBuffer serializedKey2) {
+        return OakBufferBytes.compare(serializedKey1, OakBytesSerializer.DATA_OFFSET, serializedKey1.getInt(0),
+            serializedKey2, OakBytesSerializer.DATA_OFFSET, serializedKey2.getInt(0));
+    }
+
+    @Override
+    public int compareKeyAndSerializedKey(byte[] key, OakScopedReadBuffer serializedKey) {
+        return OakBufferBytes.compare(key, 0, key.length,
+            serializedKey, OakBytesSerializer.DATA_OFFSET, serializedKey.getInt(0));
+    }
+
+    @Override
+    public boolean hasKeyPrefix() {
+        return true;
+    }
+
+    /*
+     * The prefix of a key is its first (up to) 8 bytes, in big-endian order (and padded with zeros) as an unsigned
+     * long, which is flipped into a signed long. A key that is shorter than its prefix ties with the keys that
+     * extend it with zero bytes, so they are compared in full.
+     */
+    @Override
+    public long getKeyPrefix(byte[] key) {
+        return OakBufferBytes.getPrefix(key, 0, key.length) ^ Long.MIN_VALUE;
+    }
+
+    @Override
+    public long getSerializedKeyPrefix(OakScopedReadBuffer serializedKey) {
+        return OakBufferBytes.getPrefix(serializedKey, OakBytesSerializer.DATA_OFFSET, serializedKey.getInt(0))
+            ^ Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak.common.bytes;
+
+import com.yahoo.oak.OakHasher;
+import com.yahoo.oak.OakScopedReadBuffer;
+
+import java.util.Arrays;
+
+/**
+ * The hash is the same as {@code Arrays.hashCode(byte[])}, calculated over the serialized bytes as well.
+ */
+public class OakBytesHasher implements OakHasher<byte[]> {
+
+    @Override
+    public int hash(byte[] key) {
+        return Arrays.hashCode(key);
+    }
+
+    @Override
+    public int hashSerialized(OakScopedReadBuffer serializedKey) {
+        final int size = serializedKey.getInt(0);
+
+        int hash = 1;
+        int index = OakBytesSerializer.DATA_OFFSET;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + serializedKey.get(index);
+            index++;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak.common.bytes;
+
+import com.yahoo.oak.OakBufferBytes;
+import com.yahoo.oak.OakScopedReadBuffer;
+import com.yahoo.oak.OakScopedWriteBuffer;
+import com.yahoo.oak.OakSerializer;
+
+/**
+ * Serializes a byte array as its length (an int) followed by its bytes, which are copied as a whole.
+ */
+public class OakBytesSerializer implements OakSerializer<byte[]> {
+
+    // the offset of the first byte in the serialized form
+    static final int DATA_OFFSET = Integer.BYTES;
+
+    @Override
+    public void serialize(byte[] object, OakScopedWriteBuffer targetBuffer) {
+        targetBuffer.putInt(0, object.length);
+        OakBufferBytes.copy(object, 0, targetBuffer, DATA_OFFSET, object.length);
+    }
+
+    @Override
+    public byte[] deserialize(OakScopedReadBuffer byteBuffer) {
+        byte[] object = new byte[byteBuffer.getInt(0)];
+        OakBufferBytes.copy(byteBuffer, DATA_OFFSET, object, 0, object.length);
+        return object;
+    }
+
+    @Override
+    public int calculateSize(byte[] object) {
+        return DATA_OFFSET + object.length;
+    }
+}
@@ -24,4 +24,29 @@ public class OakFloatComparator implements OakComparator<Float> {
     public int compareKeyAndSerializedKey(Float key, OakScopedReadBuffer serializedKey) {
         return Float.compare(key, serializedKey.getFloat(0));
     }
+
+    @Override
+    public boolean hasKeyPrefix() {
+        return true;
+    }
+
+    @Override
+    public long getKeyPrefix(Float key) {
+        return sortableBits(key);
+    }
+
+    @Override
+    public long getSerializedKeyPrefix(OakScopedReadBuffer serializedKey) {
+        return sortableBits(serializedKey.getFloat(0));
+    }
+
+    /*
+     * The bits of the float, such that they are ordered (as signed integers) as Float.compare() orders the floats:
+     * the magnitude bits of a negative float are flipped, so a greater magnitude is a lesser value.
+     * The NaNs are collapsed to the canonical NaN, which is the greatest, and -0.0f is less than 0.0f.
+     */
+    private static int sortableBits(float f) {
+        int bits = Float.floatToIntBits(f);
+        return bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+    }
 }
@@ -34,6 +34,35 @@ public class OakIntBufferComparator implements OakComparator<ByteBuffer> {
         return compare(key, 0, size, serializedKey, 0, size);
     }
 
+    @Override
+    public boolean hasKeyPrefix() {
+        return true;
+    }
+
+    /*
+     * The prefix of a key is its first int (signed) followed by its second int (flipped into an unsigned int).
+     * Keys of a single int are padded with the least second int, and keys of no ints have a zero prefix.
+     */
+    @Override
+    public long getKeyPrefix(ByteBuffer key) {
+        if (size == 0) {
+            return 0;
+        }
+        return prefix(key.getInt(0), size > 1 ? key.getInt(Integer.BYTES) : Integer.MIN_VALUE);
+    }
+
+    @Override
+    public long getSerializedKeyPrefix(OakScopedReadBuffer serializedKey) {
+        if (size == 0) {
+            return 0;
+        }
+        return prefix(serializedKey.getInt(0), size > 1 ? serializedKey.getInt(Integer.BYTES) : Integer.MIN_VALUE);
+    }
+
+    private static long prefix(int first, int second) {
+        return ((long) first << Integer.SIZE) | ((second ^ Integer.MIN_VALUE) & 0xffffffffL);
+    }
+
     public static int compare(OakScopedReadBuffer buff1, int pos1, int size1, 
         OakScopedReadBuffer buff2, int pos2, int size2) {
         
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak.common.intbuffer;
+
+import com.yahoo.oak.OakHasher;
+import com.yahoo.oak.OakScopedReadBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The hash is calculated over the (size) integers of the buffer, regardless of the buffer's position,
+ * the same way the buffers are compared by {@code OakIntBufferComparator}.
+ */
+public class OakIntBufferHasher implements OakHasher<ByteBuffer> {
+
+    private final int size;
+
+    public OakIntBufferHasher(int size) {
+        this.size = size;
+    }
+
+    @Override
+    public int hash(ByteBuffer key) {
+        int hash = 1;
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + key.getInt(offset);
+            offset += Integer.BYTES;
+        }
+        return hash;
+    }
+
+    @Override
+    public int hashSerialized(OakScopedReadBuffer serializedKey) {
+        int hash = 1;
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + serializedKey.getInt(offset);
+            offset += Integer.BYTES;
+        }
+        return hash;
+    }
+}
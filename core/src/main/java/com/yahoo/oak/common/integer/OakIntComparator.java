@@ -24,4 +24,20 @@ public class OakIntComparator implements OakComparator<Integer> {
     public int compareKeyAndSerializedKey(Integer key, OakScopedReadBuffer serializedKey) {
         return Integer.compare(key, serializedKey.getInt(0));
     }
+
+    @Override
+    public boolean hasKeyPrefix() {
+        return true;
+    }
+
+    // the key itself is the prefix, so the prefixes are never tied for different keys
+    @Override
+    public long getKeyPrefix(Integer key) {
+        return key;
+    }
+
+    @Override
+    public long getSerializedKeyPrefix(OakScopedReadBuffer serializedKey) {
+        return serializedKey.getInt(0);
+    }
 }
@@ -0,0 +1,22 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak.common.integer;
+
+import com.yahoo.oak.OakHasher;
+import com.yahoo.oak.OakScopedReadBuffer;
+
+public class OakIntHasher implements OakHasher<Integer> {
+    @Override
+    public int hash(Integer key) {
+        return key;
+    }
+
+    @Override
+    public int hashSerialized(OakScopedReadBuffer serializedKey) {
+        return serializedKey.getInt(0);
+    }
+}
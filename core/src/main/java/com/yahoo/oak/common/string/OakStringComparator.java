@@ -11,6 +11,13 @@ import com.yahoo.oak.OakScopedReadBuffer;
 
 public class OakStringComparator implements OakComparator<String> {
 
+    /*
+     * The prefix of a key is its first (up to) 4 chars, packed (and padded with zeros) in an unsigned long,
+     * which is flipped into a signed long. A key that is shorter than its prefix ties with the keys that extend it
+     * with zero chars, so they are compared in full.
+     */
+    private static final int PREFIX_CHARS = Long.SIZE / Character.SIZE;
+
     @Override
     public int compareKeys(String key1, String key2) {
         return key1.compareTo(key2);
@@ -55,4 +62,31 @@ public class OakStringComparator implements OakComparator<String> {
 
         return size1 - size2;
     }
+
+    @Override
+    public boolean hasKeyPrefix() {
+        return true;
+    }
+
+    @Override
+    public long getKeyPrefix(String key) {
+        final int size = Math.min(key.length(), PREFIX_CHARS);
+        long prefix = 0;
+        for (int i = 0; i < size; i++) {
+            prefix |= (long) key.charAt(i) << (Character.SIZE * (PREFIX_CHARS - 1 - i));
+        }
+        return prefix ^ Long.MIN_VALUE;
+    }
+
+    @Override
+    public long getSerializedKeyPrefix(OakScopedReadBuffer serializedKey) {
+        final int size = Math.min(serializedKey.getInt(0), PREFIX_CHARS);
+        long prefix = 0;
+        int index = Integer.BYTES;
+        for (int i = 0; i < size; i++) {
+            prefix |= (long) serializedKey.getChar(index) << (Character.SIZE * (PREFIX_CHARS - 1 - i));
+            index += Character.BYTES;
+        }
+        return prefix ^ Long.MIN_VALUE;
+    }
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak.common.string;
+
+import com.yahoo.oak.OakHasher;
+import com.yahoo.oak.OakScopedReadBuffer;
+
+/**
+ * The hash is the same as {@code String.hashCode()}, calculated over the serialized characters as well.
+ */
+public class OakStringHasher implements OakHasher<String> {
+
+    @Override
+    public int hash(String key) {
+        return key.hashCode();
+    }
+
+    @Override
+    public int hashSerialized(OakScopedReadBuffer serializedKey) {
+        final int size = serializedKey.getInt(0);
+
+        int hash = 0;
+        int index = Integer.BYTES;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + serializedKey.getChar(index);
+            index += Character.BYTES;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CacheEvictionTest {
+    private static final long MEMORY_CAPACITY = 64 * 1024 * 1024;
+    private static final long CACHE_CAPACITY = 4 * 1024 * 1024;
+    // the memory of a map exceeds its cache capacity at most by the updates that are not evicted yet
+    private static final long CAPACITY_TOLERANCE = 1024 * 1024;
+    private static final int VALUE_LENGTH = 1024;
+    // the entries take several times the cache capacity
+    private static final int NUM_KEYS = 40_000;
+    private static final int NUM_HOT_KEYS = 100;
+    private static final int HOT_KEYS_READ_INTERVAL = 100;
+    private static final int NUM_THREADS = 4;
+
+    private static OakMapBuilder<String, String> getBuilder() {
+        return OakCommonBuildersFactory.getDefaultStringBuilder()
+            .setMemoryCapacity(MEMORY_CAPACITY)
+            .setReclaimKeys(true)
+            .setCache(CACHE_CAPACITY);
+    }
+
+    private static String key(int i) {
+        return String.format("%08d", i);
+    }
+
+    private static String value(int i) {
+        char[] chars = new char[VALUE_LENGTH];
+        Arrays.fill(chars, (char) ('a' + i % 26));
+        return new String(chars);
+    }
+
+    @Test
+    public void testEvictBeyondCapacity() {
+        try (OakMap<String, String> oak = getBuilder().buildOrderedMap()) {
+            for (int i = 0; i < NUM_KEYS; i++) {
+                oak.put(key(i), value(i));
+                Assert.assertTrue(oak.memorySize() <= CACHE_CAPACITY + CAPACITY_TOLERANCE);
+            }
+            int size = oak.size();
+            Assert.assertTrue(size > 0);
+            Assert.assertTrue(size < NUM_KEYS);
+            // the remaining entries are intact
+            int found = 0;
+            for (int i = 0; i < NUM_KEYS; i++) {
+                String value = oak.get(key(i));
+                if (value != null) {
+                    Assert.assertEquals(value(i), value);
+                    found++;
+                }
+            }
+            Assert.assertEquals(size, found);
+        }
+    }
+
+    @Test
+    public void testKeepAccessedEntries() {
+        try (OakMap<String, String> oak = getBuilder().buildOrderedMap()) {
+            for (int i = 0; i < NUM_HOT_KEYS; i++) {
+                oak.put(key(i), value(i));
+            }
+            for (int i = NUM_HOT_KEYS; i < NUM_KEYS; i++) {
+                oak.put(key(i), value(i));
+                if (i % HOT_KEYS_READ_INTERVAL == 0) {
+                    // the hot keys are accessed much more often than the clock hand passes them
+                    for (int j = 0; j < NUM_HOT_KEYS; j++) {
+                        Assert.assertEquals(value(j), oak.get(key(j)));
+                    }
+                }
+            }
+            Assert.assertTrue(oak.size() < NUM_KEYS);
+            for (int j = 0; j < NUM_HOT_KEYS; j++) {
+                Assert.assertEquals(value(j), oak.get(key(j)));
+            }
+        }
+    }
+
+    @Test
+    public void testEvictOnAllocationFailure() {
+        // the memory of the allocator is exhausted before the cache capacity is reached
+        int blockSize = (int) BlocksPool.MB;
+        BlocksPool pool = new BlocksPool(new BlocksPool.Config(blockSize, 0, 0, 0, false));
+        NativeMemoryAllocator allocator = new NativeMemoryAllocator(8L * blockSize, pool);
+        try (OakMap<String, String> oak = getBuilder()
+            .setMemoryAllocator(allocator)
+            .setCache(MEMORY_CAPACITY)
+            .buildOrderedMap()) {
+            int numKeys = (int) (MEMORY_CAPACITY / VALUE_LENGTH);
+            for (int i = 0; i < numKeys; i++) {
+                oak.put(key(i), value(i));
+            }
+            Assert.assertTrue(oak.size() < numKeys);
+            Assert.assertEquals(value(numKeys - 1), oak.get(key(numKeys - 1)));
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try (OakMap<String, String> oak = getBuilder().buildOrderedMap()) {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < NUM_THREADS; t++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        for (int i = 0; i < NUM_KEYS; i++) {
+                            int k = random.nextInt(2 * NUM_KEYS);
+                            if (random.nextBoolean()) {
+                                oak.put(key(k), value(k));
+                            } else {
+                                String value = oak.get(key(k));
+                                Assert.assertTrue(value == null || value.equals(value(k)));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Assert.assertNull(failure.get());
+            Assert.assertTrue(oak.memorySize() <= CACHE_CAPACITY + NUM_THREADS * CAPACITY_TOLERANCE);
+            Assert.assertTrue(oak.size() < NUM_KEYS);
+        }
+    }
+
+    @Test
+    public void testUnsupportedConfigurations() {
+        try {
+            OakCommonBuildersFactory.getDefaultStringBuilder().setCache(CACHE_CAPACITY).buildOrderedMap().close();
+            Assert.fail("A cache was built without reclaiming its keys");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            getBuilder().setCache(MEMORY_CAPACITY).buildOrderedMap().close();
+            Assert.fail("A cache was built with a capacity that is not below the memory capacity");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            getBuilder().buildHashMap().close();
+            Assert.fail("A hash cache was built");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
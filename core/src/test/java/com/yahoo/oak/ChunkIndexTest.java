@@ -0,0 +1,200 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ChunkIndexTest {
+    // enough chunks for a few splits of the leaves
+    private static final int NUM_CHUNKS = 10 * ChunkIndex.LEAF_CAPACITY;
+    private static final int KEY_GAP = 10;
+    // a power of two, so the long chunks are split in halves
+    private static final int NUM_LONG_CHUNKS = 8 * ChunkIndex.LEAF_CAPACITY;
+
+    private NativeMemoryAllocator allocator;
+    private MemoryManager keysMemoryManager;
+    private MemoryManager valuesMemoryManager;
+    private ChunkIndex.OfKeys<Integer, Integer> index;
+
+    @Before
+    public void setUp() {
+        allocator = new NativeMemoryAllocator(Integer.MAX_VALUE);
+        keysMemoryManager = new SeqExpandMemoryManager(allocator);
+        valuesMemoryManager = new SyncRecycleMemoryManager(allocator);
+        index = new ChunkIndex.OfKeys<>(OakCommonBuildersFactory.DEFAULT_INT_COMPARATOR);
+    }
+
+    @After
+    public void tearDown() {
+        allocator.close();
+    }
+
+    private Chunk<Integer, Integer> newChunk(int minKey) {
+        return new Chunk<>(minKey, 4, new AtomicInteger(), valuesMemoryManager, keysMemoryManager,
+            OakCommonBuildersFactory.DEFAULT_INT_COMPARATOR, OakCommonBuildersFactory.DEFAULT_INT_SERIALIZER,
+            OakCommonBuildersFactory.DEFAULT_INT_SERIALIZER);
+    }
+
+    // the chunk i has the minimal key i * KEY_GAP, and they are put in a random order
+    private List<Chunk<Integer, Integer>> putChunks() {
+        List<Chunk<Integer, Integer>> chunks = new ArrayList<>(NUM_CHUNKS);
+        for (int i = 0; i < NUM_CHUNKS; i++) {
+            chunks.add(newChunk(i * KEY_GAP));
+        }
+        List<Chunk<Integer, Integer>> shuffled = new ArrayList<>(chunks);
+        Collections.shuffle(shuffled);
+        for (Chunk<Integer, Integer> c : shuffled) {
+            Assert.assertTrue(index.putIfAbsent(c));
+        }
+        return chunks;
+    }
+
+    @Test
+    public void testLookups() {
+        Assert.assertNull(index.first());
+        Assert.assertNull(index.last());
+        Assert.assertNull(index.floor(0));
+
+        List<Chunk<Integer, Integer>> chunks = putChunks();
+        Assert.assertEquals(NUM_CHUNKS, index.size());
+        Assert.assertSame(chunks.get(0), index.first());
+        Assert.assertSame(chunks.get(NUM_CHUNKS - 1), index.last());
+        Assert.assertNull(index.floor(-1));
+        Assert.assertNull(index.lower(chunks.get(0).minKey));
+        for (int i = 0; i < NUM_CHUNKS; i++) {
+            Chunk<Integer, Integer> c = chunks.get(i);
+            Assert.assertSame(c, index.floor(i * KEY_GAP));
+            Assert.assertSame(c, index.floor(i * KEY_GAP + KEY_GAP - 1));
+            Assert.assertSame(c, index.floor(c.minKey));
+            if (i > 0) {
+                Assert.assertSame(chunks.get(i - 1), index.lower(c.minKey));
+            }
+        }
+    }
+
+    @Test
+    public void testUpdates() {
+        List<Chunk<Integer, Integer>> chunks = putChunks();
+        Chunk<Integer, Integer> duplicate = newChunk(KEY_GAP);
+        Assert.assertFalse(index.putIfAbsent(duplicate));
+        Assert.assertFalse(index.remove(duplicate));
+        Assert.assertFalse(index.replace(duplicate, chunks.get(1)));
+        Assert.assertTrue(index.replace(chunks.get(1), duplicate));
+        Assert.assertSame(duplicate, index.floor(KEY_GAP));
+        index.put(chunks.get(1));
+        Assert.assertSame(chunks.get(1), index.floor(KEY_GAP));
+        Assert.assertEquals(NUM_CHUNKS, index.size());
+
+        // the odd chunks are removed, so the keys of each are found in its preceding chunk
+        for (int i = 1; i < NUM_CHUNKS; i += 2) {
+            Assert.assertTrue(index.remove(chunks.get(i)));
+        }
+        Assert.assertEquals(NUM_CHUNKS / 2, index.size());
+        for (int i = 1; i < NUM_CHUNKS; i += 2) {
+            Assert.assertSame(chunks.get(i - 1), index.floor(i * KEY_GAP));
+        }
+        Assert.assertSame(chunks.get(NUM_CHUNKS - 2), index.last());
+
+        // removing all the chunks removes all the leaves
+        for (int i = 0; i < NUM_CHUNKS; i += 2) {
+            Assert.assertTrue(index.remove(chunks.get(i)));
+        }
+        Assert.assertEquals(0, index.size());
+        Assert.assertNull(index.first());
+        Assert.assertNull(index.floor(NUM_CHUNKS * KEY_GAP));
+    }
+
+    /*-------------- The index of the long chunks --------------*/
+
+    private static LongChunk newLongChunk(long minKey) {
+        return new LongChunk(minKey, 4, new AtomicInteger(), 0);
+    }
+
+    private static long longMinKey(int i) {
+        return i == 0 ? Long.MIN_VALUE : i * KEY_GAP;
+    }
+
+    // the chunks are split in halves (of their final minimal keys), until there are NUM_LONG_CHUNKS chunks
+    private static List<LongChunk> splitLongChunks(ChunkIndex.OfLongs longIndex, LongChunk first) {
+        List<LongChunk> chunks = new ArrayList<>();
+        chunks.add(first);
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        while (chunks.size() < NUM_LONG_CHUNKS) {
+            List<LongChunk> nextChunks = new ArrayList<>();
+            List<Integer> nextStarts = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                int start = starts.get(i);
+                int mid = (start + (i + 1 < starts.size() ? starts.get(i + 1) : NUM_LONG_CHUNKS)) / 2;
+                LongChunk[] halves = {newLongChunk(longMinKey(start)), newLongChunk(longMinKey(mid))};
+                longIndex.replace(chunks.get(i), 1, halves);
+                nextChunks.add(halves[0]);
+                nextChunks.add(halves[1]);
+                nextStarts.add(start);
+                nextStarts.add(mid);
+            }
+            chunks = nextChunks;
+            starts = nextStarts;
+        }
+        return chunks;
+    }
+
+    @Test
+    public void testLongChunksSplits() {
+        LongChunk first = newLongChunk(Long.MIN_VALUE);
+        ChunkIndex.OfLongs longIndex = new ChunkIndex.OfLongs(first);
+        Assert.assertSame(first, longIndex.floor(Long.MIN_VALUE));
+        Assert.assertSame(first, longIndex.floor(Long.MAX_VALUE));
+        Assert.assertNull(longIndex.next(first));
+
+        List<LongChunk> chunks = splitLongChunks(longIndex, first);
+        Assert.assertEquals(chunks.size(), longIndex.size());
+        Assert.assertTrue(longIndex.numOfLeaves() > NUM_LONG_CHUNKS / ChunkIndex.LEAF_CAPACITY);
+        for (int i = 0; i < chunks.size(); i++) {
+            LongChunk c = chunks.get(i);
+            Assert.assertSame(c, longIndex.floor(c.minKey));
+            Assert.assertSame(c, longIndex.floor(i * KEY_GAP + KEY_GAP - 1));
+            Assert.assertSame(i + 1 < chunks.size() ? chunks.get(i + 1) : null, longIndex.next(c));
+        }
+        Assert.assertSame(chunks.get(chunks.size() - 1), longIndex.floor(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testLongChunksMerges() {
+        LongChunk first = newLongChunk(Long.MIN_VALUE);
+        ChunkIndex.OfLongs longIndex = new ChunkIndex.OfLongs(first);
+        List<LongChunk> chunks = splitLongChunks(longIndex, first);
+        // pairs of chunks are merged, including the pairs whose chunks are in different leaves
+        while (chunks.size() > 1) {
+            List<LongChunk> next = new ArrayList<>();
+            for (int i = 0; i + 1 < chunks.size(); i += 2) {
+                LongChunk merged = newLongChunk(chunks.get(i).minKey);
+                longIndex.replace(chunks.get(i), 2, new LongChunk[]{merged});
+                next.add(merged);
+            }
+            if (chunks.size() % 2 == 1) {
+                next.add(chunks.get(chunks.size() - 1));
+            }
+            chunks = next;
+            for (LongChunk c : chunks) {
+                Assert.assertSame(c, longIndex.floor(c.minKey));
+            }
+        }
+        Assert.assertEquals(1, longIndex.size());
+        Assert.assertEquals(1, longIndex.numOfLeaves());
+        Assert.assertSame(chunks.get(0), longIndex.floor(0));
+    }
+}
@@ -12,7 +12,6 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.lang.reflect.Field;
-import java.util.concurrent.ConcurrentSkipListMap;
 
 public class ChunkSplitTest {
     private static final int MAX_ITEMS_PER_CHUNK = 10;
@@ -32,11 +31,7 @@ public class ChunkSplitTest {
         field.setAccessible(true);
         InternalOakMap<String, String> internalOakMap = (InternalOakMap<String, String>) field.get(oak);
 
-        Field skipListField = internalOakMap.getClass().getDeclaredField("skiplist");
-        skipListField.setAccessible(true);
-        ConcurrentSkipListMap<Object, Chunk<String, String>> skipList = (ConcurrentSkipListMap<Object, Chunk<String,
-                String>>) skipListField.get(internalOakMap);
-        Assert.assertTrue(skipList.size() > 1);
+        Assert.assertTrue(internalOakMap.chunkIndex.size() > 1);
         oak.close();
     }
 
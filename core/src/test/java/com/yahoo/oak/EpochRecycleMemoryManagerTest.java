@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.integer.OakIntComparator;
+import com.yahoo.oak.common.integer.OakIntSerializer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+public class EpochRecycleMemoryManagerTest {
+
+    private static final int KEY_SIZE = Integer.BYTES;
+    private static final int CHUNK_MAX_ITEMS = 64;
+    private static final int CHURN_ROUNDS = 50;
+    private static final int KEYS_PER_ROUND = 2000;
+
+    private NativeMemoryAllocator allocator;
+    private EpochRecycleMemoryManager keysMemoryManager;
+
+    @Before
+    public void setUp() {
+        allocator = new NativeMemoryAllocator(Integer.MAX_VALUE);
+        keysMemoryManager = new EpochRecycleMemoryManager(allocator);
+    }
+
+    @After
+    public void tearDown() {
+        allocator.close();
+    }
+
+    private void allocateAndRelease(int count) {
+        for (int i = 0; i < count; i++) {
+            Slice s = keysMemoryManager.getEmptySlice();
+            s.allocate(KEY_SIZE, false);
+            s.release();
+        }
+    }
+
+    @Test
+    public void testReleaseIsDeferredUntilOperationIsDone() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            keysMemoryManager.startOperation();
+            started.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                keysMemoryManager.finishOperation();
+            }
+        });
+        reader.start();
+        started.await();
+
+        allocateAndRelease(3 * EpochReclamation.RELEASE_LIST_LIMIT);
+        Assert.assertEquals(0, keysMemoryManager.getReclaimedCount());
+
+        finish.countDown();
+        reader.join();
+
+        allocateAndRelease(EpochReclamation.RELEASE_LIST_LIMIT);
+        Assert.assertTrue(keysMemoryManager.getReclaimedCount() >= 3 * EpochReclamation.RELEASE_LIST_LIMIT);
+    }
+
+    @Test
+    public void testReleaseIsDeferredUntilIterationIsDone() {
+        Object iterator = new Object();
+        MemoryManager.IterationGuard guard = keysMemoryManager.startIteration(iterator);
+
+        allocateAndRelease(3 * EpochReclamation.RELEASE_LIST_LIMIT);
+        Assert.assertEquals(0, keysMemoryManager.getReclaimedCount());
+
+        guard.release();
+        allocateAndRelease(EpochReclamation.RELEASE_LIST_LIMIT);
+        Assert.assertTrue(keysMemoryManager.getReclaimedCount() >= 3 * EpochReclamation.RELEASE_LIST_LIMIT);
+    }
+
+    @Test
+    public void testNestedOperationsKeepTheOuterEpoch() {
+        keysMemoryManager.startOperation();
+        keysMemoryManager.startOperation();
+        keysMemoryManager.finishOperation();
+
+        // the outer operation is still in progress
+        allocateAndRelease(3 * EpochReclamation.RELEASE_LIST_LIMIT);
+        Assert.assertEquals(0, keysMemoryManager.getReclaimedCount());
+
+        keysMemoryManager.finishOperation();
+        allocateAndRelease(EpochReclamation.RELEASE_LIST_LIMIT);
+        Assert.assertTrue(keysMemoryManager.getReclaimedCount() >= 3 * EpochReclamation.RELEASE_LIST_LIMIT);
+    }
+
+    @Test
+    public void testTerminatedThreadsAreReclaimed() throws InterruptedException {
+        final int numThreads = 4 * EpochReclamation.READERS_SCAN_THRESHOLD;
+        final int releasesPerThread = 10;
+        // short-lived threads, each releases less than a full list (which it never tags itself)
+        for (int i = 0; i < numThreads; i++) {
+            Thread thread = new Thread(() -> {
+                keysMemoryManager.startOperation();
+                keysMemoryManager.finishOperation();
+                allocateAndRelease(releasesPerThread);
+            });
+            thread.start();
+            thread.join();
+        }
+        // the readers of the terminated threads are removed as new threads come
+        Assert.assertTrue("readers: " + keysMemoryManager.getReaderCount(),
+            keysMemoryManager.getReaderCount() <= EpochReclamation.READERS_SCAN_THRESHOLD + 1);
+
+        keysMemoryManager.flushReleases();
+        Assert.assertEquals((long) numThreads * releasesPerThread, keysMemoryManager.getReclaimedCount());
+        Assert.assertEquals(1, keysMemoryManager.getReaderCount());
+    }
+
+    private void churn(ConcurrentZCMap<Integer, Integer> oak) {
+        for (int round = 0; round < CHURN_ROUNDS; round++) {
+            int from = round * KEYS_PER_ROUND;
+            for (int i = from; i < from + KEYS_PER_ROUND; i++) {
+                oak.zc().put(i, i);
+            }
+            for (int i = from; i < from + KEYS_PER_ROUND; i++) {
+                Assert.assertEquals(Integer.valueOf(i), oak.get(i));
+                oak.zc().remove(i);
+            }
+            // a key that stays in the map, the rest are removed
+            oak.zc().put(from, from);
+        }
+
+        Assert.assertEquals(CHURN_ROUNDS, oak.size());
+        for (int i = 0; i < CHURN_ROUNDS * KEYS_PER_ROUND; i++) {
+            Integer expected = (i % KEYS_PER_ROUND == 0) ? Integer.valueOf(i) : null;
+            Assert.assertEquals(expected, oak.get(i));
+        }
+
+        // most of the removed keys are reclaimed, only the last release lists are still pending
+        long removed = (long) CHURN_ROUNDS * (KEYS_PER_ROUND - 1);
+        Assert.assertTrue("reclaimed " + keysMemoryManager.getReclaimedCount() + " of " + removed + " keys",
+            keysMemoryManager.getReclaimedCount() > removed / 2);
+    }
+
+    @Test
+    public void testOrderedMapChurnReclaimsKeys() {
+        MemoryManager valuesMemoryManager = new SyncRecycleMemoryManager(allocator);
+        OakMap<Integer, Integer> oak = new OakMap<>(Integer.MIN_VALUE, new OakIntSerializer(),
+            new OakIntSerializer(), new OakIntComparator(), CHUNK_MAX_ITEMS, valuesMemoryManager, keysMemoryManager);
+        churn(oak);
+    }
+
+    @Test
+    public void testHashMapChurnReclaimsKeys() {
+        MemoryManager valuesMemoryManager = new SyncRecycleMemoryManager(allocator);
+        OakHashMap<Integer, Integer> oak = new OakHashMap<>(new OakIntSerializer(), new OakIntSerializer(),
+            new OakIntComparator(), null, CHUNK_MAX_ITEMS, valuesMemoryManager, keysMemoryManager);
+        churn(oak);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class EpochSyncRecycleMemoryManagerTest {
+
+    private static final int VALUE_SIZE = Integer.BYTES * 4;
+    private static final int NUM_KEYS = 16;
+    private static final int VALUE_LENGTH = 64;
+    private static final int NUM_READERS = 3;
+    private static final int NUM_UPDATES = 20_000;
+
+    private NativeMemoryAllocator allocator;
+    private EpochSyncRecycleMemoryManager valuesMemoryManager;
+
+    @Before
+    public void setUp() {
+        allocator = new NativeMemoryAllocator(Integer.MAX_VALUE);
+        valuesMemoryManager = new EpochSyncRecycleMemoryManager(allocator);
+    }
+
+    @After
+    public void tearDown() {
+        allocator.close();
+    }
+
+    private void allocateAndRelease(int count) {
+        for (int i = 0; i < count; i++) {
+            Slice s = valuesMemoryManager.getEmptySlice();
+            s.allocate(VALUE_SIZE, false);
+            s.release();
+        }
+    }
+
+    @Test
+    public void testReadDoesNotLockTheHeader() {
+        SyncRecycleMemoryManager.SliceSyncRecycle s = valuesMemoryManager.getEmptySlice();
+        s.allocate(VALUE_SIZE, false);
+        long header = UnsafeUtils.UNSAFE.getLong(s.getMetadataAddress());
+
+        Assert.assertEquals(ValueUtils.ValueResult.TRUE, s.lockRead());
+        Assert.assertEquals(header, UnsafeUtils.UNSAFE.getLong(s.getMetadataAddress()));
+        // a writer is not blocked by the reader, as it never updates the value in place
+        Assert.assertEquals(ValueUtils.ValueResult.TRUE, s.lockWrite());
+        Assert.assertEquals(ValueUtils.ValueResult.TRUE, s.unlockWrite());
+        header = UnsafeUtils.UNSAFE.getLong(s.getMetadataAddress());
+        Assert.assertEquals(ValueUtils.ValueResult.TRUE, s.unlockRead());
+        Assert.assertEquals(header, UnsafeUtils.UNSAFE.getLong(s.getMetadataAddress()));
+    }
+
+    @Test
+    public void testMovedValueIsReclaimedAfterItsReaders() throws InterruptedException {
+        Slice s = valuesMemoryManager.getEmptySlice();
+        s.allocate(VALUE_SIZE, false);
+        Slice readerSlice = s.duplicate();
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        AtomicReference<ValueUtils.ValueResult> readResult = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            readResult.set(readerSlice.lockRead());
+            started.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                readerSlice.unlockRead();
+            }
+        });
+        reader.start();
+        started.await();
+        Assert.assertEquals(ValueUtils.ValueResult.TRUE, readResult.get());
+
+        // the value is replaced by a new copy, while it is being read
+        Assert.assertEquals(ValueUtils.ValueResult.TRUE, s.lockWrite());
+        s.markAsMoved();
+        s.release();
+        Assert.assertEquals(ValueUtils.ValueResult.RETRY, s.duplicate().lockRead());
+
+        allocateAndRelease(3 * EpochReclamation.RELEASE_LIST_LIMIT);
+        Assert.assertEquals(0, valuesMemoryManager.getReclaimedCount());
+
+        finish.countDown();
+        reader.join();
+
+        allocateAndRelease(EpochReclamation.RELEASE_LIST_LIMIT);
+        Assert.assertTrue(valuesMemoryManager.getReclaimedCount() >= 3 * EpochReclamation.RELEASE_LIST_LIMIT);
+    }
+
+    private static String uniformValue(char c) {
+        char[] chars = new char[VALUE_LENGTH];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private void checkConcurrentUpdates(ConcurrentZCMap<String, String> oak) throws InterruptedException {
+        for (int i = 0; i < NUM_KEYS; i++) {
+            oak.put(String.valueOf(i), uniformValue('a'));
+        }
+
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicReference<String> tornValue = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < NUM_READERS; r++) {
+            Thread reader = new Thread(() -> {
+                for (int i = 0; !done.get(); i++) {
+                    String value = oak.get(String.valueOf(i % NUM_KEYS));
+                    if (value == null || !value.equals(uniformValue(value.charAt(0)))) {
+                        tornValue.compareAndSet(null, String.valueOf(value));
+                    }
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        // each update writes a value that is uniform, a reader must never see a mix of two values
+        for (int i = 0; i < NUM_UPDATES; i++) {
+            String key = String.valueOf(i % NUM_KEYS);
+            if (i % 2 == 0) {
+                oak.zc().put(key, uniformValue((char) ('a' + i % 26)));
+            } else {
+                oak.zc().computeIfPresent(key, buffer -> {
+                    char c = (char) ('a' + (buffer.getChar(Integer.BYTES) - 'a' + 1) % 26);
+                    for (int j = 0; j < VALUE_LENGTH; j++) {
+                        buffer.putChar(Integer.BYTES + j * Character.BYTES, c);
+                    }
+                });
+            }
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        Assert.assertNull("a reader saw a partially updated value", tornValue.get());
+        Assert.assertEquals(NUM_KEYS, oak.size());
+        // the replaced values are reused, only the last release lists are still pending
+        Assert.assertTrue("reclaimed " + valuesMemoryManager.getReclaimedCount() + " of " + NUM_UPDATES + " values",
+            valuesMemoryManager.getReclaimedCount() > NUM_UPDATES / 2);
+    }
+
+    @Test
+    public void testOrderedMapConcurrentUpdates() throws InterruptedException {
+        MemoryManager keysMemoryManager = new SeqExpandMemoryManager(allocator);
+        OakMap<String, String> oak = new OakMap<>("", OakCommonBuildersFactory.DEFAULT_STRING_SERIALIZER,
+            OakCommonBuildersFactory.DEFAULT_STRING_SERIALIZER, OakCommonBuildersFactory.DEFAULT_STRING_COMPARATOR,
+            Chunk.MAX_ITEMS_DEFAULT, valuesMemoryManager, keysMemoryManager);
+        checkConcurrentUpdates(oak);
+    }
+
+    @Test
+    public void testHashMapConcurrentUpdates() throws InterruptedException {
+        MemoryManager keysMemoryManager = new SeqExpandMemoryManager(allocator);
+        OakHashMap<String, String> oak = new OakHashMap<>(OakCommonBuildersFactory.DEFAULT_STRING_SERIALIZER,
+            OakCommonBuildersFactory.DEFAULT_STRING_SERIALIZER, OakCommonBuildersFactory.DEFAULT_STRING_COMPARATOR,
+            OakCommonBuildersFactory.DEFAULT_STRING_HASHER, Chunk.MAX_ITEMS_DEFAULT, valuesMemoryManager,
+            keysMemoryManager);
+        checkConcurrentUpdates(oak);
+    }
+
+    @Test
+    public void testBuilderSelectsLockFreeValueReads() {
+        OakMap<Integer, Integer> oak = OakCommonBuildersFactory.getDefaultIntBuilder()
+            .setLockFreeValueReads(true).buildOrderedMap();
+        try {
+            for (int i = 0; i < NUM_KEYS; i++) {
+                oak.put(i, i);
+                oak.zc().computeIfPresent(i, buffer -> buffer.putInt(0, buffer.getInt(0) + 1));
+            }
+            for (int i = 0; i < NUM_KEYS; i++) {
+                Assert.assertEquals(Integer.valueOf(i + 1), oak.get(i));
+            }
+        } finally {
+            oak.close();
+        }
+    }
+}
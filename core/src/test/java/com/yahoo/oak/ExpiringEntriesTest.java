@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class ExpiringEntriesTest {
+    private static final int NUM_KEYS = 10_000;
+    private static final int CHUNK_MAX_ITEMS = 64;
+    private static final long TIME_TO_LIVE_MILLIS = 100;
+
+    private static OakMapBuilder<Integer, Integer> getBuilder(boolean lockFreeValueReads) {
+        return OakCommonBuildersFactory.getDefaultIntBuilder()
+            .setChunkMaxItems(CHUNK_MAX_ITEMS)
+            .setLockFreeValueReads(lockFreeValueReads)
+            .setReclaimKeys(lockFreeValueReads)
+            .setExpiringEntries(true);
+    }
+
+    private static void waitForExpiration() throws InterruptedException {
+        Thread.sleep(2 * TIME_TO_LIVE_MILLIS);
+    }
+
+    @Test
+    public void testExpiredEntriesAreAbsent() throws InterruptedException {
+        for (boolean lockFreeValueReads : new boolean[]{false, true}) {
+            try (OakMap<Integer, Integer> oak = getBuilder(lockFreeValueReads).buildOrderedMap()) {
+                for (int i = 0; i < 10; i++) {
+                    if (i % 2 == 0) {
+                        Assert.assertNull(oak.put(i, i, TIME_TO_LIVE_MILLIS, TimeUnit.MILLISECONDS));
+                    } else {
+                        oak.zc().put(i, i);
+                    }
+                }
+                Assert.assertEquals((Integer) 0, oak.get(0));
+                waitForExpiration();
+
+                for (int i = 0; i < 10; i += 2) {
+                    Assert.assertNull(oak.get(i));
+                    Assert.assertFalse(oak.containsKey(i));
+                }
+                Iterator<Integer> keys = oak.keySet().iterator();
+                for (int i = 1; i < 10; i += 2) {
+                    Assert.assertEquals((Integer) i, keys.next());
+                }
+                Assert.assertFalse(keys.hasNext());
+
+                Assert.assertFalse(oak.zc().computeIfPresent(0, buffer -> buffer.putInt(0, -1)));
+                Assert.assertNull(oak.computeIfPresent(2, (k, v) -> -1));
+                Assert.assertNull(oak.remove(4));
+                Assert.assertNull(oak.putIfAbsent(6, 6));
+                Assert.assertEquals((Integer) 6, oak.get(6));
+                Assert.assertNull(oak.put(8, 8));
+                Assert.assertEquals((Integer) 8, oak.get(8));
+                Assert.assertEquals((Integer) 1, oak.get(1));
+            }
+        }
+    }
+
+    @Test
+    public void testExpirationUpdates() throws InterruptedException {
+        try (OakMap<Integer, Integer> oak = getBuilder(false).buildOrderedMap()) {
+            // a put resets the expiration
+            oak.put(0, 0, TIME_TO_LIVE_MILLIS, TimeUnit.MILLISECONDS);
+            Assert.assertEquals((Integer) 0, oak.put(0, 1));
+            oak.put(1, 1);
+            oak.zc().put(1, 2, TIME_TO_LIVE_MILLIS, TimeUnit.MILLISECONDS);
+            oak.put(2, 2, 1, TimeUnit.DAYS);
+            oak.put(2, 3, TIME_TO_LIVE_MILLIS, TimeUnit.MILLISECONDS);
+            // the other updates keep it, even if the value is moved
+            oak.put(3, 3, TIME_TO_LIVE_MILLIS, TimeUnit.MILLISECONDS);
+            oak.merge(3, 1, Integer::sum);
+            oak.put(4, 4, TIME_TO_LIVE_MILLIS, TimeUnit.MILLISECONDS);
+            oak.zc().computeIfPresent(4, buffer -> buffer.putInt(0, -4));
+            oak.put(5, 5, Long.MAX_VALUE, TimeUnit.DAYS);
+            waitForExpiration();
+
+            Assert.assertEquals((Integer) 1, oak.get(0));
+            Assert.assertNull(oak.get(1));
+            Assert.assertNull(oak.get(2));
+            Assert.assertNull(oak.get(3));
+            Assert.assertNull(oak.get(4));
+            Assert.assertEquals((Integer) 5, oak.get(5));
+        }
+    }
+
+    @Test
+    public void testRebalanceDropsExpiredEntries() throws InterruptedException {
+        for (boolean lockFreeValueReads : new boolean[]{false, true}) {
+            try (OakMap<Integer, Integer> oak = getBuilder(lockFreeValueReads).buildOrderedMap()) {
+                for (int i = 0; i < NUM_KEYS; i += 4) {
+                    oak.put(i, i, TIME_TO_LIVE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                long memorySize = oak.memorySize();
+                waitForExpiration();
+
+                // the insertions overflow the chunks of the expired entries, so they are rebalanced
+                for (int i = 0; i < NUM_KEYS; i++) {
+                    if (i % 4 != 0) {
+                        oak.put(i, i);
+                    }
+                }
+                for (int i = 0; i < NUM_KEYS; i++) {
+                    Assert.assertEquals(i % 4 == 0 ? null : (Integer) i, oak.get(i));
+                }
+                // most of the expired entries are already removed and reclaimed
+                Assert.assertTrue(oak.size() < NUM_KEYS * 3 / 4 + NUM_KEYS / 16);
+                Assert.assertTrue(oak.memorySize() < 4 * memorySize);
+                int count = 0;
+                for (Map.Entry<Integer, Integer> entry : oak.entrySet()) {
+                    Assert.assertNotEquals(0, entry.getKey() % 4);
+                    count++;
+                }
+                Assert.assertEquals(NUM_KEYS * 3 / 4, count);
+            }
+        }
+    }
+
+    @Test
+    public void testUnsupportedConfigurations() throws Exception {
+        try (OakMap<Integer, Integer> oak = OakCommonBuildersFactory.getDefaultIntBuilder().buildOrderedMap()) {
+            oak.put(0, 0, 1, TimeUnit.SECONDS);
+            Assert.fail("A map without expiring entries put an expiring entry");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try (OakMap<Integer, Integer> oak = getBuilder(false).buildOrderedMap()) {
+            oak.put(0, 0, 0, TimeUnit.SECONDS);
+            Assert.fail("An entry was put with no time to live");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            getBuilder(false).buildHashMap().close();
+            Assert.fail("A hash map was built with expiring entries");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Path directory = Files.createTempDirectory("oak-expiring-test");
+        try {
+            getBuilder(false).setWriteAheadLog(directory).buildOrderedMap().close();
+            Assert.fail("A map with expiring entries was built with a write-ahead log");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            Files.delete(directory);
+        }
+    }
+}
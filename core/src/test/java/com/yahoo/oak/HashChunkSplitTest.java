@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class HashChunkSplitTest {
+    private static final int MAX_ITEMS_PER_CHUNK = 16;
+    private static final int NUM_THREADS = 4;
+    private static final int KEYS_PER_THREAD = 5000;
+
+    private InternalOakHash<Integer, Integer> testHash;
+    private final OakTransformer<Integer> deserializer = OakCommonBuildersFactory.DEFAULT_INT_SERIALIZER::deserialize;
+
+    @Before
+    public void setUp() {
+        NativeMemoryAllocator ma = new NativeMemoryAllocator(Integer.MAX_VALUE);
+        SyncRecycleMemoryManager memoryManager = new SyncRecycleMemoryManager(ma);
+        SeqExpandMemoryManager seqExpandMemoryManager = new SeqExpandMemoryManager(ma);
+
+        // a single chunk at first, the first level is doubled upon the splits
+        testHash = new InternalOakHash<>(OakCommonBuildersFactory.DEFAULT_INT_SERIALIZER,
+                OakCommonBuildersFactory.DEFAULT_INT_SERIALIZER, OakCommonBuildersFactory.DEFAULT_INT_COMPARATOR,
+                OakCommonBuildersFactory.DEFAULT_INT_HASHER,
+                memoryManager, seqExpandMemoryManager, MAX_ITEMS_PER_CHUNK, 0, new ValueUtils());
+    }
+
+    @After
+    public void tearDown() {
+        testHash.close();
+    }
+
+    private int getFirstLevelDepth() throws NoSuchFieldException, IllegalAccessException {
+        Field field = testHash.getClass().getDeclaredField("hashArray");
+        field.setAccessible(true);
+        FirstLevelHashArray<Integer, Integer> hashArray = (FirstLevelHashArray<Integer, Integer>) field.get(testHash);
+        return hashArray.getDepth();
+    }
+
+    @Test
+    public void testSplitByCount() throws NoSuchFieldException, IllegalAccessException {
+        Assert.assertEquals(0, getFirstLevelDepth());
+        for (int i = 0; i < MAX_ITEMS_PER_CHUNK * 4; i++) {
+            testHash.put(i, i, null);
+        }
+        Assert.assertTrue(getFirstLevelDepth() > 0);
+        for (int i = 0; i < MAX_ITEMS_PER_CHUNK * 4; i++) {
+            Assert.assertEquals(i, (int) testHash.getValueTransformation(i, deserializer));
+        }
+
+        Set<Integer> keys = new HashSet<>();
+        Iterator<Integer> iterator = testHash.keysTransformIterator(deserializer);
+        while (iterator.hasNext()) {
+            Assert.assertTrue(keys.add(iterator.next()));
+        }
+        Assert.assertEquals(MAX_ITEMS_PER_CHUNK * 4, keys.size());
+    }
+
+    @Test
+    public void testConcurrentSplits() throws InterruptedException {
+        CountDownLatch startSignal = new CountDownLatch(1);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        List<Thread> threads = new ArrayList<>(NUM_THREADS);
+
+        for (int t = 0; t < NUM_THREADS; t++) {
+            final int first = t * KEYS_PER_THREAD;
+            threads.add(new Thread(() -> {
+                try {
+                    startSignal.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                for (int i = first; i < first + KEYS_PER_THREAD; i++) {
+                    testHash.put(i, i, null);
+                    // keys that were inserted (and not removed) by this thread must be found,
+                    // while other threads split the chunks
+                    int j = first + (i - first) / 2;
+                    Integer value = testHash.getValueTransformation(j, deserializer);
+                    if (j % 3 != 0 && (value == null || value != j)) {
+                        failed.set(true);
+                    }
+                    if (i % 3 == 0) {
+                        testHash.remove(i, null, null);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        startSignal.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertFalse(failed.get());
+        int expectedSize = 0;
+        for (int i = 0; i < NUM_THREADS * KEYS_PER_THREAD; i++) {
+            Integer value = testHash.getValueTransformation(i, deserializer);
+            if (i % 3 == 0) {
+                Assert.assertNull(value);
+            } else {
+                Assert.assertEquals(i, (int) value);
+                expectedSize++;
+            }
+        }
+        Assert.assertEquals(expectedSize, testHash.entries());
+    }
+}
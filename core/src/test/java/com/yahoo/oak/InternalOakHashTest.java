@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+public class InternalOakHashTest {
+
+    private static final int CHUNK_MAX_ITEMS = 16;
+    // few chunks in the first level, so the chunks are rebalanced (and grow) many times
+    private static final int MSB_FOR_FIRST_LEVEL_HASH = 2;
+    private static final int NUM_KEYS = 10000;
+
+    private InternalOakHash<Integer, Integer> testHash;
+    private final OakTransformer<Integer> deserializer = OakCommonBuildersFactory.DEFAULT_INT_SERIALIZER::deserialize;
+
+    @Before
+    public void setUp() {
+        NativeMemoryAllocator ma = new NativeMemoryAllocator(Integer.MAX_VALUE);
+        SyncRecycleMemoryManager memoryManager = new SyncRecycleMemoryManager(ma);
+        SeqExpandMemoryManager seqExpandMemoryManager = new SeqExpandMemoryManager(ma);
+
+        testHash = new InternalOakHash<>(OakCommonBuildersFactory.DEFAULT_INT_SERIALIZER,
+                OakCommonBuildersFactory.DEFAULT_INT_SERIALIZER, OakCommonBuildersFactory.DEFAULT_INT_COMPARATOR,
+                OakCommonBuildersFactory.DEFAULT_INT_HASHER,
+                memoryManager, seqExpandMemoryManager, CHUNK_MAX_ITEMS, MSB_FOR_FIRST_LEVEL_HASH, new ValueUtils());
+    }
+
+    @After
+    public void tearDown() {
+        testHash.close();
+    }
+
+    @Test
+    public void putGetRemove() {
+        for (int i = 0; i < NUM_KEYS; i++) {
+            Assert.assertNull(testHash.put(i, i, deserializer));
+        }
+        Assert.assertEquals(NUM_KEYS, testHash.entries());
+
+        for (int i = 0; i < NUM_KEYS; i++) {
+            Assert.assertEquals(i, (int) testHash.getValueTransformation(i, deserializer));
+            Assert.assertEquals(i, (int) testHash.put(i, i + 1, deserializer));
+        }
+        Assert.assertEquals(NUM_KEYS, testHash.entries());
+
+        for (int i = 0; i < NUM_KEYS; i += 2) {
+            Assert.assertEquals(i + 1, (int) testHash.remove(i, null, deserializer).value);
+            Assert.assertNull(testHash.remove(i, null, deserializer).value);
+        }
+        Assert.assertEquals(NUM_KEYS / 2, testHash.entries());
+
+        for (int i = 0; i < NUM_KEYS; i++) {
+            Integer value = testHash.getValueTransformation(i, deserializer);
+            if (i % 2 == 0) {
+                Assert.assertNull(value);
+                Assert.assertNull(testHash.get(i));
+            } else {
+                Assert.assertEquals(i + 1, (int) value);
+            }
+        }
+    }
+
+    @Test
+    public void reinsertAfterRemove() {
+        // the deleted entries are reused by the same keys, and disregarded when the chunks are rebalanced
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < NUM_KEYS; i++) {
+                Assert.assertNull(testHash.put(i, round, deserializer));
+            }
+            Assert.assertEquals(NUM_KEYS, testHash.entries());
+            for (int i = 0; i < NUM_KEYS; i++) {
+                Assert.assertEquals(round, (int) testHash.remove(i, null, deserializer).value);
+            }
+            Assert.assertEquals(0, testHash.entries());
+        }
+        Assert.assertFalse(testHash.valuesTransformIterator(deserializer).hasNext());
+    }
+
+    @Test
+    public void putIfAbsentAndCompute() {
+        for (int i = 0; i < NUM_KEYS; i++) {
+            Assert.assertEquals(ValueUtils.ValueResult.TRUE, testHash.putIfAbsent(i, i, null).operationResult);
+            Assert.assertEquals(ValueUtils.ValueResult.FALSE, testHash.putIfAbsent(i, -i, null).operationResult);
+            Assert.assertEquals(i, (int) testHash.putIfAbsent(i, -i, deserializer).value);
+        }
+        Assert.assertEquals(NUM_KEYS, testHash.entries());
+
+        for (int i = 0; i < NUM_KEYS; i++) {
+            Assert.assertTrue(testHash.computeIfPresent(i, buffer -> buffer.putInt(0, buffer.getInt(0) * 2)));
+            Assert.assertFalse(testHash.putIfAbsentComputeIfPresent(i, 0,
+                buffer -> buffer.putInt(0, buffer.getInt(0) + 1)));
+            Assert.assertEquals(i * 2 + 1, (int) testHash.getValueTransformation(i, deserializer));
+        }
+        Assert.assertFalse(testHash.computeIfPresent(NUM_KEYS, buffer -> buffer.putInt(0, 0)));
+        Assert.assertTrue(testHash.putIfAbsentComputeIfPresent(NUM_KEYS, NUM_KEYS,
+            buffer -> buffer.putInt(0, 0)));
+        Assert.assertEquals(NUM_KEYS, (int) testHash.getValueTransformation(NUM_KEYS, deserializer));
+    }
+
+    @Test
+    public void iterators() {
+        for (int i = 0; i < NUM_KEYS; i++) {
+            testHash.put(i, i, null);
+        }
+        for (int i = 0; i < NUM_KEYS; i += 3) {
+            testHash.remove(i, null, null);
+        }
+
+        Set<Integer> keys = new HashSet<>();
+        Iterator<Integer> keysIterator = testHash.keysTransformIterator(deserializer);
+        while (keysIterator.hasNext()) {
+            Assert.assertTrue(keys.add(keysIterator.next()));
+        }
+
+        Set<Integer> values = new HashSet<>();
+        Iterator<OakUnscopedBuffer> valuesIterator = testHash.valuesStreamIterator();
+        while (valuesIterator.hasNext()) {
+            Assert.assertTrue(values.add(valuesIterator.next().transform(deserializer)));
+        }
+
+        for (int i = 0; i < NUM_KEYS; i++) {
+            Assert.assertEquals(i % 3 != 0, keys.contains(i));
+            Assert.assertEquals(i % 3 != 0, values.contains(i));
+        }
+        Assert.assertEquals(testHash.entries(), keys.size());
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import com.yahoo.oak.common.floatnum.OakFloatComparator;
+import com.yahoo.oak.common.intbuffer.OakIntBufferComparator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class KeyPrefixTest {
+    private static final int NUM_KEYS = 4_000;
+    private static final int CHUNK_MAX_ITEMS = 64;
+
+    // the same as the default string comparator, but without the key prefixes
+    private static final OakComparator<String> NO_PREFIX_STRING_COMPARATOR = new OakComparator<String>() {
+        @Override
+        public int compareKeys(String key1, String key2) {
+            return OakCommonBuildersFactory.DEFAULT_STRING_COMPARATOR.compareKeys(key1, key2);
+        }
+
+        @Override
+        public int compareSerializedKeys(OakScopedReadBuffer serializedKey1, OakScopedReadBuffer serializedKey2) {
+            return OakCommonBuildersFactory.DEFAULT_STRING_COMPARATOR.compareSerializedKeys(
+                serializedKey1, serializedKey2);
+        }
+
+        @Override
+        public int compareKeyAndSerializedKey(String key, OakScopedReadBuffer serializedKey) {
+            return OakCommonBuildersFactory.DEFAULT_STRING_COMPARATOR.compareKeyAndSerializedKey(key, serializedKey);
+        }
+    };
+
+    // many keys share their first 4 chars (so their prefixes are tied), and some are shorter than a prefix
+    private static List<String> getStringKeys() {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < NUM_KEYS; i++) {
+            switch (i % 4) {
+                case 0:
+                    keys.add("key-" + i);
+                    break;
+                case 1:
+                    keys.add("ke" + (char) (i % 3));
+                    break;
+                case 2:
+                    keys.add(String.valueOf((char) ('a' + i % 26)) + (char) (Character.MAX_VALUE - i));
+                    break;
+                default:
+                    keys.add("k" + i);
+            }
+        }
+        Collections.shuffle(keys);
+        return keys;
+    }
+
+    private static <K> void assertSameSign(OakComparator<K> comparator, K key1, K key2) {
+        int cmp = comparator.compareKeys(key1, key2);
+        int prefixCmp = Long.compare(comparator.getKeyPrefix(key1), comparator.getKeyPrefix(key2));
+        // the prefixes may tie for different keys, but they are never ordered differently than the keys
+        if (cmp == 0 || prefixCmp != 0) {
+            Assert.assertEquals(Integer.signum(cmp), prefixCmp);
+        }
+    }
+
+    @Test
+    public void testPrefixesPreserveOrder() {
+        List<String> strings = getStringKeys().subList(0, 200);
+        strings.add("");
+        strings.add("\0");
+        strings.add(String.valueOf(Character.MAX_VALUE));
+        for (String s1 : strings) {
+            for (String s2 : strings) {
+                assertSameSign(OakCommonBuildersFactory.DEFAULT_STRING_COMPARATOR, s1, s2);
+            }
+        }
+
+        int[] ints = {Integer.MIN_VALUE, -2, -1, 0, 1, 2, Integer.MAX_VALUE};
+        for (int i1 : ints) {
+            for (int i2 : ints) {
+                assertSameSign(OakCommonBuildersFactory.DEFAULT_INT_COMPARATOR, i1, i2);
+            }
+        }
+
+        float[] floats = {Float.NEGATIVE_INFINITY, -Float.MAX_VALUE, -1.5f, -Float.MIN_VALUE, -0.0f, 0.0f,
+            Float.MIN_VALUE, 1.5f, Float.MAX_VALUE, Float.POSITIVE_INFINITY, Float.NaN};
+        OakFloatComparator floatComparator = new OakFloatComparator();
+        for (float f1 : floats) {
+            for (float f2 : floats) {
+                assertSameSign(floatComparator, f1, f2);
+            }
+        }
+
+        OakIntBufferComparator bufferComparator = new OakIntBufferComparator(3);
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i0 : ints) {
+            for (int i1 : ints) {
+                ByteBuffer buffer = ByteBuffer.allocate(3 * Integer.BYTES);
+                buffer.putInt(0, i0).putInt(Integer.BYTES, i1).putInt(2 * Integer.BYTES, i0 ^ i1);
+                buffers.add(buffer);
+            }
+        }
+        for (ByteBuffer b1 : buffers) {
+            for (ByteBuffer b2 : buffers) {
+                assertSameSign(bufferComparator, b1, b2);
+            }
+        }
+    }
+
+    @Test
+    public void testPrefixedAndNotPrefixedMapsAgree() {
+        List<String> keys = getStringKeys();
+        TreeMap<String, String> expected = new TreeMap<>();
+        OakMapBuilder<String, String> noPrefixBuilder = new OakMapBuilder<>(NO_PREFIX_STRING_COMPARATOR,
+            OakCommonBuildersFactory.DEFAULT_STRING_SERIALIZER, OakCommonBuildersFactory.DEFAULT_STRING_SERIALIZER,
+            "").setChunkMaxItems(CHUNK_MAX_ITEMS);
+        try (OakMap<String, String> prefixed = OakCommonBuildersFactory.getDefaultStringBuilder()
+                .setChunkMaxItems(CHUNK_MAX_ITEMS).buildOrderedMap();
+             OakMap<String, String> notPrefixed = noPrefixBuilder.buildOrderedMap()) {
+            for (String key : keys) {
+                expected.put(key, key);
+                prefixed.zc().put(key, key);
+                notPrefixed.zc().put(key, key);
+            }
+            for (int i = 0; i < keys.size(); i += 3) {
+                expected.remove(keys.get(i));
+                prefixed.zc().remove(keys.get(i));
+                notPrefixed.zc().remove(keys.get(i));
+            }
+
+            for (String key : keys) {
+                Assert.assertEquals(expected.get(key), prefixed.get(key));
+                Assert.assertEquals(expected.get(key), notPrefixed.get(key));
+            }
+            Assert.assertNull(prefixed.get("ke"));
+            Assert.assertNull(prefixed.get("key-"));
+            assertSameEntries(expected, prefixed);
+            assertSameEntries(expected, notPrefixed);
+            Assert.assertEquals(expected.floorKey("key-5"), prefixed.floorKey("key-5"));
+            Assert.assertEquals(expected.ceilingKey("ke\u0001"), prefixed.ceilingKey("ke\u0001"));
+        }
+    }
+
+    @Test
+    public void testRestoredEntriesArePrefixed() throws Exception {
+        List<String> keys = getStringKeys();
+        TreeMap<String, String> expected = new TreeMap<>();
+        Path directory = Files.createTempDirectory("oak-prefix-test");
+        try {
+            try (OakMap<String, String> oak = buildLoggedMap(directory)) {
+                for (String key : keys) {
+                    expected.put(key, key);
+                    oak.zc().put(key, key);
+                }
+            }
+            // the restored chunks are populated with sorted entries, and then the keys are inserted among them
+            try (OakMap<String, String> oak = buildLoggedMap(directory)) {
+                for (int i = 0; i < keys.size(); i++) {
+                    String key = keys.get(i) + "+";
+                    expected.put(key, key);
+                    oak.zc().put(key, key);
+                }
+                assertSameEntries(expected, oak);
+                for (String key : expected.keySet()) {
+                    Assert.assertEquals(key, oak.get(key));
+                }
+            }
+        } finally {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path file : stream) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static OakMap<String, String> buildLoggedMap(Path directory) {
+        return OakCommonBuildersFactory.getDefaultStringBuilder()
+            .setChunkMaxItems(CHUNK_MAX_ITEMS)
+            .setWriteAheadLog(directory)
+            .buildOrderedMap();
+    }
+
+    private static void assertSameEntries(TreeMap<String, String> expected, OakMap<String, String> oak) {
+        Iterator<Map.Entry<String, String>> oakEntries = oak.entrySet().iterator();
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            Assert.assertTrue(oakEntries.hasNext());
+            Map.Entry<String, String> oakEntry = oakEntries.next();
+            Assert.assertEquals(entry.getKey(), oakEntry.getKey());
+            Assert.assertEquals(entry.getValue(), oakEntry.getValue());
+        }
+        Assert.assertFalse(oakEntries.hasNext());
+    }
+}
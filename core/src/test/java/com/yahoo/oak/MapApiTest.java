@@ -17,6 +17,7 @@ import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 
@@ -92,6 +93,80 @@ public class MapApiTest {
         Assert.assertNull(oak.lowerKey(Integer.MIN_VALUE));
     }
 
+    @Test
+    public void navigationMethods() {
+        int numKeys = 1000;
+        // small chunks, so the look ups cross chunks whose entries are all deleted
+        try (OakMap<Integer, Integer> map = OakCommonBuildersFactory.getDefaultIntBuilder()
+                .setChunkMaxItems(16).buildOrderedMap()) {
+            TreeMap<Integer, Integer> expected = new TreeMap<>();
+            for (int i = 0; i < numKeys; i++) {
+                map.put(2 * i, i);
+                expected.put(2 * i, i);
+            }
+            for (int i = numKeys / 4; i < numKeys / 2; i++) {
+                map.remove(2 * i);
+                expected.remove(2 * i);
+            }
+
+            for (int key = -1; key <= 2 * numKeys; key++) {
+                Assert.assertEquals(expected.lowerEntry(key), map.lowerEntry(key));
+                Assert.assertEquals(expected.floorEntry(key), map.floorEntry(key));
+                Assert.assertEquals(expected.ceilingEntry(key), map.ceilingEntry(key));
+                Assert.assertEquals(expected.higherEntry(key), map.higherEntry(key));
+                Assert.assertEquals(expected.lowerKey(key), map.lowerKey(key));
+                Assert.assertEquals(expected.floorKey(key), map.floorKey(key));
+                Assert.assertEquals(expected.ceilingKey(key), map.ceilingKey(key));
+                Assert.assertEquals(expected.higherKey(key), map.higherKey(key));
+            }
+            Assert.assertEquals(expected.firstEntry(), map.firstEntry());
+            Assert.assertEquals(expected.lastEntry(), map.lastEntry());
+
+            try (OakMap<Integer, Integer> descending = map.descendingMap()) {
+                Assert.assertEquals(expected.lastEntry(), descending.firstEntry());
+                Assert.assertEquals(expected.floorKey(501), descending.ceilingKey(501));
+            }
+        }
+    }
+
+    @Test
+    public void pollFirstAndLastEntry() {
+        Assert.assertNull(oak.pollFirstEntry());
+        Assert.assertNull(oak.pollLastEntry());
+
+        int numKeys = 100;
+        for (int i = 0; i < numKeys; i++) {
+            oak.put(i, -i);
+        }
+        for (int i = 0; i < numKeys / 2; i++) {
+            Assert.assertEquals(new AbstractMap.SimpleImmutableEntry<>(i, -i), oak.pollFirstEntry());
+            int last = numKeys - 1 - i;
+            Assert.assertEquals(new AbstractMap.SimpleImmutableEntry<>(last, -last), oak.pollLastEntry());
+        }
+        Assert.assertNull(oak.pollFirstEntry());
+        Assert.assertTrue(oak.isEmpty());
+    }
+
+    @Test
+    public void zcNavigationMethods() {
+        for (int i = 0; i < 10; i++) {
+            oak.put(2 * i, i);
+        }
+        OakTransformer<Integer> deserializer = OakCommonBuildersFactory.DEFAULT_INT_SERIALIZER::deserialize;
+        ZeroCopyNavigableMap<Integer, Integer> zc = oak.zc();
+
+        Map.Entry<OakUnscopedBuffer, OakUnscopedBuffer> entry = zc.floorEntry(5);
+        Assert.assertEquals(4, (int) entry.getKey().transform(deserializer));
+        Assert.assertEquals(2, (int) entry.getValue().transform(deserializer));
+        Assert.assertEquals(4, (int) zc.lowerKey(5).transform(deserializer));
+        Assert.assertEquals(6, (int) zc.ceilingKey(5).transform(deserializer));
+        Assert.assertEquals(8, (int) zc.higherEntry(6).getKey().transform(deserializer));
+        Assert.assertEquals(0, (int) zc.firstEntry().getKey().transform(deserializer));
+        Assert.assertEquals(18, (int) zc.lastEntry().getKey().transform(deserializer));
+        Assert.assertNull(zc.lowerEntry(0));
+        Assert.assertNull(zc.higherKey(18));
+    }
+
     @Test
     public void keySet() {
         int numKeys = 10;
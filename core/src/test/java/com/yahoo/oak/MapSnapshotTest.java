@@ -0,0 +1,251 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class MapSnapshotTest {
+    private static final int NUM_KEYS = 10_000;
+    private static final int CHUNK_MAX_ITEMS = 256;
+    // larger than the snapshot buffer, so the buffer is grown
+    private static final int LARGE_VALUE_LENGTH = MapSnapshot.BUFFER_SIZE;
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("oak-snapshot-test", ".snapshot");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static OakMapBuilder<String, String> getBuilder() {
+        return OakCommonBuildersFactory.getDefaultStringBuilder()
+            .setChunkMaxItems(CHUNK_MAX_ITEMS);
+    }
+
+    private static String key(int i) {
+        return String.format("%08d", i);
+    }
+
+    private static String value(int i, int version) {
+        char[] chars = new char[i % 100];
+        Arrays.fill(chars, (char) ('a' + version % 26));
+        return i + new String(chars);
+    }
+
+    private void checkRestored(OakMap<String, String> restored, int numKeys) {
+        Assert.assertEquals(numKeys, restored.size());
+        Iterator<Map.Entry<String, String>> iter = restored.entrySet().iterator();
+        for (int i = 0; i < numKeys; i++) {
+            Map.Entry<String, String> entry = iter.next();
+            Assert.assertEquals(key(i), entry.getKey());
+            Assert.assertEquals(value(i, 0), entry.getValue());
+        }
+        Assert.assertFalse(iter.hasNext());
+        Assert.assertEquals(value(numKeys / 2, 0), restored.get(key(numKeys / 2)));
+    }
+
+    @Test
+    public void testSnapshotAndRestore() throws IOException {
+        try (OakMap<String, String> oak = getBuilder().buildOrderedMap()) {
+            // inserted in reverse, so the entries of the chunks are not sorted
+            for (int i = NUM_KEYS - 1; i >= 0; i--) {
+                oak.put(key(i), value(i, 0));
+            }
+            // removed entries are not written
+            oak.put(key(NUM_KEYS), value(NUM_KEYS, 0));
+            oak.remove(key(NUM_KEYS));
+            Assert.assertEquals(NUM_KEYS, oak.snapshot(file));
+        }
+
+        try (OakMap<String, String> restored = getBuilder().restore(file)) {
+            checkRestored(restored, NUM_KEYS);
+
+            // the restored map is fully functional
+            for (int i = 0; i < NUM_KEYS; i += 2) {
+                restored.remove(key(i));
+            }
+            for (int i = NUM_KEYS; i < 2 * NUM_KEYS; i++) {
+                restored.put(key(i), value(i, 1));
+            }
+            Assert.assertEquals(NUM_KEYS / 2 + NUM_KEYS, restored.size());
+            Assert.assertNull(restored.get(key(0)));
+            Assert.assertEquals(value(1, 0), restored.get(key(1)));
+            Assert.assertEquals(value(NUM_KEYS, 1), restored.get(key(NUM_KEYS)));
+            Assert.assertEquals(key(2 * NUM_KEYS - 1), restored.lastKey());
+        }
+    }
+
+    @Test
+    public void testEmptyAndLargeEntries() throws IOException {
+        try (OakMap<String, String> oak = getBuilder().buildOrderedMap()) {
+            Assert.assertEquals(0, oak.snapshot(file));
+        }
+        try (OakMap<String, String> restored = getBuilder().restore(file)) {
+            Assert.assertEquals(0, restored.size());
+        }
+
+        char[] chars = new char[LARGE_VALUE_LENGTH];
+        Arrays.fill(chars, 'x');
+        String largeValue = new String(chars);
+        try (OakMap<String, String> oak = getBuilder().buildOrderedMap()) {
+            oak.put(key(0), value(0, 0));
+            oak.put(key(1), largeValue);
+            oak.put(key(2), value(2, 0));
+            Assert.assertEquals(3, oak.snapshot(file));
+        }
+        try (OakMap<String, String> restored = getBuilder().restore(file)) {
+            Assert.assertEquals(3, restored.size());
+            Assert.assertEquals(value(0, 0), restored.get(key(0)));
+            Assert.assertEquals(largeValue, restored.get(key(1)));
+            Assert.assertEquals(value(2, 0), restored.get(key(2)));
+        }
+    }
+
+    @Test
+    public void testSnapshotConcurrentlyWithUpdates() throws IOException, InterruptedException {
+        try (OakMap<String, String> oak = getBuilder().buildOrderedMap()) {
+            for (int i = 0; i < NUM_KEYS; i++) {
+                oak.put(key(i), value(i, 0));
+            }
+            AtomicBoolean done = new AtomicBoolean(false);
+            Thread updater = new Thread(() -> {
+                for (int version = 1; !done.get(); version++) {
+                    for (int i = 0; i < NUM_KEYS && !done.get(); i++) {
+                        oak.put(key(i), value(i, version));
+                    }
+                }
+            });
+            updater.start();
+            try {
+                Assert.assertEquals(NUM_KEYS, oak.snapshot(file));
+            } finally {
+                done.set(true);
+                updater.join();
+            }
+        }
+
+        try (OakMap<String, String> restored = getBuilder().restore(file)) {
+            Assert.assertEquals(NUM_KEYS, restored.size());
+            int i = 0;
+            for (Map.Entry<String, String> entry : restored.entrySet()) {
+                Assert.assertEquals(key(i), entry.getKey());
+                // each value is written consistently, either before or after its update
+                String value = entry.getValue();
+                String suffix = value.substring(String.valueOf(i).length());
+                int version = suffix.isEmpty() ? 0 : suffix.charAt(0) - 'a';
+                Assert.assertEquals(value(i, version), value);
+                i++;
+            }
+            Assert.assertEquals(NUM_KEYS, i);
+        }
+    }
+
+    @Test
+    public void testTruncatedSnapshot() throws IOException {
+        try (OakMap<String, String> oak = getBuilder().buildOrderedMap()) {
+            for (int i = 0; i < NUM_KEYS; i++) {
+                oak.put(key(i), value(i, 0));
+            }
+            oak.snapshot(file);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        try {
+            getBuilder().restore(file).close();
+            Assert.fail("A truncated snapshot was restored");
+        } catch (IOException e) {
+            // expected
+        }
+
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+        try {
+            getBuilder().restore(file).close();
+            Assert.fail("An invalid snapshot was restored");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        try (OakMap<String, String> oak = getBuilder().buildOrderedMap()) {
+            for (int i = 0; i < NUM_KEYS; i++) {
+                oak.put(key(i), value(i, 0));
+            }
+            oak.snapshot(file);
+        }
+    }
+
+    private void assertNotRestored(String message) {
+        try {
+            getBuilder().restore(file).close();
+            Assert.fail(message);
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    // overwrites the int at the given position of the snapshot
+    private void putInt(long position, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.nativeOrder());
+            buffer.putInt(value).flip();
+            channel.write(buffer, position);
+        }
+    }
+
+    @Test
+    public void testCorruptedSnapshot() throws IOException {
+        // the first entry follows the header (of a long and an int)
+        final long firstEntry = Long.BYTES + Integer.BYTES;
+        writeSnapshot();
+        long size = Files.size(file);
+
+        // a flipped byte of a value
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[(int) (size / 2)] ^= 1;
+        Files.write(file, bytes);
+        assertNotRestored("A corrupted snapshot was restored");
+
+        // an entry whose lengths exceed the snapshot (and would overflow an int if summed as ints)
+        writeSnapshot();
+        putInt(firstEntry, Integer.MAX_VALUE);
+        putInt(firstEntry + Integer.BYTES, Integer.MAX_VALUE);
+        assertNotRestored("An entry larger than the snapshot was restored");
+
+        writeSnapshot();
+        putInt(firstEntry + Integer.BYTES, -2);
+        assertNotRestored("An entry with a negative length was restored");
+
+        // the snapshot is restored once it is intact
+        writeSnapshot();
+        try (OakMap<String, String> restored = getBuilder().restore(file)) {
+            checkRestored(restored, NUM_KEYS);
+        }
+    }
+}
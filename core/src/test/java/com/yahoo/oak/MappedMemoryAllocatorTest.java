@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class MappedMemoryAllocatorTest {
+    private static final int BLOCK_SIZE = (int) BlocksPool.MB;
+    private static final MemoryManager VALUE_MEMORY_MANAGER = new SyncRecycleMemoryManager(null);
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("oak-mapped-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(directory);
+    }
+
+    private int numOfFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return (int) files.count();
+        }
+    }
+
+    private BlockAllocationSlice allocate(BlockMemoryAllocator allocator, int size) {
+        BlockAllocationSlice s = (BlockAllocationSlice) VALUE_MEMORY_MANAGER.getEmptySlice();
+        allocator.allocate(s, size);
+        return s;
+    }
+
+    @Test
+    public void testBlocksAreMappedInFiles() throws IOException {
+        MappedMemoryAllocator allocator = new MappedMemoryAllocator(BLOCK_SIZE * 8L,
+            Arrays.asList(directory, directory), BLOCK_SIZE);
+        MappedBlocksProvider provider = allocator.getMappedBlocksProvider();
+        Assert.assertEquals(2, numOfFiles());
+        Assert.assertEquals(1, provider.numOfMappedBlocks());
+
+        // the blocks are mapped in turns at the ends of the files
+        List<BlockAllocationSlice> slices = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            BlockAllocationSlice s = allocate(allocator, BLOCK_SIZE / 2 + 1);
+            UnsafeUtils.UNSAFE.setMemory(s.getMetadataAddress(), s.getAllocatedLength(), (byte) i);
+            slices.add(s);
+        }
+        Assert.assertEquals(4, provider.numOfMappedBlocks());
+        for (Path file : provider.getFiles()) {
+            Assert.assertEquals(2L * BLOCK_SIZE, Files.size(file));
+        }
+        for (int i = 0; i < slices.size(); i++) {
+            BlockAllocationSlice s = slices.get(i);
+            Assert.assertEquals((byte) i, UnsafeUtils.UNSAFE.getByte(s.getMetadataAddress()));
+            Assert.assertEquals((byte) i, UnsafeUtils.UNSAFE.getByte(s.getMetadataAddress() + BLOCK_SIZE / 2));
+        }
+
+        allocator.close();
+        Assert.assertEquals(0, numOfFiles());
+    }
+
+    @Test(expected = OakOutOfMemoryException.class)
+    public void testCapacityIsEnforced() {
+        MappedMemoryAllocator allocator = new MappedMemoryAllocator(BLOCK_SIZE * 2L,
+            Arrays.asList(directory), BLOCK_SIZE);
+        try {
+            for (int i = 0; i < 4; i++) {
+                allocate(allocator, BLOCK_SIZE);
+            }
+        } finally {
+            allocator.close();
+        }
+    }
+
+    @Test
+    public void testMapOnMappedFiles() throws IOException {
+        OakMap<Integer, Integer> oak = OakCommonBuildersFactory.getDefaultIntBuilder()
+            .setPreferredBlockSize(BLOCK_SIZE)
+            .setMappedFilesDirectories(directory)
+            .buildOrderedMap();
+        try {
+            Assert.assertEquals(1, numOfFiles());
+            for (int i = 0; i < 100_000; i++) {
+                oak.put(i, i);
+            }
+            for (int i = 0; i < 100_000; i++) {
+                Assert.assertEquals(Integer.valueOf(i), oak.get(i));
+            }
+        } finally {
+            oak.close();
+        }
+        Assert.assertEquals(0, numOfFiles());
+    }
+
+    @Test
+    public void testSizeClassAllocationIsRejected() throws IOException {
+        try {
+            OakCommonBuildersFactory.getDefaultIntBuilder()
+                .setMappedFilesDirectories(directory)
+                .setSizeClassAllocation(true)
+                .buildOrderedMap();
+            Assert.fail("Size class allocation on mapped files should be rejected");
+        } catch (IllegalStateException expected) {
+            // the builder is validated before any file is created
+        }
+        Assert.assertEquals(0, numOfFiles());
+    }
+
+    @Test
+    public void testFailedPreconditionsCreateNoFiles() throws IOException {
+        try {
+            OakCommonBuildersFactory.getDefaultIntBuilder()
+                .setMappedFilesDirectories(directory)
+                .setMemoryCompactionInterval(10)
+                .buildHashMap();
+            Assert.fail("Memory compaction without deferred reclamation should be rejected");
+        } catch (IllegalStateException expected) {
+            // the builder is validated before any file is created
+        }
+        Assert.assertEquals(0, numOfFiles());
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class MemoryCompactionTest {
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int NUM_KEYS = 20_000;
+    private static final int VALUE_LENGTH = 512;
+    private static final int KEPT_KEYS_RATIO = 10; // one of every KEPT_KEYS_RATIO keys is not removed
+    private static final int NUM_COMPACTIONS = 3;
+    private static final long BACKGROUND_COMPACTION_INTERVAL_MILLIS = 10;
+    private static final long BACKGROUND_COMPACTION_TIMEOUT_MILLIS = 10_000;
+
+    private NativeMemoryAllocator allocator;
+
+    @Before
+    public void init() {
+        BlocksPool.setBlockSize(BLOCK_SIZE);
+        allocator = new NativeMemoryAllocator(Integer.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() {
+        BlocksPool.setBlockSize(BlocksPool.DEFAULT_BLOCK_SIZE_BYTES);
+    }
+
+    private OakMapBuilder<String, String> getBuilder() {
+        return OakCommonBuildersFactory.getDefaultStringBuilder()
+            .setMemoryAllocator(allocator)
+            .setReclaimKeys(true)
+            .setLockFreeValueReads(true);
+    }
+
+    private static String key(int i) {
+        return String.format("%08d", i);
+    }
+
+    private static String value(int i) {
+        char[] chars = new char[VALUE_LENGTH];
+        Arrays.fill(chars, (char) ('a' + i % 26));
+        return new String(chars);
+    }
+
+    // Fills the map and removes most of its keys, returns the number of blocks before the removal
+    private int fillAndPurge(ConcurrentZCMap<String, String> oak) {
+        for (int i = 0; i < NUM_KEYS; i++) {
+            oak.zc().put(key(i), value(i));
+        }
+        int numOfBlocks = allocator.numOfAllocatedBlocks();
+        for (int i = 0; i < NUM_KEYS; i++) {
+            if (i % KEPT_KEYS_RATIO != 0) {
+                oak.zc().remove(key(i));
+            }
+        }
+        return numOfBlocks;
+    }
+
+    private void checkKeptKeys(ConcurrentZCMap<String, String> oak) {
+        for (int i = 0; i < NUM_KEYS; i++) {
+            String value = oak.get(key(i));
+            if (i % KEPT_KEYS_RATIO == 0) {
+                Assert.assertEquals(value(i), value);
+            } else {
+                Assert.assertNull(key(i), value);
+            }
+        }
+        Assert.assertEquals(NUM_KEYS / KEPT_KEYS_RATIO, oak.size());
+    }
+
+    private void checkCompaction(ConcurrentZCMap<String, String> oak, Runnable compaction)
+        throws InterruptedException {
+        int numOfBlocks = fillAndPurge(oak);
+
+        // the values are read concurrently with their relocation
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicReference<String> error = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            for (int i = 0; !done.get(); i = (i + KEPT_KEYS_RATIO) % NUM_KEYS) {
+                String value = oak.get(key(i));
+                if (!value(i).equals(value)) {
+                    error.compareAndSet(null, key(i) + " -> " + value);
+                }
+            }
+        });
+        reader.start();
+        try {
+            compaction.run();
+        } finally {
+            done.set(true);
+            reader.join();
+        }
+
+        Assert.assertNull(error.get());
+        // the relocated keys and values that the reader might still have accessed were not reclaimed yet
+        // (depending on the scheduling), so they are reclaimed by compactions once the reader is done
+        compact(oak);
+        checkKeptKeys(oak);
+        Assert.assertTrue("blocks before purge: " + numOfBlocks + ", after compaction: "
+            + allocator.numOfAllocatedBlocks(), allocator.numOfAllocatedBlocks() < numOfBlocks / 2);
+    }
+
+    private void compact(ConcurrentZCMap<String, String> oak) {
+        // the first compaction reclaims the removed values, the next ones evacuate the sparse blocks,
+        // and reclaim the relocated keys and values
+        for (int i = 0; i < NUM_COMPACTIONS; i++) {
+            if (oak instanceof OakMap) {
+                ((OakMap<String, String>) oak).compactMemory(MemoryCompactor.DEFAULT_MIN_RELEASED_RATIO);
+            } else {
+                ((OakHashMap<String, String>) oak).compactMemory(MemoryCompactor.DEFAULT_MIN_RELEASED_RATIO);
+            }
+        }
+    }
+
+    @Test
+    public void testOrderedMapCompaction() throws InterruptedException {
+        OakMap<String, String> oak = getBuilder().buildOrderedMap();
+        try {
+            checkCompaction(oak, () -> compact(oak));
+            // the map is still usable
+            oak.put(key(1), value(1));
+            Assert.assertEquals(value(1), oak.get(key(1)));
+        } finally {
+            oak.close();
+        }
+    }
+
+    @Test
+    public void testHashMapCompaction() throws InterruptedException {
+        OakHashMap<String, String> oak = getBuilder().buildHashMap();
+        try {
+            checkCompaction(oak, () -> compact(oak));
+            oak.put(key(1), value(1));
+            Assert.assertEquals(value(1), oak.get(key(1)));
+        } finally {
+            oak.close();
+        }
+    }
+
+    @Test
+    public void testEvacuatedBlocksAreReturnedToPool() {
+        OakMap<String, String> oak = getBuilder().buildOrderedMap();
+        try {
+            fillAndPurge(oak);
+            int numOfBlocks = allocator.numOfAllocatedBlocks();
+            int numOfPoolBlocks = BlocksPool.getInstance().numOfRemainingBlocks();
+            compact(oak);
+            int numOfReturned = numOfBlocks - allocator.numOfAllocatedBlocks();
+            Assert.assertTrue(numOfReturned > 0);
+            // the pool keeps the returned blocks up to its reserve, the rest are released
+            Assert.assertTrue(BlocksPool.getInstance().numOfRemainingBlocks() > numOfPoolBlocks);
+        } finally {
+            oak.close();
+        }
+    }
+
+    @Test
+    public void testBackgroundCompaction() throws InterruptedException {
+        OakMap<String, String> oak = getBuilder().buildOrderedMap();
+        try {
+            checkCompaction(oak, () -> {
+                // started once the map is purged, so the size is not affected by rebalances concurrent with updates
+                oak.startMemoryCompaction(BACKGROUND_COMPACTION_INTERVAL_MILLIS);
+                long start = System.currentTimeMillis();
+                while (allocator.numOfAllocatedBlocks() > NUM_KEYS / KEPT_KEYS_RATIO * VALUE_LENGTH / BLOCK_SIZE + 2
+                    && System.currentTimeMillis() - start < BACKGROUND_COMPACTION_TIMEOUT_MILLIS) {
+                    Thread.yield();
+                }
+            });
+        } finally {
+            oak.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCompactionRequiresDeferredReclamation() {
+        OakCommonBuildersFactory.getDefaultStringBuilder()
+            .setMemoryAllocator(allocator)
+            .setMemoryCompactionInterval(10)
+            .buildOrderedMap();
+    }
+}
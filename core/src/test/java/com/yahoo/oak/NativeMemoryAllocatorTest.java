@@ -18,6 +18,7 @@ import org.mockito.Mockito;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
 import java.util.stream.Collectors;
@@ -330,4 +331,260 @@ public class NativeMemoryAllocatorTest {
         // We lost 4 bytes recycling an 8-byte buffer for a 4-byte allocation
         Assert.assertEquals(bytesAllocated - 4, stats.reclaimedBytes);
     }
+
+    @Test
+    public void threadBufferAllocation() {
+        int blockSize = BlocksPool.getInstance().blockSize();
+        NativeMemoryAllocator ma = new NativeMemoryAllocator(blockSize * 3L, BlocksPool.getInstance(), true);
+
+        // the first allocation grabs a buffer, the next ones do not bump the block
+        BlockAllocationSlice bb = allocate(ma, 4);
+        Assert.assertEquals(4, bb.getAllocatedLength());
+        Assert.assertEquals(NativeMemoryAllocator.THREAD_BUFFER_SIZE,
+                ma.getCurrentBlock().allocatedWithPossibleDelta());
+        BlockAllocationSlice bb1 = allocate(ma, 8);
+        Assert.assertEquals(bb.getAllocatedOffset() + 4, bb1.getAllocatedOffset());
+        Assert.assertEquals(NativeMemoryAllocator.THREAD_BUFFER_SIZE,
+                ma.getCurrentBlock().allocatedWithPossibleDelta());
+        Assert.assertEquals(12, ma.allocated());
+
+        // a large allocation is bumped directly in the block
+        BlockAllocationSlice bb2 = allocate(ma, NativeMemoryAllocator.THREAD_BUFFER_MAX_ALLOCATION + 1);
+        Assert.assertEquals(NativeMemoryAllocator.THREAD_BUFFER_SIZE, bb2.getAllocatedOffset());
+        Assert.assertEquals(12 + NativeMemoryAllocator.THREAD_BUFFER_MAX_ALLOCATION + 1, ma.allocated());
+
+        ma.close();
+    }
+
+    @Test
+    public void threadBufferRemainderIsReturnedToBlock() {
+        int blockSize = BlocksPool.getInstance().blockSize();
+        NativeMemoryAllocator ma = new NativeMemoryAllocator(blockSize * 3L, BlocksPool.getInstance(), true);
+        int maxSize = NativeMemoryAllocator.THREAD_BUFFER_MAX_ALLOCATION;
+        int allocationsPerBuffer = NativeMemoryAllocator.THREAD_BUFFER_SIZE / maxSize;
+
+        BlockAllocationSlice bb = allocate(ma, 4);
+        int expectedOffset = bb.getAllocatedOffset() + 4;
+        for (int i = 0; i < allocationsPerBuffer - 1; i++) {
+            bb = allocate(ma, maxSize);
+            Assert.assertEquals(expectedOffset, bb.getAllocatedOffset());
+            expectedOffset += maxSize;
+        }
+
+        // the buffer remainder is too short, and it is returned to the block before the next buffer is grabbed
+        bb = allocate(ma, maxSize);
+        Assert.assertEquals(expectedOffset, bb.getAllocatedOffset());
+        Assert.assertEquals(expectedOffset + NativeMemoryAllocator.THREAD_BUFFER_SIZE,
+                ma.getCurrentBlock().allocatedWithPossibleDelta());
+        Assert.assertEquals(4 + (long) allocationsPerBuffer * maxSize, ma.allocated());
+
+        ma.close();
+    }
+
+    @Test
+    public void threadBuffersDoNotOverlap() throws InterruptedException {
+        int blockSize = BlocksPool.getInstance().blockSize();
+        NativeMemoryAllocator ma = new NativeMemoryAllocator(blockSize * 3L, BlocksPool.getInstance(), true);
+        int allocationsPerThread = 10_000;
+        int allocationSize = 24;
+
+        List<BlockAllocationSlice> slices = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < NUM_THREADS; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < allocationsPerThread; i++) {
+                    slices.add(allocate(ma, allocationSize));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals((long) NUM_THREADS * allocationsPerThread * allocationSize, ma.allocated());
+        slices.sort(Comparator.comparingInt(BlockAllocationSlice::getAllocatedBlockID)
+                .thenComparingInt(BlockAllocationSlice::getAllocatedOffset));
+        for (int i = 1; i < slices.size(); i++) {
+            BlockAllocationSlice prev = slices.get(i - 1);
+            BlockAllocationSlice cur = slices.get(i);
+            Assert.assertTrue(prev.getAllocatedBlockID() != cur.getAllocatedBlockID()
+                    || prev.getAllocatedOffset() + allocationSize <= cur.getAllocatedOffset());
+        }
+
+        ma.close();
+    }
+
+    @Test
+    public void sparseBlocksAreEvacuated() {
+        int blockSize = BlocksPool.getInstance().blockSize();
+        NativeMemoryAllocator ma = new NativeMemoryAllocator(blockSize * 3L);
+        int allocationSize = blockSize / 4;
+
+        // fill the first block, the last allocation is bumped in the second (current) block
+        List<BlockAllocationSlice> slices = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            slices.add(allocate(ma, allocationSize));
+        }
+        Assert.assertEquals(2, ma.numOfAllocatedBlocks());
+        BlockAllocationSlice kept = slices.get(0);
+        for (int i = 1; i < 4; i++) {
+            ma.free(slices.get(i));
+        }
+
+        // the current block is never evacuated
+        Assert.assertEquals(1, ma.evacuateSparseBlocks(0.5));
+        Assert.assertTrue(ma.isEvacuated(kept));
+        Assert.assertFalse(ma.isEvacuated(slices.get(4)));
+
+        // the released cuts of an evacuated block are not reused, and it is returned once it is empty
+        BlockAllocationSlice bb = allocate(ma, allocationSize);
+        Assert.assertNotEquals(kept.getAllocatedBlockID(), bb.getAllocatedBlockID());
+        ma.free(kept);
+        Assert.assertEquals(1, ma.numOfAllocatedBlocks());
+        Assert.assertEquals(0, ma.evacuateSparseBlocks(0.5));
+
+        ma.close();
+    }
+
+    @Test
+    public void freeSlicesAreSplitAndMerged() {
+        int blockSize = BlocksPool.getInstance().blockSize();
+        NativeMemoryAllocator ma = new NativeMemoryAllocator(blockSize * 3L, BlocksPool.getInstance(), false, true);
+        BlockAllocationSlice bb4 = allocate(ma, 4);
+        BlockAllocationSlice bb16 = allocate(ma, 16);
+        BlockAllocationSlice bb8 = allocate(ma, 8);
+        allocate(ma, 32);
+
+        // the address-adjacent released slices are merged, regardless of the order of their release
+        ma.free(bb16);
+        ma.free(bb8);
+        Assert.assertEquals(1, ma.getFreeListLength());
+        ma.free(bb4);
+        Assert.assertEquals(1, ma.getFreeListLength());
+        Assert.assertEquals(32, ma.allocated());
+
+        // the merged slice is split upon reuse, and its remainder is reused as well
+        BlockAllocationSlice bb = allocate(ma, 10);
+        Assert.assertEquals(bb4.getAllocatedOffset(), bb.getAllocatedOffset());
+        Assert.assertEquals(10, bb.getAllocatedLength());
+        Assert.assertEquals(1, ma.getFreeListLength());
+        bb = allocate(ma, 18);
+        Assert.assertEquals(bb4.getAllocatedOffset() + 10, bb.getAllocatedOffset());
+        Assert.assertEquals(18, bb.getAllocatedLength());
+        Assert.assertEquals(0, ma.getFreeListLength());
+        Assert.assertEquals(60, ma.allocated());
+        Assert.assertEquals(60, ma.reserved());
+
+        ma.close();
+    }
+
+    // Allocates and releases slices of random sizes, and returns the fragmentation ratio of the allocator
+    private double fragmentationRatioAfterChurn(NativeMemoryAllocator ma) {
+        Random random = new Random(0);
+        List<BlockAllocationSlice> live = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            live.add(allocate(ma, 16 + random.nextInt(1024)));
+            if (live.size() > 1000) {
+                ma.free(live.remove(random.nextInt(live.size())));
+            }
+        }
+        return 1 - (double) ma.allocated() / ma.reserved();
+    }
+
+    @Test
+    public void splittingAndMergingReduceFragmentation() {
+        int blockSize = BlocksPool.getInstance().blockSize();
+        NativeMemoryAllocator plain = new NativeMemoryAllocator(blockSize * 3L, BlocksPool.getInstance(), false, false);
+        NativeMemoryAllocator split = new NativeMemoryAllocator(blockSize * 3L, BlocksPool.getInstance(), false, true);
+        double plainRatio = fragmentationRatioAfterChurn(plain);
+        double splitRatio = fragmentationRatioAfterChurn(split);
+        Assert.assertTrue("fragmentation without splitting: " + plainRatio + ", with splitting: " + splitRatio,
+                splitRatio < plainRatio);
+        Assert.assertTrue(split.reserved() < plain.reserved());
+
+        plain.close();
+        split.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void freeSliceCoalescingRequiresLockFreeValueReads() {
+        // a merged slice may cover the header of a released value, which the locking reads still check
+        OakCommonBuildersFactory.getDefaultIntBuilder()
+                .setFreeSliceCoalescing(true)
+                .buildOrderedMap();
+    }
+
+    @Test
+    public void freeSliceCoalescingWithLockFreeValueReads() {
+        OakMap<Integer, Integer> oak = OakCommonBuildersFactory.getDefaultIntBuilder()
+                .setFreeSliceCoalescing(true)
+                .setLockFreeValueReads(true)
+                .buildOrderedMap();
+        try {
+            for (int i = 0; i < 1000; i++) {
+                oak.put(i, i);
+            }
+            for (int i = 0; i < 1000; i += 2) {
+                oak.remove(i);
+            }
+            for (int i = 0; i < 1000; i++) {
+                Assert.assertEquals(i % 2 == 0 ? null : Integer.valueOf(i), oak.get(i));
+            }
+        } finally {
+            oak.close();
+        }
+    }
+
+    @Test
+    public void blocksPoolPreAllocation() {
+        int blockSize = (int) BlocksPool.MB;
+        BlocksPool pool = new BlocksPool(
+                new BlocksPool.Config(blockSize, 3 * BlocksPool.MB, 0, 4 * BlocksPool.MB, true));
+        Assert.assertEquals(blockSize, pool.blockSize());
+        Assert.assertEquals(3, pool.numOfRemainingBlocks());
+
+        // the pre-allocated blocks are used first, and they are kept once they are returned (up to the threshold)
+        NativeMemoryAllocator ma = new NativeMemoryAllocator(blockSize * 10L, pool);
+        Assert.assertEquals(2, pool.numOfRemainingBlocks());
+        ma.close();
+        Assert.assertEquals(3, pool.numOfRemainingBlocks());
+        Block b = pool.getBlock();
+        Assert.assertEquals(2, pool.numOfRemainingBlocks());
+        pool.returnBlock(b);
+        pool.close();
+    }
+
+    @Test
+    public void mapsWithDifferentBlockSizes() {
+        // the shared pool is initialized beforehand, so its block size is not the preferred block size of the maps
+        BlocksPool.getInstance();
+        BlocksPool.Config config = new BlocksPool.Config((int) BlocksPool.MB, 2 * BlocksPool.MB,
+                BlocksPool.DEFAULT_LOW_RESERVED_SIZE_BYTES, BlocksPool.DEFAULT_HIGH_RESERVED_SIZE_BYTES, false);
+        OakMap<Integer, Integer> small = OakCommonBuildersFactory.getDefaultIntBuilder()
+                .setPreferredBlockSize((int) BlocksPool.MB)
+                .setBlocksPoolPreAllocation(2 * BlocksPool.MB)
+                .buildOrderedMap();
+        OakMap<Integer, Integer> large = OakCommonBuildersFactory.getDefaultIntBuilder()
+                .setPreferredBlockSize(2 * (int) BlocksPool.MB)
+                .buildOrderedMap();
+        try {
+            // the pools of the different configurations coexist, and the maps of the same configuration share a pool
+            BlocksPool pool = BlocksPool.getInstance(config);
+            Assert.assertSame(pool, BlocksPool.getInstance(config));
+            Assert.assertNotSame(pool, BlocksPool.getInstance());
+            for (int i = 0; i < 10_000; i++) {
+                small.put(i, i);
+                large.put(i, -i);
+            }
+            for (int i = 0; i < 10_000; i++) {
+                Assert.assertEquals(Integer.valueOf(i), small.get(i));
+                Assert.assertEquals(Integer.valueOf(-i), large.get(i));
+            }
+        } finally {
+            small.close();
+            large.close();
+        }
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OakBufferBytesTest {
+    private static final byte[] BYTES = {1, 2, 3, 4, 5, 6, 7, 8, 9, (byte) 0xff};
+
+    private SeqExpandMemoryManager memoryManager;
+    private KeyBuffer buffer;
+
+    @Before
+    public void setUp() {
+        memoryManager = new SeqExpandMemoryManager(new NativeMemoryAllocator(128 * 1024 * 1024));
+        // the serialized array: its length (an int) followed by its bytes
+        buffer = new KeyBuffer(memoryManager.getEmptySlice());
+        OakSerializer<byte[]> serializer = OakCommonBuildersFactory.DEFAULT_BYTES_SERIALIZER;
+        buffer.getSlice().allocate(serializer.calculateSize(BYTES), false);
+        ScopedWriteBuffer.serialize(buffer.getSlice(), BYTES, serializer);
+    }
+
+    @After
+    public void tearDown() {
+        memoryManager.close();
+    }
+
+    private static void assertOutOfBounds(Runnable access) {
+        try {
+            access.run();
+            Assert.fail("An access out of bounds was not rejected");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAccesses() {
+        byte[] copy = new byte[BYTES.length];
+        OakBufferBytes.copy(buffer, Integer.BYTES, copy, 0, BYTES.length);
+        Assert.assertArrayEquals(BYTES, copy);
+
+        Assert.assertEquals(0, OakBufferBytes.compare(BYTES, 0, BYTES.length, buffer, Integer.BYTES, BYTES.length));
+        Assert.assertEquals(0, OakBufferBytes.compare(buffer, Integer.BYTES, BYTES.length,
+            buffer, Integer.BYTES, BYTES.length));
+        // a proper prefix precedes the sequence, and the bytes are compared as unsigned values
+        Assert.assertTrue(OakBufferBytes.compare(BYTES, 0, 9, buffer, Integer.BYTES, BYTES.length) < 0);
+        Assert.assertTrue(OakBufferBytes.compare(BYTES, 9, 1, BYTES, 0, 1) > 0);
+
+        Assert.assertEquals(0x0102030405060708L, OakBufferBytes.getPrefix(buffer, Integer.BYTES, BYTES.length));
+        Assert.assertEquals(0x0102000000000000L, OakBufferBytes.getPrefix(BYTES, 0, 2));
+    }
+
+    @Test
+    public void testOutOfBoundsAccesses() {
+        int capacity = buffer.capacity();
+        byte[] copy = new byte[BYTES.length];
+        assertOutOfBounds(() -> OakBufferBytes.copy(buffer, Integer.BYTES + 1, copy, 0, BYTES.length));
+        assertOutOfBounds(() -> OakBufferBytes.copy(buffer, -1, copy, 0, 1));
+        assertOutOfBounds(() -> OakBufferBytes.copy(buffer, 0, copy, 1, BYTES.length));
+        assertOutOfBounds(() -> OakBufferBytes.compare(BYTES, 0, BYTES.length, buffer, 0, capacity + 1));
+        assertOutOfBounds(() -> OakBufferBytes.compare(buffer, 0, -1, buffer, 0, 1));
+        assertOutOfBounds(() -> OakBufferBytes.compare(BYTES, 1, BYTES.length, BYTES, 0, 1));
+        assertOutOfBounds(() -> OakBufferBytes.getPrefix(buffer, capacity, 1));
+        // an overflowing range is rejected as well
+        assertOutOfBounds(() -> OakBufferBytes.getPrefix(buffer, 1, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testOutOfBoundsCopyIntoBuffer() {
+        // a serializer that writes past its buffer
+        OakSerializer<byte[]> serializer = new OakSerializer<byte[]>() {
+            @Override
+            public void serialize(byte[] object, OakScopedWriteBuffer targetBuffer) {
+                OakBufferBytes.copy(object, 0, targetBuffer, 1, object.length);
+            }
+
+            @Override
+            public byte[] deserialize(OakScopedReadBuffer byteBuffer) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int calculateSize(byte[] object) {
+                return object.length;
+            }
+        };
+        KeyBuffer target = new KeyBuffer(memoryManager.getEmptySlice());
+        target.getSlice().allocate(BYTES.length, false);
+        assertOutOfBounds(() -> ScopedWriteBuffer.serialize(target.getSlice(), BYTES, serializer));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class OakBytesComparatorTest {
+    private static final int NUM_KEYS = 4_000;
+    private static final int CHUNK_MAX_ITEMS = 64;
+
+    // the lexicographic order of the unsigned bytes, compared one by one
+    private static final Comparator<byte[]> BYTE_BY_BYTE = (key1, key2) -> {
+        int minLength = Math.min(key1.length, key2.length);
+        for (int i = 0; i < minLength; i++) {
+            int cmp = Integer.compare(key1[i] & 0xff, key2[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(key1.length, key2.length);
+    };
+
+    /*
+     * Many keys share their first bytes (so they differ within a word, or only in their tail bytes), some are
+     * shorter than a word, and their bytes are both positive and negative.
+     */
+    private static List<byte[]> getKeys() {
+        Random random = new Random(0);
+        byte[][] stems = new byte[8][];
+        for (int i = 0; i < stems.length; i++) {
+            stems[i] = new byte[random.nextInt(20)];
+            random.nextBytes(stems[i]);
+        }
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < NUM_KEYS; i++) {
+            byte[] stem = stems[random.nextInt(stems.length)];
+            byte[] key = Arrays.copyOf(stem, stem.length + random.nextInt(12));
+            for (int j = stem.length; j < key.length; j++) {
+                key[j] = (byte) (random.nextInt(4) - 2);
+            }
+            if (key.length > 0 && random.nextBoolean()) {
+                key[random.nextInt(key.length)] ^= (byte) 0x80;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    @Test
+    public void testCompareKeys() {
+        OakComparator<byte[]> comparator = OakCommonBuildersFactory.DEFAULT_BYTES_COMPARATOR;
+        List<byte[]> keys = getKeys();
+        for (int i = 1; i < keys.size(); i++) {
+            byte[] key1 = keys.get(i - 1);
+            byte[] key2 = keys.get(i);
+            int cmp = BYTE_BY_BYTE.compare(key1, key2);
+            Assert.assertEquals(Integer.signum(cmp), Integer.signum(comparator.compareKeys(key1, key2)));
+            Assert.assertEquals(Integer.signum(-cmp), Integer.signum(comparator.compareKeys(key2, key1)));
+            Assert.assertEquals(0, comparator.compareKeys(key1, key1.clone()));
+
+            // the prefixes may tie for different keys, but they are never ordered differently than the keys
+            int prefixCmp = Long.compare(comparator.getKeyPrefix(key1), comparator.getKeyPrefix(key2));
+            if (cmp == 0 || prefixCmp != 0) {
+                Assert.assertEquals(Integer.signum(cmp), prefixCmp);
+            }
+        }
+    }
+
+    @Test
+    public void testOrderedMap() {
+        TreeMap<byte[], byte[]> expected = new TreeMap<>(BYTE_BY_BYTE);
+        try (OakMap<byte[], byte[]> oak = OakCommonBuildersFactory.getDefaultBytesBuilder()
+            .setChunkMaxItems(CHUNK_MAX_ITEMS).buildOrderedMap()) {
+            for (byte[] key : getKeys()) {
+                byte[] value = Arrays.copyOf(key, key.length + 1);
+                oak.zc().put(key, value);
+                expected.put(key, value);
+            }
+            Assert.assertEquals(expected.size(), oak.size());
+
+            Iterator<Map.Entry<byte[], byte[]>> expectedEntries = expected.entrySet().iterator();
+            for (Map.Entry<byte[], byte[]> entry : oak.entrySet()) {
+                Map.Entry<byte[], byte[]> expectedEntry = expectedEntries.next();
+                Assert.assertArrayEquals(expectedEntry.getKey(), entry.getKey());
+                Assert.assertArrayEquals(expectedEntry.getValue(), entry.getValue());
+            }
+            Assert.assertFalse(expectedEntries.hasNext());
+
+            for (Map.Entry<byte[], byte[]> entry : expected.entrySet()) {
+                Assert.assertArrayEquals(entry.getValue(), oak.get(entry.getKey().clone()));
+            }
+            // longer than any of the keys
+            byte[] absent = new byte[40];
+            Arrays.fill(absent, (byte) 0x55);
+            Assert.assertFalse(expected.containsKey(absent));
+            Assert.assertNull(oak.get(absent));
+        }
+    }
+
+    @Test
+    public void testHashMap() {
+        TreeMap<byte[], byte[]> expected = new TreeMap<>(BYTE_BY_BYTE);
+        try (OakHashMap<byte[], byte[]> oak = OakCommonBuildersFactory.getDefaultBytesBuilder().buildHashMap()) {
+            for (byte[] key : getKeys()) {
+                oak.zc().put(key, key);
+                expected.put(key, key);
+            }
+            Assert.assertEquals(expected.size(), oak.size());
+            for (byte[] key : expected.keySet()) {
+                Assert.assertArrayEquals(key, oak.get(key.clone()));
+            }
+        }
+    }
+}
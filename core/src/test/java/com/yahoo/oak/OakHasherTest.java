@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import com.yahoo.oak.common.intbuffer.OakIntBufferHasher;
+import com.yahoo.oak.common.intbuffer.OakIntBufferSerializer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class OakHasherTest {
+
+    private static final int NUM_KEYS = 1000;
+    private static final int INT_BUFFER_SIZE = 4;
+
+    private SeqExpandMemoryManager memoryManager;
+
+    @Before
+    public void setUp() {
+        memoryManager = new SeqExpandMemoryManager(new NativeMemoryAllocator(128 * 1024 * 1024));
+    }
+
+    @After
+    public void tearDown() {
+        memoryManager.close();
+    }
+
+    // the hash of a key must be the same as the hash of the serialized key
+    private <K> void assertSameHash(K key, OakSerializer<K> serializer, OakHasher<K> hasher) {
+        KeyBuffer serializedKey = new KeyBuffer(memoryManager.getEmptySlice());
+        serializedKey.getSlice().allocate(serializer.calculateSize(key), false);
+        ScopedWriteBuffer.serialize(serializedKey.getSlice(), key, serializer);
+        Assert.assertEquals(hasher.hash(key), hasher.hashSerialized(serializedKey));
+    }
+
+    @Test
+    public void testIntHasher() {
+        for (int i = -NUM_KEYS; i < NUM_KEYS; i++) {
+            assertSameHash(i, OakCommonBuildersFactory.DEFAULT_INT_SERIALIZER,
+                OakCommonBuildersFactory.DEFAULT_INT_HASHER);
+        }
+    }
+
+    @Test
+    public void testStringHasher() {
+        assertSameHash("", OakCommonBuildersFactory.DEFAULT_STRING_SERIALIZER,
+            OakCommonBuildersFactory.DEFAULT_STRING_HASHER);
+        for (int i = 0; i < NUM_KEYS; i++) {
+            String key = "key-" + i + "-\u05d0\u05d1";
+            assertSameHash(key, OakCommonBuildersFactory.DEFAULT_STRING_SERIALIZER,
+                OakCommonBuildersFactory.DEFAULT_STRING_HASHER);
+            Assert.assertEquals(key.hashCode(), OakCommonBuildersFactory.DEFAULT_STRING_HASHER.hash(key));
+        }
+    }
+
+    @Test
+    public void testIntBufferHasher() {
+        OakIntBufferSerializer serializer = new OakIntBufferSerializer(INT_BUFFER_SIZE);
+        OakIntBufferHasher hasher = new OakIntBufferHasher(INT_BUFFER_SIZE);
+        for (int i = 0; i < NUM_KEYS; i++) {
+            ByteBuffer key = ByteBuffer.allocate(serializer.getSizeBytes());
+            for (int j = 0; j < INT_BUFFER_SIZE; j++) {
+                key.putInt(j * Integer.BYTES, i * j);
+            }
+            assertSameHash(key, serializer, hasher);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class OakIntMapTest {
+    private static final int MISSING = Integer.MIN_VALUE;
+    // small chunks, so the chunks are rebalanced (split and merged) often
+    private static final int CHUNK_MAX_ITEMS = 16;
+    private static final int NUM_KEYS = 10_000;
+
+    private static void assertSameEntries(TreeMap<Integer, Integer> expected, OakIntMap oak) {
+        Assert.assertEquals(expected.size(), oak.size());
+        Iterator<Map.Entry<Integer, Integer>> expectedEntries = expected.entrySet().iterator();
+        oak.forEach((key, value) -> {
+            Map.Entry<Integer, Integer> entry = expectedEntries.next();
+            Assert.assertEquals((int) entry.getKey(), key);
+            Assert.assertEquals((int) entry.getValue(), value);
+        });
+        Assert.assertFalse(expectedEntries.hasNext());
+
+        PrimitiveIterator.OfInt keys = oak.keyIterator();
+        for (int key : expected.keySet()) {
+            Assert.assertEquals(key, keys.nextInt());
+        }
+        Assert.assertFalse(keys.hasNext());
+    }
+
+    @Test
+    public void testSingleThread() {
+        OakIntMap oak = new OakIntMap(MISSING, CHUNK_MAX_ITEMS);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        Assert.assertTrue(oak.isEmpty());
+        Assert.assertEquals(MISSING, oak.get(0));
+
+        Random random = new Random(0);
+        for (int i = 0; i < 20 * NUM_KEYS; i++) {
+            int key = random.nextInt(NUM_KEYS) - NUM_KEYS / 2;
+            int value = random.nextInt();
+            switch (random.nextInt(4)) {
+                case 0:
+                    Assert.assertEquals(expected.getOrDefault(key, MISSING), (Integer) oak.put(key, value));
+                    expected.put(key, value);
+                    break;
+                case 1:
+                    Assert.assertEquals(expected.getOrDefault(key, MISSING), (Integer) oak.putIfAbsent(key, value));
+                    expected.putIfAbsent(key, value);
+                    break;
+                case 2:
+                    Assert.assertEquals(expected.getOrDefault(key, MISSING), (Integer) oak.remove(key));
+                    expected.remove(key);
+                    break;
+                default:
+                    Assert.assertEquals(expected.getOrDefault(key, MISSING), (Integer) oak.get(key));
+                    Assert.assertEquals(expected.containsKey(key), oak.containsKey(key));
+            }
+        }
+        assertSameEntries(expected, oak);
+
+        // the extreme keys
+        oak.put(Integer.MIN_VALUE, 1);
+        oak.put(Integer.MAX_VALUE, 2);
+        expected.put(Integer.MIN_VALUE, 1);
+        expected.put(Integer.MAX_VALUE, 2);
+        assertSameEntries(expected, oak);
+    }
+
+    @Test
+    public void testAddAndGet() {
+        OakIntMap oak = new OakIntMap(MISSING, CHUNK_MAX_ITEMS);
+        Assert.assertEquals(5, oak.addAndGet(0, 5));
+        Assert.assertEquals(2, oak.addAndGet(0, -3));
+        Assert.assertEquals(2, oak.get(0));
+
+        // an addition that overflows an int fails (although it fits in the underlying long), and the value is kept
+        oak.put(1, Integer.MAX_VALUE);
+        try {
+            oak.addAndGet(1, 1);
+            Assert.fail("The addition overflowed");
+        } catch (ArithmeticException e) {
+            // expected
+        }
+        Assert.assertEquals(Integer.MAX_VALUE, oak.get(1));
+
+        // an addition that would set the missing value fails, and the value is kept
+        oak.put(2, MISSING + 1);
+        try {
+            oak.addAndGet(2, -1);
+            Assert.fail("The missing value was set as a value");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        Assert.assertEquals(MISSING + 1, oak.get(2));
+        try {
+            oak.addAndGet(3, MISSING);
+            Assert.fail("The missing value was set as a value");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        Assert.assertFalse(oak.containsKey(3));
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class OakLongMapTest {
+    private static final long MISSING = Long.MIN_VALUE;
+    // small chunks, so the chunks are rebalanced (split and merged) often
+    private static final int CHUNK_MAX_ITEMS = 16;
+    private static final int NUM_KEYS = 10_000;
+    private static final int NUM_THREADS = 4;
+
+    private static void assertSameEntries(TreeMap<Long, Long> expected, OakLongMap oak) {
+        Assert.assertEquals(expected.size(), oak.size());
+        Iterator<Map.Entry<Long, Long>> expectedEntries = expected.entrySet().iterator();
+        oak.forEach((key, value) -> {
+            Map.Entry<Long, Long> entry = expectedEntries.next();
+            Assert.assertEquals((long) entry.getKey(), key);
+            Assert.assertEquals((long) entry.getValue(), value);
+        });
+        Assert.assertFalse(expectedEntries.hasNext());
+
+        PrimitiveIterator.OfLong keys = oak.keyIterator();
+        for (long key : expected.keySet()) {
+            Assert.assertEquals(key, keys.nextLong());
+        }
+        Assert.assertFalse(keys.hasNext());
+    }
+
+    @Test
+    public void testSingleThread() {
+        OakLongMap oak = new OakLongMap(MISSING, CHUNK_MAX_ITEMS);
+        TreeMap<Long, Long> expected = new TreeMap<>();
+        Assert.assertTrue(oak.isEmpty());
+        Assert.assertEquals(MISSING, oak.get(0));
+        Assert.assertEquals(MISSING, oak.remove(0));
+
+        Random random = new Random(0);
+        for (int i = 0; i < 20 * NUM_KEYS; i++) {
+            long key = random.nextInt(NUM_KEYS) - NUM_KEYS / 2;
+            long value = random.nextLong();
+            switch (random.nextInt(4)) {
+                case 0:
+                    Assert.assertEquals(expected.getOrDefault(key, MISSING), (Long) oak.put(key, value));
+                    expected.put(key, value);
+                    break;
+                case 1:
+                    Assert.assertEquals(expected.getOrDefault(key, MISSING), (Long) oak.putIfAbsent(key, value));
+                    expected.putIfAbsent(key, value);
+                    break;
+                case 2:
+                    Assert.assertEquals(expected.getOrDefault(key, MISSING), (Long) oak.remove(key));
+                    expected.remove(key);
+                    break;
+                default:
+                    Assert.assertEquals(expected.getOrDefault(key, MISSING), (Long) oak.get(key));
+                    Assert.assertEquals(expected.containsKey(key), oak.containsKey(key));
+            }
+        }
+        assertSameEntries(expected, oak);
+
+        // the extreme keys
+        oak.put(Long.MIN_VALUE, 1);
+        oak.put(Long.MAX_VALUE, 2);
+        expected.put(Long.MIN_VALUE, 1L);
+        expected.put(Long.MAX_VALUE, 2L);
+        assertSameEntries(expected, oak);
+
+        // removing all the keys merges the chunks
+        for (long key : new ArrayList<>(expected.keySet())) {
+            Assert.assertEquals((long) expected.remove(key), oak.remove(key));
+        }
+        for (int i = 0; i < NUM_KEYS; i++) {
+            oak.put(i, i);
+            oak.remove(i);
+        }
+        assertSameEntries(expected, oak);
+        Assert.assertTrue(oak.isEmpty());
+
+        try {
+            oak.put(0, MISSING);
+            Assert.fail("The missing value was put as a value");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        OakLongMap oak = new OakLongMap(MISSING, CHUNK_MAX_ITEMS);
+        CyclicBarrier barrier = new CyclicBarrier(NUM_THREADS + 1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < NUM_THREADS; t++) {
+            final int id = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    barrier.await();
+                    // the threads update interleaving keys, so they update the same chunks
+                    for (long key = id; key < NUM_KEYS; key += NUM_THREADS) {
+                        Assert.assertEquals(MISSING, oak.putIfAbsent(key, key));
+                        Assert.assertEquals(key, oak.put(key, -key));
+                    }
+                    for (long key = id; key < NUM_KEYS; key += 2 * NUM_THREADS) {
+                        Assert.assertEquals(-key, oak.remove(key));
+                    }
+                    for (long key = id; key < NUM_KEYS; key += NUM_THREADS) {
+                        long expected = key % (2 * NUM_THREADS) == id ? MISSING : -key;
+                        Assert.assertEquals(expected, oak.get(key));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        // iterations that run concurrently with the rebalances return ascending keys
+        barrier.await();
+        while (threads.get(0).isAlive()) {
+            long prev = Long.MIN_VALUE;
+            PrimitiveIterator.OfLong keys = oak.keyIterator();
+            while (keys.hasNext()) {
+                long key = keys.nextLong();
+                Assert.assertTrue(key > prev);
+                prev = key;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(failure.get());
+
+        TreeMap<Long, Long> expected = new TreeMap<>();
+        for (long key = 0; key < NUM_KEYS; key++) {
+            if (key % (2 * NUM_THREADS) >= NUM_THREADS) {
+                expected.put(key, -key);
+            }
+        }
+        assertSameEntries(expected, oak);
+    }
+
+    @Test
+    public void testAddAndGet() {
+        OakLongMap oak = new OakLongMap(MISSING, CHUNK_MAX_ITEMS);
+        Assert.assertEquals(5, oak.addAndGet(0, 5));
+        Assert.assertEquals(2, oak.addAndGet(0, -3));
+        Assert.assertEquals(2, oak.get(0));
+        Assert.assertEquals(2, oak.remove(0));
+        Assert.assertEquals(-1, oak.addAndGet(0, -1));
+        Assert.assertEquals(1, oak.size());
+
+        // an addition that would set the missing value fails, and the value is kept
+        oak.put(1, MISSING + 1);
+        try {
+            oak.addAndGet(1, -1);
+            Assert.fail("The missing value was set as a value");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        Assert.assertEquals(MISSING + 1, oak.get(1));
+        try {
+            oak.addAndGet(2, MISSING);
+            Assert.fail("The missing value was set as a value");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        Assert.assertFalse(oak.containsKey(2));
+
+        // an addition that overflows fails, and the value is kept
+        oak.put(3, Long.MAX_VALUE);
+        try {
+            oak.addAndGet(3, 1);
+            Assert.fail("The addition overflowed");
+        } catch (ArithmeticException e) {
+            // expected
+        }
+        Assert.assertEquals(Long.MAX_VALUE, oak.get(3));
+    }
+
+    @Test
+    public void testConcurrentCounters() throws Exception {
+        final int numCounters = 100;
+        final int numIncrements = 10_000;
+        OakLongMap oak = new OakLongMap(MISSING, CHUNK_MAX_ITEMS);
+        CyclicBarrier barrier = new CyclicBarrier(NUM_THREADS);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < NUM_THREADS; t++) {
+            final int id = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    barrier.await();
+                    // the counters are created concurrently, in different orders
+                    for (int i = 0; i < numIncrements; i++) {
+                        oak.addAndGet((i * (id + 1)) % numCounters, 1);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(failure.get());
+
+        long[] expected = new long[numCounters];
+        for (int t = 0; t < NUM_THREADS; t++) {
+            for (int i = 0; i < numIncrements; i++) {
+                expected[(i * (t + 1)) % numCounters]++;
+            }
+        }
+        for (int key = 0; key < numCounters; key++) {
+            Assert.assertEquals(expected[key] == 0 ? MISSING : expected[key], oak.get(key));
+        }
+    }
+
+    @Test
+    public void testSteadyStateOperationsDoNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        OakLongMap oak = new OakLongMap(MISSING);
+        for (long key = 0; key < NUM_KEYS; key++) {
+            oak.put(key, key);
+        }
+        long threadId = Thread.currentThread().getId();
+        long minBytes = Long.MAX_VALUE;
+        // the first rounds warm up the JIT; the keys are already inserted, so there are no rebalances
+        for (int round = 0; round < 10; round++) {
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            for (long key = 0; key < NUM_KEYS; key++) {
+                oak.put(key, oak.get(key) + 1);
+                oak.addAndGet(key, 1);
+            }
+            long after = threadBean.getThreadAllocatedBytes(threadId);
+            minBytes = Math.min(minBytes, after - before);
+        }
+        Assert.assertEquals("bytes allocated per operation", 0, minBytes / (3L * NUM_KEYS));
+        Assert.assertEquals(NUM_KEYS - 1 + 20, oak.get(NUM_KEYS - 1));
+    }
+
+    @Test
+    public void testConcurrentInsertionsOfTheSameKeys() throws Exception {
+        OakLongMap oak = new OakLongMap(MISSING, CHUNK_MAX_ITEMS);
+        CyclicBarrier barrier = new CyclicBarrier(NUM_THREADS);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        long[] inserted = new long[NUM_THREADS];
+        for (int t = 0; t < NUM_THREADS; t++) {
+            final int id = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    barrier.await();
+                    for (long key = 0; key < NUM_KEYS; key++) {
+                        if (oak.putIfAbsent(key, id) == MISSING) {
+                            inserted[id]++;
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(failure.get());
+
+        // each key was inserted exactly once
+        long sum = 0;
+        for (long count : inserted) {
+            sum += count;
+        }
+        Assert.assertEquals(NUM_KEYS, sum);
+        Assert.assertEquals(NUM_KEYS, oak.size());
+        long[] count = new long[NUM_THREADS];
+        oak.forEach((key, value) -> count[(int) value]++);
+        Assert.assertArrayEquals(inserted, count);
+    }
+}
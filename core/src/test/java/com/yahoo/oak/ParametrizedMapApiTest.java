@@ -15,8 +15,11 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
@@ -54,9 +57,23 @@ public class ParametrizedMapApiTest {
                     .setChunkMaxItems(maxItemsPerChunk);
             return builder.buildHashMap();
         };
+        Supplier<ConcurrentZCMap<Integer , Integer>> s3 = () -> {
+            int maxItemsPerChunk = 2048;
+            OakMapBuilder<Integer, Integer> builder = OakCommonBuildersFactory.getDefaultIntBuilder()
+                    .setChunkMaxItems(maxItemsPerChunk).setLockFreeValueReads(true);
+            return builder.buildOrderedMap();
+        };
+        Supplier<ConcurrentZCMap<Integer , Integer>> s4 = () -> {
+            int maxItemsPerChunk = 2048;
+            OakMapBuilder<Integer, Integer> builder = OakCommonBuildersFactory.getDefaultIntBuilder()
+                    .setChunkMaxItems(maxItemsPerChunk).setLockFreeValueReads(true);
+            return builder.buildHashMap();
+        };
         return Arrays.asList(new Object[][] {
                 { s1 },
-                { s2 }
+                { s2 },
+                { s3 },
+                { s4 }
         });
     }
 
@@ -217,8 +234,14 @@ public class ParametrizedMapApiTest {
         }
 
 
+        List<Integer> values = new ArrayList<>(oak.values());
+        if (oak instanceof OakHashMap) {
+            // OakHashMap iteration is unordered
+            Collections.sort(values);
+        }
+        Assert.assertEquals(numKeys, values.size());
         int expected = 0;
-        for (Integer i :oak.values()) {
+        for (Integer i : values) {
             Assert.assertEquals(expected, i.intValue());
             expected++;
         }
@@ -289,4 +312,82 @@ public class ParametrizedMapApiTest {
                 result.intValue());
     }
 
+    @Test
+    public void compute() {
+        BiFunction<? super Integer, ? super Integer, ? extends Integer> func = (k, v) -> (v == null) ? k : v * 2;
+
+        Assert.assertEquals("compute should insert the computed value if mapping doesn't exist", 3,
+                oak.compute(3, func).intValue());
+        Assert.assertEquals("compute should return the new value if mapping exists", 6,
+                oak.compute(3, func).intValue());
+        Assert.assertEquals(6, oak.get(3).intValue());
+
+        Assert.assertNull("compute should return null if the computed value is null",
+                oak.compute(3, (k, v) -> null));
+        Assert.assertNull("compute should remove the mapping if the computed value is null", oak.get(3));
+        Assert.assertEquals(0, oak.size());
+        Assert.assertNull(oak.compute(3, (k, v) -> null));
+        Assert.assertEquals(0, oak.size());
+    }
+
+    @Test
+    public void computeIfAbsent() {
+        Assert.assertEquals("computeIfAbsent should insert the computed value if mapping doesn't exist", 1,
+                oak.computeIfAbsent(0, k -> 1).intValue());
+        Assert.assertEquals("computeIfAbsent should return the existing value if mapping exists", 1,
+                oak.computeIfAbsent(0, k -> {
+                    throw new IllegalStateException("computeIfAbsent should not compute if mapping exists");
+                }).intValue());
+        Assert.assertNull(oak.computeIfAbsent(1, k -> null));
+        Assert.assertEquals(1, oak.size());
+    }
+
+    @Test
+    public void merge() {
+        Assert.assertEquals("merge should insert the value if mapping doesn't exist", 1,
+                oak.merge(0, 1, Integer::sum).intValue());
+        Assert.assertEquals("merge should return the merged value if mapping exists", 3,
+                oak.merge(0, 2, Integer::sum).intValue());
+        Assert.assertNull(oak.merge(0, 2, (v1, v2) -> null));
+        Assert.assertNull("merge should remove the mapping if the merged value is null", oak.get(0));
+        Assert.assertEquals(0, oak.size());
+    }
+
+    @Test
+    public void replaceAll() {
+        int numKeys = 1000;
+        for (int i = 0; i < numKeys; i++) {
+            oak.put(i, i);
+        }
+        oak.replaceAll((k, v) -> k + v);
+        for (int i = 0; i < numKeys; i++) {
+            Assert.assertEquals(2 * i, oak.get(i).intValue());
+        }
+        Assert.assertEquals(numKeys, oak.size());
+    }
+
+    @Test
+    public void concurrentMerge() throws InterruptedException {
+        int numThreads = 4;
+        int numKeys = 100;
+        int numIncrements = 1000;
+        List<Thread> threads = new ArrayList<>(numThreads);
+        for (int t = 0; t < numThreads; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < numIncrements; i++) {
+                    oak.merge(i % numKeys, 1, Integer::sum);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // the updates of the same key are serialized, so none of them is lost
+        for (int i = 0; i < numKeys; i++) {
+            Assert.assertEquals(numThreads * numIncrements / numKeys, oak.get(i).intValue());
+        }
+    }
 }
@@ -212,6 +212,37 @@ public class SingleThreadIteratorTest {
         }
     }
 
+    @Test
+    public void testKeySetSkipsRemovedKeys() {
+        // the removed keys stay linked in the chunk (there is no rebalance), so the iterators must skip them
+        for (Integer i = 0; i < iteratorsRange; i++) {
+            oak.zc().put(i, i);
+        }
+        for (Integer i = 1; i < iteratorsRange; i += 2) {
+            oak.zc().remove(i);
+        }
+
+        Iterator<Integer> keyIter = oak.keySet().iterator();
+        Integer expectedKey = 0;
+        while (keyIter.hasNext()) {
+            Assert.assertEquals(expectedKey, keyIter.next());
+            expectedKey += 2;
+        }
+        Assert.assertEquals(iteratorsRange, expectedKey.intValue());
+
+        // the last keys are removed, so the iteration ends once the last remaining key is returned
+        for (Integer i = iteratorsRange / 2; i < iteratorsRange; i++) {
+            oak.zc().remove(i);
+        }
+        Iterator<Integer> valIter = oak.values().iterator();
+        Integer expectedVal = 0;
+        while (valIter.hasNext()) {
+            Assert.assertEquals(expectedVal, valIter.next());
+            expectedVal += 2;
+        }
+        Assert.assertEquals(iteratorsRange / 2 + 1, expectedVal.intValue());
+    }
+
     private void checkDescendingIter() {
         Integer i;
         try (OakMap<Integer, Integer> oakDesc = oak.descendingMap()) {
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SizeClassMemoryAllocatorTest {
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_ITERATIONS = 50_000;
+    private static final int MAX_ALLOCATION_SIZE = 2 * SizeClassMemoryAllocator.THREAD_CACHE_MAX_SIZE;
+    private static final int MAX_LIVE_ALLOCATIONS = 64;
+
+    private static final MemoryManager VALUE_MEMORY_MANAGER = new SyncRecycleMemoryManager(null);
+
+    private SizeClassMemoryAllocator allocator;
+
+    @Before
+    public void setUp() {
+        allocator = new SizeClassMemoryAllocator(Integer.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() {
+        allocator.close();
+    }
+
+    private BlockAllocationSlice allocate(int size) {
+        BlockAllocationSlice s = (BlockAllocationSlice) VALUE_MEMORY_MANAGER.getEmptySlice();
+        allocator.allocate(s, size);
+        return s;
+    }
+
+    @Test
+    public void testSizeClasses() {
+        Assert.assertEquals(8, allocator.getSizeClassSize(1));
+        Assert.assertEquals(8, allocator.getSizeClassSize(8));
+        Assert.assertEquals(16, allocator.getSizeClassSize(9));
+        Assert.assertEquals(128, allocator.getSizeClassSize(128));
+        Assert.assertEquals(160, allocator.getSizeClassSize(129));
+        Assert.assertEquals(256, allocator.getSizeClassSize(256));
+        Assert.assertEquals(320, allocator.getSizeClassSize(257));
+
+        int previous = 0;
+        for (int size = 1; size < 1_000_000; size++) {
+            int classSize = allocator.getSizeClassSize(size);
+            Assert.assertTrue(classSize >= size);
+            Assert.assertTrue(classSize <= size + size / 4 + SizeClassMemoryAllocator.SIZE_ALIGNMENT);
+            Assert.assertEquals(0, classSize % SizeClassMemoryAllocator.SIZE_ALIGNMENT);
+            Assert.assertTrue(classSize >= previous);
+            previous = classSize;
+        }
+    }
+
+    @Test
+    public void testReleasedCutIsReusedBySameSizeClass() {
+        BlockAllocationSlice s = allocate(20);
+        Assert.assertEquals(20, s.getAllocatedLength());
+        Assert.assertEquals(24, allocator.allocated());
+        int blockID = s.getAllocatedBlockID();
+        int offset = s.getAllocatedOffset();
+        allocator.free(s);
+        Assert.assertEquals(0, allocator.allocated());
+
+        // a different size class is not served by the released off-heap cut
+        BlockAllocationSlice other = allocate(40);
+        Assert.assertNotEquals(offset, other.getAllocatedOffset());
+
+        BlockAllocationSlice reused = allocate(17);
+        Assert.assertEquals(17, reused.getAllocatedLength());
+        Assert.assertEquals(blockID, reused.getAllocatedBlockID());
+        Assert.assertEquals(offset, reused.getAllocatedOffset());
+        Assert.assertEquals(24 + 40, allocator.allocated());
+    }
+
+    @Test
+    public void testReleasedCutsAreSharedBetweenThreads() throws InterruptedException {
+        int size = 64;
+        int count = 4 * SizeClassMemoryAllocator.THREAD_CACHE_CAPACITY;
+        List<BlockAllocationSlice> slices = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            slices.add(allocate(size));
+        }
+        long blockAllocated = allocator.getCurrentBlock().allocatedWithPossibleDelta();
+
+        // the cuts released by another thread overflow its cache to the shared size class stack
+        Thread releaser = new Thread(() -> slices.forEach(allocator::free));
+        releaser.start();
+        releaser.join();
+        Assert.assertEquals(0, allocator.allocated());
+
+        allocator.collectStats();
+        for (int i = 0; i < count / 2; i++) {
+            allocate(size);
+        }
+        Assert.assertEquals(count / 2, allocator.getStats().reclaimedBuffers);
+        Assert.assertEquals(blockAllocated, allocator.getCurrentBlock().allocatedWithPossibleDelta());
+    }
+
+    @Test
+    public void testCachesOfTerminatedThreadsAreDrained() throws InterruptedException {
+        int size = 64;
+        int numThreads = 4 * SizeClassMemoryAllocator.THREAD_CACHES_SCAN_THRESHOLD;
+        List<BlockAllocationSlice> slices = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            slices.add(allocate(size));
+        }
+        long blockAllocated = allocator.getCurrentBlock().allocatedWithPossibleDelta();
+
+        // short-lived threads, each keeps its released cut in its cache
+        for (BlockAllocationSlice s : slices) {
+            Thread releaser = new Thread(() -> allocator.free(s));
+            releaser.start();
+            releaser.join();
+        }
+        // the caches of the terminated threads are drained as new threads come
+        Assert.assertTrue("thread caches: " + allocator.getThreadCacheCount(),
+            allocator.getThreadCacheCount() <= SizeClassMemoryAllocator.THREAD_CACHES_SCAN_THRESHOLD + 1);
+
+        // most of the released cuts are reused (the caches that were not drained yet hold the rest)
+        allocator.collectStats();
+        int reused = numThreads - SizeClassMemoryAllocator.THREAD_CACHES_SCAN_THRESHOLD;
+        for (int i = 0; i < reused; i++) {
+            allocate(size);
+        }
+        Assert.assertEquals(reused, allocator.getStats().reclaimedBuffers);
+        Assert.assertEquals(blockAllocated, allocator.getCurrentBlock().allocatedWithPossibleDelta());
+    }
+
+    @Test
+    public void testLargestSizeClassFitsBlock() {
+        int size = allocator.getBlockSize() - 1;
+        Assert.assertTrue(allocator.getSizeClassSize(size) <= allocator.getBlockSize());
+        BlockAllocationSlice s = allocate(size);
+        Assert.assertEquals(size, s.getAllocatedLength());
+        Assert.assertEquals(allocator.getSizeClassSize(size), allocator.allocated());
+        int blockID = s.getAllocatedBlockID();
+        allocator.free(s);
+        Assert.assertEquals(0, allocator.allocated());
+
+        BlockAllocationSlice reused = allocate(size);
+        Assert.assertEquals(blockID, reused.getAllocatedBlockID());
+    }
+
+    @Test
+    public void testConcurrentAllocationsDoNotOverlap() throws InterruptedException {
+        AtomicReference<String> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < NUM_THREADS; t++) {
+            int threadID = t;
+            Thread thread = new Thread(() -> {
+                Random random = new Random(threadID);
+                List<BlockAllocationSlice> live = new ArrayList<>();
+                for (int i = 0; i < NUM_ITERATIONS && error.get() == null; i++) {
+                    if (live.size() == MAX_LIVE_ALLOCATIONS || (!live.isEmpty() && random.nextBoolean())) {
+                        BlockAllocationSlice s = live.remove(random.nextInt(live.size()));
+                        checkAndFree(s, error);
+                    } else {
+                        BlockAllocationSlice s = allocate(1 + random.nextInt(MAX_ALLOCATION_SIZE));
+                        fill(s, (byte) (threadID * NUM_ITERATIONS + i));
+                        live.add(s);
+                    }
+                }
+                live.forEach(s -> checkAndFree(s, error));
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(error.get());
+        Assert.assertEquals(0, allocator.allocated());
+    }
+
+    private static long getAddress(BlockAllocationSlice s) {
+        return s.getMetadataAddress();
+    }
+
+    private static void fill(BlockAllocationSlice s, byte pattern) {
+        UnsafeUtils.UNSAFE.setMemory(getAddress(s), s.getAllocatedLength(), pattern);
+    }
+
+    private void checkAndFree(BlockAllocationSlice s, AtomicReference<String> error) {
+        long address = getAddress(s);
+        byte pattern = UnsafeUtils.UNSAFE.getByte(address);
+        for (int i = 1; i < s.getAllocatedLength(); i++) {
+            if (UnsafeUtils.UNSAFE.getByte(address + i) != pattern) {
+                error.compareAndSet(null, "off-heap cut " + s + " was overwritten at " + i);
+                break;
+            }
+        }
+        allocator.free(s);
+    }
+
+    @Test
+    public void testBuilderSelectsSizeClassAllocation() {
+        OakMap<Integer, Integer> oak = OakCommonBuildersFactory.getDefaultIntBuilder()
+            .setSizeClassAllocation(true).buildOrderedMap();
+        try {
+            for (int i = 0; i < NUM_ITERATIONS; i++) {
+                oak.put(i % 100, i);
+            }
+            for (int i = 0; i < 100; i++) {
+                Assert.assertEquals(Integer.valueOf(NUM_ITERATIONS - 100 + i), oak.get(i));
+            }
+        } finally {
+            oak.close();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+@RunWith(Parameterized.class)
+public class ThreadContextReuseTest {
+
+    private static final int NUM_KEYS = 1000;
+    private static final int NUM_OPERATIONS = 30_000;
+    // values are in the range of Integer's cache, so deserializing them does not allocate
+    private static final int MAX_VALUE = 100;
+
+    private ConcurrentZCMap<Integer, Integer> oak;
+    private final Supplier<ConcurrentZCMap<Integer, Integer>> supplier;
+    private final Integer[] keys = new Integer[NUM_KEYS];
+
+    public ThreadContextReuseTest(Supplier<ConcurrentZCMap<Integer, Integer>> supplier) {
+        this.supplier = supplier;
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> parameters() {
+
+        Supplier<ConcurrentZCMap<Integer, Integer>> s1 = () -> OakCommonBuildersFactory.getDefaultIntBuilder()
+            .setChunkMaxItems(256).buildOrderedMap();
+        Supplier<ConcurrentZCMap<Integer, Integer>> s2 = () -> OakCommonBuildersFactory.getDefaultIntBuilder()
+            .setChunkMaxItems(256).buildHashMap();
+        return Arrays.asList(new Object[][] {
+            { s1 },
+            { s2 }
+        });
+    }
+
+    @Before
+    public void setUp() {
+        oak = supplier.get();
+        for (int i = 0; i < NUM_KEYS; i++) {
+            keys[i] = i;
+            oak.put(keys[i], i % MAX_VALUE);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        oak.close();
+    }
+
+    private void getAndPut(ZeroCopyMap<Integer, Integer> zc) {
+        for (int i = 0; i < NUM_OPERATIONS; i++) {
+            Integer key = keys[i % NUM_KEYS];
+            Integer value = oak.get(key);
+            Assert.assertNotNull(value);
+            zc.put(key, (value + 1) % MAX_VALUE);
+        }
+    }
+
+    // the bytes allocated by the current thread, or -1 if they are not measured by this JVM
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        if (!threadBean.isThreadAllocatedMemorySupported()) {
+            return -1;
+        }
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void testSteadyStateGetPutDoesNotAllocate() {
+        Assume.assumeTrue(allocatedBytes() >= 0);
+        ZeroCopyMap<Integer, Integer> zc = oak.zc();
+        // the first rounds create the context of the thread and warm up the JIT
+        long minBytes = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            long before = allocatedBytes();
+            getAndPut(zc);
+            minBytes = Math.min(minBytes, allocatedBytes() - before);
+        }
+        // the tolerance covers the allocations of the JVM that are attributed to the thread (less than a byte per
+        // operation), rather than any allocation of an operation, which is at least an object header
+        Assert.assertEquals("bytes allocated per get/put", 0, minBytes / NUM_OPERATIONS);
+    }
+
+    @Test
+    public void testReentrantOperations() {
+        Integer key = keys[0];
+        Integer other = keys[1];
+        Integer newKey = NUM_KEYS;
+
+        // the remapping function uses the same thread (and map) while the compute context is in use
+        Integer computed = oak.compute(key, (k, v) -> {
+            Integer otherValue = oak.get(other);
+            oak.put(newKey, otherValue);
+            oak.zc().put(other, otherValue + 1);
+            Assert.assertEquals(otherValue, oak.get(newKey));
+            return v + otherValue + 10;
+        });
+
+        Assert.assertEquals(Integer.valueOf(0 + 1 + 10), computed);
+        Assert.assertEquals(computed, oak.get(key));
+        Assert.assertEquals(Integer.valueOf(2), oak.get(other));
+        Assert.assertEquals(Integer.valueOf(1), oak.get(newKey));
+
+        // a compute nested in a merge of another key
+        Integer merged = oak.merge(other, 5, (oldValue, value) -> {
+            oak.computeIfPresent(newKey, (k, v) -> v + oldValue);
+            return oldValue + value;
+        });
+        Assert.assertEquals(Integer.valueOf(7), merged);
+        Assert.assertEquals(Integer.valueOf(3), oak.get(newKey));
+
+        // the contexts released by the reentrant calls are reused correctly afterwards
+        for (int i = 2; i < NUM_KEYS; i++) {
+            Assert.assertEquals(Integer.valueOf(i % MAX_VALUE), oak.get(keys[i]));
+        }
+        Assert.assertEquals(NUM_KEYS + 1, oak.size());
+    }
+}
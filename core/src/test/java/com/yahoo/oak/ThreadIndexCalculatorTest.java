@@ -20,19 +20,19 @@ public class ThreadIndexCalculatorTest {
     @Test
     public void testReuseIndices() throws InterruptedException {
 
-        Thread[] threads = new Thread[ThreadIndexCalculator.MAX_THREADS];
-        Thread[] threadsSecondBatch = new Thread[ThreadIndexCalculator.MAX_THREADS];
+        Thread[] threads = new Thread[ThreadIndexCalculator.INITIAL_CAPACITY];
+        Thread[] threadsSecondBatch = new Thread[ThreadIndexCalculator.INITIAL_CAPACITY];
         CountDownLatch firstRoundLatch = new CountDownLatch(1);
-        CountDownLatch doneFirstRoundLatch = new CountDownLatch(ThreadIndexCalculator.MAX_THREADS);
+        CountDownLatch doneFirstRoundLatch = new CountDownLatch(ThreadIndexCalculator.INITIAL_CAPACITY);
         CountDownLatch secondRoundLatch = new CountDownLatch(1);
-        CountDownLatch doneSecondRoundLatch = new CountDownLatch(ThreadIndexCalculator.MAX_THREADS);
+        CountDownLatch doneSecondRoundLatch = new CountDownLatch(ThreadIndexCalculator.INITIAL_CAPACITY);
         CountDownLatch firstBatchWait = new CountDownLatch(1);
         CountDownLatch firstBatchRelease = new CountDownLatch(1);
 
         ThreadIndexCalculator indexCalculator = ThreadIndexCalculator.newInstance();
         ConcurrentSkipListSet<Integer> uniqueIndices = new ConcurrentSkipListSet<>();
 
-        for (int i = 0; i < ThreadIndexCalculator.MAX_THREADS; ++i) {
+        for (int i = 0; i < ThreadIndexCalculator.INITIAL_CAPACITY; ++i) {
 
             Thread thread = new Thread(() -> {
                 try {
@@ -72,18 +72,18 @@ public class ThreadIndexCalculatorTest {
 
         firstRoundLatch.countDown();
         doneFirstRoundLatch.await();
-        Assert.assertEquals(ThreadIndexCalculator.MAX_THREADS, uniqueIndices.size());
+        Assert.assertEquals(ThreadIndexCalculator.INITIAL_CAPACITY, uniqueIndices.size());
         uniqueIndices.clear();
 
         secondRoundLatch.countDown();
         doneSecondRoundLatch.await();
-        Assert.assertEquals(ThreadIndexCalculator.MAX_THREADS, uniqueIndices.size());
+        Assert.assertEquals(ThreadIndexCalculator.INITIAL_CAPACITY, uniqueIndices.size());
         uniqueIndices.clear();
         firstBatchRelease.countDown();
 
         CountDownLatch secondBatchStart = new CountDownLatch(1);
-        CountDownLatch doneSecondBatch = new CountDownLatch(ThreadIndexCalculator.MAX_THREADS);
-        for (int i = 0; i < ThreadIndexCalculator.MAX_THREADS; ++i) {
+        CountDownLatch doneSecondBatch = new CountDownLatch(ThreadIndexCalculator.INITIAL_CAPACITY);
+        for (int i = 0; i < ThreadIndexCalculator.INITIAL_CAPACITY; ++i) {
 
             Thread thread = new Thread(() -> {
                 try {
@@ -102,11 +102,11 @@ public class ThreadIndexCalculatorTest {
 
         secondBatchStart.countDown();
         doneSecondBatch.await();
-        Assert.assertEquals(ThreadIndexCalculator.MAX_THREADS, uniqueIndices.size());
+        Assert.assertEquals(ThreadIndexCalculator.INITIAL_CAPACITY, uniqueIndices.size());
 
 
         firstBatchWait.countDown();
-        for (int i = 0; i < ThreadIndexCalculator.MAX_THREADS; i++) {
+        for (int i = 0; i < ThreadIndexCalculator.INITIAL_CAPACITY; i++) {
             threads[i].join();
             threadsSecondBatch[i].join();
         }
@@ -115,14 +115,14 @@ public class ThreadIndexCalculatorTest {
     @Test(timeout = 10000)
     public void testThreadIDCollision() throws InterruptedException {
         CountDownLatch threadsStart = new CountDownLatch(1);
-        CountDownLatch threadsFinished = new CountDownLatch(ThreadIndexCalculator.MAX_THREADS);
+        CountDownLatch threadsFinished = new CountDownLatch(ThreadIndexCalculator.INITIAL_CAPACITY);
 
         ThreadIndexCalculator indexCalculator = ThreadIndexCalculator.newInstance();
         ConcurrentSkipListSet<Integer> uniqueIndices = new ConcurrentSkipListSet<>();
 
-        List<Thread> threads = new ArrayList<>(ThreadIndexCalculator.MAX_THREADS);
+        List<Thread> threads = new ArrayList<>(ThreadIndexCalculator.INITIAL_CAPACITY);
 
-        while (threads.size() < ThreadIndexCalculator.MAX_THREADS) {
+        while (threads.size() < ThreadIndexCalculator.INITIAL_CAPACITY) {
 
             Thread thread = new Thread(() -> {
                 try {
@@ -135,7 +135,7 @@ public class ThreadIndexCalculatorTest {
                 uniqueIndices.add(index);
                 threadsFinished.countDown();
             });
-            if (thread.getId() % ThreadIndexCalculator.MAX_THREADS == 0) {
+            if (thread.getId() % ThreadIndexCalculator.INITIAL_CAPACITY == 0) {
                 threads.add(thread);
                 thread.start();
             }
@@ -143,7 +143,57 @@ public class ThreadIndexCalculatorTest {
 
         threadsStart.countDown();
         threadsFinished.await();
-        Assert.assertEquals(ThreadIndexCalculator.MAX_THREADS, uniqueIndices.size());
+        Assert.assertEquals(ThreadIndexCalculator.INITIAL_CAPACITY, uniqueIndices.size());
     }
 
+    @Test(timeout = 10000)
+    public void testMoreThreadsThanInitialCapacity() throws InterruptedException {
+        int numThreads = 4 * ThreadIndexCalculator.INITIAL_CAPACITY;
+        CountDownLatch threadsStart = new CountDownLatch(1);
+        CountDownLatch threadsFinished = new CountDownLatch(numThreads);
+        CountDownLatch threadsExit = new CountDownLatch(1);
+
+        ThreadIndexCalculator indexCalculator = ThreadIndexCalculator.newInstance();
+        ConcurrentSkipListSet<Integer> uniqueIndices = new ConcurrentSkipListSet<>();
+
+        List<Thread> threads = new ArrayList<>(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    threadsStart.await();
+                    uniqueIndices.add(indexCalculator.getIndex());
+                    threadsFinished.countDown();
+                    // the threads are alive together, so none of their indices is reused
+                    threadsExit.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        threadsStart.countDown();
+        threadsFinished.await();
+        Assert.assertEquals(numThreads, uniqueIndices.size());
+        Assert.assertEquals(numThreads - 1, (int) uniqueIndices.last());
+        threadsExit.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testReuseIndicesOfTerminatedThreads() throws InterruptedException {
+        ThreadIndexCalculator indexCalculator = ThreadIndexCalculator.newInstance();
+        ConcurrentSkipListSet<Integer> uniqueIndices = new ConcurrentSkipListSet<>();
+
+        // the threads never release their indices, yet only a few of them are alive at once
+        for (int i = 0; i < 10 * ThreadIndexCalculator.INITIAL_CAPACITY; i++) {
+            Thread thread = new Thread(() -> uniqueIndices.add(indexCalculator.getIndex()));
+            thread.start();
+            thread.join();
+        }
+        Assert.assertTrue(uniqueIndices.last() < 2 * ThreadIndexCalculator.INITIAL_CAPACITY);
+    }
 }
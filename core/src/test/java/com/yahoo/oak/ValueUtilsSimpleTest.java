@@ -223,4 +223,35 @@ public class ValueUtilsSimpleTest {
         s.associateMMAllocation(2, -1);
         Assert.assertEquals(ValueUtils.ValueResult.RETRY, s.logicalDelete());
     }
+
+    @Test
+    public void testReadLockWaitsWhileReadersSaturated() throws InterruptedException {
+        for (int i = 0; i < SyncRecycleMMHeader.MAX_READERS; i++) {
+            Assert.assertEquals(ValueUtils.ValueResult.TRUE, s.lockRead());
+        }
+        long stamp = s.beginOptimisticRead();
+        Assert.assertNotEquals(Slice.INVALID_STAMP, stamp);
+
+        AtomicBoolean isLocked = new AtomicBoolean(false);
+        Thread reader = new Thread(() -> {
+            Assert.assertEquals(ValueUtils.ValueResult.TRUE, s.lockRead());
+            isLocked.set(true);
+        });
+        reader.start();
+        Thread.sleep(200);
+        // the counter is not carried into the write sequence
+        Assert.assertFalse(isLocked.get());
+        s.unlockRead();
+        reader.join();
+        Assert.assertTrue(isLocked.get());
+        Assert.assertTrue(s.validateOptimisticRead(stamp));
+
+        // once all the readers unlock, a writer can lock
+        for (int i = 0; i < SyncRecycleMMHeader.MAX_READERS; i++) {
+            s.unlockRead();
+        }
+        Assert.assertEquals(ValueUtils.ValueResult.TRUE, s.lockWrite());
+        s.unlockWrite();
+        Assert.assertFalse(s.validateOptimisticRead(stamp));
+    }
 }
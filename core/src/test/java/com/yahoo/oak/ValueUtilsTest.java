@@ -132,6 +132,56 @@ public class ValueUtilsTest {
         Assert.assertEquals(ValueUtils.ValueResult.RETRY, result.operationResult);
     }
 
+    @Test
+    public void optimisticReadIsInvalidatedByWriteTest() {
+        Slice slice = s.getSlice();
+        long stamp = slice.beginOptimisticRead();
+        Assert.assertNotEquals(Slice.INVALID_STAMP, stamp);
+
+        // the readers that lock the value do not invalidate an optimistic read
+        Assert.assertEquals(ValueUtils.ValueResult.TRUE, slice.lockRead());
+        Assert.assertTrue(slice.validateOptimisticRead(stamp));
+        Assert.assertEquals(ValueUtils.ValueResult.TRUE, slice.unlockRead());
+        Assert.assertTrue(slice.validateOptimisticRead(stamp));
+
+        Assert.assertEquals(ValueUtils.ValueResult.TRUE, slice.lockWrite());
+        Assert.assertFalse(slice.validateOptimisticRead(stamp));
+        Assert.assertEquals(Slice.INVALID_STAMP, slice.beginOptimisticRead());
+        Assert.assertEquals(ValueUtils.ValueResult.TRUE, slice.unlockWrite());
+        // the write lock was released, but the value might have been updated
+        Assert.assertFalse(slice.validateOptimisticRead(stamp));
+        Assert.assertNotEquals(Slice.INVALID_STAMP, slice.beginOptimisticRead());
+
+        slice.logicalDelete();
+        Assert.assertEquals(Slice.INVALID_STAMP, slice.beginOptimisticRead());
+    }
+
+    @Test
+    public void largeValueIsNotReadOptimisticallyTest() {
+        ValueBuffer large = new ValueBuffer(ctx.value.getSlice().duplicate());
+        large.getSlice().allocate(SyncRecycleMemoryManager.OPTIMISTIC_READ_MAX_SIZE + 1, false);
+        Assert.assertEquals(Slice.INVALID_STAMP, large.getSlice().beginOptimisticRead());
+    }
+
+    @Test
+    public void transformIsRepeatedAfterConcurrentUpdateTest() {
+        putInt(0, 10);
+        int[] applied = new int[1];
+        Result result = valueOperator.transform(new Result(), s, byteBuffer -> {
+            int value = byteBuffer.getInt(0);
+            if (applied[0]++ == 0) {
+                // a writer updates the value while it is read optimistically
+                Assert.assertEquals(ValueUtils.ValueResult.TRUE, s.getSlice().lockWrite());
+                putInt(0, 20);
+                s.getSlice().unlockWrite();
+            }
+            return value;
+        });
+        Assert.assertEquals(ValueUtils.ValueResult.TRUE, result.operationResult);
+        Assert.assertEquals(2, applied[0]);
+        Assert.assertEquals(20, ((Integer) result.value).intValue());
+    }
+
     @Test
     public void putWithNoResizeTest() {
         Random random = new Random();
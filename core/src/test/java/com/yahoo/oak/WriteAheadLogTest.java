@@ -0,0 +1,336 @@
+/*
+ * Copyright 2020, Verizon Media.
+ * Licensed under the terms of the Apache 2.0 license.
+ * Please see LICENSE file in the project root for terms.
+ */
+
+package com.yahoo.oak;
+
+import com.yahoo.oak.common.OakCommonBuildersFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class WriteAheadLogTest {
+    private static final int NUM_KEYS = 10_000;
+    private static final int CHUNK_MAX_ITEMS = 256;
+    private static final int NUM_THREADS = 4;
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("oak-wal-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Path file : listFiles("*")) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private OakMap<Integer, Integer> buildMap() {
+        return OakCommonBuildersFactory.getDefaultIntBuilder()
+            .setChunkMaxItems(CHUNK_MAX_ITEMS)
+            .setWriteAheadLog(directory)
+            .buildOrderedMap();
+    }
+
+    private OakMap<byte[], byte[]> buildBytesMap() {
+        return OakCommonBuildersFactory.getDefaultBytesBuilder()
+            .setWriteAheadLog(directory)
+            .buildOrderedMap();
+    }
+
+    private List<Path> listFiles(String glob) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    // the keys are looked up, rather than iterated, since an iterator might end with a removed entry
+    private static Map<Integer, Integer> copy(OakMap<Integer, Integer> oak) {
+        Map<Integer, Integer> copy = new TreeMap<>();
+        for (int key = -1; key <= NUM_KEYS + 1; key++) {
+            Integer value = oak.get(key);
+            if (value != null) {
+                copy.put(key, value);
+            }
+        }
+        return copy;
+    }
+
+    private static void checkEquals(Map<Integer, Integer> expected, OakMap<Integer, Integer> oak) {
+        Assert.assertEquals(expected.size(), oak.size());
+        Assert.assertEquals(expected, copy(oak));
+    }
+
+    @Test
+    public void testRecover() {
+        Map<Integer, Integer> expected = new TreeMap<>();
+        try (OakMap<Integer, Integer> oak = buildMap()) {
+            for (int i = 0; i < NUM_KEYS; i++) {
+                oak.put(i, i);
+                expected.put(i, i);
+            }
+            for (int i = 0; i < NUM_KEYS; i += 3) {
+                oak.remove(i);
+                expected.remove(i);
+            }
+            for (int i = 1; i < NUM_KEYS; i += 3) {
+                oak.computeIfPresent(i, (k, v) -> v + 1);
+                expected.computeIfPresent(i, (k, v) -> v + 1);
+            }
+            oak.putIfAbsent(NUM_KEYS, 1);
+            oak.merge(NUM_KEYS, 1, Integer::sum);
+            expected.put(NUM_KEYS, 2);
+            Assert.assertEquals((Integer) 2, oak.pollFirstEntry().getValue());
+            expected.remove(1);
+
+            // zero-copy updates
+            oak.zc().put(NUM_KEYS + 1, 7);
+            oak.zc().computeIfPresent(NUM_KEYS + 1, buffer -> buffer.putInt(0, buffer.getInt(0) * 2));
+            expected.put(NUM_KEYS + 1, 14);
+            oak.zc().putIfAbsentComputeIfPresent(2, 0, buffer -> buffer.putInt(0, -1));
+            expected.put(2, -1);
+            oak.zc().remove(4);
+            expected.remove(4);
+
+            // conditional updates, which are logged only if they update the map
+            Assert.assertEquals((Integer) 5, oak.replace(5, 50));
+            Assert.assertNull(oak.replace(-2, 50));
+            Assert.assertFalse(oak.replace(5, 5, 51));
+            Assert.assertTrue(oak.replace(5, 50, 51));
+            expected.put(5, 51);
+            Assert.assertFalse(oak.remove(11, 12));
+            Assert.assertTrue(oak.remove(11, 11));
+            expected.remove(11);
+            Assert.assertEquals((Integer) 8, oak.computeIfAbsent(8, k -> -k));
+            Assert.assertEquals((Integer) (-9), oak.computeIfAbsent(9, k -> -k));
+            expected.put(9, -9);
+            Assert.assertFalse(oak.zc().putIfAbsent(8, 0));
+            Assert.assertFalse(oak.zc().remove(9 + 3 * NUM_KEYS));
+            checkEquals(expected, oak);
+        }
+
+        try (OakMap<Integer, Integer> recovered = buildMap()) {
+            checkEquals(expected, recovered);
+            // the recovered map keeps logging its updates
+            recovered.put(-1, -1);
+            expected.put(-1, -1);
+        }
+        try (OakMap<Integer, Integer> recovered = buildMap()) {
+            checkEquals(expected, recovered);
+        }
+    }
+
+    @Test
+    public void testCheckpoint() throws IOException {
+        Map<Integer, Integer> expected = new TreeMap<>();
+        try (OakMap<Integer, Integer> oak = buildMap()) {
+            for (int i = 0; i < NUM_KEYS; i++) {
+                oak.put(i, i);
+                expected.put(i, i);
+            }
+            Assert.assertEquals(NUM_KEYS, oak.checkpoint());
+            for (int i = 0; i < NUM_KEYS; i += 2) {
+                oak.remove(i);
+                expected.remove(i);
+            }
+            Assert.assertEquals(NUM_KEYS / 2, oak.checkpoint());
+            // only the last snapshot and the segment that follows it are kept
+            Assert.assertEquals(1, listFiles("snapshot-*").size());
+            Assert.assertEquals(1, listFiles("wal-*").size());
+            Assert.assertEquals(0, Files.size(listFiles("wal-*").get(0)));
+
+            oak.put(NUM_KEYS, NUM_KEYS);
+            expected.put(NUM_KEYS, NUM_KEYS);
+        }
+
+        try (OakMap<Integer, Integer> recovered = buildMap()) {
+            checkEquals(expected, recovered);
+        }
+    }
+
+    @Test
+    public void testPartiallyWrittenRecord() throws IOException {
+        Map<Integer, Integer> expected = new TreeMap<>();
+        try (OakMap<Integer, Integer> oak = buildMap()) {
+            for (int i = 0; i < NUM_KEYS; i++) {
+                oak.put(i, i);
+                expected.put(i, i);
+            }
+            oak.put(NUM_KEYS, NUM_KEYS);
+        }
+        // the last record is cut (as upon a crash while it was written)
+        Path segment = listFiles("wal-*").get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        try (OakMap<Integer, Integer> recovered = buildMap()) {
+            checkEquals(expected, recovered);
+        }
+
+        // a corrupted record ends the replay of its segment
+        segment = listFiles("wal-*").get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.position(channel.size() / 2);
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12}));
+        }
+        try (OakMap<Integer, Integer> recovered = buildMap()) {
+            Assert.assertTrue(recovered.size() > 0);
+            Assert.assertTrue(recovered.size() < NUM_KEYS);
+            for (Map.Entry<Integer, Integer> entry : copy(recovered).entrySet()) {
+                Assert.assertEquals(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws InterruptedException, IOException {
+        Map<Integer, Integer> expected;
+        try (OakMap<Integer, Integer> oak = buildMap()) {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < NUM_THREADS; t++) {
+                Thread thread = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < NUM_KEYS; i++) {
+                        // the threads update the same keys
+                        int key = random.nextInt(NUM_KEYS / 10);
+                        switch (random.nextInt(4)) {
+                            case 0:
+                                oak.put(key, random.nextInt());
+                                break;
+                            case 1:
+                                oak.remove(key);
+                                break;
+                            case 2:
+                                oak.merge(key, 1, Integer::sum);
+                                break;
+                            default:
+                                oak.zc().computeIfPresent(key, buffer -> buffer.putInt(0, buffer.getInt(0) + 1));
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            Thread checkpointer = new Thread(() -> {
+                try {
+                    oak.checkpoint();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            checkpointer.start();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            checkpointer.join();
+            expected = copy(oak);
+        }
+
+        try (OakMap<Integer, Integer> recovered = buildMap()) {
+            checkEquals(expected, recovered);
+        }
+    }
+
+    @Test
+    public void testFailedUpdatesAreNotApplied() throws IOException {
+        try (OakMap<Integer, Integer> oak = buildMap()) {
+            oak.put(1, 1);
+            oak.put(2, 2);
+            // the records can no longer be written
+            oak.getWriteAheadLog().close();
+            assertLogFails(() -> oak.put(3, 3));
+            assertLogFails(() -> oak.put(1, 10));
+            assertLogFails(() -> oak.remove(2));
+            assertLogFails(() -> oak.computeIfPresent(1, (k, v) -> v + 1));
+            assertLogFails(() -> oak.zc().computeIfPresent(2, buffer -> buffer.putInt(0, -1)));
+            assertLogFails(() -> oak.zc().putIfAbsentComputeIfPresent(4, 4, buffer -> buffer.putInt(0, -1)));
+
+            Map<Integer, Integer> expected = new TreeMap<>();
+            expected.put(1, 1);
+            expected.put(2, 2);
+            checkEquals(expected, oak);
+        }
+    }
+
+    private static void assertLogFails(Runnable update) {
+        try {
+            update.run();
+            Assert.fail("An update was not logged, but did not fail");
+        } catch (UncheckedIOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testByteArrayKeysAreLockedByContent() {
+        try (OakMap<byte[], byte[]> oak = buildBytesMap()) {
+            WriteAheadLog<byte[], byte[]> log = oak.getWriteAheadLog();
+            for (int key = 0; key < 100; key++) {
+                // different arrays of the same key, whose identity hash codes differ
+                Assert.assertSame(log.lockOf(new byte[] {(byte) key, 1}), log.lockOf(new byte[] {(byte) key, 1}));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentUpdatesOfByteArrayKeys() throws InterruptedException {
+        // byte[] has no value-based hashCode(), so the updates of a key are serialized only if its lock is
+        // chosen by its content
+        final int numKeys = 8;
+        Map<Integer, byte[]> expected = new TreeMap<>();
+        try (OakMap<byte[], byte[]> oak = buildBytesMap()) {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < NUM_THREADS; t++) {
+                Thread thread = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < NUM_KEYS; i++) {
+                        // a new array per update, with the same content as the arrays of the other threads
+                        byte[] key = new byte[] {(byte) random.nextInt(numKeys)};
+                        byte[] value = new byte[Integer.BYTES];
+                        random.nextBytes(value);
+                        oak.put(key, value);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            for (int key = 0; key < numKeys; key++) {
+                expected.put(key, oak.get(new byte[] {(byte) key}));
+            }
+        }
+
+        try (OakMap<byte[], byte[]> recovered = buildBytesMap()) {
+            for (int key = 0; key < numKeys; key++) {
+                Assert.assertArrayEquals(expected.get(key), recovered.get(new byte[] {(byte) key}));
+            }
+        }
+    }
+}